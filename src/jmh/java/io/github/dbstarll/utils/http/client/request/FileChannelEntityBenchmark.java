@@ -0,0 +1,181 @@
+package io.github.dbstarll.utils.http.client.request;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.io.entity.FileEntity;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+import org.apache.hc.core5.http.nio.entity.FileEntityProducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileChannelEntityBenchmark {
+    @Param({"65536", "16777216"})
+    public int size;
+
+    private File file;
+    private final Sink sink = new Sink();
+
+    /**
+     * 生成上传的文件.
+     *
+     * @throws IOException 写文件时出错
+     */
+    @Setup
+    public void setup() throws IOException {
+        final byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        this.file = File.createTempFile("upload", ".bin");
+        Files.write(file.toPath(), content);
+    }
+
+    /**
+     * 删除上传的文件.
+     */
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * classic的client通过FileEntity写出，作为基线.
+     *
+     * @return 写出的字节数
+     * @throws IOException 读取文件时出错
+     */
+    @Benchmark
+    public long fileEntity() throws IOException {
+        sink.reset();
+        new FileEntity(file, ContentType.APPLICATION_OCTET_STREAM).writeTo(sink);
+        return sink.count;
+    }
+
+    /**
+     * classic的client通过FileChannelEntity写出.
+     *
+     * @return 写出的字节数
+     * @throws IOException 读取文件时出错
+     */
+    @Benchmark
+    public long fileChannelEntity() throws IOException {
+        sink.reset();
+        new FileChannelEntity(file.toPath(), ContentType.APPLICATION_OCTET_STREAM).writeTo(sink);
+        return sink.count;
+    }
+
+    /**
+     * async的client通过FileEntityProducer发送，作为基线.
+     *
+     * @return 发送的字节数
+     * @throws IOException 读取文件时出错
+     */
+    @Benchmark
+    public long fileEntityProducer() throws IOException {
+        return produce(new FileEntityProducer(file, ContentType.APPLICATION_OCTET_STREAM));
+    }
+
+    /**
+     * async的client通过direct buffer发送.
+     *
+     * @return 发送的字节数
+     * @throws IOException 读取文件时出错
+     */
+    @Benchmark
+    public long directProducer() throws IOException {
+        return produce(new FileChannelEntity(file.toPath(), 0, size, ContentType.APPLICATION_OCTET_STREAM, false));
+    }
+
+    /**
+     * async的client映射文件发送.
+     *
+     * @return 发送的字节数
+     * @throws IOException 读取文件时出错
+     */
+    @Benchmark
+    public long mappedProducer() throws IOException {
+        return produce(new FileChannelEntity(file.toPath(), 0, size, ContentType.APPLICATION_OCTET_STREAM, true));
+    }
+
+    private long produce(final AsyncEntityProducer producer) throws IOException {
+        sink.reset();
+        try {
+            while (!sink.ended) {
+                producer.produce(sink);
+            }
+        } finally {
+            producer.releaseResources();
+        }
+        return sink.count;
+    }
+
+    /**
+     * 丢弃所有数据的输出，direct buffer不复制到堆内存，模拟连接直接写入socket.
+     */
+    private static final class Sink extends OutputStream implements DataStreamChannel {
+        private long count;
+        private boolean ended;
+
+        void reset() {
+            count = 0;
+            ended = false;
+        }
+
+        @Override
+        public void write(final int b) {
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
+        }
+
+        @Override
+        public void requestOutput() {
+        }
+
+        @Override
+        public int write(final ByteBuffer src) {
+            final int n = src.remaining();
+            ((Buffer) src).position(src.limit());
+            count += n;
+            return n;
+        }
+
+        @Override
+        public void endStream(final List<? extends Header> trailers) {
+            ended = true;
+        }
+
+        @Override
+        public void endStream() {
+            ended = true;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.dbstarll.utils.http.client.request;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RelativeUriResolverBenchmark {
+    @Param({"https://static.y1cloud.com", "https://static.y1cloud.com/first/second"})
+    public String base;
+
+    @Param({"ping.html", "/ping.html", "/users/12345/orders?since=1700000000&size=20",
+            "https://other.y1cloud.com/ping.html"})
+    public String uri;
+
+    private UriResolver resolver;
+    private UriTemplate template;
+    private final Object[] values = {12345, 1700000000L, 20};
+
+    /**
+     * 初始化resolver.
+     */
+    @Setup
+    public void setup() {
+        this.resolver = new RelativeUriResolver(base);
+        this.template = resolver.compile("/users/{id}/orders?since={ts}&size={size}");
+    }
+
+    /**
+     * 解析相对uri.
+     *
+     * @return 解析后的uri
+     */
+    @Benchmark
+    public URI resolve() {
+        return resolver.resolve(uri);
+    }
+
+    /**
+     * 拼接变量后再解析，作为展开uri模板的基线.
+     *
+     * @return 解析后的uri
+     */
+    @Benchmark
+    public URI concatAndResolve() {
+        return resolver.resolve("/users/" + values[0] + "/orders?since=" + values[1] + "&size=" + values[2]);
+    }
+
+    /**
+     * 展开预编译的uri模板，与concatAndResolve的结果一致.
+     *
+     * @return 展开后的uri
+     */
+    @Benchmark
+    public URI expand() {
+        return template.expand(values);
+    }
+}
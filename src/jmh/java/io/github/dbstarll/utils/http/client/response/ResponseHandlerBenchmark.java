@@ -0,0 +1,113 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.ParseException;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.InputStreamEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比StringResponseHandler、ByteArrayResponseHandler与EntityUtils在不同body大小、charset以及是否已知长度时的表现.
+ * 除吞吐量外，benchmark profile通过-prof gc给出每次调用分配的字节数(gc.alloc.rate.norm)，用于比较各实现与EntityUtils的内存分配.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseHandlerBenchmark {
+    @Param({"256", "16384", "1048576"})
+    public int size;
+
+    @Param({"UTF-8", "ISO-8859-1", "GBK"})
+    public String charset;
+
+    @Param({"true", "false"})
+    public boolean chunked;
+
+    private final StringResponseHandler stringHandler = new StringResponseHandler(false);
+    private final ByteArrayResponseHandler byteArrayHandler = new ByteArrayResponseHandler(false);
+    private ContentType contentType;
+    private byte[] body;
+
+    /**
+     * 生成类似json的body.
+     */
+    @Setup
+    public void setup() {
+        final Charset cs = Charset.forName(charset);
+        this.contentType = ContentType.APPLICATION_JSON.withCharset(cs);
+        final StringBuilder builder = new StringBuilder(size + 64).append('[');
+        for (int i = 0; builder.length() < size; i++) {
+            builder.append("{\"id\":").append(i).append(",\"name\":\"")
+                    .append(cs.newEncoder().canEncode('中') ? "名称" : "name").append(i).append("\"},");
+        }
+        this.body = builder.append(']').toString().getBytes(cs);
+    }
+
+    private HttpEntity entity() {
+        return new InputStreamEntity(new ByteArrayInputStream(body), chunked ? -1 : body.length, contentType);
+    }
+
+    /**
+     * StringResponseHandler.
+     *
+     * @return 解析结果
+     * @throws IOException in case of an I/O error
+     */
+    @Benchmark
+    public String stringHandler() throws IOException {
+        return stringHandler.handleEntity(entity());
+    }
+
+    /**
+     * EntityUtils.toString作为基线.
+     *
+     * @return 解析结果
+     * @throws IOException    in case of an I/O error
+     * @throws ParseException in case of a parse error
+     */
+    @Benchmark
+    public String stringEntityUtils() throws IOException, ParseException {
+        return EntityUtils.toString(entity());
+    }
+
+    /**
+     * ByteArrayResponseHandler.
+     *
+     * @return 解析结果
+     * @throws IOException in case of an I/O error
+     */
+    @Benchmark
+    public byte[] byteArrayHandler() throws IOException {
+        return byteArrayHandler.handleEntity(entity());
+    }
+
+    /**
+     * EntityUtils.toByteArray作为基线.
+     *
+     * @return 解析结果
+     * @throws IOException in case of an I/O error
+     */
+    @Benchmark
+    public byte[] byteArrayEntityUtils() throws IOException {
+        return EntityUtils.toByteArray(entity());
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ResponseHandlerFactoryBenchmark {
+    private final ResponseHandlerFactory factory = new MultiResponseHandlerFactory(
+            new BasicResponseHandlerFactory(false));
+
+    /**
+     * 直接注册的response类.
+     *
+     * @return ResponseHandler
+     */
+    @Benchmark
+    public HttpClientResponseHandler<String> exact() {
+        return factory.getResponseHandler(String.class);
+    }
+
+    /**
+     * 通过类型层次解析的response类.
+     *
+     * @return ResponseHandler
+     */
+    @Benchmark
+    public HttpClientResponseHandler<CharSequence> supertype() {
+        return factory.getResponseHandler(CharSequence.class);
+    }
+
+    /**
+     * 没有对应ResponseHandler的response类.
+     *
+     * @return ResponseHandler
+     */
+    @Benchmark
+    public HttpClientResponseHandler<Integer> miss() {
+        return factory.getResponseHandler(Integer.class);
+    }
+}
@@ -0,0 +1,220 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.async.AsyncExecCallback;
+import org.apache.hc.client5.http.async.AsyncExecChain;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.nio.AsyncDataConsumer;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.support.BasicRequestBuilder;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * async client中使用{@link HttpResponseCache}的AsyncExecChainHandler.
+ */
+final class AsyncResponseCacheExec implements AsyncExecChainHandler {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final HttpResponseCache cache;
+
+    AsyncResponseCacheExec(final HttpResponseCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void execute(final HttpRequest request, final AsyncEntityProducer entityProducer,
+                        final AsyncExecChain.Scope scope, final AsyncExecChain chain,
+                        final AsyncExecCallback asyncExecCallback) throws HttpException, IOException {
+        if (WarmUpPolicy.isWarmUp(scope.clientContext)) {
+            chain.proceed(request, entityProducer, scope, asyncExecCallback);
+            return;
+        }
+        final HttpHost target = scope.route.getTargetHost();
+        if (!HttpResponseCache.isServable(request)) {
+            chain.proceed(request, entityProducer, scope, new ForwardingCallback(asyncExecCallback) {
+                @Override
+                public AsyncDataConsumer handleResponse(final HttpResponse response,
+                                                        final EntityDetails entityDetails)
+                        throws HttpException, IOException {
+                    cache.invalidate(target, request, response);
+                    return super.handleResponse(response, entityDetails);
+                }
+            });
+            return;
+        }
+        final String key = HttpResponseCache.key(target, request);
+        final CachedResponse cached = cache.lookup(key, request);
+        if (cached != null && cached.isFresh(cache.now()) && !HttpResponseCache.requiresRevalidation(request)) {
+            cache.recordHit();
+            serve(cached, cache.now(), asyncExecCallback);
+            asyncExecCallback.completed();
+        } else if (cached != null && cached.hasValidators()) {
+            final HttpRequest conditional = BasicRequestBuilder.copy(request).build();
+            HttpResponseCache.addValidators(conditional, cached);
+            chain.proceed(conditional, entityProducer, scope,
+                    new StoringCallback(asyncExecCallback, key, request, cached));
+        } else {
+            cache.recordMiss();
+            chain.proceed(request, entityProducer, scope, new StoringCallback(asyncExecCallback, key, request, null));
+        }
+    }
+
+    private static void serve(final CachedResponse cached, final long now, final AsyncExecCallback callback)
+            throws HttpException, IOException {
+        final AsyncDataConsumer consumer = callback.handleResponse(cached.toResponse(now), cached.toEntity());
+        if (consumer != null) {
+            if (cached.getBody() != null) {
+                consumer.consume(cached.getBody().duplicate());
+            }
+            consumer.streamEnd(null);
+        }
+    }
+
+    private static class ForwardingCallback implements AsyncExecCallback {
+        final AsyncExecCallback callback;
+
+        ForwardingCallback(final AsyncExecCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public AsyncDataConsumer handleResponse(final HttpResponse response, final EntityDetails entityDetails)
+                throws HttpException, IOException {
+            return callback.handleResponse(response, entityDetails);
+        }
+
+        @Override
+        public void handleInformationResponse(final HttpResponse response) throws HttpException, IOException {
+            callback.handleInformationResponse(response);
+        }
+
+        @Override
+        public void completed() {
+            callback.completed();
+        }
+
+        @Override
+        public void failed(final Exception cause) {
+            callback.failed(cause);
+        }
+    }
+
+    private final class StoringCallback extends ForwardingCallback {
+        private final String key;
+        private final HttpRequest request;
+        private final CachedResponse cached;
+
+        StoringCallback(final AsyncExecCallback callback, final String key, final HttpRequest request,
+                        final CachedResponse cached) {
+            super(callback);
+            this.key = key;
+            this.request = request;
+            this.cached = cached;
+        }
+
+        @Override
+        public AsyncDataConsumer handleResponse(final HttpResponse response, final EntityDetails entityDetails)
+                throws HttpException, IOException {
+            final long responseTime = cache.now();
+            if (cached != null && response.getCode() == HttpStatus.SC_NOT_MODIFIED) {
+                serve(cache.revalidated(cached, response, responseTime), responseTime, callback);
+                return null;
+            } else if (cached != null) {
+                cache.recordMiss();
+            }
+            final AsyncDataConsumer consumer = callback.handleResponse(response, entityDetails);
+            final long contentLength = entityDetails == null ? 0 : entityDetails.getContentLength();
+            if (!cache.isStorable(request, response, contentLength)) {
+                return consumer;
+            } else if (entityDetails == null) {
+                cache.store(key, request, response, null, responseTime);
+                return consumer;
+            }
+            return new StoringConsumer(consumer, key, request, response, responseTime, contentLength);
+        }
+    }
+
+    /**
+     * 将响应内容转交给下游的同时复制一份，完整接收且未超出限制时放入缓存.
+     */
+    private final class StoringConsumer implements AsyncDataConsumer {
+        private final AsyncDataConsumer consumer;
+        private final String key;
+        private final HttpRequest request;
+        private final HttpResponse response;
+        private final long responseTime;
+        private byte[] buffer;
+        private int count;
+
+        StoringConsumer(final AsyncDataConsumer consumer, final String key, final HttpRequest request,
+                        final HttpResponse response, final long responseTime, final long contentLength) {
+            this.consumer = consumer;
+            this.key = key;
+            this.request = request;
+            this.response = response;
+            this.responseTime = responseTime;
+            this.buffer = new byte[contentLength >= 0 ? (int) contentLength
+                    : Math.min(BUFFER_SIZE, cache.getMaxEntryBytes())];
+        }
+
+        @Override
+        public void updateCapacity(final CapacityChannel capacityChannel) throws IOException {
+            if (consumer != null) {
+                consumer.updateCapacity(capacityChannel);
+            } else {
+                capacityChannel.update(Integer.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void consume(final ByteBuffer src) throws IOException {
+            final int length = src.remaining();
+            if (buffer != null && count + length > cache.getMaxEntryBytes()) {
+                buffer = null;
+            } else if (buffer != null) {
+                if (count + length > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, count + length));
+                }
+                src.duplicate().get(buffer, count, length);
+                count += length;
+            }
+            if (consumer != null) {
+                consumer.consume(src);
+            } else {
+                // 通过Buffer调用，避免在Java 8上运行时找不到ByteBuffer的协变方法
+                ((Buffer) src).position(src.limit());
+            }
+        }
+
+        @Override
+        public void streamEnd(final List<? extends Header> trailers) throws HttpException, IOException {
+            if (buffer != null) {
+                cache.store(key, request, response, ByteBuffer.wrap(buffer, 0, count), responseTime);
+                buffer = null;
+            }
+            if (consumer != null) {
+                consumer.streamEnd(trailers);
+            }
+        }
+
+        @Override
+        public void releaseResources() {
+            buffer = null;
+            if (consumer != null) {
+                consumer.releaseResources();
+            }
+        }
+    }
+}
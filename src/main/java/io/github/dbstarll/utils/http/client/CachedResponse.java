@@ -0,0 +1,144 @@
+package io.github.dbstarll.utils.http.client;
+
+import io.github.dbstarll.utils.http.client.response.SharedBufferEntity;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存的响应，status、header以及共享的内容都不可变，重新验证后以新的CachedResponse替换.
+ */
+final class CachedResponse {
+    private static final int HEADER_OVERHEAD = 32;
+
+    private final String key;
+    private final int code;
+    private final String reasonPhrase;
+    private final Header[] headers;
+    private final ByteBuffer body;
+    private final Map<String, String> vary;
+    private final long responseTime;
+    private final long freshUntil;
+    private final long initialAge;
+    private final boolean spilled;
+    private final boolean shared;
+    private final long weight;
+
+    CachedResponse(final String key, final HttpResponse response, final ByteBuffer body,
+                   final Map<String, String> vary, final long responseTime, final long freshnessLifetime,
+                   final long initialAge, final boolean spilled) {
+        this.key = key;
+        this.code = response.getCode();
+        this.reasonPhrase = response.getReasonPhrase();
+        this.headers = response.getHeaders();
+        this.body = body;
+        this.vary = vary;
+        this.responseTime = responseTime;
+        this.freshUntil = responseTime + TimeUnit.SECONDS.toNanos(freshnessLifetime - initialAge);
+        this.initialAge = initialAge;
+        this.spilled = spilled;
+        this.shared = HttpResponseCache.isShared(HttpResponseCache.directives(response));
+        long size = body == null ? 0 : body.remaining();
+        for (Header header : headers) {
+            size += HEADER_OVERHEAD + 2L * (header.getName().length() + header.getValue().length());
+        }
+        this.weight = size;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    int getCode() {
+        return code;
+    }
+
+    Header[] getHeaders() {
+        return headers.clone();
+    }
+
+    ByteBuffer getBody() {
+        return body;
+    }
+
+    Map<String, String> getVary() {
+        return vary;
+    }
+
+    boolean isSpilled() {
+        return spilled;
+    }
+
+    boolean isShared() {
+        return shared;
+    }
+
+    long getWeight() {
+        return weight;
+    }
+
+    boolean isFresh(final long now) {
+        return now - freshUntil < 0;
+    }
+
+    String getFirstHeader(final String name) {
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    boolean hasValidators() {
+        return getFirstHeader(HttpHeaders.ETAG) != null || getFirstHeader(HttpHeaders.LAST_MODIFIED) != null;
+    }
+
+    /**
+     * 请求中由Vary指定的header是否与缓存时的请求一致.
+     */
+    boolean matches(final HttpRequest request) {
+        for (Map.Entry<String, String> e : vary.entrySet()) {
+            if (!Objects.equals(e.getValue(), HttpResponseCache.headerValues(request, e.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long age(final long now) {
+        return initialAge + TimeUnit.NANOSECONDS.toSeconds(Math.max(0, now - responseTime));
+    }
+
+    HttpResponse toResponse(final long now) {
+        final BasicHttpResponse response = new BasicHttpResponse(code, reasonPhrase);
+        response.setHeaders(headers);
+        response.setHeader(HttpHeaders.AGE, Long.toString(age(now)));
+        return response;
+    }
+
+    SharedBufferEntity toEntity() {
+        if (body == null) {
+            return null;
+        }
+        return new SharedBufferEntity(body, getFirstHeader(HttpHeaders.CONTENT_TYPE),
+                getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    ClassicHttpResponse toClassicResponse(final long now) {
+        final BasicClassicHttpResponse response = new BasicClassicHttpResponse(code, reasonPhrase);
+        response.setHeaders(headers);
+        response.setHeader(HttpHeaders.AGE, Long.toString(age(now)));
+        response.setEntity(toEntity());
+        return response;
+    }
+}
@@ -0,0 +1,346 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.DnsResolver;
+import org.apache.hc.client5.http.SystemDefaultDnsResolver;
+import org.apache.hc.core5.net.InetAddressUtils;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 带缓存的DnsResolver.
+ * 解析结果缓存timeToLive，在过期前refreshAhead内被访问时异步刷新；过期后maxStale内仍返回旧的结果并异步刷新，
+ * 刷新失败时继续使用旧的结果，只有完全未命中或超出maxStale时才在调用线程上同步解析.
+ */
+public final class CachingDnsResolver implements DnsResolver {
+    public static final TimeValue DEFAULT_TIME_TO_LIVE = TimeValue.ofSeconds(60);
+    public static final TimeValue DEFAULT_REFRESH_AHEAD = TimeValue.ofSeconds(10);
+    public static final TimeValue DEFAULT_MAX_STALE = TimeValue.ofMinutes(5);
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    private final DnsResolver delegate;
+    private final LongSupplier nanoClock;
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private long timeToLive = DEFAULT_TIME_TO_LIVE.toNanoseconds();
+    private long refreshAhead = DEFAULT_REFRESH_AHEAD.toNanoseconds();
+    private long maxStale = DEFAULT_MAX_STALE.toNanoseconds();
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private volatile Executor executor;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * 构造CachingDnsResolver，使用系统默认的DnsResolver来解析.
+     */
+    public CachingDnsResolver() {
+        this(SystemDefaultDnsResolver.INSTANCE);
+    }
+
+    /**
+     * 构造CachingDnsResolver.
+     *
+     * @param delegate 实际解析域名的DnsResolver
+     */
+    public CachingDnsResolver(final DnsResolver delegate) {
+        this(delegate, System::nanoTime);
+    }
+
+    CachingDnsResolver(final DnsResolver delegate, final LongSupplier nanoClock) {
+        this.delegate = notNull(delegate, "delegate is null");
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * 设置解析结果的缓存时间.
+     *
+     * @param newTimeToLive 缓存时间
+     * @return this CachingDnsResolver
+     */
+    public CachingDnsResolver setTimeToLive(final TimeValue newTimeToLive) {
+        isTrue(TimeValue.isPositive(newTimeToLive), "timeToLive must be positive: %s", newTimeToLive);
+        this.timeToLive = newTimeToLive.toNanoseconds();
+        return this;
+    }
+
+    /**
+     * 设置提前刷新的时间，在缓存过期前的这段时间内被访问时，异步刷新解析结果.
+     *
+     * @param newRefreshAhead 提前刷新的时间，为0时不提前刷新
+     * @return this CachingDnsResolver
+     */
+    public CachingDnsResolver setRefreshAhead(final TimeValue newRefreshAhead) {
+        notNull(newRefreshAhead, "refreshAhead is null");
+        isTrue(newRefreshAhead.getDuration() >= 0, "refreshAhead must not be negative: %s", newRefreshAhead);
+        this.refreshAhead = newRefreshAhead.toNanoseconds();
+        return this;
+    }
+
+    /**
+     * 设置缓存过期后仍可以使用旧的解析结果的时间，在此期间异步刷新解析结果.
+     *
+     * @param newMaxStale 可以使用旧的解析结果的时间，为0时过期后同步解析
+     * @return this CachingDnsResolver
+     */
+    public CachingDnsResolver setMaxStale(final TimeValue newMaxStale) {
+        notNull(newMaxStale, "maxStale is null");
+        isTrue(newMaxStale.getDuration() >= 0, "maxStale must not be negative: %s", newMaxStale);
+        this.maxStale = newMaxStale.toNanoseconds();
+        return this;
+    }
+
+    /**
+     * 设置缓存的最大域名数，超出时淘汰最久未访问的域名.
+     *
+     * @param newMaxSize 缓存的最大域名数
+     * @return this CachingDnsResolver
+     */
+    public CachingDnsResolver setMaxSize(final int newMaxSize) {
+        isTrue(newMaxSize > 0, "maxSize must be positive: %d", newMaxSize);
+        this.maxSize = newMaxSize;
+        return this;
+    }
+
+    /**
+     * 设置异步刷新使用的线程池.
+     *
+     * @param newExecutor 异步刷新使用的线程池，为null时使用内部的缓存线程池
+     * @return this CachingDnsResolver
+     */
+    public CachingDnsResolver setExecutor(final Executor newExecutor) {
+        this.executor = newExecutor;
+        return this;
+    }
+
+    @Override
+    public InetAddress[] resolve(final String host) throws UnknownHostException {
+        if (host == null || InetAddressUtils.isIPv4Address(host) || InetAddressUtils.isIPv6Address(host)) {
+            return delegate.resolve(host);
+        }
+        final long now = nanoClock.getAsLong();
+        final Entry entry = cache.get(host);
+        if (entry == null) {
+            return load(host, now);
+        }
+        entry.lastAccess = now;
+        final Record record = entry.record;
+        if (record == null) {
+            return entry.await(host);
+        } else if (now - record.expiresAt < 0) {
+            hits.increment();
+            if (now - (record.expiresAt - refreshAhead) >= 0) {
+                refresh(host, entry);
+            }
+            return record.addresses.clone();
+        } else if (now - (record.expiresAt + maxStale) < 0) {
+            staleHits.increment();
+            refresh(host, entry);
+            return record.addresses.clone();
+        } else {
+            cache.remove(host, entry);
+            return load(host, now);
+        }
+    }
+
+    private InetAddress[] load(final String host, final long now) throws UnknownHostException {
+        misses.increment();
+        final Entry entry = new Entry(now);
+        final Entry exists = cache.putIfAbsent(host, entry);
+        if (exists != null) {
+            return exists.await(host);
+        }
+        evictIfNecessary();
+        try {
+            final InetAddress[] addresses = delegate.resolve(host);
+            entry.complete(new Record(addresses, nanoClock.getAsLong() + timeToLive));
+            return addresses.clone();
+        } catch (UnknownHostException | RuntimeException e) {
+            cache.remove(host, entry);
+            entry.loading.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void refresh(final String host, final Entry entry) {
+        if (entry.refreshing.compareAndSet(false, true)) {
+            try {
+                executor().execute(() -> {
+                    try {
+                        entry.record = new Record(delegate.resolve(host), nanoClock.getAsLong() + timeToLive);
+                        refreshes.increment();
+                    } catch (UnknownHostException | RuntimeException e) {
+                        refreshFailures.increment();
+                    } finally {
+                        entry.refreshing.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                entry.refreshing.set(false);
+            }
+        }
+    }
+
+    private void evictIfNecessary() {
+        while (cache.size() > maxSize) {
+            Map.Entry<String, Entry> eldest = null;
+            for (Map.Entry<String, Entry> e : cache.entrySet()) {
+                if (e.getValue().record != null
+                        && (eldest == null || e.getValue().lastAccess - eldest.getValue().lastAccess < 0)) {
+                    eldest = e;
+                }
+            }
+            if (eldest == null || !cache.remove(eldest.getKey(), eldest.getValue())) {
+                return;
+            }
+            evictions.increment();
+        }
+    }
+
+    private Executor executor() {
+        Executor current = executor;
+        if (current == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    executor = Executors.newCachedThreadPool(new DaemonThreadFactory("caching-dns-resolver-"));
+                }
+                current = executor;
+            }
+        }
+        return current;
+    }
+
+    @Override
+    public String resolveCanonicalHostname(final String host) throws UnknownHostException {
+        return delegate.resolveCanonicalHostname(host);
+    }
+
+    /**
+     * 清除所有缓存的解析结果.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * 获得当前缓存的域名数.
+     *
+     * @return 缓存的域名数
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * 获得缓存未过期时的命中次数.
+     *
+     * @return 命中次数
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * 获得缓存已过期但仍返回旧的解析结果的次数.
+     *
+     * @return 返回旧的解析结果的次数
+     */
+    public long getStaleHitCount() {
+        return staleHits.sum();
+    }
+
+    /**
+     * 获得未命中缓存而同步解析的次数.
+     *
+     * @return 未命中次数
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 获得异步刷新成功的次数.
+     *
+     * @return 异步刷新成功的次数
+     */
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    /**
+     * 获得异步刷新失败的次数.
+     *
+     * @return 异步刷新失败的次数
+     */
+    public long getRefreshFailureCount() {
+        return refreshFailures.sum();
+    }
+
+    /**
+     * 获得因超出最大域名数而被淘汰的次数.
+     *
+     * @return 淘汰次数
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private static final class Record {
+        private final InetAddress[] addresses;
+        private final long expiresAt;
+
+        private Record(final InetAddress[] addresses, final long expiresAt) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<Record> loading = new CompletableFuture<>();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile Record record;
+        private volatile long lastAccess;
+
+        private Entry(final long now) {
+            this.lastAccess = now;
+        }
+
+        private void complete(final Record newRecord) {
+            this.record = newRecord;
+            loading.complete(newRecord);
+        }
+
+        private InetAddress[] await(final String host) throws UnknownHostException {
+            try {
+                return loading.get().addresses.clone();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UnknownHostException(host);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UnknownHostException) {
+                    throw (UnknownHostException) e.getCause();
+                }
+                final UnknownHostException ex = new UnknownHostException(host);
+                ex.initCause(e.getCause());
+                throw ex;
+            }
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.impl.DefaultSchemePortResolver;
+import org.apache.hc.client5.http.routing.RoutingSupport;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 按目标主机的断路器，通过{@link HttpClientFactory#setCircuitBreaker(CircuitBreaker)}同时用于classic和async的client.
+ * <ul>
+ * <li>以最近若干次请求的滑动窗口统计失败率(IOException以及5xx响应)和慢请求率(到收到响应头的耗时)</li>
+ * <li>任一比例达到阈值时断开，断开期间的请求不建立连接，立即以{@link RejectedExecutionException}失败</li>
+ * <li>断开一段时间后进入半开状态，放行有限个探测请求，全部成功时闭合，任一失败或过慢时再次断开</li>
+ * <li>断开后配置的重试策略不再重试</li>
+ * </ul>
+ */
+public final class CircuitBreaker {
+    public static final int DEFAULT_WINDOW_SIZE = 100;
+    public static final int DEFAULT_MINIMUM_CALLS = 20;
+    public static final float DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+    public static final float DEFAULT_SLOW_CALL_RATE_THRESHOLD = 100;
+    public static final TimeValue DEFAULT_SLOW_CALL_DURATION = TimeValue.ofSeconds(5);
+    public static final TimeValue DEFAULT_OPEN_DURATION = TimeValue.ofSeconds(30);
+    public static final int DEFAULT_HALF_OPEN_CALLS = 5;
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    /**
+     * 断路器的状态.
+     */
+    public enum State {
+        /**
+         * 闭合，请求正常执行.
+         */
+        CLOSED,
+        /**
+         * 断开，请求立即失败.
+         */
+        OPEN,
+        /**
+         * 半开，只放行有限个探测请求.
+         */
+        HALF_OPEN
+    }
+
+    private final LongSupplier nanoClock;
+    private final Map<HttpHost, Route> routes = new ConcurrentHashMap<>();
+    private volatile int windowSize = DEFAULT_WINDOW_SIZE;
+    private volatile int minimumCalls = DEFAULT_MINIMUM_CALLS;
+    private volatile float failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+    private volatile float slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+    private volatile long slowCallNanos = DEFAULT_SLOW_CALL_DURATION.toNanoseconds();
+    private volatile long openNanos = DEFAULT_OPEN_DURATION.toNanoseconds();
+    private volatile int halfOpenCalls = DEFAULT_HALF_OPEN_CALLS;
+
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * 构造CircuitBreaker.
+     */
+    public CircuitBreaker() {
+        this(System::nanoTime);
+    }
+
+    CircuitBreaker(final LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * 设置滑动窗口的大小以及开始计算比例所需的最少请求数，已有的统计被清空.
+     *
+     * @param newWindowSize   滑动窗口包含的请求数
+     * @param newMinimumCalls 开始计算比例所需的最少请求数
+     * @return this CircuitBreaker
+     */
+    public CircuitBreaker setWindow(final int newWindowSize, final int newMinimumCalls) {
+        isTrue(newMinimumCalls > 0 && newMinimumCalls <= newWindowSize,
+                "window must satisfy 0 < minimumCalls <= windowSize: %d, %d", newMinimumCalls, newWindowSize);
+        this.windowSize = newWindowSize;
+        this.minimumCalls = newMinimumCalls;
+        routes.clear();
+        return this;
+    }
+
+    /**
+     * 设置断开的失败率阈值.
+     *
+     * @param newFailureRateThreshold 失败率阈值，百分比
+     * @return this CircuitBreaker
+     */
+    public CircuitBreaker setFailureRateThreshold(final float newFailureRateThreshold) {
+        isTrue(newFailureRateThreshold > 0 && newFailureRateThreshold <= 100,
+                "failureRateThreshold must be in (0, 100]: %s", newFailureRateThreshold);
+        this.failureRateThreshold = newFailureRateThreshold;
+        return this;
+    }
+
+    /**
+     * 设置断开的慢请求率阈值，以及判定为慢请求的耗时.
+     *
+     * @param newSlowCallRateThreshold 慢请求率阈值，百分比
+     * @param newSlowCallDuration      判定为慢请求的耗时
+     * @return this CircuitBreaker
+     */
+    public CircuitBreaker setSlowCallRateThreshold(final float newSlowCallRateThreshold,
+                                                   final TimeValue newSlowCallDuration) {
+        isTrue(newSlowCallRateThreshold > 0 && newSlowCallRateThreshold <= 100,
+                "slowCallRateThreshold must be in (0, 100]: %s", newSlowCallRateThreshold);
+        isTrue(TimeValue.isPositive(newSlowCallDuration), "slowCallDuration must be positive: %s",
+                newSlowCallDuration);
+        this.slowCallRateThreshold = newSlowCallRateThreshold;
+        this.slowCallNanos = newSlowCallDuration.toNanoseconds();
+        return this;
+    }
+
+    /**
+     * 设置断开后进入半开状态的等待时间.
+     *
+     * @param newOpenDuration 等待时间
+     * @return this CircuitBreaker
+     */
+    public CircuitBreaker setOpenDuration(final TimeValue newOpenDuration) {
+        isTrue(TimeValue.isPositive(newOpenDuration), "openDuration must be positive: %s", newOpenDuration);
+        this.openNanos = newOpenDuration.toNanoseconds();
+        return this;
+    }
+
+    /**
+     * 设置半开状态下放行的探测请求数.
+     *
+     * @param newHalfOpenCalls 探测请求数
+     * @return this CircuitBreaker
+     */
+    public CircuitBreaker setHalfOpenCalls(final int newHalfOpenCalls) {
+        isTrue(newHalfOpenCalls > 0, "halfOpenCalls must be positive: %d", newHalfOpenCalls);
+        this.halfOpenCalls = newHalfOpenCalls;
+        return this;
+    }
+
+    /**
+     * 获得目标主机的断路器状态.
+     *
+     * @param target 目标主机，未指定端口时使用scheme的默认端口
+     * @return 断路器状态
+     */
+    public State getState(final HttpHost target) {
+        final Route route = routes.get(normalize(notNull(target, "target is null")));
+        return route == null ? State.CLOSED : route.state(nanoClock.getAsLong());
+    }
+
+    /**
+     * 获得因断路器断开而被拒绝的请求数.
+     *
+     * @return 被拒绝的请求数
+     */
+    public long getRejectedCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * 清空所有目标主机的状态和统计.
+     */
+    public void reset() {
+        routes.clear();
+    }
+
+    /**
+     * 开始一次请求.
+     *
+     * @param target 目标主机
+     * @return 用于记录请求结果的Call
+     * @throws RejectedExecutionException 断路器断开，或者半开状态下的探测请求数已满
+     */
+    Call acquire(final HttpHost target) {
+        final HttpHost key = normalize(target);
+        final Route route = routes.computeIfAbsent(key, k -> new Route(windowSize));
+        final long generation = route.acquire(nanoClock.getAsLong());
+        if (generation < 0) {
+            rejections.increment();
+            throw new RejectedExecutionException("circuit breaker is open: " + key);
+        }
+        return new Call(route, generation, nanoClock.getAsLong());
+    }
+
+    /**
+     * 判断目标主机当前是否允许请求，不占用半开状态下的探测名额，用于重试前的判断.
+     *
+     * @param target 目标主机
+     * @return 是否允许请求
+     */
+    boolean isCallPermitted(final HttpHost target) {
+        final Route route = routes.get(normalize(target));
+        return route == null || route.isCallPermitted(nanoClock.getAsLong());
+    }
+
+    private static HttpHost normalize(final HttpHost target) {
+        return RoutingSupport.normalize(target, DefaultSchemePortResolver.INSTANCE);
+    }
+
+    /**
+     * 一次请求，完成后记录结果.
+     */
+    final class Call {
+        private final Route route;
+        private final long generation;
+        private final long start;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private Call(final Route route, final long generation, final long start) {
+            this.route = route;
+            this.generation = generation;
+            this.start = start;
+        }
+
+        /**
+         * 记录请求的结果.
+         *
+         * @param failed 请求是否失败
+         */
+        void complete(final boolean failed) {
+            if (completed.compareAndSet(false, true)) {
+                final long now = nanoClock.getAsLong();
+                final byte outcome = (byte) ((failed ? FAILED : 0) | (now - start >= slowCallNanos ? SLOW : 0));
+                route.complete(generation, outcome, now);
+            }
+        }
+
+        /**
+         * 请求未能执行，不记录结果，归还半开状态下的探测名额.
+         */
+        void cancel() {
+            if (completed.compareAndSet(false, true)) {
+                route.cancel(generation);
+            }
+        }
+    }
+
+    /**
+     * 单个目标主机的状态，以环形数组保存滑动窗口内每次请求的结果.
+     */
+    private final class Route {
+        private final byte[] window;
+        private int next;
+        private int calls;
+        private int failures;
+        private int slowCalls;
+        private State state = State.CLOSED;
+        private long generation;
+        private long openedAt;
+        private int probes;
+        private int probeSuccesses;
+
+        private Route(final int windowSize) {
+            this.window = new byte[windowSize];
+        }
+
+        synchronized State state(final long now) {
+            return state == State.OPEN && now - openedAt >= openNanos ? State.HALF_OPEN : state;
+        }
+
+        synchronized boolean isCallPermitted(final long now) {
+            switch (state(now)) {
+                case OPEN:
+                    return false;
+                case HALF_OPEN:
+                    return state == State.OPEN || probes < halfOpenCalls;
+                default:
+                    return true;
+            }
+        }
+
+        synchronized long acquire(final long now) {
+            if (state == State.OPEN) {
+                if (now - openedAt < openNanos) {
+                    return -1;
+                }
+                transition(State.HALF_OPEN, now);
+            }
+            if (state == State.HALF_OPEN) {
+                if (probes >= halfOpenCalls) {
+                    return -1;
+                }
+                probes++;
+            }
+            return generation;
+        }
+
+        synchronized void complete(final long callGeneration, final byte outcome, final long now) {
+            if (callGeneration != generation) {
+                // 状态已经改变，忽略之前的状态下开始的请求
+                return;
+            } else if (state == State.HALF_OPEN) {
+                if (outcome != 0) {
+                    transition(State.OPEN, now);
+                } else if (++probeSuccesses >= halfOpenCalls) {
+                    transition(State.CLOSED, now);
+                }
+                return;
+            }
+            if (calls == window.length) {
+                final byte evicted = window[next];
+                failures -= evicted & FAILED;
+                slowCalls -= (evicted & SLOW) >> 1;
+            } else {
+                calls++;
+            }
+            window[next] = outcome;
+            next = (next + 1) % window.length;
+            failures += outcome & FAILED;
+            slowCalls += (outcome & SLOW) >> 1;
+            if (calls >= minimumCalls && (failures * 100f >= failureRateThreshold * calls
+                    || slowCalls * 100f >= slowCallRateThreshold * calls)) {
+                transition(State.OPEN, now);
+            }
+        }
+
+        synchronized void cancel(final long callGeneration) {
+            if (callGeneration == generation && state == State.HALF_OPEN) {
+                probes--;
+            }
+        }
+
+        private void transition(final State newState, final long now) {
+            this.state = newState;
+            this.generation++;
+            this.openedAt = now;
+            this.probes = 0;
+            this.probeSuccesses = 0;
+            this.calls = 0;
+            this.next = 0;
+            this.failures = 0;
+            this.slowCalls = 0;
+        }
+    }
+}
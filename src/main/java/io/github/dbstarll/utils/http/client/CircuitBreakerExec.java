@@ -0,0 +1,112 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.async.AsyncExecCallback;
+import org.apache.hc.client5.http.async.AsyncExecChain;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.nio.AsyncDataConsumer;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 按{@link CircuitBreaker}拒绝发往断开的目标主机的请求，并记录请求结果的ExecChainHandler，同时用于classic和async的client.
+ * IOException、HttpException以及5xx响应视为失败，被后续的限流拒绝的请求不记录结果.
+ */
+final class CircuitBreakerExec implements ExecChainHandler, AsyncExecChainHandler {
+    private final CircuitBreaker breaker;
+
+    CircuitBreakerExec(final CircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    @Override
+    public ClassicHttpResponse execute(final ClassicHttpRequest request, final ExecChain.Scope scope,
+                                       final ExecChain chain) throws IOException, HttpException {
+        if (WarmUpPolicy.isWarmUp(scope.clientContext)) {
+            return chain.proceed(request, scope);
+        }
+        // 连接失败时HttpClient尚未设置route，提前设置以便重试策略判断目标主机的状态
+        scope.clientContext.setAttribute(HttpClientContext.HTTP_ROUTE, scope.route);
+        final CircuitBreaker.Call call = breaker.acquire(scope.route.getTargetHost());
+        boolean failed = true;
+        try {
+            final ClassicHttpResponse response = chain.proceed(request, scope);
+            failed = isFailed(response);
+            return response;
+        } catch (RejectedExecutionException ex) {
+            call.cancel();
+            throw ex;
+        } finally {
+            call.complete(failed);
+        }
+    }
+
+    @Override
+    public void execute(final HttpRequest request, final AsyncEntityProducer entityProducer,
+                        final AsyncExecChain.Scope scope, final AsyncExecChain chain,
+                        final AsyncExecCallback asyncExecCallback) throws HttpException, IOException {
+        if (WarmUpPolicy.isWarmUp(scope.clientContext)) {
+            chain.proceed(request, entityProducer, scope, asyncExecCallback);
+            return;
+        }
+        scope.clientContext.setAttribute(HttpClientContext.HTTP_ROUTE, scope.route);
+        final CircuitBreaker.Call call;
+        try {
+            call = breaker.acquire(scope.route.getTargetHost());
+        } catch (RejectedExecutionException ex) {
+            asyncExecCallback.failed(ex);
+            return;
+        }
+        try {
+            chain.proceed(request, entityProducer, scope, new AsyncExecCallback() {
+                @Override
+                public AsyncDataConsumer handleResponse(final HttpResponse response,
+                                                        final EntityDetails entityDetails)
+                        throws HttpException, IOException {
+                    call.complete(isFailed(response));
+                    return asyncExecCallback.handleResponse(response, entityDetails);
+                }
+
+                @Override
+                public void handleInformationResponse(final HttpResponse response)
+                        throws HttpException, IOException {
+                    asyncExecCallback.handleInformationResponse(response);
+                }
+
+                @Override
+                public void completed() {
+                    call.complete(false);
+                    asyncExecCallback.completed();
+                }
+
+                @Override
+                public void failed(final Exception cause) {
+                    if (cause instanceof RejectedExecutionException) {
+                        call.cancel();
+                    } else {
+                        call.complete(true);
+                    }
+                    asyncExecCallback.failed(cause);
+                }
+            });
+        } catch (HttpException | IOException | RuntimeException ex) {
+            call.complete(true);
+            throw ex;
+        }
+    }
+
+    private static boolean isFailed(final HttpResponse response) {
+        return response.getCode() >= HttpStatus.SC_SERVER_ERROR;
+    }
+}
@@ -0,0 +1,51 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.HttpRequestRetryStrategy;
+import org.apache.hc.client5.http.RouteInfo;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.io.IOException;
+
+/**
+ * 在目标主机的断路器不允许请求时不再重试的HttpRequestRetryStrategy，其余的判断交给原有的重试策略.
+ */
+final class CircuitBreakerRetryStrategy implements HttpRequestRetryStrategy {
+    private final HttpRequestRetryStrategy delegate;
+    private final CircuitBreaker breaker;
+
+    CircuitBreakerRetryStrategy(final HttpRequestRetryStrategy delegate, final CircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public boolean retryRequest(final HttpRequest request, final IOException exception, final int execCount,
+                                final HttpContext context) {
+        return isCallPermitted(context) && delegate.retryRequest(request, exception, execCount, context);
+    }
+
+    @Override
+    public boolean retryRequest(final HttpResponse response, final int execCount, final HttpContext context) {
+        return isCallPermitted(context) && delegate.retryRequest(response, execCount, context);
+    }
+
+    @Override
+    public TimeValue getRetryInterval(final HttpRequest request, final IOException exception, final int execCount,
+                                      final HttpContext context) {
+        return delegate.getRetryInterval(request, exception, execCount, context);
+    }
+
+    @Override
+    public TimeValue getRetryInterval(final HttpResponse response, final int execCount, final HttpContext context) {
+        return delegate.getRetryInterval(response, execCount, context);
+    }
+
+    private boolean isCallPermitted(final HttpContext context) {
+        final RouteInfo route = HttpClientContext.adapt(context).getHttpRoute();
+        return route == null || breaker.isCallPermitted(route.getTargetHost());
+    }
+}
@@ -0,0 +1,420 @@
+package io.github.dbstarll.utils.http.client;
+
+import io.github.dbstarll.utils.http.client.response.ResponseHandlerFactory;
+import org.apache.hc.client5.http.impl.DefaultSchemePortResolver;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.routing.RoutingSupport;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 在虚拟线程(Java 21+)上执行classic请求，并以CompletableFuture返回结果.
+ * 同时执行的请求数不超过maxConcurrent，每个目标主机同时执行的请求数不超过该主机的maxPerRoute，
+ * 超出的请求在该主机的队列中等待，而不是阻塞在连接池的租约上；某个目标主机的请求排队时不影响其他目标主机的请求.
+ */
+public final class ClassicHttpExecutor implements Closeable {
+    private static final HttpHost UNKNOWN_HOST = new HttpHost("unknown");
+
+    private final CloseableHttpClient client;
+    private final ResponseHandlerFactory responseHandlerFactory;
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private final boolean virtual;
+    private final int maxConcurrent;
+    private final Lock lock = new ReentrantLock();
+    private final Map<HttpHost, Route> routes = new HashMap<>();
+    private final Queue<Route> ready = new ArrayDeque<>();
+    private int active;
+    private int pending;
+    private volatile ToIntFunction<HttpHost> maxPerRoute;
+    private final ConcurrentMap<Map.Entry<String, Object>, CompletableFuture<?>> flights = new ConcurrentHashMap<>();
+    private volatile SingleFlightPolicy singleFlightPolicy;
+
+    /**
+     * 构造ClassicHttpExecutor，在不支持虚拟线程的JVM上使用内部的缓存线程池.
+     *
+     * @param client                 用于执行请求的client，在close时一并关闭
+     * @param responseHandlerFactory ResponseHandlerFactory
+     * @param maxConcurrent          同时执行的最大请求数，通常与连接池的最大连接数一致
+     */
+    public ClassicHttpExecutor(final CloseableHttpClient client, final ResponseHandlerFactory responseHandlerFactory,
+                               final int maxConcurrent) {
+        this(client, responseHandlerFactory, maxConcurrent, null);
+    }
+
+    /**
+     * 构造ClassicHttpExecutor.
+     *
+     * @param client                 用于执行请求的client，在close时一并关闭
+     * @param responseHandlerFactory ResponseHandlerFactory
+     * @param maxConcurrent          同时执行的最大请求数，通常与连接池的最大连接数一致
+     * @param fallback               不支持虚拟线程时使用的线程池，为null时使用内部的缓存线程池
+     */
+    public ClassicHttpExecutor(final CloseableHttpClient client, final ResponseHandlerFactory responseHandlerFactory,
+                               final int maxConcurrent, final ExecutorService fallback) {
+        isTrue(maxConcurrent > 0, "maxConcurrent must be positive: %d", maxConcurrent);
+        this.client = notNull(client, "client is null");
+        this.responseHandlerFactory = notNull(responseHandlerFactory, "responseHandlerFactory is null");
+        this.maxConcurrent = maxConcurrent;
+        this.maxPerRoute = host -> maxConcurrent;
+        final ExecutorService virtualExecutor = newVirtualThreadPerTaskExecutor();
+        this.virtual = virtualExecutor != null;
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+        } else if (fallback != null) {
+            this.executor = fallback;
+        } else {
+            this.executor = Executors.newCachedThreadPool(new DaemonThreadFactory("classic-http-executor-"));
+        }
+        this.ownExecutor = executor != fallback;
+    }
+
+    /**
+     * 设置每个目标主机同时执行的最大请求数，通常与连接池的maxPerRoute一致，默认与maxConcurrent相同.
+     *
+     * @param newMaxPerRoute 每个目标主机同时执行的最大请求数
+     * @return this ClassicHttpExecutor
+     */
+    public ClassicHttpExecutor setMaxPerRoute(final int newMaxPerRoute) {
+        isTrue(newMaxPerRoute > 0, "maxPerRoute must be positive: %d", newMaxPerRoute);
+        return setMaxPerRoute(host -> newMaxPerRoute);
+    }
+
+    /**
+     * 按目标主机设置同时执行的最大请求数，通常来自{@link ConnectionPoolPolicy#getMaxPerRoute(HttpHost)}.
+     * 新的设置对之后开始排队的目标主机生效.
+     *
+     * @param newMaxPerRoute 目标主机到最大请求数的映射，主机已按scheme补全端口，无法确定主机的请求使用"unknown"
+     * @return this ClassicHttpExecutor
+     */
+    public ClassicHttpExecutor setMaxPerRoute(final ToIntFunction<HttpHost> newMaxPerRoute) {
+        this.maxPerRoute = notNull(newMaxPerRoute, "maxPerRoute is null");
+        return this;
+    }
+
+    /**
+     * 设置合并相同请求的策略. 当{@link SingleFlightPolicy#getHandlerMode()}为
+     * {@link SingleFlightPolicy.HandlerMode#PER_REQUEST}时，同时进行中的相同请求且使用相同ResponseHandler的调用，
+     * 只执行一次请求和ResponseHandler，所有调用方得到同一个结果对象；合并的请求不会因单个调用方的取消而中止.
+     *
+     * @param newSingleFlightPolicy 合并相同请求的策略，为null时不合并
+     * @return this ClassicHttpExecutor
+     */
+    public ClassicHttpExecutor setSingleFlightPolicy(final SingleFlightPolicy newSingleFlightPolicy) {
+        this.singleFlightPolicy = newSingleFlightPolicy;
+        return this;
+    }
+
+    /**
+     * 异步执行请求，并使用responseClass对应的ResponseHandler来解析结果.
+     *
+     * @param request       请求
+     * @param responseClass response类
+     * @param <T>           response类型
+     * @return 请求结果的CompletableFuture
+     */
+    public <T> CompletableFuture<T> execute(final ClassicHttpRequest request, final Class<T> responseClass) {
+        final HttpClientResponseHandler<T> handler = responseHandlerFactory.getResponseHandler(responseClass);
+        return execute(request, notNull(handler, "ResponseHandler not found for %s", responseClass));
+    }
+
+    /**
+     * 异步执行请求，并使用指定的ResponseHandler来解析结果.
+     *
+     * @param request         请求
+     * @param responseHandler ResponseHandler
+     * @param <T>             response类型
+     * @return 请求结果的CompletableFuture
+     */
+    public <T> CompletableFuture<T> execute(final ClassicHttpRequest request,
+                                            final HttpClientResponseHandler<? extends T> responseHandler) {
+        notNull(request, "request is null");
+        notNull(responseHandler, "responseHandler is null");
+        final SingleFlightPolicy policy = singleFlightPolicy;
+        if (policy != null && policy.getHandlerMode() == SingleFlightPolicy.HandlerMode.PER_REQUEST
+                && policy.isCoalescible(request)) {
+            return coalesce(policy, request, responseHandler);
+        }
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        if (request instanceof Cancellable) {
+            future.whenComplete((r, e) -> {
+                if (future.isCancelled()) {
+                    ((Cancellable) request).cancel();
+                }
+            });
+        }
+        submit(new PendingRequest<>(request, responseHandler, future));
+        return future;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> coalesce(final SingleFlightPolicy policy, final ClassicHttpRequest request,
+                                              final HttpClientResponseHandler<? extends T> responseHandler) {
+        final String uri;
+        try {
+            uri = request.getUri().toString();
+        } catch (URISyntaxException e) {
+            final CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        final Map.Entry<String, Object> key = new SimpleImmutableEntry<>(policy.key(uri, request), responseHandler);
+        final CompletableFuture<T> flight = new CompletableFuture<>();
+        final CompletableFuture<?> existing = flights.putIfAbsent(key, flight);
+        if (existing == null) {
+            flight.whenComplete((r, e) -> flights.remove(key, flight));
+            submit(new PendingRequest<>(request, responseHandler, flight));
+        }
+        // 每个调用方得到独立的future，取消时不影响其他调用方
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        ((CompletableFuture<T>) (existing != null ? existing : flight)).whenComplete((r, e) -> {
+            if (e != null) {
+                future.completeExceptionally(e);
+            } else {
+                future.complete(r);
+            }
+        });
+        return future;
+    }
+
+    private void submit(final PendingRequest<?> task) {
+        lock.lock();
+        try {
+            final Route route = routes.computeIfAbsent(task.host,
+                    host -> new Route(Math.max(1, maxPerRoute.applyAsInt(host))));
+            task.route = route;
+            route.queue.add(task);
+            pending++;
+            route.offerReady();
+        } finally {
+            lock.unlock();
+        }
+        dispatch();
+    }
+
+    /**
+     * 从有空余名额的目标主机中轮流取出请求执行，只访问ready列表的头部，与排队的请求数无关.
+     */
+    private void dispatch() {
+        final List<PendingRequest<?>> tasks = new ArrayList<>();
+        lock.lock();
+        try {
+            while (active < maxConcurrent && !ready.isEmpty()) {
+                final Route route = ready.poll();
+                route.ready = false;
+                tasks.add(route.queue.poll());
+                route.active++;
+                active++;
+                pending--;
+                route.offerReady();
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (PendingRequest<?> task : tasks) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        release(task);
+                        dispatch();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                release(task);
+                task.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void release(final PendingRequest<?> task) {
+        lock.lock();
+        try {
+            final Route route = task.route;
+            active--;
+            route.active--;
+            route.offerReady();
+            if (route.active == 0 && route.queue.isEmpty()) {
+                routes.remove(task.host, route);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static HttpHost host(final ClassicHttpRequest request) {
+        try {
+            final HttpHost host = RoutingSupport.determineHost(request);
+            return host != null ? RoutingSupport.normalize(host, DefaultSchemePortResolver.INSTANCE) : UNKNOWN_HOST;
+        } catch (HttpException e) {
+            return UNKNOWN_HOST;
+        }
+    }
+
+    /**
+     * 是否使用虚拟线程来执行请求.
+     *
+     * @return 是否使用虚拟线程
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * 获得同时执行的最大请求数.
+     *
+     * @return 同时执行的最大请求数
+     */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * 获得目标主机同时执行的最大请求数.
+     *
+     * @param host 目标主机
+     * @return 目标主机同时执行的最大请求数
+     */
+    public int getMaxPerRoute(final HttpHost host) {
+        return maxPerRoute.applyAsInt(RoutingSupport.normalize(notNull(host, "host is null"),
+                DefaultSchemePortResolver.INSTANCE));
+    }
+
+    /**
+     * 获得正在执行的请求数.
+     *
+     * @return 正在执行的请求数
+     */
+    public int getActiveCount() {
+        lock.lock();
+        try {
+            return active;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获得等待执行的请求数.
+     *
+     * @return 等待执行的请求数
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownExecutor) {
+            executor.shutdown();
+        }
+        final List<PendingRequest<?>> tasks = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Route route : routes.values()) {
+                tasks.addAll(route.queue);
+                pending -= route.queue.size();
+                route.queue.clear();
+            }
+            ready.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (PendingRequest<?> task : tasks) {
+            task.future.cancel(false);
+        }
+        client.close();
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 目标主机的请求队列，由lock保护.
+     */
+    private final class Route {
+        private final int limit;
+        private final Queue<PendingRequest<?>> queue = new ArrayDeque<>();
+        private int active;
+        private boolean ready;
+
+        private Route(final int limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * 有排队的请求且有空余名额时加入ready列表的尾部.
+         */
+        private void offerReady() {
+            if (!ready && active < limit && !queue.isEmpty()) {
+                ready = true;
+                ClassicHttpExecutor.this.ready.add(this);
+            }
+        }
+    }
+
+    private final class PendingRequest<T> implements Runnable {
+        private final ClassicHttpRequest request;
+        private final HttpHost host;
+        private Route route;
+        private final HttpClientResponseHandler<? extends T> responseHandler;
+        private final CompletableFuture<T> future;
+
+        private PendingRequest(final ClassicHttpRequest request,
+                               final HttpClientResponseHandler<? extends T> responseHandler,
+                               final CompletableFuture<T> future) {
+            this.request = request;
+            this.host = host(request);
+            this.responseHandler = responseHandler;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            if (!future.isDone()) {
+                try {
+                    future.complete(client.execute(request, responseHandler));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.dbstarll.utils.http.client;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Inflater、Deflater以及缓冲区的对象池，避免每个请求体和响应体分配新的实例.
+ * Inflater和Deflater持有本地内存，归还时重置，池满时立即释放本地内存.
+ */
+final class CodecPool {
+    static final int BUFFER_SIZE = 8192;
+
+    private final BlockingQueue<Inflater> inflaters;
+    private final BlockingQueue<Inflater> rawInflaters;
+    private final BlockingQueue<Deflater> deflaters;
+    private final BlockingQueue<Deflater> rawDeflaters;
+    private final BlockingQueue<byte[]> buffers;
+
+    CodecPool(final int size) {
+        this.inflaters = new ArrayBlockingQueue<>(size);
+        this.rawInflaters = new ArrayBlockingQueue<>(size);
+        this.deflaters = new ArrayBlockingQueue<>(size);
+        this.rawDeflaters = new ArrayBlockingQueue<>(size);
+        // 每次编解码同时使用输入和输出两个缓冲区
+        this.buffers = new ArrayBlockingQueue<>(size * 2);
+    }
+
+    /**
+     * 借出Inflater.
+     *
+     * @param nowrap 为true时解码不带zlib头部的deflate数据，用于gzip以及raw deflate
+     * @return Inflater
+     */
+    Inflater inflater(final boolean nowrap) {
+        final Inflater inflater = (nowrap ? rawInflaters : inflaters).poll();
+        return inflater != null ? inflater : new Inflater(nowrap);
+    }
+
+    void release(final Inflater inflater, final boolean nowrap) {
+        inflater.reset();
+        if (!(nowrap ? rawInflaters : inflaters).offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 借出Deflater.
+     *
+     * @param level  压缩级别
+     * @param nowrap 为true时输出不带zlib头部的deflate数据，用于gzip
+     * @return Deflater
+     */
+    Deflater deflater(final int level, final boolean nowrap) {
+        final Deflater deflater = (nowrap ? rawDeflaters : deflaters).poll();
+        if (deflater == null) {
+            return new Deflater(level, nowrap);
+        }
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    void release(final Deflater deflater, final boolean nowrap) {
+        deflater.reset();
+        if (!(nowrap ? rawDeflaters : deflaters).offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    byte[] buffer() {
+        final byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    void release(final byte[] buffer) {
+        buffers.offer(buffer);
+    }
+}
@@ -0,0 +1,738 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.async.AsyncExecCallback;
+import org.apache.hc.client5.http.async.AsyncExecChain;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+import org.apache.hc.core5.http.nio.AsyncDataConsumer;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 按{@link CompressionPolicy}压缩请求体、解码响应体的ExecChainHandler，同时用于classic和async的client.
+ * classic的client中代替内置的ContentCompressionExec，classic和async的client中都位于其他ExecChainHandler之前，
+ * 缓存、指标和计时看到的都是传输中的编码数据.
+ */
+final class CompressionExec implements ExecChainHandler, AsyncExecChainHandler {
+    private final CompressionPolicy policy;
+
+    CompressionExec(final CompressionPolicy policy) {
+        this.policy = policy;
+    }
+
+    private static boolean isEnabled(final RequestConfig requestConfig) {
+        return requestConfig == null || requestConfig.isContentCompressionEnabled();
+    }
+
+    private String requestEncoding(final HttpRequest request, final EntityDetails entity) {
+        if (entity == null || entity.getContentEncoding() != null
+                || request.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+            return null;
+        }
+        return policy.requestEncoding(entity.getContentLength());
+    }
+
+    private static void removeEncodingHeaders(final HttpResponse response) {
+        response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+        response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+        response.removeHeaders(HttpHeaders.CONTENT_MD5);
+    }
+
+    @Override
+    public ClassicHttpResponse execute(final ClassicHttpRequest request, final ExecChain.Scope scope,
+                                       final ExecChain chain) throws IOException, HttpException {
+        if (!isEnabled(scope.clientContext.getRequestConfig())) {
+            return chain.proceed(request, scope);
+        }
+        if (!request.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, policy.getAcceptEncoding());
+        }
+        final HttpEntity entity = request.getEntity();
+        final String encoding = requestEncoding(request, entity);
+        final ClassicHttpResponse response;
+        if (encoding != null) {
+            request.setEntity(new CompressingEntity(entity, encoding));
+            try {
+                response = chain.proceed(request, scope);
+            } finally {
+                request.setEntity(entity);
+            }
+        } else {
+            response = chain.proceed(request, scope);
+        }
+        final HttpEntity responseEntity = response.getEntity();
+        if (responseEntity != null && responseEntity.getContentLength() != 0) {
+            final String coding = CompressionPolicy.coding(responseEntity.getContentEncoding());
+            if (coding != null) {
+                response.setEntity(new DecompressingEntity(responseEntity, coding));
+                removeEncodingHeaders(response);
+            }
+        }
+        return response;
+    }
+
+    @Override
+    public void execute(final HttpRequest request, final AsyncEntityProducer entityProducer,
+                        final AsyncExecChain.Scope scope, final AsyncExecChain chain,
+                        final AsyncExecCallback asyncExecCallback) throws HttpException, IOException {
+        if (!isEnabled(scope.clientContext.getRequestConfig())) {
+            chain.proceed(request, entityProducer, scope, asyncExecCallback);
+            return;
+        }
+        if (!request.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, policy.getAcceptEncoding());
+        }
+        final String encoding = requestEncoding(request, entityProducer);
+        final AsyncEntityProducer producer = encoding == null ? entityProducer
+                : new CompressingEntityProducer(entityProducer, encoding);
+        chain.proceed(request, producer, scope, new AsyncExecCallback() {
+            @Override
+            public AsyncDataConsumer handleResponse(final HttpResponse response, final EntityDetails entityDetails)
+                    throws HttpException, IOException {
+                final String coding = entityDetails == null || entityDetails.getContentLength() == 0 ? null
+                        : CompressionPolicy.coding(entityDetails.getContentEncoding());
+                if (coding == null) {
+                    return asyncExecCallback.handleResponse(response, entityDetails);
+                }
+                removeEncodingHeaders(response);
+                final AsyncDataConsumer consumer = asyncExecCallback.handleResponse(response,
+                        new DecodedEntityDetails(entityDetails));
+                return consumer == null ? null : new DecodingDataConsumer(consumer, coding);
+            }
+
+            @Override
+            public void handleInformationResponse(final HttpResponse response) throws HttpException, IOException {
+                asyncExecCallback.handleInformationResponse(response);
+            }
+
+            @Override
+            public void completed() {
+                asyncExecCallback.completed();
+            }
+
+            @Override
+            public void failed(final Exception cause) {
+                asyncExecCallback.failed(cause);
+            }
+        });
+    }
+
+    /**
+     * 解码响应体的InputStream，gzip和deflate使用对象池中的Inflater和缓冲区，结束或者关闭时归还.
+     */
+    private static final class InflatingInputStream extends InputStream {
+        private final InputStream in;
+        private final CodecPool pool;
+        private final InflatingDecoder decoder;
+        private final byte[] single = new byte[1];
+        private byte[] buffer;
+        private boolean eof;
+
+        private InflatingInputStream(final InputStream in, final CodecPool pool, final InflatingDecoder decoder) {
+            this.in = in;
+            this.pool = pool;
+            this.decoder = decoder;
+            this.buffer = pool.buffer();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            } else if (eof) {
+                return -1;
+            } else if (buffer == null) {
+                throw new IOException("Stream closed");
+            }
+            while (true) {
+                final int n = decoder.decode(b, off, len);
+                if (n > 0) {
+                    return n;
+                } else if (decoder.isFinished()) {
+                    return end();
+                }
+                final int read = in.read(buffer, 0, buffer.length);
+                if (read < 0) {
+                    if (decoder.isComplete()) {
+                        return end();
+                    }
+                    throw new EOFException("Unexpected end of compressed stream");
+                }
+                decoder.setInput(buffer, 0, read);
+            }
+        }
+
+        private int end() {
+            eof = true;
+            release();
+            return -1;
+        }
+
+        private void release() {
+            decoder.close();
+            if (buffer != null) {
+                pool.release(buffer);
+                buffer = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                release();
+            }
+        }
+    }
+
+    /**
+     * 读取时压缩请求体的InputStream，使用对象池中的缓冲区读取原始内容，读到结尾或者关闭时归还.
+     */
+    private static final class DeflatingInputStream extends InputStream {
+        private final InputStream in;
+        private final CodecPool pool;
+        private final DeflatingEncoder encoder;
+        private final byte[] single = new byte[1];
+        private byte[] buffer;
+        private boolean finishing;
+        private boolean eof;
+
+        private DeflatingInputStream(final InputStream in, final CodecPool pool, final DeflatingEncoder encoder) {
+            this.in = in;
+            this.pool = pool;
+            this.encoder = encoder;
+            this.buffer = pool.buffer();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            } else if (eof) {
+                return -1;
+            } else if (buffer == null) {
+                throw new IOException("Stream closed");
+            }
+            while (true) {
+                final int n = encoder.encode(b, off, len);
+                if (n > 0) {
+                    return n;
+                } else if (encoder.isFinished()) {
+                    eof = true;
+                    release();
+                    return -1;
+                } else if (!finishing) {
+                    final int read = in.read(buffer, 0, buffer.length);
+                    if (read < 0) {
+                        finishing = true;
+                        encoder.finish();
+                    } else {
+                        encoder.setInput(buffer, 0, read);
+                    }
+                }
+            }
+        }
+
+        private void release() {
+            encoder.close();
+            if (buffer != null) {
+                pool.release(buffer);
+                buffer = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                release();
+            }
+        }
+    }
+
+    /**
+     * 压缩请求体的OutputStream，使用对象池中的缓冲区，{@link #finish()}之后不关闭下层的OutputStream.
+     */
+    private static final class DeflatingOutputStream extends FilterOutputStream {
+        private final CodecPool pool;
+        private final DeflatingEncoder encoder;
+        private final byte[] buffer;
+
+        private DeflatingOutputStream(final OutputStream out, final CodecPool pool, final DeflatingEncoder encoder) {
+            super(out);
+            this.pool = pool;
+            this.encoder = encoder;
+            this.buffer = pool.buffer();
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (len > 0) {
+                encoder.setInput(b, off, len);
+                while (!encoder.needsInput()) {
+                    drain();
+                }
+            }
+        }
+
+        private void drain() throws IOException {
+            final int n = encoder.encode(buffer, 0, buffer.length);
+            if (n > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+
+        private void finish() throws IOException {
+            encoder.finish();
+            while (!encoder.isFinished()) {
+                drain();
+            }
+        }
+
+        private void release() {
+            encoder.close();
+            pool.release(buffer);
+        }
+    }
+
+    private final class CompressingEntity extends HttpEntityWrapper {
+        private final String encoding;
+
+        private CompressingEntity(final HttpEntity entity, final String encoding) {
+            super(entity);
+            this.encoding = encoding;
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return encoding;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return true;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            final InputStream in = super.getContent();
+            return in == null ? null : new DeflatingInputStream(in, policy.pool(), policy.encoder(encoding));
+        }
+
+        @Override
+        public void writeTo(final OutputStream outStream) throws IOException {
+            final CodecPool pool = policy.pool();
+            final DeflatingOutputStream out = new DeflatingOutputStream(outStream, pool, policy.encoder(encoding));
+            try {
+                super.writeTo(out);
+                out.finish();
+            } finally {
+                out.release();
+            }
+        }
+    }
+
+    private final class DecompressingEntity extends HttpEntityWrapper {
+        private final String coding;
+        private InputStream content;
+
+        private DecompressingEntity(final HttpEntity entity, final String coding) {
+            super(entity);
+            this.coding = coding;
+        }
+
+        private InputStream decode() throws IOException {
+            final InputStream in = super.getContent();
+            final InflatingDecoder decoder = policy.decoder(coding);
+            if (decoder != null) {
+                return new InflatingInputStream(in, policy.pool(), decoder);
+            }
+            return policy.decodingStream(coding, in);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            if (super.isStreaming()) {
+                if (content == null) {
+                    content = decode();
+                }
+                return content;
+            }
+            return decode();
+        }
+
+        @Override
+        public void writeTo(final OutputStream outStream) throws IOException {
+            final CodecPool pool = policy.pool();
+            final byte[] buffer = pool.buffer();
+            try (InputStream in = getContent()) {
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    outStream.write(buffer, 0, n);
+                }
+            } finally {
+                pool.release(buffer);
+            }
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+    }
+
+    /**
+     * 压缩请求体的AsyncEntityProducer. 压缩的输出暂存在缓冲区中，通道写满时不再从下层producer读取数据.
+     */
+    private final class CompressingEntityProducer implements AsyncEntityProducer, DataStreamChannel {
+        private final AsyncEntityProducer producer;
+        private final String encoding;
+        private DeflatingEncoder encoder;
+        private CodecPool pool;
+        private byte[] input;
+        private byte[] output;
+        private int outputPos;
+        private int outputLimit;
+        private DataStreamChannel channel;
+        private List<? extends Header> trailers;
+        private boolean ended;
+        private boolean completed;
+
+        private CompressingEntityProducer(final AsyncEntityProducer producer, final String encoding) {
+            this.producer = producer;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return producer.isRepeatable();
+        }
+
+        @Override
+        public void failed(final Exception cause) {
+            producer.failed(cause);
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public String getContentType() {
+            return producer.getContentType();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return encoding;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return true;
+        }
+
+        @Override
+        public Set<String> getTrailerNames() {
+            return producer.getTrailerNames();
+        }
+
+        @Override
+        public synchronized int available() {
+            final int pending = outputLimit - outputPos;
+            if (ended) {
+                return completed ? 0 : Math.max(1, pending);
+            }
+            return producer.available() + pending;
+        }
+
+        @Override
+        public synchronized void produce(final DataStreamChannel newChannel) throws IOException {
+            this.channel = newChannel;
+            if (encoder == null) {
+                pool = policy.pool();
+                encoder = policy.encoder(encoding);
+                input = pool.buffer();
+                output = pool.buffer();
+            }
+            if (ended) {
+                complete();
+            } else if (drain()) {
+                producer.produce(this);
+            } else {
+                newChannel.requestOutput();
+            }
+        }
+
+        /**
+         * 将压缩的输出写入通道.
+         *
+         * @return 通道是否接收了全部输出，并且已提供的输入都已被压缩
+         */
+        private boolean drain() throws IOException {
+            while (true) {
+                if (outputPos < outputLimit) {
+                    outputPos += channel.write(ByteBuffer.wrap(output, outputPos, outputLimit - outputPos));
+                    if (outputPos < outputLimit) {
+                        return false;
+                    }
+                }
+                if (ended ? encoder.isFinished() : encoder.needsInput()) {
+                    return true;
+                }
+                outputPos = 0;
+                outputLimit = encoder.encode(output, 0, output.length);
+            }
+        }
+
+        private void complete() throws IOException {
+            if (!completed) {
+                if (drain()) {
+                    completed = true;
+                    channel.endStream(trailers);
+                } else {
+                    channel.requestOutput();
+                }
+            }
+        }
+
+        @Override
+        public void requestOutput() {
+            channel.requestOutput();
+        }
+
+        @Override
+        public synchronized int write(final ByteBuffer src) throws IOException {
+            if (ended || !drain()) {
+                return 0;
+            }
+            final int n = Math.min(src.remaining(), input.length);
+            src.get(input, 0, n);
+            encoder.setInput(input, 0, n);
+            drain();
+            return n;
+        }
+
+        @Override
+        public synchronized void endStream(final List<? extends Header> newTrailers) throws IOException {
+            if (!ended) {
+                ended = true;
+                trailers = newTrailers;
+                encoder.finish();
+                complete();
+            }
+        }
+
+        @Override
+        public void endStream() throws IOException {
+            endStream(null);
+        }
+
+        @Override
+        public synchronized void releaseResources() {
+            producer.releaseResources();
+            if (encoder != null) {
+                encoder.close();
+                pool.release(input);
+                pool.release(output);
+                encoder = null;
+                input = null;
+                output = null;
+            }
+        }
+    }
+
+    /**
+     * 解码响应体的AsyncDataConsumer. gzip和deflate边接收边解码，br和zstd的响应体缓存到结束时再解码.
+     */
+    private final class DecodingDataConsumer implements AsyncDataConsumer {
+        private final AsyncDataConsumer consumer;
+        private final String coding;
+        private final CodecPool pool;
+        private InflatingDecoder decoder;
+        private ByteArrayOutputStream encoded;
+        private final long maxDecodedBytes;
+        private long decodedBytes;
+        private byte[] input;
+        private byte[] output;
+
+        private DecodingDataConsumer(final AsyncDataConsumer consumer, final String coding) {
+            this.consumer = consumer;
+            this.coding = coding;
+            this.maxDecodedBytes = policy.getMaxDecodedBytes();
+            this.pool = policy.pool();
+            this.decoder = policy.decoder(coding);
+            if (decoder != null) {
+                this.input = pool.buffer();
+                this.output = pool.buffer();
+            } else {
+                this.encoded = new ByteArrayOutputStream();
+            }
+        }
+
+        @Override
+        public void updateCapacity(final CapacityChannel capacityChannel) throws IOException {
+            consumer.updateCapacity(capacityChannel);
+        }
+
+        @Override
+        public void consume(final ByteBuffer src) throws IOException {
+            if (decoder == null) {
+                if (encoded.size() + (long) src.remaining() > maxDecodedBytes) {
+                    throw new IOException("Compressed response exceeds " + maxDecodedBytes + " bytes");
+                }
+                final byte[] bytes = new byte[src.remaining()];
+                src.get(bytes);
+                encoded.write(bytes, 0, bytes.length);
+                return;
+            }
+            while (src.hasRemaining()) {
+                if (src.hasArray()) {
+                    decoder.setInput(src.array(), src.arrayOffset() + src.position(), src.remaining());
+                    // 通过Buffer调用，避免在Java 8上运行时找不到ByteBuffer的协变方法
+                    ((Buffer) src).position(src.limit());
+                } else {
+                    final int n = Math.min(src.remaining(), input.length);
+                    src.get(input, 0, n);
+                    decoder.setInput(input, 0, n);
+                }
+                int n;
+                while ((n = decoder.decode(output, 0, output.length)) > 0) {
+                    emit(output, n);
+                }
+            }
+        }
+
+        @Override
+        public void streamEnd(final List<? extends Header> trailers) throws HttpException, IOException {
+            if (decoder == null) {
+                final byte[] buffer = pool.buffer();
+                try (InputStream in = policy.decodingStream(coding, new ByteArrayInputStream(encoded.toByteArray()))) {
+                    int n;
+                    while ((n = in.read(buffer)) >= 0) {
+                        emit(buffer, n);
+                    }
+                } finally {
+                    pool.release(buffer);
+                }
+            } else if (!decoder.isComplete()) {
+                throw new EOFException("Unexpected end of compressed stream");
+            }
+            release();
+            consumer.streamEnd(trailers);
+        }
+
+        /**
+         * 将解码的数据交给下层的consumer，解码的总量超过上限时失败，避免少量的压缩数据展开为大量的内存占用.
+         */
+        private void emit(final byte[] b, final int n) throws IOException {
+            decodedBytes += n;
+            if (decodedBytes > maxDecodedBytes) {
+                throw new IOException("Decoded response exceeds " + maxDecodedBytes + " bytes");
+            }
+            consumer.consume(ByteBuffer.wrap(b, 0, n));
+        }
+
+        private void release() {
+            if (decoder != null) {
+                decoder.close();
+                pool.release(input);
+                pool.release(output);
+                decoder = null;
+            }
+            encoded = null;
+        }
+
+        @Override
+        public void releaseResources() {
+            release();
+            consumer.releaseResources();
+        }
+    }
+
+    private static final class DecodedEntityDetails implements EntityDetails {
+        private final EntityDetails details;
+
+        private DecodedEntityDetails(final EntityDetails details) {
+            this.details = details;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public String getContentType() {
+            return details.getContentType();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return details.isChunked();
+        }
+
+        @Override
+        public Set<String> getTrailerNames() {
+            return details.getTrailerNames();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package io.github.dbstarll.utils.http.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * 请求和响应的压缩策略，通过{@link HttpClientFactory#setCompressionPolicy(CompressionPolicy)}用于factory构造的client，
+ * 同时用于classic和async的client.
+ * <ul>
+ * <li>请求时声明Accept-Encoding，并解码gzip、deflate的响应；classpath中存在brotli或者zstd的解码器时同时声明并解码br、zstd</li>
+ * <li>请求体默认不压缩. 通过{@link #setRequestCompression(String, long)}启用后，长度已知且不小于阈值的请求体
+ * 按设置的编码压缩，以chunked方式发送；长度未知的请求体，比如async的client中文本的请求体，不压缩</li>
+ * <li>gzip和deflate的编解码使用对象池中的Inflater、Deflater和缓冲区，不随每个请求分配</li>
+ * <li>async的client中解码后的响应体，以及缓存到结束时再解码的br、zstd响应体，超过上限时请求失败</li>
+ * </ul>
+ * RequestConfig禁用了内容压缩的请求不做任何处理.
+ */
+public final class CompressionPolicy {
+    public static final long DEFAULT_REQUEST_THRESHOLD = 8192;
+    public static final int DEFAULT_POOL_SIZE = 64;
+    public static final long DEFAULT_MAX_DECODED_BYTES = 64L << 20;
+
+    static final String GZIP = "gzip";
+    static final String X_GZIP = "x-gzip";
+    static final String DEFLATE = "deflate";
+
+    private static final Map<String, Constructor<? extends InputStream>> STREAM_CODECS = streamCodecs();
+    private static final String ACCEPT_ENCODING = acceptEncoding();
+
+    private volatile String requestEncoding;
+    private volatile long requestThreshold = DEFAULT_REQUEST_THRESHOLD;
+    private volatile int level = Deflater.DEFAULT_COMPRESSION;
+    private volatile CodecPool pool = new CodecPool(DEFAULT_POOL_SIZE);
+    private volatile long maxDecodedBytes = DEFAULT_MAX_DECODED_BYTES;
+
+    private final LongAdder compressedRequests = new LongAdder();
+    private final LongAdder decodedResponses = new LongAdder();
+
+    /**
+     * 设置请求体的压缩.
+     *
+     * @param newRequestEncoding  请求体的编码，gzip或者deflate，为null时不压缩请求体
+     * @param newRequestThreshold 压缩的阈值，长度已知且不小于此值的请求体被压缩
+     * @return this CompressionPolicy
+     */
+    public CompressionPolicy setRequestCompression(final String newRequestEncoding, final long newRequestThreshold) {
+        isTrue(newRequestEncoding == null || GZIP.equals(newRequestEncoding) || DEFLATE.equals(newRequestEncoding),
+                "unsupported requestEncoding: %s", newRequestEncoding);
+        isTrue(newRequestThreshold >= 0, "requestThreshold must not be negative: %d", newRequestThreshold);
+        this.requestEncoding = newRequestEncoding;
+        this.requestThreshold = newRequestThreshold;
+        return this;
+    }
+
+    /**
+     * 设置请求体的压缩级别.
+     *
+     * @param newLevel 压缩级别，取值[0, 9]，或者{@link Deflater#DEFAULT_COMPRESSION}
+     * @return this CompressionPolicy
+     */
+    public CompressionPolicy setLevel(final int newLevel) {
+        isTrue(newLevel >= Deflater.DEFAULT_COMPRESSION && newLevel <= Deflater.BEST_COMPRESSION,
+                "level must be in [-1, 9]: %d", newLevel);
+        this.level = newLevel;
+        return this;
+    }
+
+    /**
+     * 设置对象池的大小，即每种Inflater和Deflater最多缓存的实例数.
+     *
+     * @param newPoolSize 对象池的大小
+     * @return this CompressionPolicy
+     */
+    public CompressionPolicy setPoolSize(final int newPoolSize) {
+        isTrue(newPoolSize > 0, "poolSize must be positive: %d", newPoolSize);
+        this.pool = new CodecPool(newPoolSize);
+        return this;
+    }
+
+    /**
+     * 设置async的client中解码后的响应体的最大字节数，同时限制缓存的br、zstd响应体. classic的client由调用方按需读取，不受限制.
+     *
+     * @param newMaxDecodedBytes 解码后的响应体的最大字节数
+     * @return this CompressionPolicy
+     */
+    public CompressionPolicy setMaxDecodedBytes(final long newMaxDecodedBytes) {
+        isTrue(newMaxDecodedBytes > 0, "maxDecodedBytes must be positive: %d", newMaxDecodedBytes);
+        this.maxDecodedBytes = newMaxDecodedBytes;
+        return this;
+    }
+
+    /**
+     * 获得async的client中解码后的响应体的最大字节数.
+     *
+     * @return 解码后的响应体的最大字节数
+     */
+    public long getMaxDecodedBytes() {
+        return maxDecodedBytes;
+    }
+
+    /**
+     * 获得请求时声明的Accept-Encoding.
+     *
+     * @return Accept-Encoding
+     */
+    public String getAcceptEncoding() {
+        return ACCEPT_ENCODING;
+    }
+
+    /**
+     * 获得被压缩的请求体的数量.
+     *
+     * @return 被压缩的请求体的数量
+     */
+    public long getCompressedRequestCount() {
+        return compressedRequests.sum();
+    }
+
+    /**
+     * 获得被解码的响应体的数量.
+     *
+     * @return 被解码的响应体的数量
+     */
+    public long getDecodedResponseCount() {
+        return decodedResponses.sum();
+    }
+
+    /**
+     * 获得请求体使用的编码.
+     *
+     * @param contentLength 请求体的长度，未知时为负数
+     * @return 请求体使用的编码，不压缩时返回null
+     */
+    String requestEncoding(final long contentLength) {
+        final String encoding = requestEncoding;
+        return encoding != null && contentLength >= 0 && contentLength >= requestThreshold ? encoding : null;
+    }
+
+    DeflatingEncoder encoder(final String encoding) {
+        compressedRequests.increment();
+        return new DeflatingEncoder(pool, GZIP.equals(encoding), level);
+    }
+
+    /**
+     * 解析响应的Content-Encoding，只处理单一的编码.
+     *
+     * @param contentEncoding 响应的Content-Encoding
+     * @return 支持解码时返回小写的编码，否则返回null
+     */
+    static String coding(final String contentEncoding) {
+        if (contentEncoding == null || contentEncoding.indexOf(',') >= 0) {
+            return null;
+        }
+        final String coding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        if (GZIP.equals(coding) || X_GZIP.equals(coding) || DEFLATE.equals(coding)
+                || STREAM_CODECS.containsKey(coding)) {
+            return coding;
+        }
+        return null;
+    }
+
+    /**
+     * 构造gzip或者deflate的解码器.
+     *
+     * @param coding {@link #coding(String)}返回的编码
+     * @return 解码器，br和zstd返回null
+     */
+    InflatingDecoder decoder(final String coding) {
+        if (DEFLATE.equals(coding)) {
+            decodedResponses.increment();
+            return new InflatingDecoder(pool, false);
+        } else if (GZIP.equals(coding) || X_GZIP.equals(coding)) {
+            decodedResponses.increment();
+            return new InflatingDecoder(pool, true);
+        }
+        return null;
+    }
+
+    /**
+     * 使用classpath中的解码器构造br或者zstd的解码流.
+     *
+     * @param coding {@link #coding(String)}返回的编码
+     * @param in     编码的数据
+     * @return 解码流
+     * @throws IOException 构造解码流时出错
+     */
+    InputStream decodingStream(final String coding, final InputStream in) throws IOException {
+        final Constructor<? extends InputStream> constructor = STREAM_CODECS.get(coding);
+        try {
+            final InputStream stream = constructor.newInstance(in);
+            decodedResponses.increment();
+            return stream;
+        } catch (InvocationTargetException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException("failed to decode " + coding, ex.getCause());
+        } catch (ReflectiveOperationException ex) {
+            throw new IOException("failed to decode " + coding, ex);
+        }
+    }
+
+    CodecPool pool() {
+        return pool;
+    }
+
+    private static Map<String, Constructor<? extends InputStream>> streamCodecs() {
+        final Map<String, Constructor<? extends InputStream>> codecs = new LinkedHashMap<>();
+        final Constructor<? extends InputStream> brotli = streamCodec("org.brotli.dec.BrotliInputStream");
+        if (brotli != null) {
+            codecs.put("br", brotli);
+        }
+        final Constructor<? extends InputStream> zstd = streamCodec("com.github.luben.zstd.ZstdInputStream");
+        if (zstd != null) {
+            codecs.put("zstd", zstd);
+        }
+        return Collections.unmodifiableMap(codecs);
+    }
+
+    private static Constructor<? extends InputStream> streamCodec(final String className) {
+        try {
+            return Class.forName(className, false, CompressionPolicy.class.getClassLoader())
+                    .asSubclass(InputStream.class).getConstructor(InputStream.class);
+        } catch (ClassNotFoundException | NoSuchMethodException | ClassCastException | LinkageError ex) {
+            return null;
+        }
+    }
+
+    private static String acceptEncoding() {
+        final StringBuilder builder = new StringBuilder(GZIP).append(", ").append(X_GZIP).append(", ").append(DEFLATE);
+        STREAM_CODECS.keySet().forEach(coding -> builder.append(", ").append(coding));
+        return builder.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.async.AsyncExecCallback;
+import org.apache.hc.client5.http.async.AsyncExecChain;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.nio.AsyncDataConsumer;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+
+import java.io.IOException;
+
+/**
+ * 按{@link ConcurrencyLimiter}限制并发请求数的ExecChainHandler，同时用于classic和async的client.
+ * 收到响应头时释放名额，IOException以及429、503响应视为过载.
+ */
+final class ConcurrencyLimitExec implements ExecChainHandler, AsyncExecChainHandler {
+    private final ConcurrencyLimiter limiter;
+
+    ConcurrencyLimitExec(final ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public ClassicHttpResponse execute(final ClassicHttpRequest request, final ExecChain.Scope scope,
+                                       final ExecChain chain) throws IOException, HttpException {
+        if (WarmUpPolicy.isWarmUp(scope.clientContext)) {
+            return chain.proceed(request, scope);
+        }
+        final ConcurrencyLimiter.Permit permit = limiter.acquire();
+        boolean dropped = true;
+        try {
+            final ClassicHttpResponse response = chain.proceed(request, scope);
+            dropped = isDropped(response);
+            return response;
+        } finally {
+            permit.release(dropped);
+        }
+    }
+
+    @Override
+    public void execute(final HttpRequest request, final AsyncEntityProducer entityProducer,
+                        final AsyncExecChain.Scope scope, final AsyncExecChain chain,
+                        final AsyncExecCallback asyncExecCallback) throws HttpException, IOException {
+        if (WarmUpPolicy.isWarmUp(scope.clientContext)) {
+            chain.proceed(request, entityProducer, scope, asyncExecCallback);
+            return;
+        }
+        limiter.acquireAsync().whenComplete((permit, ex) -> {
+            if (ex != null) {
+                asyncExecCallback.failed((Exception) ex);
+            } else {
+                proceed(request, entityProducer, scope, chain, asyncExecCallback, permit);
+            }
+        });
+    }
+
+    private static void proceed(final HttpRequest request, final AsyncEntityProducer entityProducer,
+                                final AsyncExecChain.Scope scope, final AsyncExecChain chain,
+                                final AsyncExecCallback asyncExecCallback, final ConcurrencyLimiter.Permit permit) {
+        try {
+            chain.proceed(request, entityProducer, scope, new AsyncExecCallback() {
+                @Override
+                public AsyncDataConsumer handleResponse(final HttpResponse response,
+                                                        final EntityDetails entityDetails)
+                        throws HttpException, IOException {
+                    permit.release(isDropped(response));
+                    return asyncExecCallback.handleResponse(response, entityDetails);
+                }
+
+                @Override
+                public void handleInformationResponse(final HttpResponse response)
+                        throws HttpException, IOException {
+                    asyncExecCallback.handleInformationResponse(response);
+                }
+
+                @Override
+                public void completed() {
+                    permit.release(false);
+                    asyncExecCallback.completed();
+                }
+
+                @Override
+                public void failed(final Exception cause) {
+                    permit.release(true);
+                    asyncExecCallback.failed(cause);
+                }
+            });
+        } catch (HttpException | IOException | RuntimeException ex) {
+            permit.release(true);
+            asyncExecCallback.failed(ex);
+        }
+    }
+
+    private static boolean isDropped(final HttpResponse response) {
+        final int code = response.getCode();
+        return code == HttpStatus.SC_TOO_MANY_REQUESTS || code == HttpStatus.SC_SERVICE_UNAVAILABLE;
+    }
+}
@@ -0,0 +1,514 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.core5.util.TimeValue;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 自适应的并发请求数限制，通过{@link HttpClientFactory#setConcurrencyLimiter(ConcurrencyLimiter)}同时用于classic和async的client.
+ * <ul>
+ * <li>根据每次请求的耗时(到收到响应头为止)以及是否过载(IOException、429、503)调整并发上限，
+ * 可选AIMD、Vegas和Gradient算法</li>
+ * <li>超出并发上限的请求默认立即失败，也可以在有限长度的队列中等待，等待超时后失败</li>
+ * <li>被拒绝的请求以{@link RejectedExecutionException}失败，不会被重试</li>
+ * </ul>
+ * 每一次重试都单独占用并发名额，命中缓存以及被合并的请求不占用并发名额.
+ */
+public final class ConcurrencyLimiter {
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    public static final int DEFAULT_MAX_LIMIT = 200;
+    public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+    public static final TimeValue DEFAULT_MAX_QUEUE_TIME = TimeValue.ofSeconds(1);
+
+    private static final int VEGAS_PROBE_INTERVAL = 1000;
+    private static final int GRADIENT_LONG_WINDOW = 600;
+    private static final double GRADIENT_TOLERANCE = 1.5;
+    private static final double GRADIENT_SMOOTHING = 0.2;
+
+    /**
+     * 调整并发上限的算法.
+     */
+    public enum Algorithm {
+        /**
+         * 加法增大乘法减小：没有过载时逐个增大上限，出现过载时按比例减小上限.
+         */
+        AIMD,
+        /**
+         * 以最小耗时为基准估算排队中的请求数，排队较少时增大上限，排队较多或出现过载时减小上限.
+         */
+        VEGAS,
+        /**
+         * 以长期平均耗时与当前耗时的比值为梯度调整上限，耗时上升时减小上限.
+         */
+        GRADIENT
+    }
+
+    private final LongSupplier nanoClock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<Waiter> queue = new ArrayDeque<>();
+    private Algorithm algorithm = Algorithm.AIMD;
+    private int minLimit = DEFAULT_MIN_LIMIT;
+    private int maxLimit = DEFAULT_MAX_LIMIT;
+    private double backoffRatio = DEFAULT_BACKOFF_RATIO;
+    private int maxQueueSize;
+    private long maxQueueNanos = DEFAULT_MAX_QUEUE_TIME.toNanoseconds();
+    private double estimate = DEFAULT_INITIAL_LIMIT;
+    private volatile int limit = DEFAULT_INITIAL_LIMIT;
+    private volatile int inFlight;
+    private long samples;
+    private long rttNoLoad;
+    private double longRtt;
+
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder drops = new LongAdder();
+
+    /**
+     * 构造ConcurrencyLimiter.
+     */
+    public ConcurrencyLimiter() {
+        this(System::nanoTime);
+    }
+
+    ConcurrencyLimiter(final LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * 设置调整并发上限的算法.
+     *
+     * @param newAlgorithm 调整并发上限的算法
+     * @return this ConcurrencyLimiter
+     */
+    public ConcurrencyLimiter setAlgorithm(final Algorithm newAlgorithm) {
+        notNull(newAlgorithm, "algorithm is null");
+        lock.lock();
+        try {
+            this.algorithm = newAlgorithm;
+            this.rttNoLoad = 0;
+            this.longRtt = 0;
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * 设置并发上限的初始值以及调整的范围，当前的上限重置为初始值.
+     *
+     * @param initialLimit 并发上限的初始值
+     * @param newMinLimit  并发上限的最小值
+     * @param newMaxLimit  并发上限的最大值
+     * @return this ConcurrencyLimiter
+     */
+    public ConcurrencyLimiter setLimit(final int initialLimit, final int newMinLimit, final int newMaxLimit) {
+        isTrue(newMinLimit > 0 && newMinLimit <= initialLimit && initialLimit <= newMaxLimit,
+                "limits must satisfy 0 < min <= initial <= max: %d, %d, %d", newMinLimit, initialLimit, newMaxLimit);
+        lock.lock();
+        try {
+            this.minLimit = newMinLimit;
+            this.maxLimit = newMaxLimit;
+            this.estimate = initialLimit;
+            this.limit = initialLimit;
+        } finally {
+            lock.unlock();
+        }
+        drain();
+        return this;
+    }
+
+    /**
+     * 设置AIMD算法在出现过载时减小上限的比例.
+     *
+     * @param newBackoffRatio 减小上限的比例，在0和1之间
+     * @return this ConcurrencyLimiter
+     */
+    public ConcurrencyLimiter setBackoffRatio(final double newBackoffRatio) {
+        isTrue(newBackoffRatio > 0 && newBackoffRatio < 1, "backoffRatio must be between 0 and 1: %s",
+                newBackoffRatio);
+        this.backoffRatio = newBackoffRatio;
+        return this;
+    }
+
+    /**
+     * 设置超出并发上限时等待队列的最大长度，为0时超出上限的请求立即失败.
+     *
+     * @param newMaxQueueSize 等待队列的最大长度
+     * @return this ConcurrencyLimiter
+     */
+    public ConcurrencyLimiter setMaxQueueSize(final int newMaxQueueSize) {
+        isTrue(newMaxQueueSize >= 0, "maxQueueSize must not be negative: %d", newMaxQueueSize);
+        this.maxQueueSize = newMaxQueueSize;
+        return this;
+    }
+
+    /**
+     * 设置请求在等待队列中的最长时间，超时后请求失败.
+     *
+     * @param newMaxQueueTime 请求在等待队列中的最长时间
+     * @return this ConcurrencyLimiter
+     */
+    public ConcurrencyLimiter setMaxQueueTime(final TimeValue newMaxQueueTime) {
+        isTrue(TimeValue.isPositive(newMaxQueueTime), "maxQueueTime must be positive: %s", newMaxQueueTime);
+        this.maxQueueNanos = newMaxQueueTime.toNanoseconds();
+        return this;
+    }
+
+    /**
+     * 获得调整并发上限的算法.
+     *
+     * @return 调整并发上限的算法
+     */
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * 获得当前的并发上限.
+     *
+     * @return 当前的并发上限
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * 获得当前进行中的请求数.
+     *
+     * @return 进行中的请求数
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * 获得当前在队列中等待的请求数.
+     *
+     * @return 等待的请求数
+     */
+    public int getQueueSize() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获得因超出并发上限而被拒绝的请求数，包括在队列中等待超时的请求.
+     *
+     * @return 被拒绝的请求数
+     */
+    public long getRejectedCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * 获得被判定为过载的请求数.
+     *
+     * @return 过载的请求数
+     */
+    public long getDroppedCount() {
+        return drops.sum();
+    }
+
+    /**
+     * 获取并发名额，超出上限时在队列中等待，供classic的client使用.
+     *
+     * @return 并发名额
+     * @throws InterruptedIOException     等待时被中断
+     * @throws RejectedExecutionException 超出并发上限且无法等待，或者等待超时
+     */
+    Permit acquire() throws InterruptedIOException {
+        final long timeout = maxQueueNanos;
+        final CompletableFuture<Permit> waiter = acquireAsync();
+        try {
+            return waiter.get(timeout, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            if (cancel(waiter)) {
+                rejections.increment();
+                throw new RejectedExecutionException("timed out waiting for concurrency limit: " + limit);
+            }
+            return await(waiter);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            if (!cancel(waiter) && !waiter.isCompletedExceptionally()) {
+                waiter.join().cancel();
+            }
+            throw new InterruptedIOException("interrupted while waiting for concurrency limit");
+        } catch (ExecutionException ex) {
+            throw (RuntimeException) ex.getCause();
+        }
+    }
+
+    /**
+     * 获取并发名额，超出上限时在队列中等待，供async的client使用. 等待中的请求在有请求完成时获得名额，或者在超时时失败.
+     *
+     * @return 获得名额时完成，被拒绝时以{@link RejectedExecutionException}失败
+     */
+    CompletableFuture<Permit> acquireAsync() {
+        final Waiter waiter = new Waiter();
+        lock.lock();
+        try {
+            if (inFlight < limit && queue.isEmpty()) {
+                waiter.complete(grant());
+                return waiter;
+            } else if (queue.size() < maxQueueSize) {
+                waiter.deadline = nanoClock.getAsLong() + maxQueueNanos;
+                queue.addLast(waiter);
+                // 没有请求完成时也按时使等待超时的请求失败
+                waiter.timeout = Scheduler.INSTANCE.schedule(() -> expire(waiter), maxQueueNanos,
+                        TimeUnit.NANOSECONDS);
+                return waiter;
+            }
+        } finally {
+            lock.unlock();
+        }
+        rejections.increment();
+        waiter.completeExceptionally(new RejectedExecutionException("concurrency limit exceeded: " + limit));
+        return waiter;
+    }
+
+    private static Permit await(final CompletableFuture<Permit> waiter) throws InterruptedIOException {
+        try {
+            return waiter.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for concurrency limit");
+        } catch (ExecutionException ex) {
+            throw (RuntimeException) ex.getCause();
+        }
+    }
+
+    private boolean cancel(final CompletableFuture<Permit> waiter) {
+        final boolean removed;
+        lock.lock();
+        try {
+            removed = queue.remove(waiter);
+        } finally {
+            lock.unlock();
+        }
+        if (removed) {
+            ((Waiter) waiter).cancelTimeout();
+        }
+        return removed;
+    }
+
+    private void expire(final Waiter waiter) {
+        final boolean removed;
+        lock.lock();
+        try {
+            removed = queue.remove(waiter);
+        } finally {
+            lock.unlock();
+        }
+        if (removed) {
+            rejections.increment();
+            waiter.completeExceptionally(new RejectedExecutionException(
+                    "timed out waiting for concurrency limit: " + limit));
+        }
+    }
+
+    private Permit grant() {
+        final int current = inFlight + 1;
+        inFlight = current;
+        return new Permit(nanoClock.getAsLong(), current);
+    }
+
+    private void release(final Permit permit, final boolean dropped, final boolean sample) {
+        final long rtt = Math.max(1, nanoClock.getAsLong() - permit.start);
+        lock.lock();
+        try {
+            inFlight = inFlight - 1;
+            if (sample) {
+                update(rtt, permit.inFlight, dropped);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (dropped) {
+            drops.increment();
+        }
+        drain();
+    }
+
+    /**
+     * 按当前的并发上限唤醒队列中等待的请求，同时使等待超时的请求失败.
+     */
+    private void drain() {
+        final List<Waiter> granted = new ArrayList<>();
+        final List<Waiter> expired = new ArrayList<>();
+        final List<Permit> permits = new ArrayList<>();
+        lock.lock();
+        try {
+            final long now = nanoClock.getAsLong();
+            while (!queue.isEmpty()) {
+                final Waiter waiter = queue.peekFirst();
+                if (now - waiter.deadline >= 0) {
+                    expired.add(queue.pollFirst());
+                } else if (inFlight < limit) {
+                    granted.add(queue.pollFirst());
+                    permits.add(grant());
+                } else {
+                    break;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Waiter waiter : expired) {
+            waiter.cancelTimeout();
+            rejections.increment();
+            waiter.completeExceptionally(new RejectedExecutionException(
+                    "timed out waiting for concurrency limit: " + limit));
+        }
+        for (int i = 0; i < granted.size(); i++) {
+            granted.get(i).cancelTimeout();
+            granted.get(i).complete(permits.get(i));
+        }
+    }
+
+    private void update(final long rtt, final int sampleInFlight, final boolean dropped) {
+        samples++;
+        final double updated;
+        switch (algorithm) {
+            case VEGAS:
+                updated = vegas(rtt, sampleInFlight, dropped);
+                break;
+            case GRADIENT:
+                updated = gradient(rtt, sampleInFlight, dropped);
+                break;
+            default:
+                updated = aimd(sampleInFlight, dropped);
+                break;
+        }
+        estimate = Math.max(minLimit, Math.min(maxLimit, updated));
+        limit = (int) estimate;
+    }
+
+    private double aimd(final int sampleInFlight, final boolean dropped) {
+        if (dropped) {
+            return estimate * backoffRatio;
+        }
+        // 只有并发接近上限时才增大，避免在低负载下无限增长
+        return sampleInFlight * 2 >= estimate ? estimate + 1 : estimate;
+    }
+
+    private double vegas(final long rtt, final int sampleInFlight, final boolean dropped) {
+        // 定期以新的样本作为最小耗时，以适应服务端耗时基准的变化
+        if (rttNoLoad == 0 || rtt < rttNoLoad || samples % VEGAS_PROBE_INTERVAL == 0) {
+            rttNoLoad = rtt;
+            return estimate;
+        }
+        final double log = Math.max(1, Math.log10(estimate));
+        if (dropped) {
+            return estimate - log;
+        } else if (sampleInFlight * 2 < estimate) {
+            return estimate;
+        }
+        final double queued = Math.ceil(estimate * (1 - (double) rttNoLoad / rtt));
+        if (queued <= log) {
+            return estimate + 6 * log;
+        } else if (queued < 3 * log) {
+            return estimate + log;
+        } else if (queued > 6 * log) {
+            return estimate - log;
+        }
+        return estimate;
+    }
+
+    private double gradient(final long rtt, final int sampleInFlight, final boolean dropped) {
+        if (longRtt == 0) {
+            longRtt = rtt;
+        } else {
+            longRtt += (rtt - longRtt) / GRADIENT_LONG_WINDOW;
+        }
+        // 耗时从高位回落时加快长期平均的恢复，避免上限长时间偏高
+        if (longRtt / rtt > 2) {
+            longRtt *= 0.95;
+        }
+        if (!dropped && sampleInFlight * 2 < estimate) {
+            return estimate;
+        }
+        final double ratio = dropped ? 0.5 : Math.max(0.5, Math.min(1.0, GRADIENT_TOLERANCE * longRtt / rtt));
+        final double updated = estimate * ratio + Math.sqrt(estimate);
+        return estimate * (1 - GRADIENT_SMOOTHING) + updated * GRADIENT_SMOOTHING;
+    }
+
+    private static final class Waiter extends CompletableFuture<Permit> {
+        private long deadline;
+        private volatile ScheduledFuture<?> timeout;
+
+        private void cancelTimeout() {
+            final ScheduledFuture<?> current = timeout;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+    }
+
+    private static final class Scheduler {
+        private static final ScheduledExecutorService INSTANCE = create();
+
+        private static ScheduledExecutorService create() {
+            final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                    new DaemonThreadFactory("concurrency-limiter-"));
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+    }
+
+    /**
+     * 一个并发名额，请求完成后必须释放.
+     */
+    final class Permit {
+        private final long start;
+        private final int inFlight;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(final long start, final int inFlight) {
+            this.start = start;
+            this.inFlight = inFlight;
+        }
+
+        /**
+         * 请求完成，释放名额并以本次请求的耗时调整并发上限.
+         *
+         * @param dropped 是否过载
+         */
+        void release(final boolean dropped) {
+            if (released.compareAndSet(false, true)) {
+                ConcurrencyLimiter.this.release(this, dropped, true);
+            }
+        }
+
+        /**
+         * 请求未执行，释放名额但不调整并发上限.
+         */
+        void cancel() {
+            if (released.compareAndSet(false, true)) {
+                ConcurrencyLimiter.this.release(this, false, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.DefaultSchemePortResolver;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.routing.RoutingSupport;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.pool.ConnPoolControl;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+public final class ConnectionPoolPolicy {
+    public static final int DEFAULT_MAX_TOTAL = 25;
+    public static final int DEFAULT_MAX_PER_ROUTE = 5;
+
+    private int maxTotal = DEFAULT_MAX_TOTAL;
+    private int maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+    private final Map<HttpHost, Integer> maxPerHost = new LinkedHashMap<>();
+    private TimeValue timeToLive;
+    private TimeValue validateAfterInactivity;
+    private boolean evictExpired;
+    private TimeValue evictIdle;
+
+    /**
+     * 设置连接池的最大连接数.
+     *
+     * @param newMaxTotal 连接池的最大连接数
+     * @return this ConnectionPoolPolicy
+     */
+    public ConnectionPoolPolicy setMaxTotal(final int newMaxTotal) {
+        isTrue(newMaxTotal > 0, "maxTotal must be positive: %d", newMaxTotal);
+        this.maxTotal = newMaxTotal;
+        return this;
+    }
+
+    /**
+     * 设置每个路由的默认最大连接数.
+     *
+     * @param newMaxPerRoute 每个路由的默认最大连接数
+     * @return this ConnectionPoolPolicy
+     */
+    public ConnectionPoolPolicy setMaxPerRoute(final int newMaxPerRoute) {
+        isTrue(newMaxPerRoute > 0, "maxPerRoute must be positive: %d", newMaxPerRoute);
+        this.maxPerRoute = newMaxPerRoute;
+        return this;
+    }
+
+    /**
+     * 为指定主机设置最大连接数，覆盖maxPerRoute的配置.
+     *
+     * @param host   目标主机，未指定端口时使用scheme的默认端口
+     * @param newMax 该主机的最大连接数
+     * @return this ConnectionPoolPolicy
+     */
+    public ConnectionPoolPolicy setMaxPerHost(final HttpHost host, final int newMax) {
+        notNull(host, "host is null");
+        isTrue(newMax > 0, "max of host must be positive: %d", newMax);
+        this.maxPerHost.put(RoutingSupport.normalize(host, DefaultSchemePortResolver.INSTANCE), newMax);
+        return this;
+    }
+
+    /**
+     * 设置连接的最大存活时间，超过此时间的连接不再被复用.
+     *
+     * @param newTimeToLive 连接的最大存活时间，为null时不限制
+     * @return this ConnectionPoolPolicy
+     */
+    public ConnectionPoolPolicy setTimeToLive(final TimeValue newTimeToLive) {
+        this.timeToLive = newTimeToLive;
+        return this;
+    }
+
+    /**
+     * 设置连接空闲多久后，在复用前需要先检查连接是否可用.
+     *
+     * @param newValidateAfterInactivity 空闲时间，为null时使用httpclient的默认值
+     * @return this ConnectionPoolPolicy
+     */
+    public ConnectionPoolPolicy setValidateAfterInactivity(final TimeValue newValidateAfterInactivity) {
+        this.validateAfterInactivity = newValidateAfterInactivity;
+        return this;
+    }
+
+    /**
+     * 设置是否在后台定期清理已过期的连接.
+     *
+     * @param newEvictExpired 是否在后台定期清理已过期的连接
+     * @return this ConnectionPoolPolicy
+     */
+    public ConnectionPoolPolicy setEvictExpired(final boolean newEvictExpired) {
+        this.evictExpired = newEvictExpired;
+        return this;
+    }
+
+    /**
+     * 设置在后台清理空闲连接的空闲时间阈值.
+     *
+     * @param newEvictIdle 空闲时间阈值，为null时不清理空闲连接
+     * @return this ConnectionPoolPolicy
+     */
+    public ConnectionPoolPolicy setEvictIdle(final TimeValue newEvictIdle) {
+        this.evictIdle = newEvictIdle;
+        return this;
+    }
+
+    /**
+     * 获得连接池的最大连接数.
+     *
+     * @return 连接池的最大连接数
+     */
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    /**
+     * 获得每个路由的默认最大连接数.
+     *
+     * @return 每个路由的默认最大连接数
+     */
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    /**
+     * 获得指定主机的最大连接数，有按主机覆盖的配置时使用覆盖的配置，否则为maxPerRoute.
+     *
+     * @param host 目标主机，未指定端口时使用scheme的默认端口
+     * @return 该主机的最大连接数
+     */
+    public int getMaxPerRoute(final HttpHost host) {
+        notNull(host, "host is null");
+        return maxPerHost.getOrDefault(RoutingSupport.normalize(host, DefaultSchemePortResolver.INSTANCE), maxPerRoute);
+    }
+
+    /**
+     * 获得按主机覆盖的最大连接数.
+     *
+     * @return 主机与最大连接数的映射
+     */
+    public Map<HttpHost, Integer> getMaxPerHost() {
+        return Collections.unmodifiableMap(maxPerHost);
+    }
+
+    /**
+     * 获得连接的最大存活时间.
+     *
+     * @return 连接的最大存活时间
+     */
+    public TimeValue getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * 获得连接复用前需要检查可用性的空闲时间.
+     *
+     * @return 空闲时间
+     */
+    public TimeValue getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    /**
+     * 是否在后台定期清理已过期的连接.
+     *
+     * @return 是否在后台定期清理已过期的连接
+     */
+    public boolean isEvictExpired() {
+        return evictExpired;
+    }
+
+    /**
+     * 获得在后台清理空闲连接的空闲时间阈值.
+     *
+     * @return 空闲时间阈值
+     */
+    public TimeValue getEvictIdle() {
+        return evictIdle;
+    }
+
+    void apply(final ConnectionConfig.Builder builder) {
+        if (timeToLive != null) {
+            builder.setTimeToLive(timeToLive);
+        }
+        if (validateAfterInactivity != null) {
+            builder.setValidateAfterInactivity(validateAfterInactivity);
+        }
+    }
+
+    void apply(final ConnPoolControl<HttpRoute> pool) {
+        pool.setMaxTotal(maxTotal);
+        pool.setDefaultMaxPerRoute(maxPerRoute);
+        maxPerHost.forEach((host, max) -> pool.setMaxPerRoute(route(host), max));
+    }
+
+    void apply(final HttpClientBuilder builder) {
+        if (evictExpired) {
+            builder.evictExpiredConnections();
+        }
+        if (evictIdle != null) {
+            builder.evictIdleConnections(evictIdle);
+        }
+    }
+
+    void apply(final HttpAsyncClientBuilder builder) {
+        if (evictExpired) {
+            builder.evictExpiredConnections();
+        }
+        if (evictIdle != null) {
+            builder.evictIdleConnections(evictIdle);
+        }
+    }
+
+    private static HttpRoute route(final HttpHost host) {
+        return new HttpRoute(host, null, URIScheme.HTTPS.same(host.getSchemeName()));
+    }
+}
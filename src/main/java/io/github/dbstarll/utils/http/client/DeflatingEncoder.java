@@ -0,0 +1,132 @@
+package io.github.dbstarll.utils.http.client;
+
+import java.io.Closeable;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 使用对象池中的Deflater编码gzip或者deflate(zlib格式)数据，同时用于classic的OutputStream和async的producer.
+ * 调用方在{@link #needsInput()}时通过{@link #setInput(byte[], int, int)}提供输入，输入结束后调用{@link #finish()}，
+ * 反复调用{@link #encode(byte[], int, int)}取得输出，直到{@link #isFinished()}.
+ */
+final class DeflatingEncoder implements Closeable {
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0};
+    private static final byte[] NO_HEADER = {};
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private final CodecPool pool;
+    private final boolean gzip;
+    private final CRC32 crc;
+    private final byte[] header;
+    private final byte[] trailer;
+    private Deflater deflater;
+    private int headerPos;
+    private int trailerPos = -1;
+
+    /**
+     * 构造DeflatingEncoder.
+     *
+     * @param pool  对象池
+     * @param gzip  为true时编码gzip，否则编码zlib格式的deflate
+     * @param level 压缩级别
+     */
+    DeflatingEncoder(final CodecPool pool, final boolean gzip, final int level) {
+        this.pool = pool;
+        this.gzip = gzip;
+        this.crc = gzip ? new CRC32() : null;
+        this.header = gzip ? GZIP_HEADER : NO_HEADER;
+        this.trailer = gzip ? new byte[GZIP_TRAILER_SIZE] : NO_HEADER;
+        this.deflater = pool.deflater(level, gzip);
+    }
+
+    /**
+     * 判断是否需要更多的输入.
+     *
+     * @return 已提供的输入是否已被全部消费
+     */
+    boolean needsInput() {
+        return deflater.needsInput();
+    }
+
+    void setInput(final byte[] b, final int off, final int len) {
+        deflater.setInput(b, off, len);
+        if (gzip) {
+            crc.update(b, off, len);
+        }
+    }
+
+    /**
+     * 标记输入结束.
+     */
+    void finish() {
+        deflater.finish();
+    }
+
+    /**
+     * 判断所有输出是否都已取得.
+     *
+     * @return 所有输出是否都已取得
+     */
+    boolean isFinished() {
+        return deflater.finished() && trailerPos >= trailer.length;
+    }
+
+    /**
+     * 取得编码的输出.
+     *
+     * @param out 输出缓冲区
+     * @param off 输出的起始位置
+     * @param len 最多输出的字节数
+     * @return 输出的字节数，为0时需要更多的输入或者已经结束
+     */
+    int encode(final byte[] out, final int off, final int len) {
+        int n = copy(header, headerPos, out, off, len);
+        headerPos += n;
+        if (n < len && !deflater.finished()) {
+            n += deflater.deflate(out, off + n, len - n);
+        }
+        if (n < len && deflater.finished()) {
+            if (trailerPos < 0) {
+                writeTrailer();
+            }
+            final int copied = copy(trailer, trailerPos, out, off + n, len - n);
+            trailerPos += copied;
+            n += copied;
+        }
+        return n;
+    }
+
+    private void writeTrailer() {
+        if (gzip) {
+            writeInt(trailer, 0, crc.getValue());
+            writeInt(trailer, 4, deflater.getBytesRead());
+        }
+        trailerPos = 0;
+    }
+
+    private static void writeInt(final byte[] b, final int off, final long value) {
+        for (int i = 0; i < 4; i++) {
+            b[off + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private static int copy(final byte[] src, final int srcPos, final byte[] out, final int off, final int len) {
+        final int n = Math.min(src.length - srcPos, len);
+        if (n > 0) {
+            System.arraycopy(src, srcPos, out, off, n);
+            return n;
+        }
+        return 0;
+    }
+
+    /**
+     * 将Deflater归还到对象池，可以重复调用.
+     */
+    @Override
+    public void close() {
+        if (deflater != null) {
+            pool.release(deflater, gzip);
+            deflater = null;
+        }
+    }
+}
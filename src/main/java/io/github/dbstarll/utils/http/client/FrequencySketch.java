@@ -0,0 +1,63 @@
+package io.github.dbstarll.utils.http.client;
+
+/**
+ * 估算访问频率的Count-Min Sketch，用于TinyLFU风格的准入判断.
+ * 每个key对应4个上限为15的计数器，取其最小值作为频率；累计记录次数达到采样数时所有计数器减半，使旧的访问逐渐失效.
+ */
+final class FrequencySketch {
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97cb3127, 0x9e3779b9, 0xc2b2ae35, 0x85ebca6b};
+
+    private final int[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(final int expectedSize) {
+        final int size = Integer.highestOneBit(Math.max(64, Math.min(1 << 24, expectedSize)) - 1) << 1;
+        this.table = new int[size];
+        this.mask = size - 1;
+        this.sampleSize = size * 10;
+    }
+
+    synchronized void increment(final Object key) {
+        final int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int seed : SEEDS) {
+            final int index = index(hash, seed);
+            if (table[index] < MAX_COUNT) {
+                table[index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    synchronized int frequency(final Object key) {
+        final int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int seed : SEEDS) {
+            frequency = Math.min(frequency, table[index(hash, seed)]);
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] >>>= 1;
+        }
+        additions >>>= 1;
+    }
+
+    private int index(final int hash, final int seed) {
+        final int h = (hash ^ seed) * seed;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int spread(final int hash) {
+        final int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 15);
+    }
+}
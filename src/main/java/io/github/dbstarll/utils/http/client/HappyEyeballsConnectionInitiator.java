@@ -0,0 +1,226 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.DnsResolver;
+import org.apache.hc.client5.http.SystemDefaultDnsResolver;
+import org.apache.hc.core5.concurrent.ComplexFuture;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.net.InetAddressUtils;
+import org.apache.hc.core5.net.NamedEndpoint;
+import org.apache.hc.core5.reactor.ConnectionInitiator;
+import org.apache.hc.core5.reactor.IOSession;
+import org.apache.hc.core5.util.Timeout;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按RFC 8305的方式建立异步连接的ConnectionInitiator.
+ * 域名解析出多个地址时，通过IOReactor交错发起连接，任一连接成功后取消其他尚未完成的连接，之后才完成的连接会被立即关闭.
+ * 与{@link #deferredDnsResolver(DnsResolver)}配合使用，由此处统一解析域名，连接管理器不再逐个地址地串行尝试；
+ * 目标地址不是占位地址时，直接交给IOReactor连接.
+ */
+final class HappyEyeballsConnectionInitiator implements ConnectionInitiator {
+    private static final byte[] PLACEHOLDER = new byte[4];
+
+    private final ConnectionInitiator delegate;
+    private final DnsResolver dnsResolver;
+    private final HappyEyeballsPolicy policy;
+
+    HappyEyeballsConnectionInitiator(final ConnectionInitiator delegate, final DnsResolver dnsResolver,
+                                     final HappyEyeballsPolicy policy) {
+        this.delegate = delegate;
+        this.dnsResolver = dnsResolver != null ? dnsResolver : SystemDefaultDnsResolver.INSTANCE;
+        this.policy = policy;
+    }
+
+    /**
+     * 构造交给连接管理器使用的DnsResolver，对域名只返回一个占位地址，实际的解析推迟到connect时进行.
+     *
+     * @param dnsResolver 实际解析域名的DnsResolver
+     * @return 推迟解析的DnsResolver
+     */
+    static DnsResolver deferredDnsResolver(final DnsResolver dnsResolver) {
+        final DnsResolver resolver = dnsResolver != null ? dnsResolver : SystemDefaultDnsResolver.INSTANCE;
+        return new DnsResolver() {
+            @Override
+            public InetAddress[] resolve(final String host) throws UnknownHostException {
+                if (isLiteral(host)) {
+                    return resolver.resolve(host);
+                }
+                return new InetAddress[]{InetAddress.getByAddress(host, PLACEHOLDER)};
+            }
+
+            @Override
+            public String resolveCanonicalHostname(final String host) throws UnknownHostException {
+                return resolver.resolveCanonicalHostname(host);
+            }
+        };
+    }
+
+    private static boolean isLiteral(final String host) {
+        return host == null || InetAddressUtils.isIPv4Address(host) || InetAddressUtils.isIPv6Address(host);
+    }
+
+    private static boolean isPlaceholder(final SocketAddress remoteAddress) {
+        if (remoteAddress instanceof InetSocketAddress) {
+            final InetAddress address = ((InetSocketAddress) remoteAddress).getAddress();
+            return address != null && Arrays.equals(PLACEHOLDER, address.getAddress());
+        }
+        return false;
+    }
+
+    @Override
+    public Future<IOSession> connect(final NamedEndpoint remoteEndpoint, final SocketAddress remoteAddress,
+                                     final SocketAddress localAddress, final Timeout timeout, final Object attachment,
+                                     final FutureCallback<IOSession> callback) {
+        if (!isPlaceholder(remoteAddress)) {
+            return delegate.connect(remoteEndpoint, remoteAddress, localAddress, timeout, attachment, callback);
+        }
+        final String host = remoteEndpoint.getHostName();
+        final int port = ((InetSocketAddress) remoteAddress).getPort();
+        final InetAddress[] addresses;
+        try {
+            addresses = dnsResolver.resolve(host);
+            if (addresses == null || addresses.length == 0) {
+                throw new UnknownHostException(host);
+            }
+        } catch (UnknownHostException ex) {
+            final ComplexFuture<IOSession> future = new ComplexFuture<>(callback);
+            future.failed(ex);
+            return future;
+        }
+        if (addresses.length == 1) {
+            return delegate.connect(remoteEndpoint, new InetSocketAddress(addresses[0], port), localAddress,
+                    timeout, attachment, callback);
+        }
+        return new Race(remoteEndpoint, policy.sort(addresses), port, localAddress, timeout, attachment, callback)
+                .start();
+    }
+
+    private final class Race {
+        private final NamedEndpoint remoteEndpoint;
+        private final InetAddress[] addresses;
+        private final int port;
+        private final SocketAddress localAddress;
+        private final Timeout timeout;
+        private final Object attachment;
+        private final ComplexFuture<IOSession> future;
+        private final List<Future<IOSession>> attempts = new ArrayList<>();
+        private final List<Exception> failures = new ArrayList<>();
+        private ScheduledFuture<?> timer;
+        private int next;
+        private int pending;
+
+        private Race(final NamedEndpoint remoteEndpoint, final InetAddress[] addresses, final int port,
+                     final SocketAddress localAddress, final Timeout timeout, final Object attachment,
+                     final FutureCallback<IOSession> callback) {
+            this.remoteEndpoint = remoteEndpoint;
+            this.addresses = addresses;
+            this.port = port;
+            this.localAddress = localAddress;
+            this.timeout = timeout;
+            this.attachment = attachment;
+            this.future = new ComplexFuture<>(callback);
+        }
+
+        private Future<IOSession> start() {
+            future.setDependency(() -> {
+                abort();
+                return true;
+            });
+            startNext();
+            return future;
+        }
+
+        private synchronized void startNext() {
+            if (future.isDone() || next >= addresses.length) {
+                return;
+            }
+            if (timer != null) {
+                timer.cancel(false);
+                timer = null;
+            }
+            final InetSocketAddress remoteAddress = new InetSocketAddress(addresses[next++], port);
+            pending++;
+            if (next < addresses.length) {
+                timer = Scheduler.INSTANCE.schedule(this::startNext,
+                        policy.getAttemptDelay().toNanoseconds(), TimeUnit.NANOSECONDS);
+            }
+            attempts.add(delegate.connect(remoteEndpoint, remoteAddress, localAddress, timeout, attachment,
+                    new FutureCallback<IOSession>() {
+                        @Override
+                        public void completed(final IOSession session) {
+                            if (future.completed(session)) {
+                                abort();
+                            } else {
+                                session.close(CloseMode.IMMEDIATE);
+                            }
+                        }
+
+                        @Override
+                        public void failed(final Exception ex) {
+                            attemptFailed(ex);
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            attemptFailed(null);
+                        }
+                    }));
+        }
+
+        private synchronized void attemptFailed(final Exception ex) {
+            pending--;
+            if (ex != null) {
+                failures.add(ex);
+            }
+            if (future.isDone()) {
+                return;
+            } else if (next < addresses.length) {
+                startNext();
+            } else if (pending == 0) {
+                if (failures.isEmpty()) {
+                    future.cancel();
+                } else {
+                    final Exception first = failures.get(0);
+                    for (int i = 1; i < failures.size(); i++) {
+                        first.addSuppressed(failures.get(i));
+                    }
+                    future.failed(first);
+                }
+            }
+        }
+
+        private synchronized void abort() {
+            if (timer != null) {
+                timer.cancel(false);
+                timer = null;
+            }
+            for (Future<IOSession> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        }
+    }
+
+    private static final class Scheduler {
+        private static final ScheduledExecutorService INSTANCE = create();
+
+        private static ScheduledExecutorService create() {
+            final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                    new DaemonThreadFactory("happy-eyeballs-"));
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+    }
+}
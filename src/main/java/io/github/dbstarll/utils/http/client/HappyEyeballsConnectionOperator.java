@@ -0,0 +1,252 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.ConnectExceptionSupport;
+import org.apache.hc.client5.http.DnsResolver;
+import org.apache.hc.client5.http.SchemePortResolver;
+import org.apache.hc.client5.http.SystemDefaultDnsResolver;
+import org.apache.hc.client5.http.UnsupportedSchemeException;
+import org.apache.hc.client5.http.impl.DefaultSchemePortResolver;
+import org.apache.hc.client5.http.impl.io.DefaultHttpClientConnectionOperator;
+import org.apache.hc.client5.http.io.ManagedHttpClientConnection;
+import org.apache.hc.client5.http.socket.ConnectionSocketFactory;
+import org.apache.hc.client5.http.socket.LayeredConnectionSocketFactory;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.config.Lookup;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.Closer;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按RFC 8305的方式建立classic连接的HttpClientConnectionOperator.
+ * 域名解析出多个地址时，在调用线程上通过Selector交错发起非阻塞的TCP连接，任一连接成功后立即关闭其他尚未完成的连接，
+ * 再在胜出的连接上完成TLS握手.
+ */
+final class HappyEyeballsConnectionOperator extends DefaultHttpClientConnectionOperator {
+    private final Lookup<ConnectionSocketFactory> socketFactoryRegistry;
+    private final SchemePortResolver schemePortResolver;
+    private final DnsResolver dnsResolver;
+    private final HappyEyeballsPolicy policy;
+
+    HappyEyeballsConnectionOperator(final Lookup<ConnectionSocketFactory> socketFactoryRegistry,
+                                    final DnsResolver dnsResolver, final HappyEyeballsPolicy policy) {
+        super(socketFactoryRegistry, null, dnsResolver);
+        this.socketFactoryRegistry = socketFactoryRegistry;
+        this.schemePortResolver = DefaultSchemePortResolver.INSTANCE;
+        this.dnsResolver = dnsResolver != null ? dnsResolver : SystemDefaultDnsResolver.INSTANCE;
+        this.policy = policy;
+    }
+
+    @Override
+    public void connect(final ManagedHttpClientConnection conn, final HttpHost host,
+                        final InetSocketAddress localAddress, final Timeout connectTimeout,
+                        final SocketConfig socketConfig, final Object attachment,
+                        final HttpContext context) throws IOException {
+        if (host.getAddress() != null) {
+            super.connect(conn, host, localAddress, connectTimeout, socketConfig, attachment, context);
+            return;
+        }
+        final ConnectionSocketFactory sf = socketFactoryRegistry.lookup(host.getSchemeName());
+        if (sf == null) {
+            throw new UnsupportedSchemeException(host.getSchemeName() + " protocol is not supported");
+        }
+        final InetAddress[] addresses = dnsResolver.resolve(host.getHostName());
+        if (addresses.length < 2) {
+            super.connect(conn, addresses.length == 1 ? new HttpHost(host.getSchemeName(), addresses[0],
+                    host.getHostName(), host.getPort()) : host, localAddress, connectTimeout, socketConfig,
+                    attachment, context);
+            return;
+        }
+
+        final int port = schemePortResolver.resolve(host);
+        final Socket socket;
+        try {
+            socket = race(policy.sort(addresses), port, localAddress, connectTimeout, socketConfig).socket();
+        } catch (IOException ex) {
+            final IOException enhanced = ConnectExceptionSupport.enhance(ex, host, addresses);
+            if (enhanced != ex) {
+                // 保留其他地址的连接失败
+                for (Throwable suppressed : ex.getSuppressed()) {
+                    enhanced.addSuppressed(suppressed);
+                }
+            }
+            throw enhanced;
+        }
+        try {
+            conn.bind(socket);
+            final Timeout soTimeout = socketConfig.getSoTimeout();
+            if (sf instanceof LayeredConnectionSocketFactory) {
+                if (Timeout.isPositive(connectTimeout)) {
+                    socket.setSoTimeout(connectTimeout.toMillisecondsIntBound());
+                }
+                conn.bind(((LayeredConnectionSocketFactory) sf).createLayeredSocket(socket, host.getHostName(),
+                        port, attachment, context));
+            }
+            conn.setSocketTimeout(soTimeout);
+        } catch (IOException | RuntimeException ex) {
+            Closer.closeQuietly(socket);
+            throw ex;
+        }
+    }
+
+    private SocketChannel race(final InetAddress[] addresses, final int port, final InetSocketAddress localAddress,
+                               final Timeout connectTimeout, final SocketConfig socketConfig) throws IOException {
+        final long attemptDelay = policy.getAttemptDelay().toNanoseconds();
+        final long timeout = Timeout.isPositive(connectTimeout) ? connectTimeout.toNanoseconds() : 0;
+        final List<IOException> failures = new ArrayList<>();
+        SocketChannel winner = null;
+        int next = 0;
+        int pending = 0;
+        long nextAttemptAt = System.nanoTime();
+        try (Selector selector = Selector.open()) {
+            try {
+                while (winner == null) {
+                    long now = System.nanoTime();
+                    if (next < addresses.length && (pending == 0 || now - nextAttemptAt >= 0)) {
+                        final InetSocketAddress remoteAddress = new InetSocketAddress(addresses[next++], port);
+                        final SocketChannel channel = open(remoteAddress, localAddress, socketConfig, failures);
+                        if (channel == null) {
+                            nextAttemptAt = now;
+                        } else if (channel.isConnected()) {
+                            winner = channel;
+                        } else {
+                            channel.register(selector, SelectionKey.OP_CONNECT, timeout > 0 ? now + timeout : 0);
+                            pending++;
+                            nextAttemptAt = now + attemptDelay;
+                        }
+                        continue;
+                    } else if (pending == 0) {
+                        throw failure(failures);
+                    }
+                    final long wait = waitNanos(selector, next < addresses.length ? nextAttemptAt - now
+                            : Long.MAX_VALUE, now);
+                    selector.select(TimeUnit.NANOSECONDS.toMillis(wait) + 1);
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("connect interrupted");
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        final SocketChannel channel = (SocketChannel) key.channel();
+                        try {
+                            if (channel.finishConnect()) {
+                                winner = channel;
+                                break;
+                            }
+                        } catch (IOException ex) {
+                            key.cancel();
+                            Closer.closeQuietly(channel);
+                            failures.add(ex);
+                            pending--;
+                            nextAttemptAt = System.nanoTime();
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                    now = System.nanoTime();
+                    for (SelectionKey key : selector.keys()) {
+                        if (winner == null && key.isValid() && isExpired(key, now)) {
+                            key.cancel();
+                            Closer.closeQuietly(key.channel());
+                            failures.add(new SocketTimeoutException("connect timed out"));
+                            pending--;
+                            nextAttemptAt = now;
+                        }
+                    }
+                }
+            } finally {
+                // 任一连接成功或整体失败时，关闭所有尚未完成的连接
+                for (SelectionKey key : selector.keys()) {
+                    if (key.channel() != winner) {
+                        Closer.closeQuietly(key.channel());
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            Closer.closeQuietly(winner);
+            throw ex;
+        }
+        // 关闭Selector后才能将胜出的连接切换为阻塞模式
+        try {
+            winner.configureBlocking(true);
+            return winner;
+        } catch (IOException ex) {
+            Closer.closeQuietly(winner);
+            throw ex;
+        }
+    }
+
+    private static SocketChannel open(final InetSocketAddress remoteAddress, final InetSocketAddress localAddress,
+                                      final SocketConfig socketConfig, final List<IOException> failures) {
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            configure(channel.socket(), socketConfig);
+            if (localAddress != null) {
+                channel.bind(localAddress);
+            }
+            channel.configureBlocking(false);
+            channel.connect(remoteAddress);
+            return channel;
+        } catch (IOException ex) {
+            Closer.closeQuietly(channel);
+            failures.add(ex);
+            return null;
+        }
+    }
+
+    static void configure(final Socket socket, final SocketConfig socketConfig) throws IOException {
+        final Timeout soTimeout = socketConfig.getSoTimeout();
+        if (soTimeout != null) {
+            socket.setSoTimeout(soTimeout.toMillisecondsIntBound());
+        }
+        socket.setReuseAddress(socketConfig.isSoReuseAddress());
+        socket.setTcpNoDelay(socketConfig.isTcpNoDelay());
+        socket.setKeepAlive(socketConfig.isSoKeepAlive());
+        if (socketConfig.getRcvBufSize() > 0) {
+            socket.setReceiveBufferSize(socketConfig.getRcvBufSize());
+        }
+        if (socketConfig.getSndBufSize() > 0) {
+            socket.setSendBufferSize(socketConfig.getSndBufSize());
+        }
+        // SO_LINGER的单位是秒
+        final int linger = socketConfig.getSoLinger().toSecondsIntBound();
+        if (linger >= 0) {
+            socket.setSoLinger(true, linger);
+        }
+    }
+
+    private static long waitNanos(final Selector selector, final long untilNextAttempt, final long now) {
+        long wait = untilNextAttempt;
+        for (SelectionKey key : selector.keys()) {
+            final long deadline = (Long) key.attachment();
+            if (key.isValid() && deadline != 0) {
+                wait = Math.min(wait, deadline - now);
+            }
+        }
+        return Math.max(0, Math.min(wait, TimeUnit.DAYS.toNanos(1)));
+    }
+
+    private static boolean isExpired(final SelectionKey key, final long now) {
+        final long deadline = (Long) key.attachment();
+        return deadline != 0 && now - deadline >= 0;
+    }
+
+    private static IOException failure(final List<IOException> failures) {
+        final IOException first = failures.isEmpty() ? new IOException("no address to connect") : failures.get(0);
+        for (int i = 1; i < failures.size(); i++) {
+            first.addSuppressed(failures.get(i));
+        }
+        return first;
+    }
+}
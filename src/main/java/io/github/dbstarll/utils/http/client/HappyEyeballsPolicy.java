@@ -0,0 +1,102 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.core5.util.TimeValue;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+public final class HappyEyeballsPolicy {
+    public static final TimeValue DEFAULT_ATTEMPT_DELAY = TimeValue.ofMilliseconds(250);
+    public static final int DEFAULT_FIRST_ADDRESS_FAMILY_COUNT = 1;
+
+    private TimeValue attemptDelay = DEFAULT_ATTEMPT_DELAY;
+    private int firstAddressFamilyCount = DEFAULT_FIRST_ADDRESS_FAMILY_COUNT;
+
+    /**
+     * 设置相邻两次连接尝试之间的间隔，前一次尝试在此间隔内未成功时，开始下一个地址的尝试，前一次尝试失败时立即开始下一次尝试.
+     *
+     * @param newAttemptDelay 连接尝试之间的间隔
+     * @return this HappyEyeballsPolicy
+     */
+    public HappyEyeballsPolicy setAttemptDelay(final TimeValue newAttemptDelay) {
+        isTrue(TimeValue.isPositive(newAttemptDelay), "attemptDelay must be positive: %s", newAttemptDelay);
+        this.attemptDelay = newAttemptDelay;
+        return this;
+    }
+
+    /**
+     * 设置交替尝试不同地址族之前，优先尝试首选地址族的地址数.
+     *
+     * @param newFirstAddressFamilyCount 优先尝试首选地址族的地址数
+     * @return this HappyEyeballsPolicy
+     */
+    public HappyEyeballsPolicy setFirstAddressFamilyCount(final int newFirstAddressFamilyCount) {
+        isTrue(newFirstAddressFamilyCount > 0, "firstAddressFamilyCount must be positive: %d",
+                newFirstAddressFamilyCount);
+        this.firstAddressFamilyCount = newFirstAddressFamilyCount;
+        return this;
+    }
+
+    /**
+     * 获得相邻两次连接尝试之间的间隔.
+     *
+     * @return 连接尝试之间的间隔
+     */
+    public TimeValue getAttemptDelay() {
+        return attemptDelay;
+    }
+
+    /**
+     * 获得交替尝试不同地址族之前，优先尝试首选地址族的地址数.
+     *
+     * @return 优先尝试首选地址族的地址数
+     */
+    public int getFirstAddressFamilyCount() {
+        return firstAddressFamilyCount;
+    }
+
+    /**
+     * 按RFC 8305的规则排列连接尝试的顺序：以解析结果中第一个地址的地址族为首选，
+     * 先尝试firstAddressFamilyCount个首选地址族的地址，之后两个地址族交替，各地址族内保持解析结果的顺序.
+     */
+    InetAddress[] sort(final InetAddress[] addresses) {
+        notNull(addresses, "addresses is null");
+        if (addresses.length < 2) {
+            return addresses;
+        }
+        final boolean preferV6 = addresses[0] instanceof Inet6Address;
+        final InetAddress[] preferred = new InetAddress[addresses.length];
+        final InetAddress[] other = new InetAddress[addresses.length];
+        int preferredCount = 0;
+        int otherCount = 0;
+        for (InetAddress address : addresses) {
+            if (address instanceof Inet6Address == preferV6) {
+                preferred[preferredCount++] = address;
+            } else {
+                other[otherCount++] = address;
+            }
+        }
+        if (otherCount == 0) {
+            return addresses;
+        }
+        final InetAddress[] sorted = new InetAddress[addresses.length];
+        int index = 0;
+        int p = 0;
+        int o = 0;
+        while (p < preferredCount && p < firstAddressFamilyCount) {
+            sorted[index++] = preferred[p++];
+        }
+        while (p < preferredCount || o < otherCount) {
+            if (o < otherCount) {
+                sorted[index++] = other[o++];
+            }
+            if (p < preferredCount) {
+                sorted[index++] = preferred[p++];
+            }
+        }
+        return sorted;
+    }
+}
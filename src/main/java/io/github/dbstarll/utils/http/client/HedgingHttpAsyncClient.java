@@ -0,0 +1,450 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.BasicFuture;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.function.Supplier;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.Method;
+import org.apache.hc.core5.http.nio.AsyncPushConsumer;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+import org.apache.hc.core5.http.nio.HandlerFactory;
+import org.apache.hc.core5.http.nio.RequestChannel;
+import org.apache.hc.core5.http.protocol.BasicHttpContext;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorStatus;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 按{@link HedgingPolicy}对冲请求的CloseableHttpAsyncClient.
+ * 执行链中的每次请求只持有一个连接，无法同时发出两次请求，所以对冲在client一级完成：
+ * 两次请求各自经过完整的执行链，先收到响应头的请求把响应交给调用方的AsyncResponseConsumer，另一个请求被取消.
+ */
+final class HedgingHttpAsyncClient extends CloseableHttpAsyncClient {
+    private final CloseableHttpAsyncClient delegate;
+    private final HedgingPolicy policy;
+
+    HedgingHttpAsyncClient(final CloseableHttpAsyncClient delegate, final HedgingPolicy policy) {
+        this.delegate = delegate;
+        this.policy = policy;
+    }
+
+    @Override
+    public void start() {
+        delegate.start();
+    }
+
+    @Override
+    public IOReactorStatus getStatus() {
+        return delegate.getStatus();
+    }
+
+    @Override
+    public void awaitShutdown(final TimeValue waitTime) throws InterruptedException {
+        delegate.awaitShutdown(waitTime);
+    }
+
+    @Override
+    public void initiateShutdown() {
+        delegate.initiateShutdown();
+    }
+
+    @Override
+    public void register(final String hostname, final String uriPattern, final Supplier<AsyncPushConsumer> supplier) {
+        delegate.register(hostname, uriPattern, supplier);
+    }
+
+    @Override
+    public void close(final CloseMode closeMode) {
+        delegate.close(closeMode);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    @Override
+    protected <T> Future<T> doExecute(final HttpHost target, final AsyncRequestProducer requestProducer,
+                                      final AsyncResponseConsumer<T> responseConsumer,
+                                      final HandlerFactory<AsyncPushConsumer> pushHandlerFactory,
+                                      final HttpContext context, final FutureCallback<T> callback) {
+        final CapturedRequest captured = new CapturedRequest();
+        try {
+            requestProducer.sendRequest(captured, context);
+        } catch (HttpException | IOException | IllegalStateException ex) {
+            final BasicFuture<T> future = new BasicFuture<>(callback);
+            future.failed(ex);
+            return future;
+        }
+        final AsyncRequestProducer replay = new ReplayRequestProducer(captured, requestProducer);
+        if (captured.request == null || captured.entityDetails != null
+                || !Method.isIdempotent(captured.request.getMethod())) {
+            return delegate.execute(target, replay, responseConsumer, pushHandlerFactory, context, callback);
+        }
+        policy.onRequest();
+        final Exchange<T> exchange = new Exchange<>(target, replay, responseConsumer, pushHandlerFactory, callback);
+        exchange.start(context);
+        return exchange.future;
+    }
+
+    private static final class CapturedRequest implements RequestChannel {
+        private HttpRequest request;
+        private EntityDetails entityDetails;
+
+        @Override
+        public void sendRequest(final HttpRequest newRequest, final EntityDetails newEntityDetails,
+                                final HttpContext context) {
+            this.request = newRequest;
+            this.entityDetails = newEntityDetails;
+        }
+    }
+
+    /**
+     * 重放已经捕获的请求头，请求体仍由原有的AsyncRequestProducer产生. 资源由Exchange统一释放.
+     */
+    private static final class ReplayRequestProducer implements AsyncRequestProducer {
+        private final CapturedRequest captured;
+        private final AsyncRequestProducer producer;
+
+        private ReplayRequestProducer(final CapturedRequest captured, final AsyncRequestProducer producer) {
+            this.captured = captured;
+            this.producer = producer;
+        }
+
+        @Override
+        public void sendRequest(final RequestChannel channel, final HttpContext context)
+                throws HttpException, IOException {
+            if (captured.request == null) {
+                producer.sendRequest(channel, context);
+            } else {
+                channel.sendRequest(captured.request, captured.entityDetails, context);
+            }
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return producer.isRepeatable();
+        }
+
+        @Override
+        public int available() {
+            return producer.available();
+        }
+
+        @Override
+        public void produce(final DataStreamChannel channel) throws IOException {
+            producer.produce(channel);
+        }
+
+        @Override
+        public void failed(final Exception cause) {
+            producer.failed(cause);
+        }
+
+        @Override
+        public void releaseResources() {
+            producer.releaseResources();
+        }
+    }
+
+    private final class Exchange<T> {
+        private final HttpHost target;
+        private final AsyncRequestProducer producer;
+        private final AsyncResponseConsumer<T> consumer;
+        private final HandlerFactory<AsyncPushConsumer> pushHandlerFactory;
+        private final BasicFuture<T> future;
+        private final AtomicReference<Attempt> winner = new AtomicReference<>();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final long startNanos = System.nanoTime();
+
+        private Attempt primary;
+        private Attempt hedge;
+        private ScheduledFuture<?> timer;
+        private int running;
+        private Exception failure;
+
+        private Exchange(final HttpHost target, final AsyncRequestProducer producer,
+                         final AsyncResponseConsumer<T> consumer,
+                         final HandlerFactory<AsyncPushConsumer> pushHandlerFactory,
+                         final FutureCallback<T> callback) {
+            this.target = target;
+            this.producer = producer;
+            this.consumer = consumer;
+            this.pushHandlerFactory = pushHandlerFactory;
+            this.future = new BasicFuture<T>(callback) {
+                @Override
+                public boolean cancel(final boolean mayInterruptIfRunning) {
+                    final boolean cancelled = super.cancel(mayInterruptIfRunning);
+                    if (cancelled) {
+                        abort();
+                    }
+                    return cancelled;
+                }
+            };
+        }
+
+        private void start(final HttpContext context) {
+            synchronized (this) {
+                primary = new Attempt(false);
+                running = 1;
+                timer = Scheduler.INSTANCE.schedule(() -> startHedge(context), policy.delayNanos(),
+                        TimeUnit.NANOSECONDS);
+            }
+            primary.start(context);
+        }
+
+        private void startHedge(final HttpContext context) {
+            synchronized (this) {
+                timer = null;
+                if (future.isDone() || winner.get() != null || running == 0 || !policy.tryHedge()) {
+                    return;
+                }
+                hedge = new Attempt(true);
+                running++;
+            }
+            // 对冲请求使用子上下文，读取调用方的配置，但执行状态互不干扰
+            hedge.start(new BasicHttpContext(context));
+        }
+
+        private boolean win(final Attempt attempt) {
+            if (winner.compareAndSet(null, attempt)) {
+                final Attempt other;
+                synchronized (this) {
+                    cancelTimer();
+                    other = attempt == primary ? hedge : primary;
+                }
+                if (other != null) {
+                    other.cancel();
+                }
+                return true;
+            }
+            return winner.get() == attempt;
+        }
+
+        private void failed(final Attempt attempt, final Exception cause) {
+            synchronized (this) {
+                if (failure == null) {
+                    failure = cause;
+                } else if (failure != cause) {
+                    failure.addSuppressed(cause);
+                }
+                // 首次请求失败时不再对冲，重试交给执行链中的重试策略
+                cancelTimer();
+                if (--running > 0) {
+                    return;
+                }
+            }
+            if (future.failed(failure)) {
+                try {
+                    consumer.failed(failure);
+                } finally {
+                    consumer.releaseResources();
+                    release();
+                }
+            }
+        }
+
+        private void abort() {
+            final Attempt first;
+            final Attempt second;
+            synchronized (this) {
+                cancelTimer();
+                first = primary;
+                second = hedge;
+            }
+            if (first != null) {
+                first.cancel();
+            }
+            if (second != null) {
+                second.cancel();
+            }
+            // 占用胜出者的位置，取消之后到达的响应头不再交给调用方
+            if (winner.compareAndSet(null, new Attempt(false))) {
+                consumer.releaseResources();
+            }
+            release();
+        }
+
+        private void cancelTimer() {
+            if (timer != null) {
+                timer.cancel(false);
+                timer = null;
+            }
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                producer.releaseResources();
+            }
+        }
+
+        private final class Attempt implements AsyncResponseConsumer<T> {
+            private final boolean isHedge;
+            private volatile Future<T> handle;
+            private volatile boolean cancelled;
+
+            private Attempt(final boolean isHedge) {
+                this.isHedge = isHedge;
+            }
+
+            private void start(final HttpContext context) {
+                handle = delegate.execute(target, new AsyncRequestProducer() {
+                    @Override
+                    public void sendRequest(final RequestChannel channel, final HttpContext c)
+                            throws HttpException, IOException {
+                        producer.sendRequest(channel, c);
+                    }
+
+                    @Override
+                    public boolean isRepeatable() {
+                        return producer.isRepeatable();
+                    }
+
+                    @Override
+                    public int available() {
+                        return producer.available();
+                    }
+
+                    @Override
+                    public void produce(final DataStreamChannel channel) throws IOException {
+                        producer.produce(channel);
+                    }
+
+                    @Override
+                    public void failed(final Exception cause) {
+                    }
+
+                    @Override
+                    public void releaseResources() {
+                    }
+                }, this, pushHandlerFactory, context, new FutureCallback<T>() {
+                    @Override
+                    public void completed(final T result) {
+                        if (isWinner()) {
+                            future.completed(result);
+                            release();
+                        }
+                    }
+
+                    @Override
+                    public void failed(final Exception ex) {
+                        if (isWinner()) {
+                            future.failed(ex);
+                            release();
+                        } else if (winner.get() == null) {
+                            Exchange.this.failed(Attempt.this, ex);
+                        }
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        if (isWinner()) {
+                            future.cancel();
+                        }
+                    }
+                });
+                if (cancelled) {
+                    handle.cancel(true);
+                }
+            }
+
+            private void cancel() {
+                cancelled = true;
+                final Future<T> f = handle;
+                if (f != null) {
+                    f.cancel(true);
+                }
+            }
+
+            private boolean isWinner() {
+                return winner.get() == this;
+            }
+
+            @Override
+            public void consumeResponse(final HttpResponse response, final EntityDetails entityDetails,
+                                        final HttpContext context, final FutureCallback<T> resultCallback)
+                    throws HttpException, IOException {
+                if (win(this)) {
+                    // 从首次请求发出时计算，对冲胜出时的延迟包含对冲前的等待
+                    policy.onResponse(System.nanoTime() - Exchange.this.startNanos, isHedge);
+                    consumer.consumeResponse(response, entityDetails, context, resultCallback);
+                }
+            }
+
+            @Override
+            public void informationResponse(final HttpResponse response, final HttpContext context)
+                    throws HttpException, IOException {
+                if (isWinner()) {
+                    consumer.informationResponse(response, context);
+                }
+            }
+
+            @Override
+            public void updateCapacity(final CapacityChannel capacityChannel) throws IOException {
+                if (isWinner()) {
+                    consumer.updateCapacity(capacityChannel);
+                }
+            }
+
+            @Override
+            public void consume(final ByteBuffer src) throws IOException {
+                if (isWinner()) {
+                    consumer.consume(src);
+                }
+            }
+
+            @Override
+            public void streamEnd(final List<? extends Header> trailers) throws HttpException, IOException {
+                if (isWinner()) {
+                    consumer.streamEnd(trailers);
+                }
+            }
+
+            @Override
+            public void failed(final Exception cause) {
+                if (isWinner()) {
+                    consumer.failed(cause);
+                }
+            }
+
+            @Override
+            public void releaseResources() {
+                if (isWinner()) {
+                    consumer.releaseResources();
+                }
+            }
+        }
+    }
+
+    private static final class Scheduler {
+        private static final ScheduledExecutorService INSTANCE = create();
+
+        private static ScheduledExecutorService create() {
+            final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                    new DaemonThreadFactory("hedging-"));
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+    }
+}
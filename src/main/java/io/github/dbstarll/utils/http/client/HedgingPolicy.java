@@ -0,0 +1,162 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.core5.util.TimeValue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * 对冲请求策略，通过{@link HttpClientFactory#setHedgingPolicy(HedgingPolicy)}用于async的client.
+ * <ul>
+ * <li>仅对没有请求体的幂等请求对冲：首次请求在延迟内没有收到响应时发出第二次请求，先收到响应的请求胜出，另一个请求被取消并释放连接</li>
+ * <li>延迟默认取最近响应延迟的分位数，样本不足时使用固定延迟</li>
+ * <li>对冲预算以令牌桶实现：每个可对冲的请求存入一定比例的令牌，每次对冲取出一个令牌，令牌不足时不对冲，
+ * 避免在整体变慢时对冲使负载加倍. 同一个HedgingPolicy构造的所有client共享预算和延迟统计</li>
+ * </ul>
+ */
+public final class HedgingPolicy {
+    public static final TimeValue DEFAULT_DELAY = TimeValue.ofMilliseconds(100);
+    public static final double DEFAULT_PERCENTILE = 95;
+    public static final int DEFAULT_MIN_SAMPLES = 100;
+    public static final float DEFAULT_BUDGET_PERCENT = 10;
+    public static final int DEFAULT_BUDGET_CAPACITY = 10;
+
+    private static final int LATENCY_WINDOW = 1000;
+
+    private final LatencyHistogram latencies = new LatencyHistogram(LATENCY_WINDOW);
+    private volatile long delayNanos = DEFAULT_DELAY.toNanoseconds();
+    private volatile double percentile = DEFAULT_PERCENTILE;
+    private volatile int minSamples = DEFAULT_MIN_SAMPLES;
+    private double depositPerRequest = DEFAULT_BUDGET_PERCENT / 100;
+    private double capacity = DEFAULT_BUDGET_CAPACITY;
+    private double tokens;
+
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder wins = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    /**
+     * 设置发出对冲请求前的固定延迟，也是样本不足时的延迟.
+     *
+     * @param newDelay 延迟
+     * @return this HedgingPolicy
+     */
+    public HedgingPolicy setDelay(final TimeValue newDelay) {
+        isTrue(TimeValue.isPositive(newDelay), "delay must be positive: %s", newDelay);
+        this.delayNanos = newDelay.toNanoseconds();
+        return this;
+    }
+
+    /**
+     * 设置以最近响应延迟的分位数作为对冲延迟.
+     *
+     * @param newPercentile 百分位，为0时总是使用固定延迟
+     * @param newMinSamples 使用分位数所需的最少样本数
+     * @return this HedgingPolicy
+     */
+    public HedgingPolicy setPercentile(final double newPercentile, final int newMinSamples) {
+        isTrue(newPercentile >= 0 && newPercentile < 100, "percentile must be in [0, 100): %s", newPercentile);
+        isTrue(newMinSamples > 0, "minSamples must be positive: %d", newMinSamples);
+        this.percentile = newPercentile;
+        this.minSamples = newMinSamples;
+        return this;
+    }
+
+    /**
+     * 设置对冲预算.
+     *
+     * @param percent     对冲次数相对于可对冲请求数的百分比
+     * @param newCapacity 预算可累积的最大对冲次数
+     * @return this HedgingPolicy
+     */
+    public synchronized HedgingPolicy setBudget(final float percent, final int newCapacity) {
+        isTrue(percent >= 0 && percent <= 100, "percent must be in [0, 100]: %s", percent);
+        isTrue(newCapacity > 0, "capacity must be positive: %d", newCapacity);
+        this.depositPerRequest = percent / 100;
+        this.capacity = newCapacity;
+        this.tokens = Math.min(tokens, newCapacity);
+        return this;
+    }
+
+    /**
+     * 获得当前的对冲延迟.
+     *
+     * @return 对冲延迟
+     */
+    public TimeValue getHedgeDelay() {
+        return TimeValue.of(delayNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 获得已经发出的对冲请求数.
+     *
+     * @return 对冲请求数
+     */
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * 获得对冲请求先于首次请求收到响应的次数.
+     *
+     * @return 对冲胜出的次数
+     */
+    public long getHedgeWinCount() {
+        return wins.sum();
+    }
+
+    /**
+     * 获得因预算不足而放弃的对冲次数.
+     *
+     * @return 放弃的对冲次数
+     */
+    public long getBudgetExhaustedCount() {
+        return exhausted.sum();
+    }
+
+    long delayNanos() {
+        final double p = percentile;
+        if (p > 0 && latencies.count() >= minSamples) {
+            return Math.max(TimeUnit.MILLISECONDS.toNanos(1), latencies.percentile(p));
+        }
+        return delayNanos;
+    }
+
+    /**
+     * 记录一个可对冲的请求，向预算中存入令牌.
+     */
+    synchronized void onRequest() {
+        tokens = Math.min(capacity, tokens + depositPerRequest);
+    }
+
+    /**
+     * 从预算中取出一个令牌.
+     *
+     * @return 是否可以发出对冲请求
+     */
+    synchronized boolean tryHedge() {
+        if (tokens < 1) {
+            exhausted.increment();
+            return false;
+        }
+        tokens -= 1;
+        hedges.increment();
+        return true;
+    }
+
+    /**
+     * 记录请求从发出首次请求到胜出的请求收到响应头的延迟. 对冲胜出时的延迟包含对冲前的等待，不会低于当时的对冲延迟，
+     * 避免只记录对冲请求自身的延迟使分位数不断降低.
+     *
+     * @param nanos 延迟
+     * @param hedge 是否为对冲请求
+     */
+    void onResponse(final long nanos, final boolean hedge) {
+        latencies.record(nanos);
+        if (hedge) {
+            wins.increment();
+        }
+    }
+}
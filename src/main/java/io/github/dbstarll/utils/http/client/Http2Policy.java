@@ -0,0 +1,115 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.config.H2Config;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+public final class Http2Policy {
+    private boolean priorKnowledge;
+    private boolean fallbackToHttp1 = true;
+    private int maxConcurrentStreams = H2Config.DEFAULT.getMaxConcurrentStreams();
+    private int initialWindowSize = H2Config.DEFAULT.getInitialWindowSize();
+
+    /**
+     * 设置是否对http请求直接使用h2c(HTTP/2 prior knowledge)，而不经过协商.
+     *
+     * @param newPriorKnowledge 是否对http请求直接使用h2c
+     * @return this Http2Policy
+     */
+    public Http2Policy setPriorKnowledge(final boolean newPriorKnowledge) {
+        this.priorKnowledge = newPriorKnowledge;
+        return this;
+    }
+
+    /**
+     * 设置https请求在ALPN未协商出h2时，是否回退到HTTP/1.1.
+     *
+     * @param newFallbackToHttp1 是否回退到HTTP/1.1
+     * @return this Http2Policy
+     */
+    public Http2Policy setFallbackToHttp1(final boolean newFallbackToHttp1) {
+        this.fallbackToHttp1 = newFallbackToHttp1;
+        return this;
+    }
+
+    /**
+     * 设置单个连接上允许的最大并发stream数.
+     *
+     * @param newMaxConcurrentStreams 最大并发stream数
+     * @return this Http2Policy
+     */
+    public Http2Policy setMaxConcurrentStreams(final int newMaxConcurrentStreams) {
+        isTrue(newMaxConcurrentStreams > 0, "maxConcurrentStreams must be positive: %d", newMaxConcurrentStreams);
+        this.maxConcurrentStreams = newMaxConcurrentStreams;
+        return this;
+    }
+
+    /**
+     * 设置stream的初始流控窗口大小.
+     *
+     * @param newInitialWindowSize 初始流控窗口大小(字节)
+     * @return this Http2Policy
+     */
+    public Http2Policy setInitialWindowSize(final int newInitialWindowSize) {
+        isTrue(newInitialWindowSize > 0, "initialWindowSize must be positive: %d", newInitialWindowSize);
+        this.initialWindowSize = newInitialWindowSize;
+        return this;
+    }
+
+    /**
+     * 是否对http请求直接使用h2c.
+     *
+     * @return 是否对http请求直接使用h2c
+     */
+    public boolean isPriorKnowledge() {
+        return priorKnowledge;
+    }
+
+    /**
+     * https请求在ALPN未协商出h2时，是否回退到HTTP/1.1.
+     *
+     * @return 是否回退到HTTP/1.1
+     */
+    public boolean isFallbackToHttp1() {
+        return fallbackToHttp1;
+    }
+
+    /**
+     * 获得单个连接上允许的最大并发stream数.
+     *
+     * @return 最大并发stream数
+     */
+    public int getMaxConcurrentStreams() {
+        return maxConcurrentStreams;
+    }
+
+    /**
+     * 获得stream的初始流控窗口大小.
+     *
+     * @return 初始流控窗口大小(字节)
+     */
+    public int getInitialWindowSize() {
+        return initialWindowSize;
+    }
+
+    H2Config h2Config() {
+        return H2Config.custom().setMaxConcurrentStreams(maxConcurrentStreams)
+                .setInitialWindowSize(initialWindowSize).setPushEnabled(false).build();
+    }
+
+    HttpVersionPolicy versionPolicy(final HttpHost host) {
+        if (host != null && URIScheme.HTTPS.same(host.getSchemeName())) {
+            return fallbackToHttp1 ? HttpVersionPolicy.NEGOTIATE : HttpVersionPolicy.FORCE_HTTP_2;
+        } else {
+            return priorKnowledge ? HttpVersionPolicy.FORCE_HTTP_2 : HttpVersionPolicy.FORCE_HTTP_1;
+        }
+    }
+
+    TlsConfig tlsConfig(final HttpHost host) {
+        return TlsConfig.custom().setVersionPolicy(versionPolicy(host)).build();
+    }
+}
@@ -1,28 +1,53 @@
 package io.github.dbstarll.utils.http.client;
 
+import io.github.dbstarll.utils.http.client.request.LoadBalancingUriResolver;
+import io.github.dbstarll.utils.http.client.response.ResponseHandlerFactory;
+import org.apache.hc.client5.http.DnsResolver;
 import org.apache.hc.client5.http.HttpRequestRetryStrategy;
+import org.apache.hc.client5.http.SystemDefaultDnsResolver;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
 import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.ChainElement;
+import org.apache.hc.client5.http.impl.DefaultHttpRequestRetryStrategy;
 import org.apache.hc.client5.http.impl.InMemoryDnsResolver;
 import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
 import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
 import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
 import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
 import org.apache.hc.client5.http.io.HttpClientConnectionManager;
 import org.apache.hc.client5.http.nio.AsyncClientConnectionManager;
+import org.apache.hc.client5.http.nio.AsyncConnectionEndpoint;
+import org.apache.hc.client5.http.socket.ConnectionSocketFactory;
+import org.apache.hc.client5.http.socket.PlainConnectionSocketFactory;
 import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.client5.http.ssl.DefaultClientTlsStrategy;
 import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
 import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactoryBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
 import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.config.Lookup;
+import org.apache.hc.core5.http.config.Registry;
+import org.apache.hc.core5.http.config.RegistryBuilder;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
 import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.reactor.ConnectionInitiator;
 import org.apache.hc.core5.reactor.IOReactorConfig;
 import org.apache.hc.core5.ssl.SSLContexts;
 import org.apache.hc.core5.util.Timeout;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -31,8 +56,12 @@ import java.net.Proxy.Type;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
+import static org.apache.commons.lang3.Validate.notNull;
+
 public final class HttpClientFactory {
     public static final Timeout DEFAULT_TIMEOUT = Timeout.ofSeconds(2);
     private SSLContext sslContext;
@@ -42,6 +71,23 @@ public final class HttpClientFactory {
     private Timeout connectTimeout = DEFAULT_TIMEOUT;
     private boolean automaticRetries = true;
     private HttpRequestRetryStrategy retryStrategy;
+    private RetryPolicy retryPolicy;
+    private ConnectionPoolPolicy poolPolicy = new ConnectionPoolPolicy();
+    private Http2Policy http2Policy;
+    private DnsResolver dnsResolver;
+    private HappyEyeballsPolicy happyEyeballsPolicy;
+    private HttpResponseCache responseCache;
+    private SingleFlightPolicy singleFlightPolicy;
+    private LoadBalancingUriResolver loadBalancingUriResolver;
+    private ConcurrencyLimiter concurrencyLimiter;
+    private CircuitBreaker circuitBreaker;
+    private HedgingPolicy hedgingPolicy;
+    private HttpClientMetrics metrics;
+    private RequestTimingPolicy requestTimingPolicy;
+    private TlsPolicy tlsPolicy;
+    private WarmUpPolicy warmUpPolicy;
+    private CompressionPolicy compressionPolicy;
+    private SSLContext defaultSslContext;
 
     /**
      * Assigns {@link SSLContext} instance.
@@ -120,6 +166,197 @@ public final class HttpClientFactory {
         return this;
     }
 
+    /**
+     * 设置带有重试预算的重试策略，若不为null，则忽略retryStrategy和automaticRetries配置.
+     * build、buildAsync和buildHttp2Async构造的client共享同一个重试预算.
+     *
+     * @param newRetryPolicy 带有重试预算的重试策略
+     * @return this HttpClientFactory
+     */
+    public HttpClientFactory setRetryPolicy(final RetryPolicy newRetryPolicy) {
+        this.retryPolicy = newRetryPolicy;
+        return this;
+    }
+
+    /**
+     * 设置连接池策略.
+     *
+     * @param newPoolPolicy 连接池策略
+     * @return this HttpClientFactory
+     */
+    public HttpClientFactory setConnectionPoolPolicy(final ConnectionPoolPolicy newPoolPolicy) {
+        this.poolPolicy = notNull(newPoolPolicy, "poolPolicy is null");
+        return this;
+    }
+
+    /**
+     * 设置HTTP/2策略，若不为null，则buildAsync构造的client会按策略使用HTTP/2.
+     *
+     * @param newHttp2Policy HTTP/2策略
+     * @return this HttpClientFactory
+     */
+    public HttpClientFactory setHttp2Policy(final Http2Policy newHttp2Policy) {
+        this.http2Policy = newHttp2Policy;
+        return this;
+    }
+
+    /**
+     * 设置DnsResolver，同时用于build和buildAsync构造的client，比如{@link CachingDnsResolver}.
+     * 通过socks代理并由代理来解析域名时，不使用此DnsResolver.
+     *
+     * @param newDnsResolver DnsResolver，为null时使用系统默认的解析
+     * @return this HttpClientFactory
+     */
+    public HttpClientFactory setDnsResolver(final DnsResolver newDnsResolver) {
+        this.dnsResolver = newDnsResolver;
+        return this;
+    }
+
+    /**
+     * 设置Happy Eyeballs策略，若不为null，则build和buildAsync构造的client在域名解析出多个地址时，
+     * 按RFC 8305的方式交错地并行连接各个地址，使用最先建立的连接.
+     * 通过socks代理连接时，由代理来连接目标地址，不使用此策略.
+     *
+     * @param newHappyEyeballsPolicy Happy Eyeballs策略
+     * @return this HttpClientFactory
+     */
+    public HttpClientFactory setHappyEyeballsPolicy(final HappyEyeballsPolicy newHappyEyeballsPolicy) {
+        this.happyEyeballsPolicy = newHappyEyeballsPolicy;
+        return this;
+    }
+
+    /**
+     * 设置HTTP响应缓存，若不为null，则build、buildAsync和buildHttp2Async构造的client按Cache-Control缓存GET请求的响应，
+     * 多个client可以共享同一个缓存.
+     *
+     * @param newResponseCache HTTP响应缓存
+     * @return this HttpClientFactory
+     */
+    public HttpClientFactory setResponseCache(final HttpResponseCache newResponseCache) {
+        this.responseCache = newResponseCache;
+        return this;
+    }
+
+    /**
+     * 设置合并相同请求的策略，若不为null，则build构造的client将同时进行中的相同GET/HEAD请求合并为一次请求，
+     * 响应内容共享给所有等待的调用方；buildExecutor构造的ClassicHttpExecutor同时使用此策略来合并ResponseHandler的执行.
+     *
+     * @param newSingleFlightPolicy 合并相同请求的策略
+     * @return this HttpClientFactory
+     */
+    public HttpClientFactory setSingleFlightPolicy(final SingleFlightPolicy newSingleFlightPolicy) {
+        this.singleFlightPolicy = newSingleFlightPolicy;
+        return this;
+    }
+
+    /**
+     * 设置接收请求结果的LoadBalancingUriResolver，若不为null，则build、buildAsync和buildHttp2Async构造的client
+     * 将每次请求的耗时和成败反馈给它，用于延迟感知的选择以及摘除不健康的endpoint.
+     *
+     * @param newLoadBalancingUriResolver LoadBalancingUriResolver
+     * @return this HttpClientFactory
+     */
+    public HttpClientFactory setLoadBalancingUriResolver(final LoadBalancingUriResolver newLoadBalancingUriResolver) {
+        this.loadBalancingUriResolver = newLoadBalancingUriResolver;
+        return this;
+    }
+
+    /**
+     * 设置自适应的并发请求数限制，若不为null，则build、buildAsync和buildHttp2Async构造的client共享此限制，
+     * 超出并发上限的请求立即失败或者排队等待.
+     *
+     * @param newConcurrencyLimiter ConcurrencyLimiter
+     * @return this HttpClientFactory
+     */
+    public HttpClientFactory setConcurrencyLimiter(final ConcurrencyLimiter newConcurrencyLimiter) {
+        this.concurrencyLimiter = newConcurrencyLimiter;
+        return this;
+    }
+
+    /**
+     * 设置按目标主机的断路器，若不为null，则build、buildAsync和buildHttp2Async构造的client共享此断路器，
+     * 断开期间的请求立即失败，重试策略也不再重试.
+     *
+     * @param newCircuitBreaker CircuitBreaker
+     * @return this HttpClientFactory
+     */
+    public HttpClientFactory setCircuitBreaker(final CircuitBreaker newCircuitBreaker) {
+        this.circuitBreaker = newCircuitBreaker;
+        return this;
+    }
+
+    /**
+     * 设置对冲请求的策略，若不为null，则buildAsync和buildHttp2Async构造的client对没有请求体的幂等请求，
+     * 在延迟内没有收到响应时发出第二次请求，先收到响应的请求胜出.
+     *
+     * @param newHedgingPolicy 对冲请求的策略
+     * @return this HttpClientFactory
+     */
+    public HttpClientFactory setHedgingPolicy(final HedgingPolicy newHedgingPolicy) {
+        this.hedgingPolicy = newHedgingPolicy;
+        return this;
+    }
+
+    /**
+     * 设置采集连接池和请求指标的HttpClientMetrics，若不为null，则build、buildAsync和buildHttp2Async构造的client
+     * 记录每个路由的连接数、租用连接的等待时间、请求延迟以及请求体和响应体的字节数.
+     *
+     * @param newMetrics HttpClientMetrics
+     * @return this HttpClientFactory
+     */
+    public HttpClientFactory setMetrics(final HttpClientMetrics newMetrics) {
+        this.metrics = newMetrics;
+        return this;
+    }
+
+    /**
+     * 设置请求分阶段计时的策略，若不为null，则build、buildAsync和buildHttp2Async构造的client为每次请求记录
+     * {@link RequestTimings}，并按策略处理慢请求.
+     *
+     * @param newRequestTimingPolicy 请求分阶段计时的策略
+     * @return this HttpClientFactory
+     */
+    public HttpClientFactory setRequestTimingPolicy(final RequestTimingPolicy newRequestTimingPolicy) {
+        this.requestTimingPolicy = newRequestTimingPolicy;
+        return this;
+    }
+
+    /**
+     * 设置TLS握手的调优策略，若不为null，则build、buildAsync、buildHttp2Async构造的client以及socks代理的连接
+     * 共用同一个SSLContext，并按策略设置会话缓存、协议和加密套件. 未设置SSLContext时使用默认的SSLContext.
+     *
+     * @param newTlsPolicy TLS握手的调优策略
+     * @return this HttpClientFactory
+     */
+    public HttpClientFactory setTlsPolicy(final TlsPolicy newTlsPolicy) {
+        this.tlsPolicy = newTlsPolicy;
+        return this;
+    }
+
+    /**
+     * 设置连接预热策略，若不为null，则build、buildAsync和buildHttp2Async在返回client之前为每个目标主机预热连接，
+     * 返回的async的client已经启动.
+     *
+     * @param newWarmUpPolicy 连接预热策略
+     * @return this HttpClientFactory
+     */
+    public HttpClientFactory setWarmUpPolicy(final WarmUpPolicy newWarmUpPolicy) {
+        this.warmUpPolicy = newWarmUpPolicy;
+        return this;
+    }
+
+    /**
+     * 设置请求和响应的压缩策略，若不为null，则build、buildAsync和buildHttp2Async构造的client声明Accept-Encoding并解码响应体，
+     * 按策略压缩请求体. build构造的client中替换内置的响应解码.
+     *
+     * @param newCompressionPolicy 请求和响应的压缩策略
+     * @return this HttpClientFactory
+     */
+    public HttpClientFactory setCompressionPolicy(final CompressionPolicy newCompressionPolicy) {
+        this.compressionPolicy = newCompressionPolicy;
+        return this;
+    }
+
     /**
      * 构造CloseableHttpClient.
      *
@@ -129,28 +366,74 @@ public final class HttpClientFactory {
     @SafeVarargs
     public final CloseableHttpClient build(final Consumer<HttpClientBuilder>... consumers) {
         final HttpClientBuilder builder = HttpClients.custom().setConnectionManager(buildConnectionManager());
-        if (retryStrategy != null) {
-            builder.setRetryStrategy(retryStrategy);
-        } else if (!automaticRetries) {
+        final HttpRequestRetryStrategy strategy = buildRetryStrategy();
+        if (strategy != null) {
+            builder.setRetryStrategy(strategy);
+        } else {
             builder.disableAutomaticRetries();
         }
+        if (compressionPolicy != null) {
+            // 由CompressionExec代替内置的ContentCompressionExec，与async的client位于执行链中相同的位置
+            builder.disableContentCompression();
+        }
+        addExecInterceptors(ExecChainHandler.class,
+                (name, handler) -> builder.addExecInterceptorBefore(ChainElement.PROTOCOL.name(), name, handler),
+                responseCache == null ? null : new ResponseCacheExec(responseCache),
+                singleFlightPolicy == null ? null : new SingleFlightExec(singleFlightPolicy));
+        poolPolicy.apply(builder);
         Arrays.stream(consumers).forEach(c -> c.accept(builder));
-        return builder.build();
+        final CloseableHttpClient client = builder.build();
+        if (warmUpPolicy != null) {
+            warmUpPolicy.warmUp(client);
+        }
+        return client;
+    }
+
+    /**
+     * 构造ClassicHttpExecutor，以CompletableFuture的方式在虚拟线程上执行classic请求.
+     * 同时执行的请求数与连接池的最大连接数一致，每个目标主机同时执行的请求数与连接池中该主机的最大连接数一致，
+     * 避免线程阻塞在连接池的租约上.
+     *
+     * @param responseHandlerFactory ResponseHandlerFactory
+     * @param consumers              用于对HttpClientBuilder的自定义
+     * @return ClassicHttpExecutor
+     */
+    @SafeVarargs
+    public final ClassicHttpExecutor buildExecutor(final ResponseHandlerFactory responseHandlerFactory,
+                                                   final Consumer<HttpClientBuilder>... consumers) {
+        return new ClassicHttpExecutor(build(consumers), responseHandlerFactory, poolPolicy.getMaxTotal())
+                .setMaxPerRoute(poolPolicy::getMaxPerRoute)
+                .setSingleFlightPolicy(singleFlightPolicy);
     }
 
     private HttpClientConnectionManager buildConnectionManager() {
-        final PoolingHttpClientConnectionManagerBuilder builder = PoolingHttpClientConnectionManagerBuilder.create()
-                .setDefaultConnectionConfig(buildConnectionConfig());
-        if (sslContext != null) {
-            builder.setSSLSocketFactory(SSLConnectionSocketFactoryBuilder.create().setSslContext(sslContext).build());
-        }
-        if (proxy != null && proxy.type() == Type.SOCKS) {
-            builder.setSSLSocketFactory(new ProxyConnectionSocketFactory(sslContext, proxy, resolveFromProxy));
-            if (resolveFromProxy) {
-                builder.setDnsResolver(new FakeDnsResolver());
+        final PoolingHttpClientConnectionManager manager;
+        if (happyEyeballsPolicy != null && !isSocksProxy()) {
+            final Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register(URIScheme.HTTP.id, PlainConnectionSocketFactory.getSocketFactory())
+                    .register(URIScheme.HTTPS.id, buildSslSocketFactory())
+                    .build();
+            manager = new HappyEyeballsConnectionManager(
+                    new HappyEyeballsConnectionOperator(registry, buildDnsResolver(), happyEyeballsPolicy));
+            manager.setDefaultConnectionConfig(buildConnectionConfig());
+        } else {
+            final PoolingHttpClientConnectionManagerBuilder builder = PoolingHttpClientConnectionManagerBuilder
+                    .create().setDefaultConnectionConfig(buildConnectionConfig());
+            if (sslContext != null || tlsPolicy != null || requestTimingPolicy != null) {
+                builder.setSSLSocketFactory(buildSslSocketFactory());
             }
+            if (isSocksProxy()) {
+                builder.setSSLSocketFactory(new ProxyConnectionSocketFactory(buildSslContext(), tlsPolicy, proxy,
+                        resolveFromProxy));
+            }
+            builder.setDnsResolver(buildDnsResolver());
+            manager = builder.build();
         }
-        return builder.build();
+        poolPolicy.apply(manager);
+        if (metrics != null || requestTimingPolicy != null) {
+            return new MeteredConnectionManager(manager, metrics, isSocksProxy());
+        }
+        return manager;
     }
 
     /**
@@ -164,34 +447,212 @@ public final class HttpClientFactory {
         final HttpAsyncClientBuilder builder = HttpAsyncClients.custom()
                 .setConnectionManager(buildConnectionManagerAsync())
                 .setIOReactorConfig(buildIOReactorConfig());
-        if (retryStrategy != null) {
-            builder.setRetryStrategy(retryStrategy);
-        } else if (!automaticRetries) {
+        final HttpRequestRetryStrategy strategy = buildRetryStrategy();
+        if (strategy != null) {
+            builder.setRetryStrategy(strategy);
+        } else {
             builder.disableAutomaticRetries();
         }
+        if (http2Policy != null) {
+            builder.setH2Config(http2Policy.h2Config());
+        }
+        // SingleFlightExec需要读取完整的classic响应体，async的client不合并请求
+        addExecInterceptors(AsyncExecChainHandler.class,
+                (name, handler) -> builder.addExecInterceptorBefore(ChainElement.PROTOCOL.name(), name, handler),
+                responseCache == null ? null : new AsyncResponseCacheExec(responseCache), null);
+        poolPolicy.apply(builder);
         Arrays.stream(consumers).forEach(c -> c.accept(builder));
-        return builder.build();
+        return warmUp(hedging(builder.build()));
+    }
+
+    /**
+     * 构造只使用HTTP/2的CloseableHttpAsyncClient，同一主机的所有请求在单个连接上多路复用.
+     * http请求使用h2c(prior knowledge)，https请求通过ALPN协商h2，不会回退到HTTP/1.1.
+     *
+     * @param consumers 用于对H2AsyncClientBuilder的自定义
+     * @return CloseableHttpAsyncClient
+     */
+    @SafeVarargs
+    public final CloseableHttpAsyncClient buildHttp2Async(final Consumer<H2AsyncClientBuilder>... consumers) {
+        final Http2Policy policy = http2Policy != null ? http2Policy : new Http2Policy();
+        final H2AsyncClientBuilder builder = H2AsyncClientBuilder.create()
+                .setH2Config(policy.h2Config())
+                .setDefaultConnectionConfig(buildConnectionConfig())
+                .setIOReactorConfig(buildIOReactorConfig());
+        if (sslContext != null || tlsPolicy != null) {
+            builder.setTlsStrategy(buildTlsStrategy());
+        }
+        builder.setDnsResolver(buildDnsResolver());
+        final HttpRequestRetryStrategy strategy = buildRetryStrategy();
+        if (strategy != null) {
+            builder.setRetryStrategy(strategy);
+        } else {
+            builder.disableAutomaticRetries();
+        }
+        if (poolPolicy.getEvictIdle() != null) {
+            builder.evictIdleConnections(poolPolicy.getEvictIdle());
+        }
+        // SingleFlightExec需要读取完整的classic响应体，async的client不合并请求
+        addExecInterceptors(AsyncExecChainHandler.class,
+                (name, handler) -> builder.addExecInterceptorBefore(ChainElement.PROTOCOL.name(), name, handler),
+                responseCache == null ? null : new AsyncResponseCacheExec(responseCache), null);
+        Arrays.stream(consumers).forEach(c -> c.accept(builder));
+        return warmUp(hedging(builder.build()));
+    }
+
+    /**
+     * 在PROTOCOL之前按固定的顺序安装执行链中的策略，classic和async的client共用：
+     * COMPRESS → CACHING → SINGLE_FLIGHT → RETRY_BUDGET → CIRCUIT_BREAKER → CONCURRENCY_LIMIT → LOAD_BALANCER
+     * → METRICS → REQUEST_TIMING.
+     * <ul>
+     * <li>COMPRESS位于缓存之前，缓存保存的是编码的响应</li>
+     * <li>SINGLE_FLIGHT位于缓存之后，只合并未命中缓存的请求</li>
+     * <li>CIRCUIT_BREAKER位于并发限制之前，断开期间的请求不占用并发名额</li>
+     * <li>LOAD_BALANCER位于断路器和并发限制之后，本地拒绝的请求不计为endpoint的失败</li>
+     * </ul>
+     *
+     * @param type         ExecChainHandler或者AsyncExecChainHandler
+     * @param interceptors 以指定的名称将handler安装在PROTOCOL之前
+     * @param cache        CACHING的handler，classic和async的实现不同，为null时不安装
+     * @param singleFlight SINGLE_FLIGHT的handler，只用于classic的client，为null时不安装
+     * @param <H>          handler的类型
+     */
+    private <H> void addExecInterceptors(final Class<H> type, final BiConsumer<String, H> interceptors,
+                                         final H cache, final H singleFlight) {
+        addExecInterceptor(interceptors, ChainElement.COMPRESS.name(),
+                compressionPolicy == null ? null : type.cast(new CompressionExec(compressionPolicy)));
+        addExecInterceptor(interceptors, ChainElement.CACHING.name(), cache);
+        addExecInterceptor(interceptors, "SINGLE_FLIGHT", singleFlight);
+        addExecInterceptor(interceptors, "RETRY_BUDGET",
+                retryPolicy == null ? null : type.cast(new RetryBudgetExec(retryPolicy)));
+        addExecInterceptor(interceptors, "CIRCUIT_BREAKER",
+                circuitBreaker == null ? null : type.cast(new CircuitBreakerExec(circuitBreaker)));
+        addExecInterceptor(interceptors, "CONCURRENCY_LIMIT",
+                concurrencyLimiter == null ? null : type.cast(new ConcurrencyLimitExec(concurrencyLimiter)));
+        addExecInterceptor(interceptors, "LOAD_BALANCER", loadBalancingUriResolver == null ? null
+                : type.cast(new LoadBalancerFeedbackExec(loadBalancingUriResolver)));
+        addExecInterceptor(interceptors, "METRICS", metrics == null ? null : type.cast(new MetricsExec(metrics)));
+        addExecInterceptor(interceptors, "REQUEST_TIMING",
+                requestTimingPolicy == null ? null : type.cast(new RequestTimingExec(requestTimingPolicy)));
+    }
+
+    private static <H> void addExecInterceptor(final BiConsumer<String, H> interceptors, final String name,
+                                               final H handler) {
+        if (handler != null) {
+            interceptors.accept(name, handler);
+        }
     }
 
     private AsyncClientConnectionManager buildConnectionManagerAsync() {
-        final PoolingAsyncClientConnectionManagerBuilder builder = PoolingAsyncClientConnectionManagerBuilder.create()
-                .setDefaultConnectionConfig(buildConnectionConfig());
+        final PoolingAsyncClientConnectionManager manager;
+        if (happyEyeballsPolicy != null && !isSocksProxy()) {
+            final Registry<TlsStrategy> registry = RegistryBuilder.<TlsStrategy>create()
+                    .register(URIScheme.HTTPS.id, sslContext != null || tlsPolicy != null ? buildTlsStrategy()
+                            : DefaultClientTlsStrategy.getDefault())
+                    .build();
+            manager = new HappyEyeballsAsyncConnectionManager(registry, buildDnsResolver(), happyEyeballsPolicy);
+            manager.setDefaultConnectionConfig(buildConnectionConfig());
+            if (http2Policy != null) {
+                manager.setTlsConfigResolver(http2Policy::tlsConfig);
+            }
+        } else {
+            final PoolingAsyncClientConnectionManagerBuilder builder = PoolingAsyncClientConnectionManagerBuilder
+                    .create().setDefaultConnectionConfig(buildConnectionConfig());
+            if (sslContext != null || tlsPolicy != null) {
+                builder.setTlsStrategy(buildTlsStrategy());
+            }
+            builder.setDnsResolver(buildDnsResolver());
+            if (http2Policy != null) {
+                builder.setTlsConfigResolver(http2Policy::tlsConfig);
+            }
+            manager = builder.build();
+        }
+        poolPolicy.apply(manager);
+        if (metrics != null || requestTimingPolicy != null) {
+            return new MeteredAsyncConnectionManager(manager, metrics, isSocksProxy());
+        }
+        return manager;
+    }
+
+    private CloseableHttpAsyncClient hedging(final CloseableHttpAsyncClient client) {
+        return hedgingPolicy != null ? new HedgingHttpAsyncClient(client, hedgingPolicy) : client;
+    }
+
+    private CloseableHttpAsyncClient warmUp(final CloseableHttpAsyncClient client) {
+        if (warmUpPolicy != null) {
+            warmUpPolicy.warmUp(client);
+        }
+        return client;
+    }
+
+    private HttpRequestRetryStrategy buildRetryStrategy() {
+        final HttpRequestRetryStrategy strategy = retryPolicy != null ? retryPolicy
+                : retryStrategy != null ? retryStrategy
+                : automaticRetries ? DefaultHttpRequestRetryStrategy.INSTANCE : null;
+        if (strategy != null && circuitBreaker != null) {
+            return new CircuitBreakerRetryStrategy(strategy, circuitBreaker);
+        }
+        return strategy;
+    }
+
+    private boolean isSocksProxy() {
+        return proxy != null && proxy.type() == Type.SOCKS;
+    }
+
+    private DnsResolver buildDnsResolver() {
+        if (isSocksProxy() && resolveFromProxy) {
+            return new FakeDnsResolver();
+        } else if (requestTimingPolicy != null) {
+            return new TimingDnsResolver(dnsResolver != null ? dnsResolver : SystemDefaultDnsResolver.INSTANCE);
+        }
+        return dnsResolver;
+    }
+
+    private SSLConnectionSocketFactory buildSslSocketFactory() {
+        if (tlsPolicy != null || requestTimingPolicy != null) {
+            return new TlsConnectionSocketFactory(buildSslContext(), tlsPolicy);
+        } else if (sslContext != null) {
+            return SSLConnectionSocketFactoryBuilder.create().setSslContext(sslContext).build();
+        }
+        return SSLConnectionSocketFactory.getSocketFactory();
+    }
+
+    private TlsStrategy buildTlsStrategy() {
+        if (tlsPolicy != null) {
+            return tlsPolicy.tlsStrategy(buildSslContext());
+        }
+        return ClientTlsStrategyBuilder.create().setSslContext(sslContext).build();
+    }
+
+    /**
+     * 未设置SSLContext时，由此factory构造的所有client共用同一个默认的SSLContext，以便复用TLS会话.
+     */
+    private SSLContext buildSslContext() {
+        final SSLContext context;
         if (sslContext != null) {
-            builder.setTlsStrategy(ClientTlsStrategyBuilder.create().setSslContext(sslContext).build());
+            context = sslContext;
+        } else {
+            if (defaultSslContext == null) {
+                defaultSslContext = SSLContexts.createDefault();
+            }
+            context = defaultSslContext;
         }
-        if (proxy != null && proxy.type() == Type.SOCKS && resolveFromProxy) {
-            builder.setDnsResolver(new FakeDnsResolver());
+        if (tlsPolicy != null) {
+            tlsPolicy.apply(context);
         }
-        return builder.build();
+        return context;
     }
 
     private ConnectionConfig buildConnectionConfig() {
-        return ConnectionConfig.custom().setSocketTimeout(socketTimeout).setConnectTimeout(connectTimeout).build();
+        final ConnectionConfig.Builder builder = ConnectionConfig.custom().setSocketTimeout(socketTimeout)
+                .setConnectTimeout(connectTimeout);
+        poolPolicy.apply(builder);
+        return builder.build();
     }
 
     private IOReactorConfig buildIOReactorConfig() {
         final IOReactorConfig.Builder builder = IOReactorConfig.custom().setSoTimeout(socketTimeout);
-        if (proxy != null && proxy.type() == Type.SOCKS) {
+        if (isSocksProxy()) {
             builder.setSocksProxyAddress(proxy.address());
         }
         return builder.build();
@@ -205,12 +666,75 @@ public final class HttpClientFactory {
         }
     }
 
-    private static class ProxyConnectionSocketFactory extends SSLConnectionSocketFactory {
+    private static class HappyEyeballsConnectionManager extends PoolingHttpClientConnectionManager {
+        HappyEyeballsConnectionManager(final HappyEyeballsConnectionOperator operator) {
+            super(operator, PoolConcurrencyPolicy.STRICT, PoolReusePolicy.LIFO, null, null);
+        }
+    }
+
+    private static class HappyEyeballsAsyncConnectionManager extends PoolingAsyncClientConnectionManager {
+        private final DnsResolver dnsResolver;
+        private final HappyEyeballsPolicy policy;
+
+        HappyEyeballsAsyncConnectionManager(final Lookup<TlsStrategy> tlsStrategyLookup,
+                                            final DnsResolver dnsResolver, final HappyEyeballsPolicy policy) {
+            super(tlsStrategyLookup, PoolConcurrencyPolicy.STRICT, PoolReusePolicy.LIFO, null, null,
+                    HappyEyeballsConnectionInitiator.deferredDnsResolver(dnsResolver));
+            this.dnsResolver = dnsResolver;
+            this.policy = policy;
+        }
+
+        @Override
+        public Future<AsyncConnectionEndpoint> connect(final AsyncConnectionEndpoint endpoint,
+                                                       final ConnectionInitiator connectionInitiator,
+                                                       final Timeout connectTimeout, final Object attachment,
+                                                       final HttpContext context,
+                                                       final FutureCallback<AsyncConnectionEndpoint> callback) {
+            return super.connect(endpoint, new HappyEyeballsConnectionInitiator(connectionInitiator, dnsResolver,
+                    policy), connectTimeout, attachment, context, callback);
+        }
+    }
+
+    /**
+     * 按TlsPolicy设置协议和加密套件并统计握手，同时在TLS握手开始前记录时间戳的SSLConnectionSocketFactory.
+     */
+    private static class TlsConnectionSocketFactory extends SSLConnectionSocketFactory {
+        private final TlsPolicy tlsPolicy;
+
+        TlsConnectionSocketFactory(final SSLContext sslContext, final TlsPolicy tlsPolicy) {
+            super(sslContext, tlsPolicy != null ? tlsPolicy.protocols(sslContext) : null,
+                    tlsPolicy != null ? tlsPolicy.cipherSuites(sslContext) : null, null);
+            this.tlsPolicy = tlsPolicy;
+        }
+
+        @Override
+        public Socket createLayeredSocket(final Socket socket, final String target, final int port,
+                                          final Object attachment, final HttpContext context) throws IOException {
+            final long start = System.currentTimeMillis();
+            final Socket layered = super.createLayeredSocket(socket, target, port, attachment, context);
+            if (tlsPolicy != null && layered instanceof SSLSocket) {
+                tlsPolicy.onHandshake(((SSLSocket) layered).getSession(), start);
+            }
+            return layered;
+        }
+
+        @Override
+        protected void prepareSocket(final SSLSocket socket) throws IOException {
+            super.prepareSocket(socket);
+            final RequestTimings timings = RequestTimings.current();
+            if (timings != null) {
+                timings.start(RequestTimings.Phase.TLS, System.nanoTime());
+            }
+        }
+    }
+
+    private static class ProxyConnectionSocketFactory extends TlsConnectionSocketFactory {
         private final Proxy proxy;
         private final boolean resolveFromProxy;
 
-        ProxyConnectionSocketFactory(final SSLContext sslContext, final Proxy proxy, final boolean resolveFromProxy) {
-            super(sslContext != null ? sslContext : SSLContexts.createDefault());
+        ProxyConnectionSocketFactory(final SSLContext sslContext, final TlsPolicy tlsPolicy, final Proxy proxy,
+                                     final boolean resolveFromProxy) {
+            super(sslContext, tlsPolicy);
             this.proxy = proxy;
             this.resolveFromProxy = resolveFromProxy;
         }
@@ -0,0 +1,201 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.core5.pool.ConnPoolControl;
+import org.apache.hc.core5.pool.PoolStats;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 连接池以及每个路由的请求指标，通过{@link HttpClientFactory#setMetrics(HttpClientMetrics)}用于factory构造的client.
+ * <ul>
+ * <li>连接池：每个路由租出、空闲、等待中的连接数，以及租用连接的等待时间. buildHttp2Async构造的client没有连接池</li>
+ * <li>请求：按路由和响应码类别统计从发出请求到收到响应头的延迟</li>
+ * <li>流量：按路由统计请求体和响应体的字节数</li>
+ * </ul>
+ * 延迟使用对数分桶的直方图记录，精度为10%，记录的开销与样本数无关.
+ * 通过{@link HttpClientMetricsListener}可以将事件桥接到其他监控系统，而不引入额外的依赖.
+ */
+public final class HttpClientMetrics {
+    private static final int STATUS_CLASSES = 6;
+
+    private final Set<ConnPoolControl<HttpRoute>> pools = Collections.newSetFromMap(new WeakHashMap<>());
+    private final Map<HttpRoute, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private final Function<HttpRoute, RouteMetrics> factory = route -> new RouteMetrics();
+    private final List<HttpClientMetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 添加接收事件的HttpClientMetricsListener.
+     *
+     * @param listener HttpClientMetricsListener
+     * @return this HttpClientMetrics
+     */
+    public HttpClientMetrics addListener(final HttpClientMetricsListener listener) {
+        listeners.add(notNull(listener, "listener is null"));
+        return this;
+    }
+
+    /**
+     * 获得所有出现过的路由，包括连接池中的路由.
+     *
+     * @return 路由的集合
+     */
+    public Set<HttpRoute> getRoutes() {
+        final Set<HttpRoute> result = new HashSet<>(routes.keySet());
+        for (ConnPoolControl<HttpRoute> pool : pools()) {
+            result.addAll(pool.getRoutes());
+        }
+        return result;
+    }
+
+    /**
+     * 获得所有连接池合计的连接数.
+     *
+     * @return 连接数统计
+     */
+    public PoolStats getTotalPoolStats() {
+        return sum(null);
+    }
+
+    /**
+     * 获得指定路由在所有连接池中合计的连接数.
+     *
+     * @param route 路由
+     * @return 连接数统计
+     */
+    public PoolStats getPoolStats(final HttpRoute route) {
+        return sum(notNull(route, "route is null"));
+    }
+
+    /**
+     * 获得指定路由租用连接的等待时间.
+     *
+     * @param route 路由
+     * @return 等待时间的直方图
+     */
+    public LatencyHistogram getLeaseWait(final HttpRoute route) {
+        final RouteMetrics metrics = routes.get(notNull(route, "route is null"));
+        return metrics == null ? new LatencyHistogram(0) : metrics.leaseWait.snapshot();
+    }
+
+    /**
+     * 获得指定路由和响应码类别的请求延迟.
+     *
+     * @param route       路由
+     * @param statusClass 响应码的类别，1至5分别对应1xx至5xx，0对应失败的请求
+     * @return 请求延迟的直方图
+     */
+    public LatencyHistogram getLatency(final HttpRoute route, final int statusClass) {
+        isTrue(statusClass >= 0 && statusClass < STATUS_CLASSES, "statusClass must be in [0, 5]: %d", statusClass);
+        final RouteMetrics metrics = routes.get(notNull(route, "route is null"));
+        return metrics == null ? new LatencyHistogram(0) : metrics.latencies[statusClass].snapshot();
+    }
+
+    /**
+     * 获得指定路由发送的请求体字节数.
+     *
+     * @param route 路由
+     * @return 字节数
+     */
+    public long getBytesSent(final HttpRoute route) {
+        final RouteMetrics metrics = routes.get(notNull(route, "route is null"));
+        return metrics == null ? 0 : metrics.sent.sum();
+    }
+
+    /**
+     * 获得指定路由接收的响应体字节数.
+     *
+     * @param route 路由
+     * @return 字节数
+     */
+    public long getBytesReceived(final HttpRoute route) {
+        final RouteMetrics metrics = routes.get(notNull(route, "route is null"));
+        return metrics == null ? 0 : metrics.received.sum();
+    }
+
+    /**
+     * 登记factory构造的连接池，连接池被回收后不再统计.
+     */
+    void register(final ConnPoolControl<HttpRoute> pool) {
+        synchronized (pools) {
+            pools.add(pool);
+        }
+    }
+
+    void onLease(final HttpRoute route, final long waitNanos, final boolean leased) {
+        routes.computeIfAbsent(route, factory).leaseWait.record(waitNanos);
+        for (HttpClientMetricsListener listener : listeners) {
+            listener.onLease(route, waitNanos, leased);
+        }
+    }
+
+    /**
+     * 记录收到响应头或者请求失败.
+     *
+     * @param route        路由
+     * @param code         响应码，请求失败时为-1
+     * @param latencyNanos 延迟
+     */
+    void onResponse(final HttpRoute route, final int code, final long latencyNanos) {
+        final int statusClass = code < 0 ? 0 : Math.max(1, Math.min(STATUS_CLASSES - 1, code / 100));
+        routes.computeIfAbsent(route, factory).latencies[statusClass].record(latencyNanos);
+        for (HttpClientMetricsListener listener : listeners) {
+            listener.onResponse(route, statusClass, latencyNanos);
+        }
+    }
+
+    void onTransfer(final HttpRoute route, final long bytesSent, final long bytesReceived) {
+        final RouteMetrics metrics = routes.computeIfAbsent(route, factory);
+        metrics.sent.add(bytesSent);
+        metrics.received.add(bytesReceived);
+        for (HttpClientMetricsListener listener : listeners) {
+            listener.onTransfer(route, bytesSent, bytesReceived);
+        }
+    }
+
+    private Set<ConnPoolControl<HttpRoute>> pools() {
+        synchronized (pools) {
+            return new HashSet<>(pools);
+        }
+    }
+
+    private PoolStats sum(final HttpRoute route) {
+        int leased = 0;
+        int pending = 0;
+        int available = 0;
+        int max = 0;
+        for (ConnPoolControl<HttpRoute> pool : pools()) {
+            final PoolStats stats = route == null ? pool.getTotalStats() : pool.getStats(route);
+            leased += stats.getLeased();
+            pending += stats.getPending();
+            available += stats.getAvailable();
+            max += stats.getMax();
+        }
+        return new PoolStats(leased, pending, available, max);
+    }
+
+    private static final class RouteMetrics {
+        private final LatencyHistogram leaseWait = new LatencyHistogram(0);
+        private final LatencyHistogram[] latencies = new LatencyHistogram[STATUS_CLASSES];
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder received = new LongAdder();
+
+        private RouteMetrics() {
+            for (int i = 0; i < STATUS_CLASSES; i++) {
+                latencies[i] = new LatencyHistogram(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.HttpRoute;
+
+/**
+ * 接收{@link HttpClientMetrics}采集的事件，用于将指标桥接到Micrometer、JMX等监控系统.
+ * 事件在I/O线程或者请求线程上同步回调，实现应当尽量轻量且不抛出异常.
+ */
+public interface HttpClientMetricsListener {
+    /**
+     * 从连接池租用连接结束.
+     *
+     * @param route     路由
+     * @param waitNanos 等待的纳秒数
+     * @param leased    是否成功租到连接
+     */
+    default void onLease(final HttpRoute route, final long waitNanos, final boolean leased) {
+    }
+
+    /**
+     * 收到响应头，或者请求失败.
+     *
+     * @param route        路由
+     * @param statusClass  响应码的类别，1至5分别对应1xx至5xx，请求失败时为0
+     * @param latencyNanos 从发出请求到收到响应头的纳秒数
+     */
+    default void onResponse(final HttpRoute route, final int statusClass, final long latencyNanos) {
+    }
+
+    /**
+     * 发送或者接收了请求体、响应体的数据.
+     *
+     * @param route         路由
+     * @param bytesSent     本次发送的字节数
+     * @param bytesReceived 本次接收的字节数
+     */
+    default void onTransfer(final HttpRoute route, final long bytesSent, final long bytesReceived) {
+    }
+}
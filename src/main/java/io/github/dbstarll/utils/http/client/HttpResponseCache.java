@@ -0,0 +1,617 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.utils.DateUtils;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.MessageHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.Method;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * 进程内的HTTP响应缓存，通过{@link HttpClientFactory#setResponseCache(HttpResponseCache)}同时用于classic和async的client.
+ * <ul>
+ * <li>只缓存GET请求的响应，遵循请求和响应的Cache-Control(no-store、no-cache、max-age)、Expires、Age以及Vary</li>
+ * <li>过期或请求要求重新验证时，以ETag/Last-Modified发送条件请求，收到304时以缓存的内容响应并刷新缓存</li>
+ * <li>缓存总量按字节限制，按LRU淘汰，并以TinyLFU的方式判断新的响应是否值得替换访问频率更高的缓存</li>
+ * <li>可选地将较大的内容放入内存映射文件，不占用堆内存</li>
+ * <li>缓存的内容以{@link io.github.dbstarll.utils.http.client.response.SharedBufferEntity}共享给调用方，不复制</li>
+ * </ul>
+ * 成功的非安全请求(POST、PUT、DELETE等)会使同一uri的缓存失效.
+ * 缓存可以在多个client之间共享，因此不缓存private的响应；带有Authorization的请求只存取public、s-maxage
+ * 或者must-revalidate的响应. 缓存位于client添加Cookie和认证信息之前，由client自动添加的认证信息不在此列，
+ * 使用者需要保证此类响应由服务端标记为private或者no-store.
+ */
+public final class HttpResponseCache {
+    public static final long DEFAULT_MAX_BYTES = 16L << 20;
+    public static final int DEFAULT_MAX_ENTRY_BYTES = 1 << 20;
+    public static final int DEFAULT_SPILL_THRESHOLD = 64 << 10;
+
+    private static final long MAX_FRESHNESS_LIFETIME = TimeUnit.DAYS.toSeconds(365);
+    private static final int[] CACHEABLE_STATUS = {200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501};
+    private static final String[] CONDITIONAL_HEADERS = {HttpHeaders.IF_MATCH, HttpHeaders.IF_NONE_MATCH,
+            HttpHeaders.IF_MODIFIED_SINCE, HttpHeaders.IF_UNMODIFIED_SINCE, HttpHeaders.IF_RANGE, HttpHeaders.RANGE};
+    private static final String[] UNMODIFIABLE_HEADERS = {HttpHeaders.CONTENT_LENGTH,
+            HttpHeaders.CONTENT_ENCODING, HttpHeaders.TRANSFER_ENCODING, HttpHeaders.CONTENT_RANGE};
+
+    private final LongSupplier nanoClock;
+    private final Map<String, CachedResponse> entries = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, CachedResponse> lru = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private int maxEntryBytes = DEFAULT_MAX_ENTRY_BYTES;
+    private int spillThreshold = DEFAULT_SPILL_THRESHOLD;
+    private Path spillDirectory;
+    private long maxSpillBytes;
+    private long bytes;
+    private long spillBytes;
+    private volatile FrequencySketch sketch;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder validations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * 构造HttpResponseCache.
+     */
+    public HttpResponseCache() {
+        this(System::nanoTime);
+    }
+
+    HttpResponseCache(final LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * 设置缓存在堆内存中的最大字节数.
+     *
+     * @param newMaxBytes 最大字节数
+     * @return this HttpResponseCache
+     */
+    public HttpResponseCache setMaxBytes(final long newMaxBytes) {
+        isTrue(newMaxBytes > 0, "maxBytes must be positive: %d", newMaxBytes);
+        this.maxBytes = newMaxBytes;
+        this.sketch = null;
+        return this;
+    }
+
+    /**
+     * 设置单个响应内容的最大字节数，超出的响应不缓存.
+     *
+     * @param newMaxEntryBytes 单个响应内容的最大字节数
+     * @return this HttpResponseCache
+     */
+    public HttpResponseCache setMaxEntryBytes(final int newMaxEntryBytes) {
+        isTrue(newMaxEntryBytes > 0, "maxEntryBytes must be positive: %d", newMaxEntryBytes);
+        this.maxEntryBytes = newMaxEntryBytes;
+        return this;
+    }
+
+    /**
+     * 设置内存映射文件所在的目录，以及内存映射文件的最大字节数. 内容超过spillThreshold的响应将放入内存映射文件，
+     * 文件在映射后立即删除，只占用page cache.
+     *
+     * @param newSpillDirectory 内存映射文件所在的目录，为null时不使用内存映射文件
+     * @param newMaxSpillBytes  内存映射文件的最大字节数
+     * @return this HttpResponseCache
+     */
+    public HttpResponseCache setSpill(final Path newSpillDirectory, final long newMaxSpillBytes) {
+        isTrue(newSpillDirectory == null || newMaxSpillBytes > 0, "maxSpillBytes must be positive: %d",
+                newMaxSpillBytes);
+        this.spillDirectory = newSpillDirectory;
+        this.maxSpillBytes = newSpillDirectory == null ? 0 : newMaxSpillBytes;
+        return this;
+    }
+
+    /**
+     * 设置放入内存映射文件的响应内容的最小字节数.
+     *
+     * @param newSpillThreshold 放入内存映射文件的最小字节数
+     * @return this HttpResponseCache
+     */
+    public HttpResponseCache setSpillThreshold(final int newSpillThreshold) {
+        isTrue(newSpillThreshold >= 0, "spillThreshold must not be negative: %d", newSpillThreshold);
+        this.spillThreshold = newSpillThreshold;
+        return this;
+    }
+
+    int getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    long now() {
+        return nanoClock.getAsLong();
+    }
+
+    static String key(final HttpHost target, final HttpRequest request) {
+        return target.toURI() + request.getRequestUri();
+    }
+
+    /**
+     * 请求是否可以由缓存响应：GET请求，且不是no-store、条件请求或Range请求.
+     */
+    static boolean isServable(final HttpRequest request) {
+        if (!Method.GET.isSame(request.getMethod()) || directives(request).containsKey("no-store")) {
+            return false;
+        }
+        for (String name : CONDITIONAL_HEADERS) {
+            if (request.containsHeader(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 请求是否要求重新验证，即使缓存尚未过期.
+     */
+    static boolean requiresRevalidation(final HttpRequest request) {
+        final Map<String, String> directives = directives(request);
+        if (directives.containsKey("no-cache") || "0".equals(directives.get("max-age"))) {
+            return true;
+        }
+        final Header pragma = request.getFirstHeader(HttpHeaders.PRAGMA);
+        return pragma != null && pragma.getValue().toLowerCase(Locale.ROOT).contains("no-cache");
+    }
+
+    CachedResponse lookup(final String key, final HttpRequest request) {
+        sketch().increment(key);
+        final CachedResponse cached = entries.get(key);
+        if (cached == null || !cached.matches(request)
+                || request.containsHeader(HttpHeaders.AUTHORIZATION) && !cached.isShared()) {
+            return null;
+        }
+        if (lock.tryLock()) {
+            // 竞争时放弃调整访问顺序，读取不因淘汰的簿记而阻塞
+            try {
+                lru.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return cached;
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    static void addValidators(final HttpRequest request, final CachedResponse cached) {
+        final String etag = cached.getFirstHeader(HttpHeaders.ETAG);
+        if (etag != null) {
+            request.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        }
+        final String lastModified = cached.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+        if (lastModified != null) {
+            request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+    }
+
+    /**
+     * 响应是否可以缓存.
+     *
+     * @param contentLength 响应内容的长度，未知时为-1
+     */
+    boolean isStorable(final HttpRequest request, final HttpResponse response, final long contentLength) {
+        if (!isServable(request) || contentLength > maxEntryBytes || !isCacheableStatus(response.getCode())
+                || response.containsHeader(HttpHeaders.CONTENT_RANGE)) {
+            return false;
+        }
+        final Map<String, String> directives = directives(response);
+        if (directives.containsKey("no-store") || directives.containsKey("private")
+                || request.containsHeader(HttpHeaders.AUTHORIZATION) && !isShared(directives)) {
+            return false;
+        }
+        for (String name : varyNames(response)) {
+            if ("*".equals(name)) {
+                return false;
+            }
+        }
+        return freshnessLifetime(response, directives) > 0 || response.containsHeader(HttpHeaders.ETAG)
+                || response.containsHeader(HttpHeaders.LAST_MODIFIED);
+    }
+
+    /**
+     * 响应是否明确允许共享给带有Authorization的请求.
+     */
+    static boolean isShared(final Map<String, String> directives) {
+        return directives.containsKey("public") || directives.containsKey("s-maxage")
+                || directives.containsKey("must-revalidate");
+    }
+
+    private static boolean isCacheableStatus(final int code) {
+        for (int status : CACHEABLE_STATUS) {
+            if (status == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 缓存响应，返回缓存的响应；内容超出限制或未被准入时返回null.
+     *
+     * @param body         响应内容，没有内容时为null
+     * @param responseTime 收到响应时的nanoTime
+     */
+    CachedResponse store(final String key, final HttpRequest request, final HttpResponse response,
+                         final ByteBuffer body, final long responseTime) {
+        final int length = body == null ? 0 : body.remaining();
+        if (length > maxEntryBytes) {
+            return null;
+        }
+        final Map<String, String> vary = new HashMap<>();
+        for (String name : varyNames(response)) {
+            vary.put(name, headerValues(request, name));
+        }
+        final boolean spill = spillDirectory != null && length > spillThreshold;
+        final ByteBuffer content;
+        try {
+            content = spill ? spill(body) : body;
+        } catch (IOException ex) {
+            return null;
+        }
+        final CachedResponse cached = new CachedResponse(key, response, content,
+                vary.isEmpty() ? Collections.emptyMap() : vary, responseTime,
+                freshnessLifetime(response, directives(response)), age(response), spill);
+        return admit(cached) ? cached : null;
+    }
+
+    /**
+     * 以304响应中的header更新缓存的响应，内容保持不变.
+     */
+    CachedResponse revalidated(final CachedResponse cached, final HttpResponse notModified,
+                               final long responseTime) {
+        validations.increment();
+        final BasicHttpResponse merged = new BasicHttpResponse(cached.getCode());
+        merged.setHeaders(cached.getHeaders());
+        merged.removeHeaders(HttpHeaders.AGE);
+        for (Header header : notModified.getHeaders()) {
+            if (!isUnmodifiable(header.getName())) {
+                merged.removeHeaders(header.getName());
+            }
+        }
+        for (Header header : notModified.getHeaders()) {
+            if (!isUnmodifiable(header.getName())) {
+                merged.addHeader(header);
+            }
+        }
+        final CachedResponse updated = new CachedResponse(cached.getKey(), merged, cached.getBody(),
+                cached.getVary(), responseTime, freshnessLifetime(merged, directives(merged)), age(merged),
+                cached.isSpilled());
+        final Map<String, String> directives = directives(merged);
+        if (directives.containsKey("no-store") || directives.containsKey("private")) {
+            remove(cached.getKey());
+            return updated;
+        }
+        return admit(updated) ? updated : cached;
+    }
+
+    private static boolean isUnmodifiable(final String name) {
+        for (String header : UNMODIFIABLE_HEADERS) {
+            if (header.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 成功的非安全请求使同一uri的缓存失效.
+     */
+    void invalidate(final HttpHost target, final HttpRequest request, final HttpResponse response) {
+        final String method = request.getMethod();
+        if (response.getCode() < HttpStatus.SC_BAD_REQUEST && !Method.GET.isSame(method)
+                && !Method.HEAD.isSame(method) && !Method.OPTIONS.isSame(method) && !Method.TRACE.isSame(method)) {
+            remove(key(target, request));
+        }
+    }
+
+    void remove(final String key) {
+        lock.lock();
+        try {
+            final CachedResponse removed = lru.remove(key);
+            if (removed != null) {
+                entries.remove(key);
+                release(removed);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean admit(final CachedResponse cached) {
+        lock.lock();
+        try {
+            // 新的响应被接纳之后才替换已有的响应，被拒绝时保留已有的响应
+            final CachedResponse existing = lru.get(cached.getKey());
+            final long capacity = cached.isSpilled() ? maxSpillBytes : maxBytes;
+            final long used = cached.isSpilled() ? spillBytes : bytes;
+            if (cached.getWeight() > capacity) {
+                return false;
+            }
+            final List<CachedResponse> victims = new ArrayList<>();
+            long freed = existing != null && existing.isSpilled() == cached.isSpilled() ? existing.getWeight() : 0;
+            final Iterator<CachedResponse> iterator = lru.values().iterator();
+            while (used - freed + cached.getWeight() > capacity && iterator.hasNext()) {
+                final CachedResponse victim = iterator.next();
+                if (victim != existing && victim.isSpilled() == cached.isSpilled()) {
+                    victims.add(victim);
+                    freed += victim.getWeight();
+                }
+            }
+            if (existing == null && !victims.isEmpty()) {
+                // TinyLFU：新的响应不比将被淘汰的响应更常被访问时，不予缓存
+                final int frequency = sketch().frequency(cached.getKey());
+                for (CachedResponse victim : victims) {
+                    if (sketch().frequency(victim.getKey()) > frequency) {
+                        return false;
+                    }
+                }
+            }
+            if (existing != null) {
+                lru.remove(existing.getKey());
+                entries.remove(existing.getKey());
+                release(existing);
+            }
+            for (CachedResponse victim : victims) {
+                lru.remove(victim.getKey());
+                entries.remove(victim.getKey());
+                release(victim);
+                evictions.increment();
+            }
+            lru.put(cached.getKey(), cached);
+            entries.put(cached.getKey(), cached);
+            if (cached.isSpilled()) {
+                spillBytes += cached.getWeight();
+            } else {
+                bytes += cached.getWeight();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(final CachedResponse cached) {
+        if (cached.isSpilled()) {
+            spillBytes -= cached.getWeight();
+        } else {
+            bytes -= cached.getWeight();
+        }
+    }
+
+    private ByteBuffer spill(final ByteBuffer body) throws IOException {
+        final Path file = Files.createTempFile(spillDirectory, "http-cache-", ".body");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, body.remaining());
+            mapped.put(body.duplicate());
+            // 通过Buffer调用，避免在Java 8上运行时找不到ByteBuffer的协变方法
+            ((Buffer) mapped).flip();
+            return mapped.asReadOnlyBuffer();
+        } finally {
+            try {
+                Files.delete(file);
+            } catch (IOException ex) {
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    private FrequencySketch sketch() {
+        FrequencySketch current = sketch;
+        if (current == null) {
+            synchronized (this) {
+                if (sketch == null) {
+                    sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, maxBytes >> 10));
+                }
+                current = sketch;
+            }
+        }
+        return current;
+    }
+
+    static Map<String, String> directives(final MessageHeaders message) {
+        final Header[] headers = message.getHeaders(HttpHeaders.CACHE_CONTROL);
+        if (headers.length == 0) {
+            return Collections.emptyMap();
+        }
+        final Map<String, String> directives = new HashMap<>();
+        for (Header header : headers) {
+            for (String directive : header.getValue().split(",")) {
+                final int split = directive.indexOf('=');
+                final String name = (split < 0 ? directive : directive.substring(0, split)).trim()
+                        .toLowerCase(Locale.ROOT);
+                if (!name.isEmpty()) {
+                    final String value = split < 0 ? "" : directive.substring(split + 1).trim();
+                    directives.put(name, value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")
+                            ? value.substring(1, value.length() - 1) : value);
+                }
+            }
+        }
+        return directives;
+    }
+
+    private static List<String> varyNames(final HttpResponse response) {
+        final List<String> names = new ArrayList<>();
+        for (Header header : response.getHeaders(HttpHeaders.VARY)) {
+            for (String name : header.getValue().split(",")) {
+                if (!name.trim().isEmpty()) {
+                    names.add(name.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return names;
+    }
+
+    static String headerValues(final HttpRequest request, final String name) {
+        final Header[] headers = request.getHeaders(name);
+        if (headers.length == 0) {
+            return null;
+        } else if (headers.length == 1) {
+            return headers[0].getValue();
+        }
+        final StringBuilder builder = new StringBuilder();
+        for (Header header : headers) {
+            builder.append(builder.length() == 0 ? "" : ",").append(header.getValue());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 响应的新鲜期(秒)，no-cache时为0，没有max-age和Expires时为-1.
+     */
+    private static long freshnessLifetime(final HttpResponse response, final Map<String, String> directives) {
+        if (directives.containsKey("no-cache")) {
+            return 0;
+        } else if (directives.containsKey("max-age")) {
+            return Math.min(MAX_FRESHNESS_LIFETIME, Math.max(0, parseSeconds(directives.get("max-age"))));
+        }
+        final Header expires = response.getFirstHeader(HttpHeaders.EXPIRES);
+        if (expires == null) {
+            return -1;
+        }
+        final Instant expiresAt = DateUtils.parseStandardDate(expires.getValue());
+        if (expiresAt == null) {
+            return 0;
+        }
+        final Header date = response.getFirstHeader(HttpHeaders.DATE);
+        final Instant dateAt = date == null ? null : DateUtils.parseStandardDate(date.getValue());
+        final long lifetime = expiresAt.getEpochSecond() - (dateAt != null ? dateAt : Instant.now()).getEpochSecond();
+        return Math.min(MAX_FRESHNESS_LIFETIME, Math.max(0, lifetime));
+    }
+
+    private static long age(final HttpResponse response) {
+        final Header age = response.getFirstHeader(HttpHeaders.AGE);
+        return age == null ? 0 : Math.max(0, parseSeconds(age.getValue()));
+    }
+
+    private static long parseSeconds(final String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * 清除所有缓存的响应.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            lru.clear();
+            entries.clear();
+            bytes = 0;
+            spillBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获得当前缓存的响应数.
+     *
+     * @return 缓存的响应数
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 获得缓存在堆内存中占用的字节数.
+     *
+     * @return 堆内存中占用的字节数
+     */
+    public long getBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获得缓存在内存映射文件中占用的字节数.
+     *
+     * @return 内存映射文件中占用的字节数
+     */
+    public long getSpillBytes() {
+        lock.lock();
+        try {
+            return spillBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获得直接以未过期的缓存响应的次数.
+     *
+     * @return 命中次数
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * 获得未找到可用的缓存而请求服务端的次数.
+     *
+     * @return 未命中次数
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 获得条件请求返回304，以缓存的内容响应的次数.
+     *
+     * @return 重新验证成功的次数
+     */
+    public long getValidatedCount() {
+        return validations.sum();
+    }
+
+    /**
+     * 获得因超出最大字节数而被淘汰的次数.
+     *
+     * @return 淘汰次数
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+}
@@ -0,0 +1,332 @@
+package io.github.dbstarll.utils.http.client;
+
+import java.io.Closeable;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * 使用对象池中的Inflater解码gzip或者deflate数据，输入可以被任意分段，同时用于classic的InputStream和async的consumer.
+ * <ul>
+ * <li>gzip：解析头部，校验尾部的CRC32和长度，支持多个member首尾相接</li>
+ * <li>deflate：按照前两个字节判断是zlib格式还是raw deflate，兼容不规范的服务器</li>
+ * </ul>
+ * 调用方通过{@link #setInput(byte[], int, int)}提供输入，反复调用{@link #decode(byte[], int, int)}直到返回0，
+ * 此时输入已被全部消费.
+ */
+final class InflatingDecoder implements Closeable {
+    private static final int FTEXT = 1;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int GZIP_HEADER_SIZE = 10;
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int MASK_BYTE = 0xff;
+    private static final int Z_DEFLATED = 8;
+
+    private enum State {
+        HEADER, DETECT, BODY, TRAILER, MEMBER_END, END
+    }
+
+    private enum HeaderStep {
+        FIXED, EXTRA_LENGTH, EXTRA, NAME, COMMENT, HCRC
+    }
+
+    private final CodecPool pool;
+    private final boolean gzip;
+    private final CRC32 crc;
+
+    private State state;
+    private HeaderStep headerStep = HeaderStep.FIXED;
+    private final byte[] header = new byte[GZIP_HEADER_SIZE];
+    private int headerCount;
+    private int skip;
+    private int flags;
+
+    private Inflater inflater;
+    private boolean nowrap;
+
+    private byte[] input;
+    private int position;
+    private int limit;
+    private final byte[] leftover = new byte[1];
+    private boolean hasLeftover;
+
+    /**
+     * 构造InflatingDecoder.
+     *
+     * @param pool 对象池
+     * @param gzip 为true时解码gzip，否则解码deflate
+     */
+    InflatingDecoder(final CodecPool pool, final boolean gzip) {
+        this.pool = pool;
+        this.gzip = gzip;
+        this.crc = gzip ? new CRC32() : null;
+        this.state = gzip ? State.HEADER : State.DETECT;
+    }
+
+    /**
+     * 提供输入. 输入的数组在{@link #decode(byte[], int, int)}返回0之前必须保持不变，之后不再被引用.
+     */
+    void setInput(final byte[] b, final int off, final int len) {
+        if (hasLeftover) {
+            // 上一段输入只剩下一个字节，不足以判断格式，与本段输入合并
+            hasLeftover = false;
+            final byte[] merged = new byte[1 + len];
+            merged[0] = leftover[0];
+            System.arraycopy(b, off, merged, 1, len);
+            this.input = merged;
+            this.position = 0;
+            this.limit = merged.length;
+        } else {
+            this.input = b;
+            this.position = off;
+            this.limit = off + len;
+        }
+    }
+
+    /**
+     * 判断是否需要更多的输入.
+     *
+     * @return 已提供的输入是否已被全部消费
+     */
+    boolean needsInput() {
+        if (state == State.BODY) {
+            return position >= limit && inflater.needsInput();
+        }
+        return position >= limit || state == State.END;
+    }
+
+    /**
+     * 判断数据是否在完整的边界上结束，即最后一个member或者deflate流已经完整解码.
+     *
+     * @return 数据是否完整
+     */
+    boolean isComplete() {
+        return state == State.MEMBER_END || state == State.END;
+    }
+
+    /**
+     * 判断deflate流是否已经结束，之后的输入被忽略.
+     *
+     * @return deflate流是否已经结束
+     */
+    boolean isFinished() {
+        return state == State.END;
+    }
+
+    /**
+     * 解码已提供的输入.
+     *
+     * @param out 输出缓冲区
+     * @param off 输出的起始位置
+     * @param len 最多输出的字节数
+     * @return 输出的字节数，为0时需要更多的输入或者已经结束
+     * @throws ZipException 数据格式错误
+     */
+    int decode(final byte[] out, final int off, final int len) throws ZipException {
+        while (true) {
+            switch (state) {
+                case HEADER:
+                    if (!header()) {
+                        return 0;
+                    }
+                    acquire(true);
+                    crc.reset();
+                    state = State.BODY;
+                    break;
+                case DETECT:
+                    if (limit - position < 2) {
+                        if (position < limit) {
+                            // 复制剩下的一个字节，调用方的数组在返回后可能被重用
+                            leftover[0] = input[position];
+                            hasLeftover = true;
+                            position = limit;
+                        }
+                        return 0;
+                    }
+                    final int cmf = input[position] & MASK_BYTE;
+                    final int flg = input[position + 1] & MASK_BYTE;
+                    // zlib头部：CM为8且(CMF * 256 + FLG)是31的倍数，否则按raw deflate解码
+                    acquire(!((cmf & 0x0f) == Z_DEFLATED && (cmf << 8 | flg) % 31 == 0));
+                    state = State.BODY;
+                    break;
+                case BODY:
+                    final int n = inflate(out, off, len);
+                    if (!inflater.finished()) {
+                        return n;
+                    }
+                    // Inflater的输入总是截止到limit，剩余的字节属于gzip尾部或者下一个member
+                    position = limit - inflater.getRemaining();
+                    state = gzip ? State.TRAILER : State.END;
+                    headerCount = 0;
+                    if (n > 0) {
+                        return n;
+                    }
+                    break;
+                case TRAILER:
+                    while (headerCount < GZIP_TRAILER_SIZE) {
+                        if (position >= limit) {
+                            return 0;
+                        }
+                        header[headerCount++] = input[position++];
+                    }
+                    if (readInt(header, 0) != crc.getValue()) {
+                        throw new ZipException("Corrupt GZIP trailer");
+                    }
+                    if (readInt(header, 4) != (inflater.getBytesWritten() & 0xffffffffL)) {
+                        throw new ZipException("Corrupt GZIP trailer");
+                    }
+                    inflater.reset();
+                    state = State.MEMBER_END;
+                    break;
+                case MEMBER_END:
+                    if (position >= limit) {
+                        return 0;
+                    }
+                    headerStep = HeaderStep.FIXED;
+                    headerCount = 0;
+                    state = State.HEADER;
+                    break;
+                default:
+                    position = limit;
+                    return 0;
+            }
+        }
+    }
+
+    private int inflate(final byte[] out, final int off, final int len) throws ZipException {
+        if (inflater.needsInput()) {
+            if (position >= limit) {
+                return 0;
+            }
+            inflater.setInput(input, position, limit - position);
+            position = limit;
+        }
+        final int n;
+        try {
+            n = inflater.inflate(out, off, len);
+        } catch (DataFormatException ex) {
+            final String message = ex.getMessage();
+            throw new ZipException(message != null ? message : "Invalid ZLIB data format");
+        }
+        if (n == 0 && inflater.needsDictionary()) {
+            throw new ZipException("ZLIB dictionary missing");
+        }
+        if (gzip) {
+            crc.update(out, off, n);
+        }
+        return n;
+    }
+
+    /**
+     * 逐字节解析gzip头部，头部可以被任意分段.
+     *
+     * @return 头部是否解析完成
+     */
+    private boolean header() throws ZipException {
+        while (true) {
+            switch (headerStep) {
+                case FIXED:
+                    while (headerCount < GZIP_HEADER_SIZE) {
+                        if (position >= limit) {
+                            return false;
+                        }
+                        header[headerCount++] = input[position++];
+                    }
+                    if ((header[0] & MASK_BYTE) != 0x1f || (header[1] & MASK_BYTE) != 0x8b) {
+                        throw new ZipException("Not in GZIP format");
+                    }
+                    if (header[2] != Z_DEFLATED) {
+                        throw new ZipException("Unsupported compression method");
+                    }
+                    flags = header[3] & ~FTEXT;
+                    headerCount = 0;
+                    skip = 0;
+                    headerStep = HeaderStep.EXTRA_LENGTH;
+                    break;
+                case EXTRA_LENGTH:
+                    if ((flags & FEXTRA) != 0) {
+                        while (headerCount < 2) {
+                            if (position >= limit) {
+                                return false;
+                            }
+                            skip |= (input[position++] & MASK_BYTE) << (8 * headerCount++);
+                        }
+                    }
+                    headerStep = HeaderStep.EXTRA;
+                    break;
+                case EXTRA:
+                    final int skipped = Math.min(skip, limit - position);
+                    position += skipped;
+                    skip -= skipped;
+                    if (skip > 0) {
+                        return false;
+                    }
+                    headerStep = HeaderStep.NAME;
+                    break;
+                case NAME:
+                    if ((flags & FNAME) != 0 && !skipZeroTerminated()) {
+                        return false;
+                    }
+                    headerStep = HeaderStep.COMMENT;
+                    break;
+                case COMMENT:
+                    if ((flags & FCOMMENT) != 0 && !skipZeroTerminated()) {
+                        return false;
+                    }
+                    skip = (flags & FHCRC) != 0 ? 2 : 0;
+                    headerStep = HeaderStep.HCRC;
+                    break;
+                default:
+                    final int crcSkipped = Math.min(skip, limit - position);
+                    position += crcSkipped;
+                    skip -= crcSkipped;
+                    return skip == 0;
+            }
+        }
+    }
+
+    private boolean skipZeroTerminated() {
+        while (position < limit) {
+            if (input[position++] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long readInt(final byte[] b, final int off) {
+        return (b[off] & MASK_BYTE | (b[off + 1] & MASK_BYTE) << 8 | (b[off + 2] & MASK_BYTE) << 16
+                | (long) (b[off + 3] & MASK_BYTE) << 24);
+    }
+
+    private void acquire(final boolean newNowrap) {
+        if (inflater != null && nowrap != newNowrap) {
+            pool.release(inflater, nowrap);
+            inflater = null;
+        }
+        if (inflater == null) {
+            inflater = pool.inflater(newNowrap);
+            nowrap = newNowrap;
+        }
+    }
+
+    /**
+     * 将Inflater归还到对象池，可以重复调用.
+     */
+    @Override
+    public void close() {
+        if (inflater != null) {
+            pool.release(inflater, nowrap);
+            inflater = null;
+        }
+        input = null;
+        position = 0;
+        limit = 0;
+        hasLeftover = false;
+        state = State.END;
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.dbstarll.utils.http.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对数线性分桶的延迟直方图，每个2的幂区间再等分为16个桶，相邻桶的边界相差不超过6.25%，覆盖1微秒到70分钟左右的延迟.
+ * 桶的下标由最高位的位置和其后的4位直接得到，记录时只做无锁的原子累加.
+ * 设置了窗口时，样本数达到窗口大小后所有计数减半，使分位数跟随最近的延迟变化.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 31;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final int window;
+
+    /**
+     * 构造LatencyHistogram.
+     *
+     * @param window 窗口大小，为0时不衰减
+     */
+    LatencyHistogram(final int window) {
+        this.window = window;
+    }
+
+    void record(final long nanos) {
+        counts.incrementAndGet(index(TimeUnit.NANOSECONDS.toMicros(nanos)));
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+        // 样本数逐个递增，恰好达到窗口大小的线程负责衰减，衰减期间并发记录的样本照常计入
+        if (total.incrementAndGet() == window) {
+            long removed = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                final long count = counts.getAndUpdate(i, c -> c >> 1);
+                removed += count - (count >> 1);
+            }
+            total.addAndGet(-removed);
+        }
+    }
+
+    /**
+     * 获得当前数据的副本.
+     *
+     * @return 不再变化的LatencyHistogram
+     */
+    LatencyHistogram snapshot() {
+        final LatencyHistogram snapshot = new LatencyHistogram(0);
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            final long count = counts.get(i);
+            snapshot.counts.set(i, count);
+            sum += count;
+        }
+        snapshot.total.set(sum);
+        snapshot.max.set(max.get());
+        return snapshot;
+    }
+
+    /**
+     * 获得样本数.
+     *
+     * @return 样本数
+     */
+    public long count() {
+        return total.get();
+    }
+
+    /**
+     * 获得记录过的最大延迟.
+     *
+     * @return 以纳秒计的延迟，没有样本时返回0
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * 获得分位数所在桶的上界，不超过最大延迟.
+     *
+     * @param percentile 百分位，取值(0, 100]
+     * @return 以纳秒计的延迟，没有样本时返回0
+     */
+    public long percentile(final double percentile) {
+        final long count = total.get();
+        if (count <= 0) {
+            return 0;
+        }
+        final long maxNanos = max.get();
+        final double rank = Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(maxNanos, TimeUnit.MICROSECONDS.toNanos(upperBound(i)));
+            }
+        }
+        return maxNanos;
+    }
+
+    /**
+     * 小于32微秒时每微秒一个桶，之后由最高位的位置确定2的幂区间，最高位之后的4位确定区间内的桶.
+     */
+    static int index(final long micros) {
+        if (micros < SUB_BUCKETS) {
+            return micros < 0 ? 0 : (int) micros;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        final int shift = exponent - SUB_BITS;
+        return (shift + 1) << SUB_BITS | ((int) (micros >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * 桶内的最大值.
+     */
+    static long upperBound(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = (index >>> SUB_BITS) - 1;
+        return ((long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1)) + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.dbstarll.utils.http.client;
+
+import io.github.dbstarll.utils.http.client.request.LoadBalancingUriResolver;
+import org.apache.hc.client5.http.async.AsyncExecCallback;
+import org.apache.hc.client5.http.async.AsyncExecChain;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.nio.AsyncDataConsumer;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 将每次请求的耗时和结果反馈给{@link LoadBalancingUriResolver}的ExecChainHandler，同时用于classic和async的client.
+ * 耗时为收到响应头的时间，IOException以及5xx响应视为失败.
+ */
+final class LoadBalancerFeedbackExec implements ExecChainHandler, AsyncExecChainHandler {
+    private final LoadBalancingUriResolver resolver;
+
+    LoadBalancerFeedbackExec(final LoadBalancingUriResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    @Override
+    public ClassicHttpResponse execute(final ClassicHttpRequest request, final ExecChain.Scope scope,
+                                       final ExecChain chain) throws IOException, HttpException {
+        if (WarmUpPolicy.isWarmUp(scope.clientContext)) {
+            return chain.proceed(request, scope);
+        }
+        final HttpHost target = scope.route.getTargetHost();
+        resolver.onStart(target);
+        final long start = System.nanoTime();
+        boolean success = false;
+        try {
+            final ClassicHttpResponse response = chain.proceed(request, scope);
+            success = isSuccess(response);
+            return response;
+        } finally {
+            resolver.onComplete(target, System.nanoTime() - start, success);
+        }
+    }
+
+    @Override
+    public void execute(final HttpRequest request, final AsyncEntityProducer entityProducer,
+                        final AsyncExecChain.Scope scope, final AsyncExecChain chain,
+                        final AsyncExecCallback asyncExecCallback) throws HttpException, IOException {
+        if (WarmUpPolicy.isWarmUp(scope.clientContext)) {
+            chain.proceed(request, entityProducer, scope, asyncExecCallback);
+            return;
+        }
+        final HttpHost target = scope.route.getTargetHost();
+        final long start = System.nanoTime();
+        final AtomicBoolean completed = new AtomicBoolean();
+        resolver.onStart(target);
+        try {
+            chain.proceed(request, entityProducer, scope, new AsyncExecCallback() {
+                @Override
+                public AsyncDataConsumer handleResponse(final HttpResponse response,
+                                                        final EntityDetails entityDetails)
+                        throws HttpException, IOException {
+                    complete(isSuccess(response));
+                    return asyncExecCallback.handleResponse(response, entityDetails);
+                }
+
+                @Override
+                public void handleInformationResponse(final HttpResponse response)
+                        throws HttpException, IOException {
+                    asyncExecCallback.handleInformationResponse(response);
+                }
+
+                @Override
+                public void completed() {
+                    complete(true);
+                    asyncExecCallback.completed();
+                }
+
+                @Override
+                public void failed(final Exception cause) {
+                    complete(false);
+                    asyncExecCallback.failed(cause);
+                }
+
+                private void complete(final boolean success) {
+                    if (completed.compareAndSet(false, true)) {
+                        resolver.onComplete(target, System.nanoTime() - start, success);
+                    }
+                }
+            });
+        } catch (HttpException | IOException | RuntimeException ex) {
+            if (completed.compareAndSet(false, true)) {
+                resolver.onComplete(target, System.nanoTime() - start, false);
+            }
+            throw ex;
+        }
+    }
+
+    private static boolean isSuccess(final HttpResponse response) {
+        return response.getCode() < HttpStatus.SC_SERVER_ERROR;
+    }
+}
@@ -0,0 +1,215 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.nio.AsyncClientConnectionManager;
+import org.apache.hc.client5.http.nio.AsyncConnectionEndpoint;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.net.NamedEndpoint;
+import org.apache.hc.core5.reactor.ConnectionInitiator;
+import org.apache.hc.core5.reactor.IOSession;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 记录租用连接等待时间以及建立连接耗时的AsyncClientConnectionManager，用于async的client.
+ * 建立连接时包装ConnectionInitiator，以第一个建立的会话作为TCP连接完成、TLS握手开始的时间.
+ */
+final class MeteredAsyncConnectionManager extends MeteredPoolControl implements AsyncClientConnectionManager {
+    private final PoolingAsyncClientConnectionManager manager;
+    private final HttpClientMetrics metrics;
+    private final boolean socks;
+
+    MeteredAsyncConnectionManager(final PoolingAsyncClientConnectionManager manager,
+                                  final HttpClientMetrics metrics, final boolean socks) {
+        super(manager, metrics);
+        this.manager = manager;
+        this.metrics = metrics;
+        this.socks = socks;
+    }
+
+    @Override
+    public Future<AsyncConnectionEndpoint> lease(final String id, final HttpRoute route, final Object state,
+                                                 final Timeout requestTimeout,
+                                                 final FutureCallback<AsyncConnectionEndpoint> callback) {
+        final long start = System.nanoTime();
+        final RequestTimings timings = RequestTimings.current();
+        if (timings != null) {
+            timings.start(RequestTimings.Phase.LEASE, start);
+        }
+        return manager.lease(id, route, state, requestTimeout, new FutureCallback<AsyncConnectionEndpoint>() {
+            @Override
+            public void completed(final AsyncConnectionEndpoint endpoint) {
+                final long now = System.nanoTime();
+                if (metrics != null) {
+                    metrics.onLease(route, now - start, true);
+                }
+                if (timings != null) {
+                    timings.end(RequestTimings.Phase.LEASE, now);
+                }
+                if (callback != null) {
+                    callback.completed(endpoint);
+                }
+            }
+
+            @Override
+            public void failed(final Exception ex) {
+                if (metrics != null) {
+                    metrics.onLease(route, System.nanoTime() - start, false);
+                }
+                if (callback != null) {
+                    callback.failed(ex);
+                }
+            }
+
+            @Override
+            public void cancelled() {
+                if (metrics != null) {
+                    metrics.onLease(route, System.nanoTime() - start, false);
+                }
+                if (callback != null) {
+                    callback.cancelled();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void release(final AsyncConnectionEndpoint endpoint, final Object newState,
+                        final TimeValue validDuration) {
+        manager.release(endpoint, newState, validDuration);
+    }
+
+    @Override
+    public Future<AsyncConnectionEndpoint> connect(final AsyncConnectionEndpoint endpoint,
+                                                   final ConnectionInitiator connectionInitiator,
+                                                   final Timeout connectTimeout, final Object attachment,
+                                                   final HttpContext context,
+                                                   final FutureCallback<AsyncConnectionEndpoint> callback) {
+        final RequestTimings timings = RequestTimings.get(context);
+        if (timings == null) {
+            return manager.connect(endpoint, connectionInitiator, connectTimeout, attachment, context, callback);
+        }
+        final long begin = System.nanoTime();
+        final AtomicBoolean sessionCreated = new AtomicBoolean();
+        final ConnectionInitiator initiator = (remoteEndpoint, remoteAddress, localAddress, timeout, a, cb) ->
+                connectionInitiator.connect(remoteEndpoint, remoteAddress, localAddress, timeout, a,
+                        new FutureCallback<IOSession>() {
+                            @Override
+                            public void completed(final IOSession session) {
+                                // 与DefaultAsyncClientConnectionOperator一致，连接https的主机时在会话建立之后进行TLS握手
+                                if (isHttps(remoteEndpoint) && sessionCreated.compareAndSet(false, true)) {
+                                    timings.start(RequestTimings.Phase.TLS, System.nanoTime());
+                                }
+                                if (cb != null) {
+                                    cb.completed(session);
+                                }
+                            }
+
+                            @Override
+                            public void failed(final Exception ex) {
+                                if (cb != null) {
+                                    cb.failed(ex);
+                                }
+                            }
+
+                            @Override
+                            public void cancelled() {
+                                if (cb != null) {
+                                    cb.cancelled();
+                                }
+                            }
+                        });
+        // 域名解析在调用线程上完成，由TimingDnsResolver记录
+        final RequestTimings previous = RequestTimings.enter(timings);
+        try {
+            return manager.connect(endpoint, initiator, connectTimeout, attachment, context,
+                    new FutureCallback<AsyncConnectionEndpoint>() {
+                        @Override
+                        public void completed(final AsyncConnectionEndpoint result) {
+                            timings.connected(begin, System.nanoTime(), socks);
+                            if (callback != null) {
+                                callback.completed(result);
+                            }
+                        }
+
+                        @Override
+                        public void failed(final Exception ex) {
+                            if (callback != null) {
+                                callback.failed(ex);
+                            }
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            if (callback != null) {
+                                callback.cancelled();
+                            }
+                        }
+                    });
+        } finally {
+            RequestTimings.exit(previous);
+        }
+    }
+
+    private static boolean isHttps(final NamedEndpoint remoteEndpoint) {
+        return remoteEndpoint instanceof HttpHost && URIScheme.HTTPS.same(((HttpHost) remoteEndpoint).getSchemeName());
+    }
+
+    @Override
+    public void upgrade(final AsyncConnectionEndpoint endpoint, final Object attachment, final HttpContext context) {
+        manager.upgrade(endpoint, attachment, context);
+    }
+
+    @Override
+    public void upgrade(final AsyncConnectionEndpoint endpoint, final Object attachment, final HttpContext context,
+                        final FutureCallback<AsyncConnectionEndpoint> callback) {
+        final RequestTimings timings = RequestTimings.get(context);
+        if (timings == null) {
+            manager.upgrade(endpoint, attachment, context, callback);
+            return;
+        }
+        timings.start(RequestTimings.Phase.TLS, System.nanoTime());
+        manager.upgrade(endpoint, attachment, context, new FutureCallback<AsyncConnectionEndpoint>() {
+            @Override
+            public void completed(final AsyncConnectionEndpoint result) {
+                timings.upgraded(System.nanoTime());
+                if (callback != null) {
+                    callback.completed(result);
+                }
+            }
+
+            @Override
+            public void failed(final Exception ex) {
+                if (callback != null) {
+                    callback.failed(ex);
+                }
+            }
+
+            @Override
+            public void cancelled() {
+                if (callback != null) {
+                    callback.cancelled();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close(final CloseMode closeMode) {
+        manager.close(closeMode);
+    }
+
+    @Override
+    public void close() throws IOException {
+        manager.close();
+    }
+}
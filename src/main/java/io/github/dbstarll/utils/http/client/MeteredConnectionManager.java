@@ -0,0 +1,105 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.io.HttpClientConnectionManager;
+import org.apache.hc.client5.http.io.LeaseRequest;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 记录租用连接等待时间以及建立连接耗时的HttpClientConnectionManager，用于classic的client.
+ */
+final class MeteredConnectionManager extends MeteredPoolControl implements HttpClientConnectionManager {
+    private final PoolingHttpClientConnectionManager manager;
+    private final HttpClientMetrics metrics;
+    private final boolean socks;
+
+    MeteredConnectionManager(final PoolingHttpClientConnectionManager manager, final HttpClientMetrics metrics,
+                             final boolean socks) {
+        super(manager, metrics);
+        this.manager = manager;
+        this.metrics = metrics;
+        this.socks = socks;
+    }
+
+    @Override
+    public LeaseRequest lease(final String id, final HttpRoute route, final Timeout requestTimeout,
+                              final Object state) {
+        final long start = System.nanoTime();
+        final RequestTimings timings = RequestTimings.current();
+        if (timings != null) {
+            timings.start(RequestTimings.Phase.LEASE, start);
+        }
+        final LeaseRequest leaseRequest = manager.lease(id, route, requestTimeout, state);
+        return new LeaseRequest() {
+            @Override
+            public ConnectionEndpoint get(final Timeout timeout)
+                    throws InterruptedException, ExecutionException, TimeoutException {
+                boolean leased = false;
+                try {
+                    final ConnectionEndpoint endpoint = leaseRequest.get(timeout);
+                    leased = true;
+                    return endpoint;
+                } finally {
+                    final long now = System.nanoTime();
+                    if (metrics != null) {
+                        metrics.onLease(route, now - start, leased);
+                    }
+                    if (timings != null && leased) {
+                        timings.end(RequestTimings.Phase.LEASE, now);
+                    }
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return leaseRequest.cancel();
+            }
+        };
+    }
+
+    @Override
+    public void release(final ConnectionEndpoint endpoint, final Object newState, final TimeValue validDuration) {
+        manager.release(endpoint, newState, validDuration);
+    }
+
+    @Override
+    public void connect(final ConnectionEndpoint endpoint, final TimeValue connectTimeout, final HttpContext context)
+            throws IOException {
+        final RequestTimings timings = RequestTimings.get(context);
+        if (timings == null) {
+            manager.connect(endpoint, connectTimeout, context);
+        } else {
+            final long begin = System.nanoTime();
+            manager.connect(endpoint, connectTimeout, context);
+            timings.connected(begin, System.nanoTime(), socks);
+        }
+    }
+
+    @Override
+    public void upgrade(final ConnectionEndpoint endpoint, final HttpContext context) throws IOException {
+        manager.upgrade(endpoint, context);
+        final RequestTimings timings = RequestTimings.get(context);
+        if (timings != null) {
+            timings.upgraded(System.nanoTime());
+        }
+    }
+
+    @Override
+    public void close(final CloseMode closeMode) {
+        manager.close(closeMode);
+    }
+
+    @Override
+    public void close() throws IOException {
+        manager.close();
+    }
+}
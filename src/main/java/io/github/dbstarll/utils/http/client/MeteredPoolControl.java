@@ -0,0 +1,78 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.core5.pool.ConnPoolControl;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.util.Set;
+
+/**
+ * 将连接池的控制转发给被包装的连接管理器，使HttpClientBuilder仍然能够清理过期和空闲的连接.
+ * 包装连接管理器用于记录{@link HttpClientMetrics}的指标和{@link RequestTimings}的各个阶段，两者均可以为空.
+ */
+abstract class MeteredPoolControl implements ConnPoolControl<HttpRoute> {
+    private final ConnPoolControl<HttpRoute> pool;
+
+    MeteredPoolControl(final ConnPoolControl<HttpRoute> pool, final HttpClientMetrics metrics) {
+        this.pool = pool;
+        if (metrics != null) {
+            metrics.register(pool);
+        }
+    }
+
+    @Override
+    public void setMaxTotal(final int max) {
+        pool.setMaxTotal(max);
+    }
+
+    @Override
+    public int getMaxTotal() {
+        return pool.getMaxTotal();
+    }
+
+    @Override
+    public void setDefaultMaxPerRoute(final int max) {
+        pool.setDefaultMaxPerRoute(max);
+    }
+
+    @Override
+    public int getDefaultMaxPerRoute() {
+        return pool.getDefaultMaxPerRoute();
+    }
+
+    @Override
+    public void setMaxPerRoute(final HttpRoute route, final int max) {
+        pool.setMaxPerRoute(route, max);
+    }
+
+    @Override
+    public int getMaxPerRoute(final HttpRoute route) {
+        return pool.getMaxPerRoute(route);
+    }
+
+    @Override
+    public void closeIdle(final TimeValue idleTime) {
+        pool.closeIdle(idleTime);
+    }
+
+    @Override
+    public void closeExpired() {
+        pool.closeExpired();
+    }
+
+    @Override
+    public Set<HttpRoute> getRoutes() {
+        return pool.getRoutes();
+    }
+
+    @Override
+    public PoolStats getTotalStats() {
+        return pool.getTotalStats();
+    }
+
+    @Override
+    public PoolStats getStats(final HttpRoute route) {
+        return pool.getStats(route);
+    }
+}
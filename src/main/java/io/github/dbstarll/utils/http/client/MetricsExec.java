@@ -0,0 +1,364 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.async.AsyncExecCallback;
+import org.apache.hc.client5.http.async.AsyncExecChain;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+import org.apache.hc.core5.http.nio.AsyncDataConsumer;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+/**
+ * 将每次请求的延迟和请求体、响应体的字节数记录到{@link HttpClientMetrics}的ExecChainHandler，同时用于classic和async的client.
+ * 位于执行链中最靠近协议处理的位置，重试的每一次请求分别记录.
+ */
+final class MetricsExec implements ExecChainHandler, AsyncExecChainHandler {
+    private final HttpClientMetrics metrics;
+
+    MetricsExec(final HttpClientMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ClassicHttpResponse execute(final ClassicHttpRequest request, final ExecChain.Scope scope,
+                                       final ExecChain chain) throws IOException, HttpException {
+        final HttpRoute route = scope.route;
+        final HttpEntity entity = request.getEntity();
+        if (entity != null) {
+            request.setEntity(new CountingEntity(entity, n -> metrics.onTransfer(route, n, 0)));
+        }
+        final long start = System.nanoTime();
+        final ClassicHttpResponse response;
+        try {
+            response = chain.proceed(request, scope);
+        } catch (IOException | HttpException | RuntimeException ex) {
+            metrics.onResponse(route, -1, System.nanoTime() - start);
+            throw ex;
+        } finally {
+            if (entity != null) {
+                request.setEntity(entity);
+            }
+        }
+        metrics.onResponse(route, response.getCode(), System.nanoTime() - start);
+        final HttpEntity responseEntity = response.getEntity();
+        if (responseEntity != null) {
+            response.setEntity(new CountingEntity(responseEntity, n -> metrics.onTransfer(route, 0, n)));
+        }
+        return response;
+    }
+
+    @Override
+    public void execute(final HttpRequest request, final AsyncEntityProducer entityProducer,
+                        final AsyncExecChain.Scope scope, final AsyncExecChain chain,
+                        final AsyncExecCallback asyncExecCallback) throws HttpException, IOException {
+        final HttpRoute route = scope.route;
+        final long start = System.nanoTime();
+        final AtomicBoolean responded = new AtomicBoolean();
+        final AsyncEntityProducer producer = entityProducer == null ? null
+                : new CountingEntityProducer(entityProducer, n -> metrics.onTransfer(route, n, 0));
+        try {
+            chain.proceed(request, producer, scope, new AsyncExecCallback() {
+                @Override
+                public AsyncDataConsumer handleResponse(final HttpResponse response,
+                                                        final EntityDetails entityDetails)
+                        throws HttpException, IOException {
+                    if (responded.compareAndSet(false, true)) {
+                        metrics.onResponse(route, response.getCode(), System.nanoTime() - start);
+                    }
+                    final AsyncDataConsumer consumer = asyncExecCallback.handleResponse(response, entityDetails);
+                    return consumer == null ? null
+                            : new CountingDataConsumer(consumer, n -> metrics.onTransfer(route, 0, n));
+                }
+
+                @Override
+                public void handleInformationResponse(final HttpResponse response)
+                        throws HttpException, IOException {
+                    asyncExecCallback.handleInformationResponse(response);
+                }
+
+                @Override
+                public void completed() {
+                    asyncExecCallback.completed();
+                }
+
+                @Override
+                public void failed(final Exception cause) {
+                    if (responded.compareAndSet(false, true)) {
+                        metrics.onResponse(route, -1, System.nanoTime() - start);
+                    }
+                    asyncExecCallback.failed(cause);
+                }
+            });
+        } catch (HttpException | IOException | RuntimeException ex) {
+            if (responded.compareAndSet(false, true)) {
+                metrics.onResponse(route, -1, System.nanoTime() - start);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * 在本地累计传输的字节数，读到流的末尾、关闭流或者写完entity时才汇报一次.
+     */
+    private static final class CountingEntity extends HttpEntityWrapper {
+        private final LongConsumer counter;
+        private long count;
+
+        private CountingEntity(final HttpEntity entity, final LongConsumer counter) {
+            super(entity);
+            this.counter = counter;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            final InputStream in = super.getContent();
+            return in == null ? null : new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    final int b = super.read();
+                    if (b >= 0) {
+                        count++;
+                    } else {
+                        report();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    final int n = super.read(b, off, len);
+                    if (n > 0) {
+                        count += n;
+                    } else if (n < 0) {
+                        report();
+                    }
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        report();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void writeTo(final OutputStream outStream) throws IOException {
+            try {
+                super.writeTo(new FilterOutputStream(outStream) {
+                    @Override
+                    public void write(final int b) throws IOException {
+                        out.write(b);
+                        count++;
+                    }
+
+                    @Override
+                    public void write(final byte[] b, final int off, final int len) throws IOException {
+                        out.write(b, off, len);
+                        count += len;
+                    }
+                });
+            } finally {
+                report();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                report();
+            }
+        }
+
+        private void report() {
+            if (count > 0) {
+                final long n = count;
+                count = 0;
+                counter.accept(n);
+            }
+        }
+    }
+
+    /**
+     * 在本地累计写出的字节数，结束请求体或者释放资源时才汇报一次.
+     */
+    private static final class CountingEntityProducer implements AsyncEntityProducer {
+        private final AsyncEntityProducer producer;
+        private final LongConsumer counter;
+        private long count;
+
+        private CountingEntityProducer(final AsyncEntityProducer producer, final LongConsumer counter) {
+            this.producer = producer;
+            this.counter = counter;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return producer.isRepeatable();
+        }
+
+        @Override
+        public void failed(final Exception cause) {
+            producer.failed(cause);
+        }
+
+        @Override
+        public long getContentLength() {
+            return producer.getContentLength();
+        }
+
+        @Override
+        public String getContentType() {
+            return producer.getContentType();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return producer.getContentEncoding();
+        }
+
+        @Override
+        public boolean isChunked() {
+            return producer.isChunked();
+        }
+
+        @Override
+        public Set<String> getTrailerNames() {
+            return producer.getTrailerNames();
+        }
+
+        @Override
+        public int available() {
+            return producer.available();
+        }
+
+        @Override
+        public void produce(final DataStreamChannel channel) throws IOException {
+            producer.produce(new DataStreamChannel() {
+                @Override
+                public void requestOutput() {
+                    channel.requestOutput();
+                }
+
+                @Override
+                public int write(final ByteBuffer src) throws IOException {
+                    final int n = channel.write(src);
+                    if (n > 0) {
+                        count += n;
+                    }
+                    return n;
+                }
+
+                @Override
+                public void endStream(final List<? extends Header> trailers) throws IOException {
+                    channel.endStream(trailers);
+                    report();
+                }
+
+                @Override
+                public void endStream() throws IOException {
+                    channel.endStream();
+                    report();
+                }
+            });
+        }
+
+        @Override
+        public void releaseResources() {
+            try {
+                producer.releaseResources();
+            } finally {
+                report();
+            }
+        }
+
+        private void report() {
+            if (count > 0) {
+                final long n = count;
+                count = 0;
+                counter.accept(n);
+            }
+        }
+    }
+
+    /**
+     * 在本地累计下游成功消费的字节数，响应体结束或者释放资源时才汇报一次.
+     */
+    private static final class CountingDataConsumer implements AsyncDataConsumer {
+        private final AsyncDataConsumer consumer;
+        private final LongConsumer counter;
+        private long count;
+
+        private CountingDataConsumer(final AsyncDataConsumer consumer, final LongConsumer counter) {
+            this.consumer = consumer;
+            this.counter = counter;
+        }
+
+        @Override
+        public void updateCapacity(final CapacityChannel capacityChannel) throws IOException {
+            consumer.updateCapacity(capacityChannel);
+        }
+
+        @Override
+        public void consume(final ByteBuffer src) throws IOException {
+            final int n = src.remaining();
+            consumer.consume(src);
+            // 下游消费成功后才计入；reactor在consume返回后即清空缓冲区，下游也可能直接读取array()而不移动position，
+            // 因此以交给下游的字节数为准
+            count += n;
+        }
+
+        @Override
+        public void streamEnd(final List<? extends Header> trailers) throws HttpException, IOException {
+            // 先汇报再结束，使调用方拿到响应结果时字节数已经计入
+            report();
+            consumer.streamEnd(trailers);
+        }
+
+        @Override
+        public void releaseResources() {
+            try {
+                consumer.releaseResources();
+            } finally {
+                report();
+            }
+        }
+
+        private void report() {
+            if (count > 0) {
+                final long n = count;
+                count = 0;
+                counter.accept(n);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.async.AsyncExecCallback;
+import org.apache.hc.client5.http.async.AsyncExecChain;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+import org.apache.hc.core5.http.nio.AsyncDataConsumer;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * 为每次请求创建{@link RequestTimings}并记录响应头和响应体阶段的ExecChainHandler，同时用于classic和async的client.
+ * 执行期间RequestTimings绑定在当前线程上，供连接池和DnsResolver记录租用连接、域名解析等阶段.
+ */
+final class RequestTimingExec implements ExecChainHandler, AsyncExecChainHandler {
+    private final RequestTimingPolicy policy;
+
+    RequestTimingExec(final RequestTimingPolicy policy) {
+        this.policy = policy;
+    }
+
+    @Override
+    public ClassicHttpResponse execute(final ClassicHttpRequest request, final ExecChain.Scope scope,
+                                       final ExecChain chain) throws IOException, HttpException {
+        final RequestTimings timings = new RequestTimings(request, System.nanoTime());
+        timings.attach(scope.clientContext);
+        final RequestTimings previous = RequestTimings.enter(timings);
+        final ClassicHttpResponse response;
+        try {
+            response = chain.proceed(request, scope);
+        } catch (IOException | HttpException | RuntimeException ex) {
+            complete(timings, true);
+            throw ex;
+        } finally {
+            RequestTimings.exit(previous);
+        }
+        timings.responseHead(System.nanoTime());
+        final HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            complete(timings, false);
+        } else {
+            response.setEntity(new TimingEntity(entity, timings));
+        }
+        return response;
+    }
+
+    @Override
+    public void execute(final HttpRequest request, final AsyncEntityProducer entityProducer,
+                        final AsyncExecChain.Scope scope, final AsyncExecChain chain,
+                        final AsyncExecCallback asyncExecCallback) throws HttpException, IOException {
+        final RequestTimings timings = new RequestTimings(request, System.nanoTime());
+        timings.attach(scope.clientContext);
+        final RequestTimings previous = RequestTimings.enter(timings);
+        try {
+            chain.proceed(request, entityProducer, scope, new AsyncExecCallback() {
+                @Override
+                public AsyncDataConsumer handleResponse(final HttpResponse response,
+                                                        final EntityDetails entityDetails)
+                        throws HttpException, IOException {
+                    timings.responseHead(System.nanoTime());
+                    // 在交给下游之前结束计时，调用方拿到响应时已经可以读取完整的耗时
+                    if (entityDetails == null) {
+                        complete(timings, false);
+                        return asyncExecCallback.handleResponse(response, null);
+                    }
+                    final AsyncDataConsumer consumer = asyncExecCallback.handleResponse(response, entityDetails);
+                    return consumer == null ? null : new TimingDataConsumer(consumer, timings);
+                }
+
+                @Override
+                public void handleInformationResponse(final HttpResponse response)
+                        throws HttpException, IOException {
+                    asyncExecCallback.handleInformationResponse(response);
+                }
+
+                @Override
+                public void completed() {
+                    complete(timings, false);
+                    asyncExecCallback.completed();
+                }
+
+                @Override
+                public void failed(final Exception cause) {
+                    complete(timings, true);
+                    asyncExecCallback.failed(cause);
+                }
+            });
+        } catch (HttpException | IOException | RuntimeException ex) {
+            complete(timings, true);
+            throw ex;
+        } finally {
+            RequestTimings.exit(previous);
+        }
+    }
+
+    private void complete(final RequestTimings timings, final boolean failure) {
+        if (timings.complete(System.nanoTime(), failure)) {
+            policy.onComplete(timings);
+        }
+    }
+
+    /**
+     * 在响应体接收完成时结束计时.
+     */
+    private final class TimingDataConsumer implements AsyncDataConsumer {
+        private final AsyncDataConsumer consumer;
+        private final RequestTimings timings;
+
+        private TimingDataConsumer(final AsyncDataConsumer consumer, final RequestTimings timings) {
+            this.consumer = consumer;
+            this.timings = timings;
+        }
+
+        @Override
+        public void updateCapacity(final CapacityChannel capacityChannel) throws IOException {
+            consumer.updateCapacity(capacityChannel);
+        }
+
+        @Override
+        public void consume(final ByteBuffer src) throws IOException {
+            consumer.consume(src);
+        }
+
+        @Override
+        public void streamEnd(final List<? extends Header> trailers) throws HttpException, IOException {
+            complete(timings, false);
+            consumer.streamEnd(trailers);
+        }
+
+        @Override
+        public void releaseResources() {
+            consumer.releaseResources();
+        }
+    }
+
+    /**
+     * 在响应体读完或者关闭时结束计时.
+     */
+    private final class TimingEntity extends HttpEntityWrapper {
+        private final RequestTimings timings;
+
+        private TimingEntity(final HttpEntity entity, final RequestTimings timings) {
+            super(entity);
+            this.timings = timings;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            final InputStream in = super.getContent();
+            return in == null ? null : new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    return eof(super.read());
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    return eof(super.read(b, off, len));
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        complete(timings, false);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void writeTo(final OutputStream outStream) throws IOException {
+            try {
+                super.writeTo(outStream);
+            } finally {
+                complete(timings, false);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                complete(timings, false);
+            }
+        }
+
+        private int eof(final int n) {
+            if (n < 0) {
+                complete(timings, false);
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.core5.util.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 请求分阶段计时的策略，通过{@link HttpClientFactory#setRequestTimingPolicy(RequestTimingPolicy)}用于factory构造的client.
+ * 每次请求的{@link RequestTimings}保存在HttpContext中；总耗时超过阈值的慢请求按采样率交给慢请求的处理器，
+ * 默认以WARN级别写入日志.
+ * <ul>
+ * <li>LEASE、DNS、CONNECT、SOCKS和TLS阶段通过factory构造的连接池记录，buildHttp2Async构造的client只记录DNS之后的阶段</li>
+ * <li>classic的client在响应体读完或者关闭时结束计时，async的client在响应消费完成时结束计时</li>
+ * </ul>
+ */
+public final class RequestTimingPolicy {
+    public static final TimeValue DEFAULT_SLOW_THRESHOLD = TimeValue.ofSeconds(1);
+    public static final double DEFAULT_SAMPLE_RATE = 0.01;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestTimingPolicy.class);
+
+    private volatile long slowThresholdNanos = DEFAULT_SLOW_THRESHOLD.toNanoseconds();
+    private volatile double sampleRate = DEFAULT_SAMPLE_RATE;
+    private volatile Consumer<RequestTimings> slowRequestHandler = t -> LOGGER.warn("slow request: {}", t);
+
+    private final LongAdder slowRequests = new LongAdder();
+
+    /**
+     * 设置慢请求的阈值.
+     *
+     * @param newSlowThreshold 总耗时超过此阈值的请求视为慢请求
+     * @return this RequestTimingPolicy
+     */
+    public RequestTimingPolicy setSlowThreshold(final TimeValue newSlowThreshold) {
+        isTrue(TimeValue.isNonNegative(newSlowThreshold), "slowThreshold must not be negative: %s",
+                newSlowThreshold);
+        this.slowThresholdNanos = newSlowThreshold.toNanoseconds();
+        return this;
+    }
+
+    /**
+     * 设置慢请求的采样率.
+     *
+     * @param newSampleRate 采样率，取值[0, 1]，为0时不处理慢请求
+     * @return this RequestTimingPolicy
+     */
+    public RequestTimingPolicy setSampleRate(final double newSampleRate) {
+        isTrue(newSampleRate >= 0 && newSampleRate <= 1, "sampleRate must be in [0, 1]: %s", newSampleRate);
+        this.sampleRate = newSampleRate;
+        return this;
+    }
+
+    /**
+     * 设置采样到的慢请求的处理器.
+     *
+     * @param newSlowRequestHandler 慢请求的处理器
+     * @return this RequestTimingPolicy
+     */
+    public RequestTimingPolicy setSlowRequestHandler(final Consumer<RequestTimings> newSlowRequestHandler) {
+        this.slowRequestHandler = notNull(newSlowRequestHandler, "slowRequestHandler is null");
+        return this;
+    }
+
+    /**
+     * 获得慢请求的数量，包括未被采样的慢请求.
+     *
+     * @return 慢请求的数量
+     */
+    public long getSlowRequestCount() {
+        return slowRequests.sum();
+    }
+
+    void onComplete(final RequestTimings timings) {
+        if (timings.getTotal() < slowThresholdNanos) {
+            return;
+        }
+        slowRequests.increment();
+        final double rate = sampleRate;
+        if (rate >= 1 || rate > 0 && ThreadLocalRandom.current().nextDouble() < rate) {
+            slowRequestHandler.accept(timings);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.protocol.HttpContext;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 一次请求各个阶段的耗时，通过{@link HttpClientFactory#setRequestTimingPolicy(RequestTimingPolicy)}启用后，
+ * 请求执行完成时可以通过{@link #get(HttpContext)}从HttpContext中获得. 时间戳均取自{@link System#nanoTime()}.
+ * 重试时只保留最后一次请求的耗时.
+ */
+public final class RequestTimings {
+    /**
+     * 请求的阶段.
+     */
+    public enum Phase {
+        /**
+         * 从连接池租用连接.
+         */
+        LEASE,
+        /**
+         * 域名解析.
+         */
+        DNS,
+        /**
+         * 建立TCP连接.
+         */
+        CONNECT,
+        /**
+         * 通过SOCKS代理建立连接.
+         */
+        SOCKS,
+        /**
+         * TLS握手.
+         */
+        TLS,
+        /**
+         * 从连接就绪到收到响应头.
+         */
+        TTFB,
+        /**
+         * 接收响应体.
+         */
+        BODY
+    }
+
+    private static final String ATTRIBUTE = RequestTimings.class.getName();
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+    private static final int PHASES = Phase.values().length;
+    private static final long UNSET = -1;
+
+    private final String request;
+    private final long startNanos;
+    private final AtomicLongArray offsets = new AtomicLongArray(PHASES * 2 + 1);
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private volatile boolean connected;
+    private volatile boolean failed;
+
+    RequestTimings(final HttpRequest request, final long startNanos) {
+        this.request = request.getMethod() + " " + request.getRequestUri();
+        this.startNanos = startNanos;
+        for (int i = 0; i < offsets.length(); i++) {
+            offsets.set(i, UNSET);
+        }
+    }
+
+    /**
+     * 从HttpContext中获得最近一次请求的耗时.
+     *
+     * @param context HttpContext
+     * @return 请求的耗时，未启用时返回null
+     */
+    public static RequestTimings get(final HttpContext context) {
+        final Object timings = context == null ? null : context.getAttribute(ATTRIBUTE);
+        return timings instanceof RequestTimings ? (RequestTimings) timings : null;
+    }
+
+    /**
+     * 获得请求的方法和URI.
+     *
+     * @return 请求的方法和URI
+     */
+    public String getRequest() {
+        return request;
+    }
+
+    /**
+     * 获得开始执行请求的时间戳.
+     *
+     * @return 时间戳
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * 判断是否记录了指定的阶段.
+     *
+     * @param phase 阶段
+     * @return 是否记录了此阶段
+     */
+    public boolean isRecorded(final Phase phase) {
+        return offsets.get(phase.ordinal() * 2 + 1) != UNSET;
+    }
+
+    /**
+     * 获得指定阶段开始的时间戳.
+     *
+     * @param phase 阶段
+     * @return 时间戳，未记录此阶段时返回请求开始的时间戳
+     */
+    public long getStart(final Phase phase) {
+        return startNanos + Math.max(0, offsets.get(phase.ordinal() * 2));
+    }
+
+    /**
+     * 获得指定阶段结束的时间戳.
+     *
+     * @param phase 阶段
+     * @return 时间戳，未记录此阶段时返回请求开始的时间戳
+     */
+    public long getEnd(final Phase phase) {
+        return startNanos + Math.max(0, offsets.get(phase.ordinal() * 2 + 1));
+    }
+
+    /**
+     * 获得指定阶段的耗时.
+     *
+     * @param phase 阶段
+     * @return 以纳秒计的耗时，未记录此阶段时返回-1
+     */
+    public long getDuration(final Phase phase) {
+        return isRecorded(phase) ? getEnd(phase) - getStart(phase) : -1;
+    }
+
+    /**
+     * 获得请求的总耗时.
+     *
+     * @return 以纳秒计的耗时，请求尚未完成时返回-1
+     */
+    public long getTotal() {
+        final long total = offsets.get(PHASES * 2);
+        return total == UNSET ? -1 : total;
+    }
+
+    /**
+     * 判断请求是否使用了连接池中已经建立的连接.
+     *
+     * @return 没有为此请求建立新连接时返回true
+     */
+    public boolean isConnectionReused() {
+        return !connected;
+    }
+
+    /**
+     * 判断请求是否失败.
+     *
+     * @return 请求是否失败
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(request).append(" total=").append(millis(getTotal()));
+        for (Phase phase : Phase.values()) {
+            if (isRecorded(phase)) {
+                builder.append(' ').append(phase.name().toLowerCase(Locale.ROOT)).append('=')
+                        .append(millis(getDuration(phase)));
+            }
+        }
+        builder.append(" reused=").append(isConnectionReused());
+        if (failed) {
+            builder.append(" failed");
+        }
+        return builder.toString();
+    }
+
+    private static String millis(final long nanos) {
+        return nanos < 0 ? "-"
+                : String.format(Locale.ROOT, "%.1fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    static RequestTimings current() {
+        return CURRENT.get();
+    }
+
+    static RequestTimings enter(final RequestTimings timings) {
+        final RequestTimings previous = CURRENT.get();
+        CURRENT.set(timings);
+        return previous;
+    }
+
+    static void exit(final RequestTimings previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    void attach(final HttpContext context) {
+        context.setAttribute(ATTRIBUTE, this);
+    }
+
+    void start(final Phase phase, final long nanos) {
+        offsets.set(phase.ordinal() * 2, nanos - startNanos);
+    }
+
+    void end(final Phase phase, final long nanos) {
+        offsets.set(phase.ordinal() * 2 + 1, nanos - startNanos);
+    }
+
+    /**
+     * 记录一次新建的连接：DNS之后至TLS握手开始之前为建立连接的阶段，之后为TLS握手的阶段.
+     *
+     * @param begin  开始建立连接的时间戳
+     * @param finish 连接建立完成的时间戳
+     * @param socks  是否通过SOCKS代理建立连接
+     */
+    void connected(final long begin, final long finish, final boolean socks) {
+        final Phase phase = socks ? Phase.SOCKS : Phase.CONNECT;
+        final long tlsStart = offsets.get(Phase.TLS.ordinal() * 2);
+        start(phase, isRecorded(Phase.DNS) ? getEnd(Phase.DNS) : begin);
+        end(phase, tlsStart != UNSET ? startNanos + tlsStart : finish);
+        if (tlsStart != UNSET) {
+            end(Phase.TLS, finish);
+        }
+        connected = true;
+    }
+
+    /**
+     * 记录经过隧道之后的TLS握手完成.
+     */
+    void upgraded(final long nanos) {
+        if (offsets.get(Phase.TLS.ordinal() * 2) != UNSET) {
+            end(Phase.TLS, nanos);
+        }
+    }
+
+    /**
+     * 记录收到响应头，连接就绪的时间为租用连接、建立连接以及TLS握手中最晚结束的时间.
+     */
+    void responseHead(final long nanos) {
+        long ready = startNanos;
+        for (Phase phase : new Phase[]{Phase.LEASE, Phase.CONNECT, Phase.SOCKS, Phase.TLS}) {
+            if (isRecorded(phase)) {
+                ready = Math.max(ready, getEnd(phase));
+            }
+        }
+        start(Phase.TTFB, ready);
+        end(Phase.TTFB, nanos);
+        start(Phase.BODY, nanos);
+    }
+
+    /**
+     * 记录请求结束.
+     *
+     * @return 是否为第一次记录
+     */
+    boolean complete(final long nanos, final boolean failure) {
+        if (!completed.compareAndSet(false, true)) {
+            return false;
+        }
+        if (offsets.get(Phase.BODY.ordinal() * 2) != UNSET) {
+            end(Phase.BODY, nanos);
+        }
+        this.failed = failure;
+        offsets.set(PHASES * 2, nanos - startNanos);
+        return true;
+    }
+}
@@ -0,0 +1,130 @@
+package io.github.dbstarll.utils.http.client;
+
+import io.github.dbstarll.utils.http.client.response.SharedBufferEntity;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.InputStreamEntity;
+import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * classic client中使用{@link HttpResponseCache}的ExecChainHandler.
+ */
+final class ResponseCacheExec implements ExecChainHandler {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final HttpResponseCache cache;
+
+    ResponseCacheExec(final HttpResponseCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public ClassicHttpResponse execute(final ClassicHttpRequest request, final ExecChain.Scope scope,
+                                       final ExecChain chain) throws IOException, HttpException {
+        if (WarmUpPolicy.isWarmUp(scope.clientContext)) {
+            return chain.proceed(request, scope);
+        }
+        final HttpHost target = scope.route.getTargetHost();
+        if (!HttpResponseCache.isServable(request)) {
+            final ClassicHttpResponse response = chain.proceed(request, scope);
+            cache.invalidate(target, request, response);
+            return response;
+        }
+        final String key = HttpResponseCache.key(target, request);
+        final CachedResponse cached = cache.lookup(key, request);
+        if (cached != null && cached.isFresh(cache.now()) && !HttpResponseCache.requiresRevalidation(request)) {
+            cache.recordHit();
+            return cached.toClassicResponse(cache.now());
+        } else if (cached != null && cached.hasValidators()) {
+            final ClassicHttpRequest conditional = ClassicRequestBuilder.copy(request).build();
+            HttpResponseCache.addValidators(conditional, cached);
+            final ClassicHttpResponse response = chain.proceed(conditional, scope);
+            final long responseTime = cache.now();
+            if (response.getCode() == HttpStatus.SC_NOT_MODIFIED) {
+                EntityUtils.consume(response.getEntity());
+                response.close();
+                return cache.revalidated(cached, response, responseTime).toClassicResponse(responseTime);
+            }
+            cache.recordMiss();
+            return store(key, request, response, responseTime);
+        }
+        cache.recordMiss();
+        final ClassicHttpResponse response = chain.proceed(request, scope);
+        return store(key, request, response, cache.now());
+    }
+
+    private ClassicHttpResponse store(final String key, final ClassicHttpRequest request,
+                                      final ClassicHttpResponse response, final long responseTime)
+            throws IOException {
+        final HttpEntity entity = response.getEntity();
+        final long contentLength = entity == null ? 0 : entity.getContentLength();
+        if (!cache.isStorable(request, response, contentLength)) {
+            return response;
+        } else if (entity == null) {
+            cache.store(key, request, response, null, responseTime);
+            return response;
+        }
+        final ByteBuffer body = buffer(response, cache.getMaxEntryBytes());
+        if (body != null) {
+            cache.store(key, request, response, body, responseTime);
+        }
+        return response;
+    }
+
+    /**
+     * 读取完整的响应内容，并以共享内容的{@link SharedBufferEntity}替换响应的entity.
+     * 内容超出maxBytes时，已读取的部分与剩余的流一起作为响应的entity，返回null.
+     *
+     * @param response 有entity的响应
+     * @param maxBytes 内容的最大字节数
+     * @return 响应内容，超出maxBytes时为null
+     */
+    static ByteBuffer buffer(final ClassicHttpResponse response, final int maxBytes) throws IOException {
+        final HttpEntity entity = response.getEntity();
+        final long contentLength = entity.getContentLength();
+        // 长度已知时多留一个字节，读到流的末尾时不需要扩容
+        byte[] buffer = new byte[contentLength >= 0 && contentLength <= maxBytes ? (int) Math.min(contentLength + 1,
+                Integer.MAX_VALUE - 8) : Math.min(BUFFER_SIZE, maxBytes)];
+        int count = 0;
+        final InputStream in = entity.getContent();
+        try {
+            int read = 0;
+            while (read >= 0 && count <= maxBytes) {
+                if (count == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, 1));
+                }
+                read = in.read(buffer, count, buffer.length - count);
+                count += Math.max(read, 0);
+            }
+            if (read >= 0) {
+                response.setEntity(new InputStreamEntity(new SequenceInputStream(
+                        new ByteArrayInputStream(buffer, 0, count), in), -1,
+                        entity.getContentType() == null ? null : ContentType.parse(entity.getContentType()),
+                        entity.getContentEncoding()));
+                return null;
+            }
+        } catch (IOException | RuntimeException ex) {
+            response.close();
+            throw ex;
+        }
+        in.close();
+        final ByteBuffer body = ByteBuffer.wrap(buffer, 0, count);
+        response.setEntity(new SharedBufferEntity(body, entity.getContentType(), entity.getContentEncoding()));
+        return body;
+    }
+}
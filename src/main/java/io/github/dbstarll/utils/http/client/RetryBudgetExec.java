@@ -0,0 +1,81 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.async.AsyncExecCallback;
+import org.apache.hc.client5.http.async.AsyncExecChain;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.nio.AsyncDataConsumer;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+
+import java.io.IOException;
+
+/**
+ * 将成功的请求计入{@link RetryPolicy}重试预算的ExecChainHandler，同时用于classic和async的client.
+ * 5xx以及429以外的响应视为成功.
+ */
+final class RetryBudgetExec implements ExecChainHandler, AsyncExecChainHandler {
+    private final RetryPolicy policy;
+
+    RetryBudgetExec(final RetryPolicy policy) {
+        this.policy = policy;
+    }
+
+    @Override
+    public ClassicHttpResponse execute(final ClassicHttpRequest request, final ExecChain.Scope scope,
+                                       final ExecChain chain) throws IOException, HttpException {
+        if (WarmUpPolicy.isWarmUp(scope.clientContext)) {
+            return chain.proceed(request, scope);
+        }
+        final ClassicHttpResponse response = chain.proceed(request, scope);
+        onResponse(response);
+        return response;
+    }
+
+    @Override
+    public void execute(final HttpRequest request, final AsyncEntityProducer entityProducer,
+                        final AsyncExecChain.Scope scope, final AsyncExecChain chain,
+                        final AsyncExecCallback asyncExecCallback) throws HttpException, IOException {
+        if (WarmUpPolicy.isWarmUp(scope.clientContext)) {
+            chain.proceed(request, entityProducer, scope, asyncExecCallback);
+            return;
+        }
+        chain.proceed(request, entityProducer, scope, new AsyncExecCallback() {
+            @Override
+            public AsyncDataConsumer handleResponse(final HttpResponse response, final EntityDetails entityDetails)
+                    throws HttpException, IOException {
+                onResponse(response);
+                return asyncExecCallback.handleResponse(response, entityDetails);
+            }
+
+            @Override
+            public void handleInformationResponse(final HttpResponse response) throws HttpException, IOException {
+                asyncExecCallback.handleInformationResponse(response);
+            }
+
+            @Override
+            public void completed() {
+                asyncExecCallback.completed();
+            }
+
+            @Override
+            public void failed(final Exception cause) {
+                asyncExecCallback.failed(cause);
+            }
+        });
+    }
+
+    private void onResponse(final HttpResponse response) {
+        final int code = response.getCode();
+        if (code < HttpStatus.SC_SERVER_ERROR && code != HttpStatus.SC_TOO_MANY_REQUESTS) {
+            policy.onSuccess();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.HttpRequestRetryStrategy;
+import org.apache.hc.client5.http.impl.DefaultHttpRequestRetryStrategy;
+import org.apache.hc.client5.http.utils.DateUtils;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * 带有重试预算的重试策略，通过{@link HttpClientFactory#setRetryPolicy(RetryPolicy)}同时用于classic和async的client.
+ * <ul>
+ * <li>可重试的异常、响应码以及幂等性的判断与{@link DefaultHttpRequestRetryStrategy}一致</li>
+ * <li>重试预算以令牌桶实现：每个成功的请求存入一定比例的令牌，每次重试取出一个令牌，令牌不足时不重试；
+ * 另外按时间补充少量令牌，保证低流量时也能重试. 同一个RetryPolicy构造的所有client共享预算</li>
+ * <li>重试间隔为带去相关抖动(decorrelated jitter)的指数退避，响应带有Retry-After时按其等待，超过上限时不重试</li>
+ * </ul>
+ * async的client在调度线程上等待重试间隔，不阻塞I/O线程.
+ */
+public final class RetryPolicy implements HttpRequestRetryStrategy {
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final TimeValue DEFAULT_BASE_BACKOFF = TimeValue.ofMilliseconds(100);
+    public static final TimeValue DEFAULT_MAX_BACKOFF = TimeValue.ofSeconds(10);
+    public static final TimeValue DEFAULT_MAX_RETRY_AFTER = TimeValue.ofMinutes(1);
+    public static final float DEFAULT_BUDGET_PERCENT = 10;
+    public static final int DEFAULT_MIN_RETRIES_PER_SECOND = 1;
+    public static final int DEFAULT_BUDGET_CAPACITY = 100;
+
+    private static final String LAST_BACKOFF = RetryPolicy.class.getName() + ".lastBackoff";
+
+    private final LongSupplier nanoClock;
+    private volatile HttpRequestRetryStrategy classifier = new DefaultHttpRequestRetryStrategy(DEFAULT_MAX_RETRIES,
+            TimeValue.ZERO_MILLISECONDS);
+    private volatile long baseBackoffMillis = DEFAULT_BASE_BACKOFF.toMilliseconds();
+    private volatile long maxBackoffMillis = DEFAULT_MAX_BACKOFF.toMilliseconds();
+    private volatile long maxRetryAfterMillis = DEFAULT_MAX_RETRY_AFTER.toMilliseconds();
+    private double depositPerSuccess = DEFAULT_BUDGET_PERCENT / 100;
+    private double refillPerSecond = DEFAULT_MIN_RETRIES_PER_SECOND;
+    private double capacity = DEFAULT_BUDGET_CAPACITY;
+    private double tokens = DEFAULT_MIN_RETRIES_PER_SECOND;
+    private long refilledAt;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    /**
+     * 构造RetryPolicy.
+     */
+    public RetryPolicy() {
+        this(System::nanoTime);
+    }
+
+    RetryPolicy(final LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.refilledAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * 设置最大重试次数.
+     *
+     * @param newMaxRetries 最大重试次数
+     * @return this RetryPolicy
+     */
+    public RetryPolicy setMaxRetries(final int newMaxRetries) {
+        isTrue(newMaxRetries > 0, "maxRetries must be positive: %d", newMaxRetries);
+        this.classifier = new DefaultHttpRequestRetryStrategy(newMaxRetries, TimeValue.ZERO_MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * 设置指数退避的初始间隔和最大间隔.
+     *
+     * @param newBaseBackoff 初始间隔
+     * @param newMaxBackoff  最大间隔
+     * @return this RetryPolicy
+     */
+    public RetryPolicy setBackoff(final TimeValue newBaseBackoff, final TimeValue newMaxBackoff) {
+        isTrue(TimeValue.isPositive(newBaseBackoff), "baseBackoff must be positive: %s", newBaseBackoff);
+        isTrue(TimeValue.isPositive(newMaxBackoff) && newMaxBackoff.compareTo(newBaseBackoff) >= 0,
+                "maxBackoff must not be less than baseBackoff: %s", newMaxBackoff);
+        this.baseBackoffMillis = Math.max(1, newBaseBackoff.toMilliseconds());
+        this.maxBackoffMillis = Math.max(baseBackoffMillis, newMaxBackoff.toMilliseconds());
+        return this;
+    }
+
+    /**
+     * 设置愿意按Retry-After等待的最长时间，Retry-After超过此时间的响应不重试.
+     *
+     * @param newMaxRetryAfter 最长的等待时间
+     * @return this RetryPolicy
+     */
+    public RetryPolicy setMaxRetryAfter(final TimeValue newMaxRetryAfter) {
+        isTrue(TimeValue.isNonNegative(newMaxRetryAfter), "maxRetryAfter must not be negative: %s",
+                newMaxRetryAfter);
+        this.maxRetryAfterMillis = newMaxRetryAfter.toMilliseconds();
+        return this;
+    }
+
+    /**
+     * 设置重试预算.
+     *
+     * @param percent             重试次数相对于成功请求数的百分比
+     * @param minRetriesPerSecond 每秒补充的重试次数，与请求数无关
+     * @param newCapacity         预算可累积的最大重试次数
+     * @return this RetryPolicy
+     */
+    public synchronized RetryPolicy setBudget(final float percent, final int minRetriesPerSecond,
+                                              final int newCapacity) {
+        isTrue(percent >= 0, "percent must not be negative: %s", percent);
+        isTrue(minRetriesPerSecond >= 0, "minRetriesPerSecond must not be negative: %d", minRetriesPerSecond);
+        isTrue(newCapacity > 0, "capacity must be positive: %d", newCapacity);
+        this.depositPerSuccess = percent / 100;
+        this.refillPerSecond = minRetriesPerSecond;
+        this.capacity = newCapacity;
+        this.tokens = Math.min(newCapacity, minRetriesPerSecond);
+        this.refilledAt = nanoClock.getAsLong();
+        return this;
+    }
+
+    /**
+     * 获得已经进行的重试次数.
+     *
+     * @return 重试次数
+     */
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * 获得因预算不足而放弃的重试次数.
+     *
+     * @return 放弃的重试次数
+     */
+    public long getBudgetExhaustedCount() {
+        return exhausted.sum();
+    }
+
+    /**
+     * 获得当前可用的重试次数.
+     *
+     * @return 可用的重试次数
+     */
+    public synchronized int getAvailableRetries() {
+        refill();
+        return (int) tokens;
+    }
+
+    @Override
+    public boolean retryRequest(final HttpRequest request, final IOException exception, final int execCount,
+                                final HttpContext context) {
+        return classifier.retryRequest(request, exception, execCount, context) && withdraw();
+    }
+
+    @Override
+    public boolean retryRequest(final HttpResponse response, final int execCount, final HttpContext context) {
+        if (!classifier.retryRequest(response, execCount, context)) {
+            return false;
+        }
+        final TimeValue retryAfter = retryAfter(response);
+        return (retryAfter == null || retryAfter.toMilliseconds() <= maxRetryAfterMillis) && withdraw();
+    }
+
+    @Override
+    public TimeValue getRetryInterval(final HttpRequest request, final IOException exception, final int execCount,
+                                      final HttpContext context) {
+        return backoff(context);
+    }
+
+    @Override
+    public TimeValue getRetryInterval(final HttpResponse response, final int execCount, final HttpContext context) {
+        final TimeValue retryAfter = retryAfter(response);
+        return retryAfter != null ? retryAfter : backoff(context);
+    }
+
+    /**
+     * 记录一次成功的请求，向预算中存入令牌.
+     */
+    synchronized void onSuccess() {
+        refill();
+        tokens = Math.min(capacity, tokens + depositPerSuccess);
+    }
+
+    private synchronized boolean withdraw() {
+        refill();
+        if (tokens < 1) {
+            exhausted.increment();
+            return false;
+        }
+        tokens -= 1;
+        retries.increment();
+        return true;
+    }
+
+    private void refill() {
+        final long now = nanoClock.getAsLong();
+        final long elapsed = now - refilledAt;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + refillPerSecond * elapsed / TimeUnit.SECONDS.toNanos(1));
+            refilledAt = now;
+        }
+    }
+
+    /**
+     * 去相关抖动：在初始间隔与上一次间隔的3倍之间随机选择，不超过最大间隔.
+     */
+    private TimeValue backoff(final HttpContext context) {
+        final Object last = context == null ? null : context.getAttribute(LAST_BACKOFF);
+        final long previous = last instanceof Long ? (Long) last : baseBackoffMillis;
+        final long upper = Math.min(maxBackoffMillis, Math.max(baseBackoffMillis, previous) * 3);
+        final long millis = upper <= baseBackoffMillis ? baseBackoffMillis
+                : ThreadLocalRandom.current().nextLong(baseBackoffMillis, upper + 1);
+        if (context != null) {
+            context.setAttribute(LAST_BACKOFF, millis);
+        }
+        return TimeValue.ofMilliseconds(millis);
+    }
+
+    private static TimeValue retryAfter(final HttpResponse response) {
+        final Header header = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        if (header == null) {
+            return null;
+        }
+        final String value = header.getValue().trim();
+        try {
+            return TimeValue.ofSeconds(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException ex) {
+            final Instant date = DateUtils.parseStandardDate(value);
+            return date == null ? null
+                    : TimeValue.ofMilliseconds(Math.max(0, Duration.between(Instant.now(), date).toMillis()));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package io.github.dbstarll.utils.http.client;
+
+import io.github.dbstarll.utils.http.client.response.SharedBufferEntity;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 按{@link SingleFlightPolicy}合并同时进行中的相同请求的ExecChainHandler.
+ * 第一个请求正常执行并读取完整的响应内容，其余相同的请求等待其完成后以共享内容的响应返回，不占用连接.
+ */
+final class SingleFlightExec implements ExecChainHandler {
+    private final SingleFlightPolicy policy;
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+    SingleFlightExec(final SingleFlightPolicy policy) {
+        this.policy = policy;
+    }
+
+    @Override
+    public ClassicHttpResponse execute(final ClassicHttpRequest request, final ExecChain.Scope scope,
+                                       final ExecChain chain) throws IOException, HttpException {
+        if (WarmUpPolicy.isWarmUp(scope.clientContext)) {
+            return chain.proceed(request, scope);
+        }
+        if (!policy.isCoalescible(request)) {
+            return chain.proceed(request, scope);
+        }
+        final String key = policy.key(scope.route.getTargetHost().toURI() + request.getRequestUri(), request);
+        final Flight flight = new Flight();
+        final Flight existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            final ClassicHttpResponse shared = existing.await();
+            return shared != null ? shared : chain.proceed(request, scope);
+        }
+        try {
+            final ClassicHttpResponse response = chain.proceed(request, scope);
+            if (response.getEntity() == null) {
+                flight.complete(response, null);
+            } else {
+                final ByteBuffer body = ResponseCacheExec.buffer(response, policy.getMaxBodyBytes());
+                flight.complete(body != null ? response : null, body);
+            }
+            return response;
+        } catch (IOException | HttpException | RuntimeException ex) {
+            flight.fail(ex);
+            throw ex;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    private static final class Flight {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private int code;
+        private String reasonPhrase;
+        private Header[] headers;
+        private ByteBuffer body;
+        private String contentType;
+        private String contentEncoding;
+        private boolean shared;
+        private Exception failure;
+
+        void complete(final ClassicHttpResponse response, final ByteBuffer content) {
+            if (response != null) {
+                this.code = response.getCode();
+                this.reasonPhrase = response.getReasonPhrase();
+                this.headers = response.getHeaders();
+                final HttpEntity entity = response.getEntity();
+                if (content != null) {
+                    this.body = content;
+                    this.contentType = entity.getContentType();
+                    this.contentEncoding = entity.getContentEncoding();
+                }
+                this.shared = true;
+            }
+            done.countDown();
+        }
+
+        void fail(final Exception ex) {
+            this.failure = ex;
+            done.countDown();
+        }
+
+        /**
+         * 等待第一个请求完成，返回共享内容的响应；内容超出限制而无法共享时返回null.
+         */
+        ClassicHttpResponse await() throws IOException, HttpException {
+            try {
+                done.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for coalesced request");
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof HttpException) {
+                throw (HttpException) failure;
+            } else if (failure != null) {
+                throw (RuntimeException) failure;
+            } else if (!shared) {
+                return null;
+            }
+            final BasicClassicHttpResponse response = new BasicClassicHttpResponse(code, reasonPhrase);
+            response.setHeaders(headers);
+            if (body != null) {
+                response.setEntity(new SharedBufferEntity(body, contentType, contentEncoding));
+            }
+            return response;
+        }
+    }
+}
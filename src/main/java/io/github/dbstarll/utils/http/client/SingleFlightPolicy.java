@@ -0,0 +1,135 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.Method;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.noNullElements;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 合并同时进行中的相同GET/HEAD请求的策略：method、uri以及指定的header都相同的请求只发出一次，
+ * 响应内容共享给所有等待的调用方. Authorization和Cookie始终参与合并判断，携带不同凭证的请求不会合并.
+ */
+public final class SingleFlightPolicy {
+    public static final int DEFAULT_MAX_BODY_BYTES = 1 << 20;
+
+    /**
+     * 合并后的请求如何执行ResponseHandler.
+     */
+    public enum HandlerMode {
+        /**
+         * 每个等待的调用方以自己的ResponseHandler处理共享的响应内容，各自得到独立的结果.
+         */
+        PER_WAITER,
+        /**
+         * 通过{@link ClassicHttpExecutor}执行时，使用相同ResponseHandler的调用方共享同一次处理的结果.
+         */
+        PER_REQUEST
+    }
+
+    private static final String[] CREDENTIAL_HEADERS = {"authorization", "cookie"};
+
+    private Set<String> keyHeaders = keyHeaders();
+    private HandlerMode handlerMode = HandlerMode.PER_WAITER;
+    private int maxBodyBytes = DEFAULT_MAX_BODY_BYTES;
+
+    /**
+     * 设置Authorization和Cookie以外参与合并判断的header，这些header的值不同的请求不会合并，比如Accept.
+     *
+     * @param names header名称
+     * @return this SingleFlightPolicy
+     */
+    public SingleFlightPolicy setKeyHeaders(final String... names) {
+        noNullElements(notNull(names, "names is null"), "names contains null element at index: %d");
+        this.keyHeaders = keyHeaders(names);
+        return this;
+    }
+
+    private static Set<String> keyHeaders(final String... names) {
+        final Set<String> headers = new TreeSet<>(Arrays.asList(CREDENTIAL_HEADERS));
+        for (String name : names) {
+            headers.add(name.toLowerCase(Locale.ROOT));
+        }
+        return Collections.unmodifiableSet(headers);
+    }
+
+    /**
+     * 设置ResponseHandler的执行方式.
+     *
+     * @param newHandlerMode ResponseHandler的执行方式
+     * @return this SingleFlightPolicy
+     */
+    public SingleFlightPolicy setHandlerMode(final HandlerMode newHandlerMode) {
+        this.handlerMode = notNull(newHandlerMode, "handlerMode is null");
+        return this;
+    }
+
+    /**
+     * 设置可共享的响应内容的最大字节数，超出时只有发出请求的调用方得到响应，其他调用方各自重新请求.
+     *
+     * @param newMaxBodyBytes 可共享的响应内容的最大字节数
+     * @return this SingleFlightPolicy
+     */
+    public SingleFlightPolicy setMaxBodyBytes(final int newMaxBodyBytes) {
+        isTrue(newMaxBodyBytes > 0, "maxBodyBytes must be positive: %d", newMaxBodyBytes);
+        this.maxBodyBytes = newMaxBodyBytes;
+        return this;
+    }
+
+    /**
+     * 获得参与合并判断的header，名称均为小写，包括Authorization和Cookie.
+     *
+     * @return 参与合并判断的header
+     */
+    public Set<String> getKeyHeaders() {
+        return keyHeaders;
+    }
+
+    /**
+     * 获得ResponseHandler的执行方式.
+     *
+     * @return ResponseHandler的执行方式
+     */
+    public HandlerMode getHandlerMode() {
+        return handlerMode;
+    }
+
+    /**
+     * 获得可共享的响应内容的最大字节数.
+     *
+     * @return 可共享的响应内容的最大字节数
+     */
+    public int getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    boolean isCoalescible(final HttpRequest request) {
+        return Method.GET.isSame(request.getMethod()) || Method.HEAD.isSame(request.getMethod());
+    }
+
+    /**
+     * 由method、uri以及参与合并判断的header生成请求的key.
+     *
+     * @param uri     请求的完整uri
+     * @param request 请求
+     * @return 请求的key
+     */
+    String key(final String uri, final HttpRequest request) {
+        final StringBuilder builder = new StringBuilder(request.getMethod()).append(' ').append(uri);
+        for (String name : keyHeaders) {
+            builder.append('\n').append(name).append(':');
+            for (Header header : request.getHeaders(name)) {
+                builder.append(' ').append(header.getValue());
+            }
+        }
+        return builder.toString();
+    }
+}
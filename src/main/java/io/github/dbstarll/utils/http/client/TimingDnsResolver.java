@@ -0,0 +1,34 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.DnsResolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * 将域名解析的耗时记录到当前线程上的{@link RequestTimings}的DnsResolver.
+ */
+final class TimingDnsResolver implements DnsResolver {
+    private final DnsResolver resolver;
+
+    TimingDnsResolver(final DnsResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    @Override
+    public InetAddress[] resolve(final String host) throws UnknownHostException {
+        final RequestTimings timings = RequestTimings.current();
+        if (timings == null) {
+            return resolver.resolve(host);
+        }
+        timings.start(RequestTimings.Phase.DNS, System.nanoTime());
+        final InetAddress[] addresses = resolver.resolve(host);
+        timings.end(RequestTimings.Phase.DNS, System.nanoTime());
+        return addresses;
+    }
+
+    @Override
+    public String resolveCanonicalHostname(final String host) throws UnknownHostException {
+        return resolver.resolveCanonicalHostname(host);
+    }
+}
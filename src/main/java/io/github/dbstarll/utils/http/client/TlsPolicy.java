@@ -0,0 +1,222 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
+import org.apache.hc.core5.net.NamedEndpoint;
+import org.apache.hc.core5.reactor.ssl.TlsDetails;
+import org.apache.hc.core5.reactor.ssl.TransportSecurityLayer;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.noNullElements;
+import static org.apache.commons.lang3.Validate.notEmpty;
+
+/**
+ * TLS握手的调优策略，通过{@link HttpClientFactory#setTlsPolicy(TlsPolicy)}用于factory构造的client.
+ * <ul>
+ * <li>build、buildAsync、buildHttp2Async以及通过socks代理的连接共用同一个SSLContext，
+ * 重新建立连接时可以复用此前握手得到的会话，避免完整握手的开销</li>
+ * <li>设置SSLContext中客户端会话缓存的大小和超时时间</li>
+ * <li>按顺序优先使用TLSv1.3的协议和加密套件，当前JVM不支持的协议和加密套件被忽略</li>
+ * <li>统计握手次数以及其中复用会话的次数</li>
+ * </ul>
+ */
+public final class TlsPolicy {
+    public static final int DEFAULT_SESSION_CACHE_SIZE = 1000;
+    public static final TimeValue DEFAULT_SESSION_TIMEOUT = TimeValue.ofHours(1);
+
+    private static final String[] DEFAULT_PROTOCOLS = {"TLSv1.3", "TLSv1.2"};
+    private static final String[] DEFAULT_CIPHER_SUITES = {
+            "TLS_AES_128_GCM_SHA256",
+            "TLS_AES_256_GCM_SHA384",
+            "TLS_CHACHA20_POLY1305_SHA256",
+            "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256",
+            "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+            "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+            "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384",
+            "TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256",
+            "TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256"
+    };
+
+    private int sessionCacheSize = DEFAULT_SESSION_CACHE_SIZE;
+    private TimeValue sessionTimeout = DEFAULT_SESSION_TIMEOUT;
+    private String[] protocols = DEFAULT_PROTOCOLS;
+    private String[] cipherSuites = DEFAULT_CIPHER_SUITES;
+
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+
+    /**
+     * 设置客户端会话缓存.
+     *
+     * @param newSessionCacheSize 缓存的会话数，为0时不限制
+     * @param newSessionTimeout   会话的超时时间，为0时不超时
+     * @return this TlsPolicy
+     */
+    public TlsPolicy setSessionCache(final int newSessionCacheSize, final TimeValue newSessionTimeout) {
+        isTrue(newSessionCacheSize >= 0, "sessionCacheSize must not be negative: %d", newSessionCacheSize);
+        isTrue(TimeValue.isNonNegative(newSessionTimeout), "sessionTimeout must not be negative: %s",
+                newSessionTimeout);
+        isTrue(newSessionTimeout.toSeconds() <= Integer.MAX_VALUE, "sessionTimeout is too large: %s",
+                newSessionTimeout);
+        this.sessionCacheSize = newSessionCacheSize;
+        this.sessionTimeout = newSessionTimeout;
+        return this;
+    }
+
+    /**
+     * 设置启用的协议，按优先顺序排列.
+     *
+     * @param newProtocols 协议，比如TLSv1.3
+     * @return this TlsPolicy
+     */
+    public TlsPolicy setProtocols(final String... newProtocols) {
+        this.protocols = noNullElements(notEmpty(newProtocols, "protocols is empty"), "protocols contains null")
+                .clone();
+        return this;
+    }
+
+    /**
+     * 设置启用的加密套件，按优先顺序排列.
+     *
+     * @param newCipherSuites 加密套件，比如TLS_AES_128_GCM_SHA256
+     * @return this TlsPolicy
+     */
+    public TlsPolicy setCipherSuites(final String... newCipherSuites) {
+        this.cipherSuites = noNullElements(notEmpty(newCipherSuites, "cipherSuites is empty"),
+                "cipherSuites contains null").clone();
+        return this;
+    }
+
+    /**
+     * 获得完成的握手次数.
+     *
+     * @return 握手次数
+     */
+    public long getHandshakeCount() {
+        return handshakes.sum();
+    }
+
+    /**
+     * 获得复用了已有会话的握手次数.
+     *
+     * @return 复用会话的握手次数
+     */
+    public long getResumedCount() {
+        return resumed.sum();
+    }
+
+    /**
+     * 获得会话复用的比例.
+     *
+     * @return 复用会话的握手次数占所有握手次数的比例，没有握手时返回0
+     */
+    public double getResumptionRate() {
+        final long total = handshakes.sum();
+        return total == 0 ? 0 : (double) resumed.sum() / total;
+    }
+
+    void apply(final SSLContext sslContext) {
+        final SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(sessionCacheSize);
+            sessionContext.setSessionTimeout((int) sessionTimeout.toSeconds());
+        }
+    }
+
+    String[] protocols(final SSLContext sslContext) {
+        return supported(protocols, sslContext.getSupportedSSLParameters().getProtocols());
+    }
+
+    String[] cipherSuites(final SSLContext sslContext) {
+        return supported(cipherSuites, sslContext.getSupportedSSLParameters().getCipherSuites());
+    }
+
+    /**
+     * 保持优先顺序过滤掉不支持的项，全部不支持时返回null，使用默认的配置.
+     */
+    private static String[] supported(final String[] preferred, final String[] supported) {
+        final Set<String> available = new HashSet<>(Arrays.asList(supported));
+        final String[] filtered = Arrays.stream(preferred).filter(available::contains).toArray(String[]::new);
+        return filtered.length > 0 ? filtered : null;
+    }
+
+    /**
+     * 记录一次完成的握手. 复用的会话保留最初握手时的创建时间，早于本次握手开始的时间.
+     *
+     * @param session     握手得到的会话
+     * @param startMillis 握手开始的时间
+     */
+    void onHandshake(final SSLSession session, final long startMillis) {
+        handshakes.increment();
+        if (session != null && session.getCreationTime() < startMillis) {
+            resumed.increment();
+        }
+    }
+
+    TlsStrategy tlsStrategy(final SSLContext sslContext) {
+        final TlsStrategy strategy = ClientTlsStrategyBuilder.create().setSslContext(sslContext)
+                .setTlsVersions(protocols(sslContext)).setCiphers(cipherSuites(sslContext)).build();
+        return new HandshakeCountingTlsStrategy(strategy);
+    }
+
+    private final class HandshakeCountingTlsStrategy implements TlsStrategy {
+        private final TlsStrategy strategy;
+
+        private HandshakeCountingTlsStrategy(final TlsStrategy strategy) {
+            this.strategy = strategy;
+        }
+
+        @Deprecated
+        @Override
+        public boolean upgrade(final TransportSecurityLayer sessionLayer, final HttpHost host,
+                               final SocketAddress localAddress, final SocketAddress remoteAddress,
+                               final Object attachment, final Timeout handshakeTimeout) {
+            return strategy.upgrade(sessionLayer, host, localAddress, remoteAddress, attachment, handshakeTimeout);
+        }
+
+        @Override
+        public void upgrade(final TransportSecurityLayer sessionLayer, final NamedEndpoint endpoint,
+                            final Object attachment, final Timeout handshakeTimeout,
+                            final FutureCallback<TransportSecurityLayer> callback) {
+            final long start = System.currentTimeMillis();
+            strategy.upgrade(sessionLayer, endpoint, attachment, handshakeTimeout,
+                    new FutureCallback<TransportSecurityLayer>() {
+                        @Override
+                        public void completed(final TransportSecurityLayer result) {
+                            final TlsDetails details = result.getTlsDetails();
+                            onHandshake(details != null ? details.getSSLSession() : null, start);
+                            if (callback != null) {
+                                callback.completed(result);
+                            }
+                        }
+
+                        @Override
+                        public void failed(final Exception ex) {
+                            if (callback != null) {
+                                callback.failed(ex);
+                            }
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            if (callback != null) {
+                                callback.cancelled();
+                            }
+                        }
+                    });
+        }
+    }
+}
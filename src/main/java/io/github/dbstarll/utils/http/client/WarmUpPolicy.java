@@ -0,0 +1,277 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.classic.methods.HttpHead;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 连接预热策略，通过{@link HttpClientFactory#setWarmUpPolicy(WarmUpPolicy)}在factory构造的client交给调用方之前，
+ * 为每个目标主机并行建立指定数量的连接，使域名解析、建立连接和TLS握手不必由最初的请求承担.
+ * <ul>
+ * <li>每个连接以一次HEAD请求建立并验证，请求经过client的完整处理链，包括socks代理、DnsResolver以及TLS的设置，
+ * 收到任意响应即视为预热成功，之后连接归还到连接池</li>
+ * <li>同一主机的请求同时发出，使连接池为每个请求建立新的连接，预热的连接数不会超过连接池中每个路由的最大连接数.
+ * buildHttp2Async构造的client在同一主机上只使用一个连接</li>
+ * <li>预热请求不经过请求合并、响应缓存、重试预算、断路器、并发限制以及负载均衡的统计，
+ * 既不会被合并为一个请求，也不影响这些策略的状态</li>
+ * <li>每个主机的预热结果交给结果处理器，默认写入日志，失败时以WARN级别写入</li>
+ * </ul>
+ */
+public final class WarmUpPolicy {
+    public static final Timeout DEFAULT_TIMEOUT = Timeout.ofSeconds(10);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WarmUpPolicy.class);
+    private static final String ATTRIBUTE = WarmUpPolicy.class.getName();
+
+    private final List<Target> targets = new ArrayList<>();
+    private volatile Timeout timeout = DEFAULT_TIMEOUT;
+    private volatile Consumer<WarmUpResult> resultHandler = r -> {
+        if (r.isSuccess()) {
+            LOGGER.info("warm up: {}", r);
+        } else {
+            LOGGER.warn("warm up: {}", r);
+        }
+    };
+
+    /**
+     * 添加需要预热的目标主机.
+     *
+     * @param uri         用于预热请求的uri，比如https://example.com/health，只包含主机时请求/
+     * @param connections 预热的连接数
+     * @return this WarmUpPolicy
+     */
+    public WarmUpPolicy addHost(final URI uri, final int connections) {
+        notNull(uri, "uri is null");
+        isTrue(uri.isAbsolute() && uri.getHost() != null, "uri must be absolute: %s", uri);
+        isTrue(connections > 0, "connections must be positive: %d", connections);
+        final URI target = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? uri.resolve("/") : uri;
+        synchronized (targets) {
+            targets.add(new Target(HttpHost.create(uri), target, connections));
+        }
+        return this;
+    }
+
+    /**
+     * 设置预热的超时时间，超时后未完成的预热请求被取消.
+     *
+     * @param newTimeout 预热的超时时间
+     * @return this WarmUpPolicy
+     */
+    public WarmUpPolicy setTimeout(final Timeout newTimeout) {
+        isTrue(Timeout.isPositive(newTimeout), "timeout must be positive: %s", newTimeout);
+        this.timeout = newTimeout;
+        return this;
+    }
+
+    /**
+     * 设置预热结果的处理器.
+     *
+     * @param newResultHandler 预热结果的处理器，每个主机调用一次
+     * @return this WarmUpPolicy
+     */
+    public WarmUpPolicy setResultHandler(final Consumer<WarmUpResult> newResultHandler) {
+        this.resultHandler = notNull(newResultHandler, "resultHandler is null");
+        return this;
+    }
+
+    /**
+     * 预热classic的client，在所有连接完成或者超时之后返回.
+     *
+     * @param client CloseableHttpClient
+     * @return 每个主机的预热结果
+     */
+    public List<WarmUpResult> warmUp(final CloseableHttpClient client) {
+        notNull(client, "client is null");
+        final List<Target> snapshot = snapshot();
+        final int total = snapshot.stream().mapToInt(t -> t.connections).sum();
+        if (total == 0) {
+            return Collections.emptyList();
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(total, new DaemonThreadFactory("warm-up-"));
+        try {
+            // 所有线程就绪之后同时发出请求，避免先完成的请求归还的连接被其他请求复用
+            final CountDownLatch ready = new CountDownLatch(1);
+            final List<List<Future<?>>> futures = new ArrayList<>(snapshot.size());
+            for (Target target : snapshot) {
+                final List<Future<?>> list = new ArrayList<>(target.connections);
+                for (int i = 0; i < target.connections; i++) {
+                    list.add(executor.submit(() -> {
+                        ready.await();
+                        try {
+                            return client.execute(new HttpHead(target.uri), context(),
+                                    response -> response.getCode());
+                        } finally {
+                            target.finish(System.nanoTime());
+                        }
+                    }));
+                }
+                futures.add(list);
+            }
+            final long start = System.nanoTime();
+            ready.countDown();
+            return collect(snapshot, futures, start);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 预热async的client，client尚未启动时将被启动，在所有连接完成或者超时之后返回.
+     *
+     * @param client CloseableHttpAsyncClient
+     * @return 每个主机的预热结果
+     */
+    public List<WarmUpResult> warmUp(final CloseableHttpAsyncClient client) {
+        notNull(client, "client is null");
+        final List<Target> snapshot = snapshot();
+        if (snapshot.isEmpty()) {
+            return Collections.emptyList();
+        }
+        client.start();
+        final long start = System.nanoTime();
+        final List<List<Future<?>>> futures = new ArrayList<>(snapshot.size());
+        for (Target target : snapshot) {
+            final List<Future<?>> list = new ArrayList<>(target.connections);
+            for (int i = 0; i < target.connections; i++) {
+                list.add(client.execute(SimpleRequestBuilder.head(target.uri).build(), context(),
+                        new FutureCallback<SimpleHttpResponse>() {
+                            @Override
+                            public void completed(final SimpleHttpResponse result) {
+                                target.finish(System.nanoTime());
+                            }
+
+                            @Override
+                            public void failed(final Exception ex) {
+                                target.finish(System.nanoTime());
+                            }
+
+                            @Override
+                            public void cancelled() {
+                                target.finish(System.nanoTime());
+                            }
+                        }));
+            }
+            futures.add(list);
+        }
+        return collect(snapshot, futures, start);
+    }
+
+    private static HttpClientContext context() {
+        final HttpClientContext context = HttpClientContext.create();
+        context.setAttribute(ATTRIBUTE, Boolean.TRUE);
+        return context;
+    }
+
+    /**
+     * 判断请求是否为预热请求，各个策略的处理器据此跳过预热请求.
+     *
+     * @param context 请求的上下文
+     * @return 是否为预热请求
+     */
+    static boolean isWarmUp(final HttpContext context) {
+        return context != null && context.getAttribute(ATTRIBUTE) != null;
+    }
+
+    private List<Target> snapshot() {
+        synchronized (targets) {
+            final List<Target> snapshot = new ArrayList<>(targets.size());
+            for (Target target : targets) {
+                snapshot.add(new Target(target.host, target.uri, target.connections));
+            }
+            return snapshot;
+        }
+    }
+
+    private List<WarmUpResult> collect(final List<Target> snapshot, final List<List<Future<?>>> futures,
+                                       final long start) {
+        final long deadline = start + timeout.toNanoseconds();
+        final List<WarmUpResult> results = new ArrayList<>(snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            final Target target = snapshot.get(i);
+            final List<Exception> failures = new ArrayList<>();
+            int succeeded = 0;
+            final boolean completed = target.await(deadline);
+            for (Future<?> future : futures.get(i)) {
+                try {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    succeeded++;
+                } catch (ExecutionException ex) {
+                    failures.add(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
+                } catch (TimeoutException ex) {
+                    future.cancel(true);
+                    failures.add(new TimeoutException("warm up timed out after " + timeout));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    future.cancel(true);
+                    failures.add(ex);
+                }
+            }
+            final long finish = completed ? target.finish.get() : System.nanoTime();
+            final WarmUpResult result = new WarmUpResult(target.host, target.connections, succeeded,
+                    Math.max(0, finish - start), failures);
+            resultHandler.accept(result);
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static final class Target {
+        private final HttpHost host;
+        private final URI uri;
+        private final int connections;
+        private final AtomicLong finish = new AtomicLong(Long.MIN_VALUE);
+        private final CountDownLatch done;
+
+        private Target(final HttpHost host, final URI uri, final int connections) {
+            this.host = host;
+            this.uri = uri;
+            this.connections = connections;
+            this.done = new CountDownLatch(connections);
+        }
+
+        private void finish(final long nanos) {
+            finish.accumulateAndGet(nanos, Math::max);
+            done.countDown();
+        }
+
+        /**
+         * 等待所有预热请求结束.
+         *
+         * @return 是否在截止时间之前全部结束
+         */
+        private boolean await(final long deadline) {
+            try {
+                return done.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.core5.http.HttpHost;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个目标主机预热连接的结果.
+ */
+public final class WarmUpResult {
+    private final HttpHost host;
+    private final int requested;
+    private final int succeeded;
+    private final long elapsedNanos;
+    private final List<Exception> failures;
+
+    WarmUpResult(final HttpHost host, final int requested, final int succeeded, final long elapsedNanos,
+                 final List<Exception> failures) {
+        this.host = host;
+        this.requested = requested;
+        this.succeeded = succeeded;
+        this.elapsedNanos = elapsedNanos;
+        this.failures = Collections.unmodifiableList(failures);
+    }
+
+    /**
+     * 获得目标主机.
+     *
+     * @return 目标主机
+     */
+    public HttpHost getHost() {
+        return host;
+    }
+
+    /**
+     * 获得要求预热的连接数.
+     *
+     * @return 要求预热的连接数
+     */
+    public int getRequested() {
+        return requested;
+    }
+
+    /**
+     * 获得预热成功的连接数.
+     *
+     * @return 预热成功的连接数
+     */
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * 获得预热此主机的耗时，即从开始预热到最后一个连接完成或者超时的时间.
+     *
+     * @return 以纳秒计的耗时
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * 获得预热失败的原因，超时未完成的连接以{@link java.util.concurrent.TimeoutException}表示.
+     *
+     * @return 预热失败的原因
+     */
+    public List<Exception> getFailures() {
+        return failures;
+    }
+
+    /**
+     * 判断所有连接是否都预热成功.
+     *
+     * @return 所有连接是否都预热成功
+     */
+    public boolean isSuccess() {
+        return succeeded == requested;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(host.toURI()).append(' ').append(succeeded).append('/')
+                .append(requested).append(String.format(Locale.ROOT, " connections in %.1fms",
+                        elapsedNanos / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+        if (!failures.isEmpty()) {
+            builder.append(", failures: ").append(failures);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,184 @@
+package io.github.dbstarll.utils.http.client.request;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.apache.commons.lang3.Validate.noNullElements;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 内容为一组ByteBuffer的请求体，同时作为classic的HttpEntity和async的AsyncEntityProducer使用.
+ * 各个ByteBuffer依次发送，不合并也不复制，比如分别序列化的消息头和消息体；
+ * 长度为各个ByteBuffer的position到limit之间的字节数之和，请求以Content-Length发送.
+ * 每次发送都基于ByteBuffer的独立视图，不修改原有的position和limit，可重复发送.
+ */
+public final class ByteBufferListEntity extends AbstractHttpEntity implements AsyncEntityProducer {
+    private static final int CHUNK_SIZE = 8192;
+
+    private final ByteBuffer[] buffers;
+    private final long length;
+
+    private ByteBuffer[] pending;
+    private int index;
+    private boolean ended;
+
+    /**
+     * 构造ByteBufferListEntity.
+     *
+     * @param buffers     依次发送的ByteBuffer
+     * @param contentType Content-Type
+     */
+    public ByteBufferListEntity(final List<ByteBuffer> buffers, final ContentType contentType) {
+        super(contentType, null);
+        noNullElements(notNull(buffers, "buffers is null"), "buffers contains null");
+        this.buffers = new ByteBuffer[buffers.size()];
+        long total = 0;
+        for (int i = 0; i < this.buffers.length; i++) {
+            this.buffers[i] = buffers.get(i).duplicate();
+            total += this.buffers[i].remaining();
+        }
+        this.length = total;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    private ByteBuffer[] views() {
+        final ByteBuffer[] views = new ByteBuffer[buffers.length];
+        for (int i = 0; i < views.length; i++) {
+            views[i] = buffers[i].duplicate();
+        }
+        return views;
+    }
+
+    @Override
+    public InputStream getContent() {
+        final ByteBuffer[] views = views();
+        return new InputStream() {
+            private int current;
+
+            @Override
+            public int read() {
+                final ByteBuffer buffer = next();
+                return buffer == null ? -1 : buffer.get() & 0xFF;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                final ByteBuffer buffer = next();
+                if (buffer == null) {
+                    return -1;
+                }
+                final int size = Math.min(len, buffer.remaining());
+                buffer.get(b, off, size);
+                return size;
+            }
+
+            private ByteBuffer next() {
+                while (current < views.length && !views[current].hasRemaining()) {
+                    current++;
+                }
+                return current < views.length ? views[current] : null;
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(final OutputStream outStream) throws IOException {
+        notNull(outStream, "outStream is null");
+        byte[] chunk = null;
+        for (ByteBuffer buffer : views()) {
+            if (buffer.hasArray()) {
+                outStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            } else {
+                if (chunk == null) {
+                    chunk = new byte[CHUNK_SIZE];
+                }
+                while (buffer.hasRemaining()) {
+                    final int size = Math.min(chunk.length, buffer.remaining());
+                    buffer.get(chunk, 0, size);
+                    outStream.write(chunk, 0, size);
+                }
+            }
+        }
+        outStream.flush();
+    }
+
+    @Override
+    public synchronized int available() {
+        if (ended) {
+            return 0;
+        } else if (pending == null) {
+            return (int) Math.max(1, Math.min(Integer.MAX_VALUE, length));
+        }
+        long remaining = 0;
+        for (int i = index; i < pending.length; i++) {
+            remaining += pending[i].remaining();
+        }
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, remaining));
+    }
+
+    @Override
+    public synchronized void produce(final DataStreamChannel channel) throws IOException {
+        if (ended) {
+            return;
+        }
+        if (pending == null) {
+            pending = views();
+            index = 0;
+        }
+        // 依次写出，直到连接不再接收
+        while (index < pending.length) {
+            final ByteBuffer buffer = pending[index];
+            if (buffer.hasRemaining()) {
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    return;
+                }
+            }
+            index++;
+        }
+        ended = true;
+        channel.endStream();
+    }
+
+    @Override
+    public void failed(final Exception cause) {
+        releaseResources();
+    }
+
+    @Override
+    public synchronized void releaseResources() {
+        pending = null;
+        index = 0;
+        ended = false;
+    }
+
+    @Override
+    public void close() {
+        releaseResources();
+    }
+}
@@ -0,0 +1,322 @@
+package io.github.dbstarll.utils.http.client.request;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 内容为文件中一段区域的请求体，同时作为classic的HttpEntity和async的AsyncEntityProducer使用.
+ * <ul>
+ * <li>长度在构造时确定，请求以Content-Length发送，不使用chunked编码</li>
+ * <li>async的client通过FileChannel将文件读入对象池中的direct buffer，或者直接映射文件，
+ * 较大的块由连接直接写入socket，不经过堆内存和连接的缓冲区</li>
+ * <li>classic的client通过FileChannel读入对象池中64KB的字节数组后写出</li>
+ * <li>可重复发送，重试时从头读取</li>
+ * </ul>
+ * 映射的区域在发送完成或者释放资源时解除映射；运行环境不支持时在被垃圾回收时才解除映射. 文件在发送过程中不应被修改.
+ */
+public final class FileChannelEntity extends AbstractHttpEntity implements AsyncEntityProducer {
+    private static final int CHUNK_SIZE = 64 << 10;
+    private static final int MAPPED_REGION_SIZE = 4 << 20;
+    private static final BlockingQueue<ByteBuffer> BUFFERS = new ArrayBlockingQueue<>(32);
+    private static final BlockingQueue<byte[]> CHUNKS = new ArrayBlockingQueue<>(32);
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            // Java 9+，Java 8上没有此方法，映射的区域由垃圾回收解除映射
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            unsafe = field.get(null);
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final Path file;
+    private final long offset;
+    private final long length;
+    private final boolean mapped;
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private ByteBuffer chunk;
+    private long position;
+    private boolean ended;
+
+    /**
+     * 构造内容为整个文件的FileChannelEntity，通过direct buffer读取.
+     *
+     * @param file        文件
+     * @param contentType Content-Type
+     * @throws IOException 读取文件长度时出错
+     */
+    public FileChannelEntity(final Path file, final ContentType contentType) throws IOException {
+        this(file, 0, Files.size(notNull(file, "file is null")), contentType, false);
+    }
+
+    /**
+     * 构造FileChannelEntity.
+     *
+     * @param file        文件
+     * @param offset      区域在文件中的起始位置
+     * @param length      区域的长度
+     * @param contentType Content-Type
+     * @param mapped      为true时async的client映射文件发送，否则通过direct buffer读取
+     * @throws IOException 读取文件长度时出错
+     */
+    public FileChannelEntity(final Path file, final long offset, final long length, final ContentType contentType,
+                             final boolean mapped) throws IOException {
+        super(contentType, null);
+        this.file = notNull(file, "file is null");
+        isTrue(offset >= 0, "offset must not be negative: %d", offset);
+        isTrue(length >= 0, "length must not be negative: %d", length);
+        final long size = Files.size(file);
+        isTrue(offset + length <= size, "region [%d, %d) exceeds file size %d", offset, offset + length, size);
+        this.offset = offset;
+        this.length = length;
+        this.mapped = mapped;
+        this.position = offset;
+    }
+
+    /**
+     * 获得文件.
+     *
+     * @return 文件
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * 获得区域在文件中的起始位置.
+     *
+     * @return 起始位置
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * 是否映射文件发送.
+     *
+     * @return 是否映射文件发送
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        final FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+        return new InputStream() {
+            private final byte[] single = new byte[1];
+            private long pos = offset;
+
+            @Override
+            public int read() throws IOException {
+                return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final long remaining = offset + length - pos;
+                if (len == 0) {
+                    return 0;
+                } else if (remaining <= 0) {
+                    return -1;
+                }
+                final int n = in.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), pos);
+                if (n < 0) {
+                    throw new EOFException("file truncated: " + file);
+                }
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(Integer.MAX_VALUE, offset + length - pos);
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(final OutputStream outStream) throws IOException {
+        notNull(outStream, "outStream is null");
+        final byte[] pooled = CHUNKS.poll();
+        final byte[] bytes = pooled != null ? pooled : new byte[CHUNK_SIZE];
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+            long pos = offset;
+            final long end = offset + length;
+            while (pos < end) {
+                // 通过Buffer调用，避免在Java 8上运行时找不到ByteBuffer的协变方法
+                ((Buffer) wrapped).clear().limit((int) Math.min(bytes.length, end - pos));
+                fill(in, wrapped, pos);
+                outStream.write(bytes, 0, wrapped.position());
+                pos += wrapped.position();
+            }
+        } finally {
+            CHUNKS.offer(bytes);
+        }
+        outStream.flush();
+    }
+
+    @Override
+    public synchronized int available() {
+        if (ended) {
+            return 0;
+        }
+        final long remaining = (chunk != null ? chunk.remaining() : 0) + offset + length - position;
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, remaining));
+    }
+
+    @Override
+    public synchronized void produce(final DataStreamChannel dataChannel) throws IOException {
+        if (ended) {
+            return;
+        }
+        if (chunk == null || !chunk.hasRemaining()) {
+            unmap();
+            final long remaining = offset + length - position;
+            if (remaining <= 0) {
+                ended = true;
+                dataChannel.endStream();
+                return;
+            }
+            chunk = nextChunk(remaining);
+            position += chunk.remaining();
+        }
+        dataChannel.write(chunk);
+        if (!chunk.hasRemaining() && position >= offset + length) {
+            unmap();
+            ended = true;
+            dataChannel.endStream();
+        }
+    }
+
+    private ByteBuffer nextChunk(final long remaining) throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+        if (mapped) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_REGION_SIZE, remaining));
+        }
+        if (buffer == null) {
+            final ByteBuffer pooled = BUFFERS.poll();
+            buffer = pooled != null ? pooled : ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+        ((Buffer) buffer).clear().limit((int) Math.min(buffer.capacity(), remaining));
+        fill(channel, buffer, position);
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    /**
+     * 从指定位置读满buffer，文件被截短时抛出EOFException，保证发送的长度与Content-Length一致.
+     */
+    private void fill(final FileChannel in, final ByteBuffer dst, final long pos) throws IOException {
+        long p = pos;
+        while (dst.hasRemaining()) {
+            final int n = in.read(dst, p);
+            if (n < 0) {
+                throw new EOFException("file truncated: " + file);
+            }
+            p += n;
+        }
+    }
+
+    /**
+     * 解除已经写出的映射区域的映射，避免大量发送时映射的数量在垃圾回收前超出系统限制.
+     */
+    private void unmap() {
+        if (mapped && chunk != null) {
+            final ByteBuffer region = chunk;
+            chunk = null;
+            if (INVOKE_CLEANER != null) {
+                try {
+                    INVOKE_CLEANER.invoke(UNSAFE, region);
+                } catch (ReflectiveOperationException | RuntimeException ex) {
+                    // 由垃圾回收解除映射
+                }
+            }
+        }
+    }
+
+    @Override
+    public void failed(final Exception cause) {
+        releaseResources();
+    }
+
+    @Override
+    public synchronized void releaseResources() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+            channel = null;
+        }
+        if (buffer != null) {
+            BUFFERS.offer(buffer);
+            buffer = null;
+        }
+        unmap();
+        chunk = null;
+        position = offset;
+        ended = false;
+    }
+
+    @Override
+    public void close() {
+        releaseResources();
+    }
+}
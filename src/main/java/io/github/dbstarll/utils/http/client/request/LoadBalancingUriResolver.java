@@ -0,0 +1,333 @@
+package io.github.dbstarll.utils.http.client.request;
+
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.noNullElements;
+import static org.apache.commons.lang3.Validate.notEmpty;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 在多个共享同一context的base uri之间做负载均衡的UriResolver，每次解析时选择一个endpoint.
+ * <ul>
+ * <li>选择策略：轮询、power-of-two-choices(选择进行中请求较少的一个)、EWMA(选择延迟与进行中请求的乘积较小的一个)</li>
+ * <li>通过{@link #onStart(HttpHost)}和{@link #onComplete(HttpHost, long, boolean)}接收请求的结果，
+ * 由{@code HttpClientFactory#setLoadBalancingUriResolver}构造的client自动反馈</li>
+ * <li>连续失败达到阈值的endpoint被暂时摘除，摘除时间随连续摘除的次数倍增，到期后自动恢复；所有endpoint都被摘除时在全部endpoint中选择</li>
+ * <li>选择过程无锁，只读取原子变量</li>
+ * </ul>
+ * 所有base uri的path必须相同，只有scheme和authority不同.
+ */
+public final class LoadBalancingUriResolver implements UriResolver {
+    public static final int DEFAULT_MAX_CONSECUTIVE_FAILURES = 5;
+    public static final TimeValue DEFAULT_BASE_EJECTION_TIME = TimeValue.ofSeconds(30);
+    public static final TimeValue DEFAULT_MAX_EJECTION_TIME = TimeValue.ofMinutes(5);
+
+    private static final double EWMA_ALPHA = 0.2;
+
+    /**
+     * endpoint的选择策略.
+     */
+    public enum Strategy {
+        /**
+         * 依次轮流选择.
+         */
+        ROUND_ROBIN,
+        /**
+         * 随机选择两个endpoint，使用进行中请求较少的一个.
+         */
+        POWER_OF_TWO_CHOICES,
+        /**
+         * 随机选择两个endpoint，使用延迟的指数加权平均与进行中请求数的乘积较小的一个.
+         */
+        EWMA
+    }
+
+    private final Endpoint[] endpoints;
+    private final Map<String, Endpoint> endpointsByOrigin;
+    private final Strategy strategy;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile int maxConsecutiveFailures = DEFAULT_MAX_CONSECUTIVE_FAILURES;
+    private volatile long baseEjectionNanos = DEFAULT_BASE_EJECTION_TIME.toNanoseconds();
+    private volatile long maxEjectionNanos = DEFAULT_MAX_EJECTION_TIME.toNanoseconds();
+
+    /**
+     * 构造按轮询策略选择的LoadBalancingUriResolver.
+     *
+     * @param uriBases base uri列表
+     * @param context  context
+     * @throws IllegalArgumentException uriBases or context invalid
+     */
+    public LoadBalancingUriResolver(final List<String> uriBases, final String context) {
+        this(uriBases, context, Strategy.ROUND_ROBIN);
+    }
+
+    /**
+     * 构造LoadBalancingUriResolver.
+     *
+     * @param uriBases base uri列表
+     * @param context  context
+     * @param strategy 选择策略
+     * @throws IllegalArgumentException uriBases or context invalid
+     */
+    public LoadBalancingUriResolver(final List<String> uriBases, final String context, final Strategy strategy) {
+        this(uriBases, context, strategy, System::nanoTime);
+    }
+
+    LoadBalancingUriResolver(final List<String> uriBases, final String context, final Strategy strategy,
+                             final LongSupplier nanoClock) {
+        noNullElements(notEmpty(uriBases, "uriBases is empty"), "uriBases contains null element at index: %d");
+        this.strategy = notNull(strategy, "strategy is null");
+        this.nanoClock = nanoClock;
+        this.endpoints = new Endpoint[uriBases.size()];
+        this.endpointsByOrigin = new HashMap<>();
+        for (int i = 0; i < endpoints.length; i++) {
+            final RelativeUriResolver resolver = new RelativeUriResolver(uriBases.get(i), context);
+            final Endpoint endpoint = new Endpoint(resolver);
+            if (i > 0) {
+                isTrue(endpoint.base.getRawPath().equals(endpoints[0].base.getRawPath()),
+                        "path of [%s] differs from [%s]", endpoint.base, endpoints[0].base);
+            }
+            isTrue(endpointsByOrigin.put(endpoint.key, endpoint) == null, "duplicate uriBase: %s", endpoint.base);
+            endpoints[i] = endpoint;
+        }
+    }
+
+    /**
+     * 设置摘除endpoint的连续失败次数.
+     *
+     * @param newMaxConsecutiveFailures 连续失败次数
+     * @return this LoadBalancingUriResolver
+     */
+    public LoadBalancingUriResolver setMaxConsecutiveFailures(final int newMaxConsecutiveFailures) {
+        isTrue(newMaxConsecutiveFailures > 0, "maxConsecutiveFailures must be positive: %d",
+                newMaxConsecutiveFailures);
+        this.maxConsecutiveFailures = newMaxConsecutiveFailures;
+        return this;
+    }
+
+    /**
+     * 设置首次摘除的时间，再次摘除时倍增.
+     *
+     * @param newBaseEjectionTime 首次摘除的时间
+     * @return this LoadBalancingUriResolver
+     */
+    public LoadBalancingUriResolver setBaseEjectionTime(final TimeValue newBaseEjectionTime) {
+        isTrue(TimeValue.isPositive(newBaseEjectionTime), "baseEjectionTime must be positive: %s",
+                newBaseEjectionTime);
+        this.baseEjectionNanos = newBaseEjectionTime.toNanoseconds();
+        return this;
+    }
+
+    /**
+     * 设置最长的摘除时间.
+     *
+     * @param newMaxEjectionTime 最长的摘除时间
+     * @return this LoadBalancingUriResolver
+     */
+    public LoadBalancingUriResolver setMaxEjectionTime(final TimeValue newMaxEjectionTime) {
+        isTrue(TimeValue.isPositive(newMaxEjectionTime), "maxEjectionTime must be positive: %s",
+                newMaxEjectionTime);
+        this.maxEjectionNanos = newMaxEjectionTime.toNanoseconds();
+        return this;
+    }
+
+    /**
+     * 获得选择策略.
+     *
+     * @return 选择策略
+     */
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * 获得当前未被摘除的endpoint.
+     *
+     * @return 未被摘除的base uri列表
+     */
+    public List<URI> getAvailableEndpoints() {
+        final long now = nanoClock.getAsLong();
+        final List<URI> available = new ArrayList<>(endpoints.length);
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isAvailable(now)) {
+                available.add(endpoint.base);
+            }
+        }
+        return Collections.unmodifiableList(available);
+    }
+
+    @Override
+    public URI resolve(final String uri) {
+        return select().resolver.resolve(uri);
+    }
+
+    /**
+     * 为{@link UriTemplate}选择endpoint，返回只有scheme和authority的uri.
+     */
+    URI selectOrigin() {
+        return select().origin;
+    }
+
+    boolean isOrigin(final URI uri) {
+        return endpointsByOrigin.containsKey(key(uri.getScheme(), uri.getHost(), uri.getPort()));
+    }
+
+    /**
+     * 反馈请求开始.
+     *
+     * @param target 请求的目标主机，不属于任何endpoint时忽略
+     */
+    public void onStart(final HttpHost target) {
+        final Endpoint endpoint = endpointsByOrigin.get(key(target));
+        if (endpoint != null) {
+            endpoint.inFlight.incrementAndGet();
+        }
+    }
+
+    /**
+     * 反馈请求结束.
+     *
+     * @param target       请求的目标主机，不属于任何endpoint时忽略
+     * @param latencyNanos 请求的耗时(纳秒)
+     * @param success      请求是否成功
+     */
+    public void onComplete(final HttpHost target, final long latencyNanos, final boolean success) {
+        final Endpoint endpoint = endpointsByOrigin.get(key(target));
+        if (endpoint == null) {
+            return;
+        }
+        endpoint.inFlight.updateAndGet(v -> Math.max(0, v - 1));
+        endpoint.updateLatency(Math.max(0, latencyNanos));
+        if (success) {
+            endpoint.consecutiveFailures.set(0);
+            endpoint.ejections.set(0);
+        } else if (endpoint.consecutiveFailures.incrementAndGet() >= maxConsecutiveFailures
+                && !endpoint.ejected) {
+            endpoint.eject(nanoClock.getAsLong(), baseEjectionNanos, maxEjectionNanos);
+        }
+    }
+
+    private Endpoint select() {
+        final int size = endpoints.length;
+        if (size == 1) {
+            return endpoints[0];
+        }
+        final long now = nanoClock.getAsLong();
+        if (strategy == Strategy.ROUND_ROBIN) {
+            final int start = next.getAndIncrement();
+            for (int i = 0; i < size; i++) {
+                final Endpoint endpoint = endpoints[Math.floorMod(start + i, size)];
+                if (endpoint.isAvailable(now)) {
+                    return endpoint;
+                }
+            }
+            return endpoints[Math.floorMod(start, size)];
+        }
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int i = random.nextInt(size);
+        int j = random.nextInt(size - 1);
+        j = j >= i ? j + 1 : j;
+        final Endpoint first = endpoints[i];
+        final Endpoint second = endpoints[j];
+        final boolean firstAvailable = first.isAvailable(now);
+        final boolean secondAvailable = second.isAvailable(now);
+        if (firstAvailable && secondAvailable) {
+            return cost(second) < cost(first) ? second : first;
+        } else if (firstAvailable || secondAvailable) {
+            return firstAvailable ? first : second;
+        }
+        for (int k = 1; k < size; k++) {
+            final Endpoint endpoint = endpoints[(i + k) % size];
+            if (endpoint.isAvailable(now)) {
+                return endpoint;
+            }
+        }
+        return first;
+    }
+
+    private double cost(final Endpoint endpoint) {
+        final int inFlight = endpoint.inFlight.get();
+        return strategy == Strategy.EWMA ? (endpoint.latency() + 1) * (inFlight + 1) : inFlight;
+    }
+
+    private static String key(final String scheme, final String host, final int port) {
+        final String lowerScheme = scheme.toLowerCase(Locale.ROOT);
+        final int effectivePort = port >= 0 ? port : URIScheme.HTTPS.same(lowerScheme) ? 443 : 80;
+        return lowerScheme + "://" + host.toLowerCase(Locale.ROOT) + ':' + effectivePort;
+    }
+
+    private static String key(final HttpHost target) {
+        return target == null ? "" : key(target.getSchemeName(), target.getHostName(), target.getPort());
+    }
+
+    private static final class Endpoint {
+        private final RelativeUriResolver resolver;
+        private final URI base;
+        private final URI origin;
+        private final String key;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicInteger ejections = new AtomicInteger();
+        private final AtomicLong ewmaBits = new AtomicLong(Double.doubleToRawLongBits(-1));
+        private volatile boolean ejected;
+        private volatile long ejectedUntil;
+
+        private Endpoint(final RelativeUriResolver resolver) {
+            this.resolver = resolver;
+            this.base = resolver.resolve(null);
+            this.origin = URI.create(base.getScheme() + "://" + base.getRawAuthority());
+            this.key = LoadBalancingUriResolver.key(base.getScheme(), base.getHost(), base.getPort());
+        }
+
+        private boolean isAvailable(final long now) {
+            if (!ejected) {
+                return true;
+            } else if (now - ejectedUntil >= 0) {
+                ejected = false;
+                consecutiveFailures.set(0);
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void eject(final long now, final long baseNanos, final long maxNanos) {
+            if (!ejected) {
+                final int times = Math.min(30, ejections.incrementAndGet() - 1);
+                final long nanos = baseNanos > maxNanos >> times ? maxNanos : baseNanos << times;
+                this.ejectedUntil = now + nanos;
+                this.ejected = true;
+                consecutiveFailures.set(0);
+            }
+        }
+
+        private double latency() {
+            return Math.max(0, Double.longBitsToDouble(ewmaBits.get()));
+        }
+
+        private void updateLatency(final long latencyNanos) {
+            long bits;
+            double updated;
+            do {
+                bits = ewmaBits.get();
+                final double current = Double.longBitsToDouble(bits);
+                updated = current < 0 ? latencyNanos : current + EWMA_ALPHA * (latencyNanos - current);
+            } while (!ewmaBits.compareAndSet(bits, Double.doubleToRawLongBits(updated)));
+        }
+    }
+}
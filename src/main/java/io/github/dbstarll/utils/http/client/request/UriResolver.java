@@ -12,4 +12,17 @@ public interface UriResolver {
    * @throws IllegalArgumentException If the given string violates RFC&nbsp;2396
    */
   URI resolve(String uri);
+
+  /**
+   * Compiles a uri template such as <tt>/users/{id}/orders?since={ts}</tt>, the static parts of the template are
+   * resolved only once.
+   *
+   * @param template The uri template
+   * @return The compiled UriTemplate
+   * @throws NullPointerException     If <tt>template</tt> is <tt>null</tt>
+   * @throws IllegalArgumentException If the template is invalid
+   */
+  default UriTemplate compile(String template) {
+    return new UriTemplate(this, template);
+  }
 }
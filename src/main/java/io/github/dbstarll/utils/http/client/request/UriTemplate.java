@@ -0,0 +1,225 @@
+package io.github.dbstarll.utils.http.client.request;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 预编译的uri模板，比如<tt>/users/{id}/orders?since={ts}</tt>.
+ * 编译时将模板中的静态部分按UriResolver的规则一次性解析为绝对地址，展开时只需拼接经过编码的变量值并解析一次.
+ * 变量可以出现在path、query以及fragment中，变量值按所在的部分进行百分号编码，不会引入新的路径段、query参数或dot-segment.
+ */
+public final class UriTemplate {
+    private static final String TOKEN_PREFIX = "uritemplatevar";
+    private static final String TOKEN_SUFFIX = "x";
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final String PATH_SAFE = "-._~!$&'()*+,;=:@";
+    private static final String QUERY_SAFE = "-._~!$'()*,;:@/?";
+    private static final String FRAGMENT_SAFE = "-._~!$&'()*+,;=:@/?";
+
+    private final String template;
+    private final String[] literals;
+    private final String[] variables;
+    private final Component[] components;
+    private final int literalLength;
+    private final URI constant;
+    private final String prefix;
+    private final URI base;
+    private final LoadBalancingUriResolver balancer;
+
+    private enum Component {
+        PATH, QUERY, FRAGMENT
+    }
+
+    UriTemplate(final UriResolver resolver, final String template) throws IllegalArgumentException {
+        this.template = notNull(template, "template is null");
+        final List<String> names = new ArrayList<>();
+        final String skeleton = parse(template, names);
+        final String resolved = notNull(resolver, "resolver is null").resolve(skeleton).toString();
+        this.variables = names.toArray(new String[0]);
+        this.literals = new String[variables.length + 1];
+        this.components = new Component[variables.length];
+        final int pathStart = pathStart(URI.create(resolved));
+        if (pathStart > 0 && resolved.startsWith("/", pathStart) && !resolved.startsWith("//", pathStart)) {
+            // scheme和authority只解析一次，展开时只解析以'/'开始的相对部分
+            this.prefix = resolved.substring(0, pathStart);
+            this.base = URI.create(prefix);
+        } else {
+            this.prefix = "";
+            this.base = null;
+        }
+        int from = prefix.length();
+        int length = 0;
+        for (int i = 0; i < variables.length; i++) {
+            final String token = TOKEN_PREFIX + i + TOKEN_SUFFIX;
+            final int index = resolved.indexOf(token, from);
+            if (index < 0) {
+                throw new IllegalArgumentException(String.format(
+                        "variable {%s} of template[%s] removed by uri normalization", variables[i], template));
+            } else if (index < pathStart) {
+                throw new IllegalArgumentException(String.format(
+                        "variable {%s} of template[%s] must be in path, query or fragment", variables[i], template));
+            }
+            literals[i] = resolved.substring(from, index);
+            components[i] = component(resolved, index);
+            length += literals[i].length();
+            from = index + token.length();
+        }
+        literals[variables.length] = resolved.substring(from);
+        this.literalLength = length + literals[variables.length].length();
+        // 负载均衡时每次展开都重新选择endpoint，替换scheme和authority；指向其他主机的绝对uri不受影响
+        this.balancer = base != null && resolver instanceof LoadBalancingUriResolver
+                && ((LoadBalancingUriResolver) resolver).isOrigin(base) ? (LoadBalancingUriResolver) resolver : null;
+        this.constant = variables.length == 0 && balancer == null ? URI.create(resolved) : null;
+    }
+
+    private static String parse(final String template, final List<String> names) {
+        isTrue(!template.contains(TOKEN_PREFIX), "template[%s] must not contain [%s]", template, TOKEN_PREFIX);
+        final StringBuilder skeleton = new StringBuilder(template.length());
+        int from = 0;
+        int open;
+        while ((open = template.indexOf('{', from)) >= 0) {
+            final int close = template.indexOf('}', open);
+            isTrue(close > open + 1, "invalid variable at %d of template[%s]", open, template);
+            final String name = template.substring(open + 1, close);
+            isTrue(name.indexOf('{') < 0, "invalid variable at %d of template[%s]", open, template);
+            final String literal = template.substring(from, open);
+            isTrue(literal.indexOf('}') < 0, "unmatched '}' in template[%s]", template);
+            skeleton.append(literal).append(TOKEN_PREFIX).append(names.size()).append(TOKEN_SUFFIX);
+            names.add(name.trim());
+            from = close + 1;
+        }
+        isTrue(template.indexOf('}', from) < 0, "unmatched '}' in template[%s]", template);
+        return skeleton.append(template, from, template.length()).toString();
+    }
+
+    private static int pathStart(final URI uri) {
+        final String authority = uri.getRawAuthority();
+        return uri.getScheme() == null ? 0 : uri.getScheme().length() + 1
+                + (authority == null ? 0 : authority.length() + 2);
+    }
+
+    private static Component component(final String resolved, final int index) {
+        final int fragment = resolved.indexOf('#');
+        if (fragment >= 0 && fragment < index) {
+            return Component.FRAGMENT;
+        }
+        final int query = resolved.indexOf('?');
+        return query >= 0 && query < index ? Component.QUERY : Component.PATH;
+    }
+
+    /**
+     * 获得模板.
+     *
+     * @return 模板
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * 按出现的顺序获得模板中的变量名.
+     *
+     * @return 变量名列表
+     */
+    public List<String> getVariables() {
+        return Collections.unmodifiableList(Arrays.asList(variables));
+    }
+
+    /**
+     * 按变量出现的顺序依次填入变量值，展开为URI.
+     *
+     * @param values 变量值，通过String.valueOf转换为字符串
+     * @return 展开后的URI
+     * @throws NullPointerException     If any value is <tt>null</tt>
+     * @throws IllegalArgumentException If the number of values does not match the variables
+     */
+    public URI expand(final Object... values) {
+        if (variables.length == 0 && (values == null || values.length == 0)) {
+            return constant != null ? constant : create(literals[0]);
+        }
+        notNull(values, "values is null");
+        isTrue(values.length == variables.length, "template[%s] expects %d values, but got %d",
+                template, variables.length, values.length);
+        final StringBuilder builder = new StringBuilder(literalLength + values.length * 16);
+        for (int i = 0; i < variables.length; i++) {
+            encode(builder.append(literals[i]), String.valueOf(notNull(values[i], "value of {%s} is null",
+                    variables[i])), components[i]);
+        }
+        return create(builder.append(literals[variables.length]).toString());
+    }
+
+    /**
+     * 按变量名填入变量值，展开为URI.
+     *
+     * @param values 变量名与变量值的映射，变量值通过String.valueOf转换为字符串
+     * @return 展开后的URI
+     * @throws NullPointerException If any variable is missing from values
+     */
+    public URI expand(final Map<String, ?> values) {
+        notNull(values, "values is null");
+        if (variables.length == 0) {
+            return constant != null ? constant : create(literals[0]);
+        }
+        final StringBuilder builder = new StringBuilder(literalLength + variables.length * 16);
+        for (int i = 0; i < variables.length; i++) {
+            encode(builder.append(literals[i]), String.valueOf(notNull(values.get(variables[i]),
+                    "value of {%s} is null", variables[i])), components[i]);
+        }
+        return create(builder.append(literals[variables.length]).toString());
+    }
+
+    private URI create(final String relative) {
+        final URI origin = balancer != null ? balancer.selectOrigin() : base;
+        if (origin == null || relative.startsWith("//")) {
+            // 以"//"开始的相对部分会被解析为authority，因此与前缀拼接后完整解析
+            return URI.create((balancer != null ? origin.toString() : prefix) + relative);
+        }
+        return origin.resolve(URI.create(relative));
+    }
+
+    private static void encode(final StringBuilder builder, final String value, final Component component) {
+        if (component == Component.PATH && (".".equals(value) || "..".equals(value))) {
+            for (int i = 0; i < value.length(); i++) {
+                builder.append("%2E");
+            }
+            return;
+        }
+        final String safe = component == Component.PATH ? PATH_SAFE
+                : component == Component.QUERY ? QUERY_SAFE : FRAGMENT_SAFE;
+        final int length = value.length();
+        int start = 0;
+        int i = 0;
+        while (i < length) {
+            final char c = value.charAt(i);
+            if (isSafe(c, safe)) {
+                i++;
+            } else {
+                builder.append(value, start, i);
+                final int end = Character.isHighSurrogate(c) && i + 1 < length ? i + 2 : i + 1;
+                for (byte b : value.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                    builder.append('%').append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F]);
+                }
+                i = end;
+                start = end;
+            }
+        }
+        builder.append(value, start, length);
+    }
+
+    private static boolean isSafe(final char c, final String safe) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || safe.indexOf(c) >= 0;
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
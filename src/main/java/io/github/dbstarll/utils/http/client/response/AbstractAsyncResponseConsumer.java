@@ -0,0 +1,110 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import org.apache.hc.client5.http.HttpResponseException;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+public abstract class AbstractAsyncResponseConsumer<T> implements AsyncResponseConsumer<T> {
+    private final boolean alwaysProcessEntity;
+    private volatile FutureCallback<T> resultCallback;
+
+    protected AbstractAsyncResponseConsumer(final boolean alwaysProcessEntity) {
+        this.alwaysProcessEntity = alwaysProcessEntity;
+    }
+
+    @Override
+    public final void consumeResponse(final HttpResponse response, final EntityDetails entityDetails,
+                                      final HttpContext context, final FutureCallback<T> callback)
+            throws HttpException, IOException {
+        if (response.getCode() >= HttpStatus.SC_REDIRECTION && (entityDetails == null || !alwaysProcessEntity)) {
+            callback.failed(new HttpResponseException(response.getCode(), response.getReasonPhrase()));
+        } else if (entityDetails == null) {
+            callback.completed(null);
+        } else {
+            start(ContentType.parseLenient(entityDetails.getContentType()), entityDetails.getContentLength());
+            this.resultCallback = callback;
+        }
+    }
+
+    /**
+     * 开始接收entity.
+     *
+     * @param contentType   entity的ContentType，可能为null
+     * @param contentLength entity的长度，未知时为负数
+     * @throws IOException in case of an I/O error
+     */
+    protected abstract void start(ContentType contentType, long contentLength) throws IOException;
+
+    /**
+     * 接收entity的一段数据.
+     *
+     * @param src 数据
+     * @throws IOException in case of an I/O error
+     */
+    protected abstract void data(ByteBuffer src) throws IOException;
+
+    /**
+     * entity接收完毕后，构造结果.
+     *
+     * @return 结果
+     * @throws IOException in case of an I/O error
+     */
+    protected abstract T buildResult() throws IOException;
+
+    @Override
+    public final void informationResponse(final HttpResponse response, final HttpContext context) {
+        // ignore 1xx response
+    }
+
+    @Override
+    public final void updateCapacity(final CapacityChannel capacityChannel) throws IOException {
+        capacityChannel.update(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public final void consume(final ByteBuffer src) throws IOException {
+        if (resultCallback != null) {
+            data(src);
+        } else {
+            // 通过Buffer调用，避免在Java 8上运行时找不到ByteBuffer的协变方法
+            ((Buffer) src).position(src.limit());
+        }
+    }
+
+    @Override
+    public final void streamEnd(final List<? extends Header> trailers) throws IOException {
+        final FutureCallback<T> callback = resultCallback;
+        if (callback != null) {
+            final T result = buildResult();
+            resultCallback = null;
+            callback.completed(result);
+        }
+    }
+
+    @Override
+    public final void failed(final Exception cause) {
+        final FutureCallback<T> callback = resultCallback;
+        if (callback != null) {
+            resultCallback = null;
+            callback.failed(cause);
+        }
+    }
+
+    @Override
+    public void releaseResources() {
+        resultCallback = null;
+    }
+}
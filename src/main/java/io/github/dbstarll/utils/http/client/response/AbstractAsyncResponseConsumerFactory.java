@@ -0,0 +1,43 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+public abstract class AbstractAsyncResponseConsumerFactory implements AsyncResponseConsumerFactory {
+    private final Map<Class<?>, Supplier<? extends AsyncResponseConsumer<?>>> consumers;
+
+    protected AbstractAsyncResponseConsumerFactory() {
+        this.consumers = new HashMap<>();
+    }
+
+    protected final <T> void addResponseConsumer(
+            final Class<T> responseClass, final Supplier<? extends AsyncResponseConsumer<? extends T>> supplier) {
+        notNull(responseClass, "responseClass is null");
+        notNull(supplier, "supplier is null");
+        consumers.put(responseClass, supplier);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final <T> AsyncResponseConsumer<T> getResponseConsumer(final Class<T> responseClass) {
+        final Supplier<? extends AsyncResponseConsumer<?>> supplier = consumers.get(
+                notNull(responseClass, "responseClass is null"));
+        return supplier == null ? null : (AsyncResponseConsumer<T>) supplier.get();
+    }
+
+    @Override
+    public final Iterator<Class<?>> iterator() {
+        final SortedSet<Class<?>> sorted = new TreeSet<>((c1, c2) -> StringUtils.compare(c1.getName(), c2.getName()));
+        sorted.addAll(consumers.keySet());
+        return sorted.iterator();
+    }
+}
@@ -3,38 +3,132 @@ package io.github.dbstarll.utils.http.client.response;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.hc.core5.http.io.HttpClientResponseHandler;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import static org.apache.commons.lang3.Validate.notNull;
 
+/**
+ * ResponseHandlerFactory的基础实现.
+ * 注册的ResponseHandler保存在不可变的快照中，写入时复制并整体替换，读取时无锁；
+ * 对于没有直接注册的response类，在已注册的类中查找离它最近的子类型，解析结果按response类缓存在ClassValue中.
+ */
 public abstract class AbstractResponseHandlerFactory implements ResponseHandlerFactory {
-    private final Map<Class<?>, HttpClientResponseHandler<?>> handlers;
+    private static final Comparator<Class<?>> NAME_ORDER = (c1, c2) -> StringUtils.compare(c1.getName(),
+            c2.getName());
+
+    private volatile Registry registry = new Registry(Collections.emptyMap());
 
     protected AbstractResponseHandlerFactory() {
-        this.handlers = new HashMap<>();
     }
 
     protected final <T> void addResponseHandler(final Class<T> responseClass,
                                                 final HttpClientResponseHandler<? extends T> responseHandler) {
         notNull(responseClass, "responseClass is null");
         notNull(responseHandler, "responseHandler is null");
-        handlers.put(responseClass, responseHandler);
+        addResponseHandlers(Collections.<Class<?>, HttpClientResponseHandler<?>>singletonMap(responseClass,
+                responseHandler));
+    }
+
+    /**
+     * 批量注册ResponseHandler，所有的变更对读取方一次性可见.
+     *
+     * @param responseHandlers response类与ResponseHandler的映射，后注册的覆盖先注册的
+     */
+    protected final synchronized void addResponseHandlers(
+            final Map<Class<?>, ? extends HttpClientResponseHandler<?>> responseHandlers) {
+        notNull(responseHandlers, "responseHandlers is null");
+        final Map<Class<?>, HttpClientResponseHandler<?>> handlers = new HashMap<>(registry.handlers);
+        handlers.putAll(responseHandlers);
+        this.registry = new Registry(handlers);
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public final <T> HttpClientResponseHandler<T> getResponseHandler(final Class<T> responseClass) {
-        return (HttpClientResponseHandler<T>) handlers.get(notNull(responseClass, "responseClass is null"));
+        return (HttpClientResponseHandler<T>) registry.resolved.get(notNull(responseClass, "responseClass is null"))
+                .orElse(null);
     }
 
     @Override
     public final Iterator<Class<?>> iterator() {
-        final SortedSet<Class<?>> sorted = new TreeSet<>((c1, c2) -> StringUtils.compare(c1.getName(), c2.getName()));
-        sorted.addAll(handlers.keySet());
-        return sorted.iterator();
+        return registry.sorted.iterator();
+    }
+
+    private static final class Registry {
+        private final Map<Class<?>, HttpClientResponseHandler<?>> handlers;
+        private final Set<Class<?>> sorted;
+        private final ClassValue<Optional<HttpClientResponseHandler<?>>> resolved =
+                new ClassValue<Optional<HttpClientResponseHandler<?>>>() {
+                    @Override
+                    protected Optional<HttpClientResponseHandler<?>> computeValue(final Class<?> type) {
+                        return Optional.ofNullable(resolve(type));
+                    }
+                };
+
+        private Registry(final Map<Class<?>, HttpClientResponseHandler<?>> handlers) {
+            final SortedMap<Class<?>, HttpClientResponseHandler<?>> sortedHandlers = new TreeMap<>(NAME_ORDER);
+            sortedHandlers.putAll(handlers);
+            this.handlers = Collections.unmodifiableMap(handlers);
+            this.sorted = Collections.unmodifiableSet(sortedHandlers.keySet());
+        }
+
+        /**
+         * 在已注册的类中查找与responseClass继承距离最近的子类型(包括自身)，距离相同时按类名排序取第一个.
+         */
+        private HttpClientResponseHandler<?> resolve(final Class<?> responseClass) {
+            final HttpClientResponseHandler<?> exact = handlers.get(responseClass);
+            if (exact != null) {
+                return exact;
+            }
+            Class<?> closest = null;
+            int closestDistance = Integer.MAX_VALUE;
+            for (Class<?> registered : sorted) {
+                final int distance = distance(registered, responseClass);
+                if (distance < closestDistance) {
+                    closest = registered;
+                    closestDistance = distance;
+                }
+            }
+            return closest == null ? null : handlers.get(closest);
+        }
+
+        /**
+         * 沿着superclass和interfaces广度优先向上查找，返回从type到supertype的层数，不是supertype的子类型时返回MAX_VALUE.
+         */
+        private static int distance(final Class<?> type, final Class<?> supertype) {
+            if (!supertype.isAssignableFrom(type)) {
+                return Integer.MAX_VALUE;
+            }
+            final Set<Class<?>> visited = new HashSet<>();
+            Queue<Class<?>> level = new ArrayDeque<>(Collections.singleton(type));
+            for (int distance = 0; !level.isEmpty(); distance++) {
+                final Queue<Class<?>> next = new ArrayDeque<>();
+                for (Class<?> current : level) {
+                    if (current == supertype) {
+                        return distance;
+                    } else if (visited.add(current)) {
+                        if (current.getSuperclass() != null) {
+                            next.add(current.getSuperclass());
+                        } else if (current.isInterface()) {
+                            next.add(Object.class);
+                        }
+                        Collections.addAll(next, current.getInterfaces());
+                    }
+                }
+                level = next;
+            }
+            return Integer.MAX_VALUE;
+        }
     }
 }
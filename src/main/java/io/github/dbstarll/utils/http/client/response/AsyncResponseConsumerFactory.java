@@ -0,0 +1,14 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+
+public interface AsyncResponseConsumerFactory extends Iterable<Class<?>> {
+    /**
+     * 获得相应response类型的AsyncResponseConsumer，每次调用都返回一个新的实例.
+     *
+     * @param responseClass response类
+     * @param <T>           response类型
+     * @return AsyncResponseConsumer
+     */
+    <T> AsyncResponseConsumer<T> getResponseConsumer(Class<T> responseClass);
+}
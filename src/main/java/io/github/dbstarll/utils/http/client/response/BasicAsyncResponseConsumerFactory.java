@@ -0,0 +1,13 @@
+package io.github.dbstarll.utils.http.client.response;
+
+public class BasicAsyncResponseConsumerFactory extends AbstractAsyncResponseConsumerFactory {
+    /**
+     * 构造BasicAsyncResponseConsumerFactory.
+     *
+     * @param alwaysProcessEntity 在返回错误的状态码时，是否还要继续解析entity
+     */
+    public BasicAsyncResponseConsumerFactory(final boolean alwaysProcessEntity) {
+        addResponseConsumer(String.class, () -> new StringAsyncResponseConsumer(alwaysProcessEntity));
+        addResponseConsumer(byte[].class, () -> new ByteArrayAsyncResponseConsumer(alwaysProcessEntity));
+    }
+}
@@ -0,0 +1,37 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import org.apache.hc.core5.http.ContentType;
+
+import java.nio.ByteBuffer;
+
+public final class ByteArrayAsyncResponseConsumer extends AbstractAsyncResponseConsumer<byte[]> {
+    private ContentBuffer content;
+
+    /**
+     * @param alwaysProcessEntity 在返回错误的状态码时，是否还要继续解析entity
+     */
+    public ByteArrayAsyncResponseConsumer(final boolean alwaysProcessEntity) {
+        super(alwaysProcessEntity);
+    }
+
+    @Override
+    protected void start(final ContentType contentType, final long contentLength) {
+        this.content = new ContentBuffer(contentLength);
+    }
+
+    @Override
+    protected void data(final ByteBuffer src) {
+        content.append(src);
+    }
+
+    @Override
+    protected byte[] buildResult() {
+        return content.toByteArray();
+    }
+
+    @Override
+    public void releaseResources() {
+        super.releaseResources();
+        this.content = null;
+    }
+}
@@ -1,7 +1,6 @@
 package io.github.dbstarll.utils.http.client.response;
 
 import org.apache.hc.core5.http.HttpEntity;
-import org.apache.hc.core5.http.io.entity.EntityUtils;
 
 import java.io.IOException;
 
@@ -15,6 +14,6 @@ public final class ByteArrayResponseHandler extends AbstractResponseHandler<byte
 
     @Override
     public byte[] handleEntity(final HttpEntity entity) throws IOException {
-        return EntityUtils.toByteArray(entity);
+        return ContentBuffer.toByteArray(entity);
     }
 }
@@ -0,0 +1,22 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import org.apache.hc.core5.http.HttpEntity;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public final class ByteBufferResponseHandler extends AbstractResponseHandler<ByteBuffer> {
+    /**
+     * 以只读ByteBuffer的方式返回entity的内容，避免结果数组的复制.
+     *
+     * @param alwaysProcessEntity 在返回错误的状态码时，是否还要继续解析entity
+     */
+    public ByteBufferResponseHandler(final boolean alwaysProcessEntity) {
+        super(alwaysProcessEntity);
+    }
+
+    @Override
+    public ByteBuffer handleEntity(final HttpEntity entity) throws IOException {
+        return ContentBuffer.toByteBuffer(entity);
+    }
+}
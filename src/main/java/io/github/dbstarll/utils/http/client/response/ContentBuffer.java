@@ -0,0 +1,448 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.util.Args;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class ContentBuffer {
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+    private static final int CHUNK_SIZE = 64 << 10;
+    private static final int MAX_POOLED_CHUNKS = 256;
+    private static final Queue<byte[]> CHUNKS = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED_CHUNKS = new AtomicInteger();
+    private static final int MAX_POOLED_CHARS = 1 << 20;
+    private static final BlockingQueue<char[]> CHAR_BUFFERS = new ArrayBlockingQueue<>(8);
+    private static final int MAX_POOLED_DECODERS = 16;
+    private static final Map<Charset, BlockingQueue<CharsetDecoder>> DECODERS = new ConcurrentHashMap<>();
+    private static final Map<String, Charset> DEFAULT_CHARSETS = defaultCharsets();
+
+    private byte[] buffer;
+    private int length;
+
+    ContentBuffer(final long contentLength) {
+        this(new byte[contentLength >= 0 && contentLength <= MAX_CAPACITY ? (int) contentLength : DEFAULT_CAPACITY]);
+    }
+
+    private ContentBuffer(final byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    void append(final ByteBuffer src) {
+        final int size = src.remaining();
+        ensureCapacity(size);
+        src.get(buffer, length, size);
+        length += size;
+    }
+
+    void append(final InputStream in) throws IOException {
+        while (true) {
+            if (length == buffer.length) {
+                // 预分配的空间恰好用完时，先探测是否已到达流的末尾，避免不必要的扩容
+                final int b = in.read();
+                if (b < 0) {
+                    return;
+                }
+                ensureCapacity(1);
+                buffer[length++] = (byte) b;
+            }
+            final int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                return;
+            }
+            length += read;
+        }
+    }
+
+    private void ensureCapacity(final int size) {
+        final int required = length + size;
+        if (required < 0 || required > MAX_CAPACITY) {
+            throw new OutOfMemoryError("content too large: " + ((long) length + size));
+        } else if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, (int) Math.min(MAX_CAPACITY,
+                    Math.max(required, Math.max(DEFAULT_CAPACITY, (long) buffer.length << 1))));
+        }
+    }
+
+    byte[] array() {
+        return buffer;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * 返回content的字节数组，当预分配的大小恰好等于content的长度时，直接返回内部数组而不复制.
+     *
+     * @return content的字节数组
+     */
+    byte[] toByteArray() {
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * 读取entity的全部内容.
+     * 已知Content-Length时预分配恰好大小的数组直接读入，结果不再复制；
+     * 未知长度时读入从池中借出的定长chunk，最后只复制一次到结果数组，chunk随后归还到池中.
+     *
+     * @param entity HttpEntity
+     * @return entity的字节数组，entity没有内容时返回null
+     * @throws IOException in case of an I/O error
+     */
+    static byte[] toByteArray(final HttpEntity entity) throws IOException {
+        if (entity instanceof SharedBufferEntity) {
+            final ByteBuffer shared = ((SharedBufferEntity) entity).buffer();
+            final byte[] result = new byte[shared.remaining()];
+            shared.get(result);
+            return result;
+        }
+        final long contentLength = Args.checkContentLength(entity);
+        try (InputStream in = entity.getContent()) {
+            if (in == null) {
+                return null;
+            } else if (contentLength >= 0) {
+                final ContentBuffer content = new ContentBuffer(contentLength);
+                content.append(in);
+                return content.toByteArray();
+            }
+            return readChunked(in);
+        }
+    }
+
+    private static byte[] readChunked(final InputStream in) throws IOException {
+        final List<byte[]> chunks = new ArrayList<>();
+        try {
+            long total = 0;
+            int last = 0;
+            while (last >= 0) {
+                final byte[] chunk = borrowChunk();
+                chunks.add(chunk);
+                last = fill(in, chunk);
+                total += last < 0 ? -1L - last : CHUNK_SIZE;
+                if (total > MAX_CAPACITY) {
+                    throw new OutOfMemoryError("content too large: " + total);
+                }
+            }
+            final byte[] result = new byte[(int) total];
+            int offset = 0;
+            for (byte[] chunk : chunks) {
+                final int size = Math.min(CHUNK_SIZE, result.length - offset);
+                System.arraycopy(chunk, 0, result, offset, size);
+                offset += size;
+            }
+            return result;
+        } finally {
+            chunks.forEach(ContentBuffer::returnChunk);
+        }
+    }
+
+    /**
+     * 读满一个chunk.
+     *
+     * @return chunk读满时返回chunk的大小，到达流的末尾时返回(-1 - 已读取的字节数)
+     */
+    private static int fill(final InputStream in, final byte[] chunk) throws IOException {
+        int offset = 0;
+        while (offset < chunk.length) {
+            final int read = in.read(chunk, offset, chunk.length - offset);
+            if (read < 0) {
+                return -1 - offset;
+            }
+            offset += read;
+        }
+        return offset;
+    }
+
+    private static byte[] borrowChunk() {
+        final byte[] chunk = CHUNKS.poll();
+        if (chunk == null) {
+            return new byte[CHUNK_SIZE];
+        }
+        POOLED_CHUNKS.decrementAndGet();
+        return chunk;
+    }
+
+    private static void returnChunk(final byte[] chunk) {
+        if (POOLED_CHUNKS.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+            CHUNKS.offer(chunk);
+        } else {
+            POOLED_CHUNKS.decrementAndGet();
+        }
+    }
+
+    /**
+     * 读取entity的全部内容，并以只读ByteBuffer的方式返回，不对读入的数组做任何复制.
+     *
+     * @param entity HttpEntity
+     * @return entity内容的只读ByteBuffer，entity没有内容时返回null
+     * @throws IOException in case of an I/O error
+     */
+    static ByteBuffer toByteBuffer(final HttpEntity entity) throws IOException {
+        if (entity instanceof SharedBufferEntity) {
+            return ((SharedBufferEntity) entity).getContentBuffer();
+        }
+        final long contentLength = Args.checkContentLength(entity);
+        try (InputStream in = entity.getContent()) {
+            if (in == null) {
+                return null;
+            }
+            final ContentBuffer content = new ContentBuffer(contentLength);
+            content.append(in);
+            return ByteBuffer.wrap(content.buffer, 0, content.length).asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * 读取entity的全部内容并解码为String，与EntityUtils.toString的charset规则一致.
+     * US-ASCII和ISO-8859-1直接读入从池中借出的chunk；其他charset(包括UTF-8)使用池中的CharsetDecoder
+     * 按chunk增量解码到池中借出的字符数组，数组不够大时按Content-Length预分配. 两种方式都只在构造String时复制一次.
+     * 对象池的数量和数组的大小都有上限，不随线程数增长，也不依赖线程的复用.
+     * SharedBufferEntity直接从共享的ByteBuffer解码，不再读入字节数组.
+     *
+     * @param entity HttpEntity
+     * @return entity的内容，entity没有内容时返回null
+     * @throws IOException in case of an I/O error
+     */
+    static String toString(final HttpEntity entity) throws IOException {
+        final long contentLength = Args.checkContentLength(entity);
+        final Charset charset = charset(ContentType.parse(entity.getContentType()));
+        if (entity instanceof SharedBufferEntity) {
+            return decode(((SharedBufferEntity) entity).buffer(), charset);
+        }
+        try (InputStream in = entity.getContent()) {
+            if (in == null) {
+                return null;
+            } else if (isSingleByte(charset) && contentLength <= CHUNK_SIZE) {
+                final byte[] chunk = borrowChunk();
+                try {
+                    final ContentBuffer content = new ContentBuffer(chunk);
+                    content.append(in);
+                    return new String(content.buffer, 0, content.length, charset);
+                } finally {
+                    returnChunk(chunk);
+                }
+            }
+            return decode(in, contentLength, charset);
+        }
+    }
+
+    private static boolean isSingleByte(final Charset charset) {
+        return StandardCharsets.ISO_8859_1.equals(charset) || StandardCharsets.US_ASCII.equals(charset);
+    }
+
+    private static String decode(final InputStream in, final long contentLength, final Charset charset)
+            throws IOException {
+        final CharsetDecoder decoder = borrowDecoder(charset);
+        final char[] scratch = borrowChars();
+        CharBuffer chars = allocate(decoder, contentLength, scratch);
+        final byte[] chunk = borrowChunk();
+        try {
+            final ByteBuffer bytes = ByteBuffer.wrap(chunk);
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                final int read = in.read(chunk, bytes.position(), bytes.remaining());
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    // 通过Buffer调用，避免在Java 8上运行时找不到ByteBuffer的协变方法
+                    ((Buffer) bytes).position(bytes.position() + read);
+                }
+                ((Buffer) bytes).flip();
+                while (decoder.decode(bytes, chars, endOfInput).isOverflow()) {
+                    chars = grow(chars);
+                }
+                bytes.compact();
+            }
+            chars = flush(decoder, chars);
+            return new String(chars.array(), 0, chars.position());
+        } finally {
+            returnChunk(chunk);
+            returnChars(scratch, chars);
+            returnDecoder(decoder);
+        }
+    }
+
+    private static String decode(final ByteBuffer bytes, final Charset charset) {
+        if (bytes.hasArray() && isSingleByte(charset)) {
+            return new String(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining(), charset);
+        }
+        final CharsetDecoder decoder = borrowDecoder(charset);
+        final char[] scratch = borrowChars();
+        CharBuffer chars = allocate(decoder, bytes.remaining(), scratch);
+        try {
+            while (decoder.decode(bytes, chars, true).isOverflow()) {
+                chars = grow(chars);
+            }
+            chars = flush(decoder, chars);
+            return new String(chars.array(), 0, chars.position());
+        } finally {
+            returnChars(scratch, chars);
+            returnDecoder(decoder);
+        }
+    }
+
+    private static CharBuffer allocate(final CharsetDecoder decoder, final long contentLength, final char[] scratch) {
+        return estimate(decoder, contentLength) <= scratch.length ? CharBuffer.wrap(scratch)
+                : allocate(decoder, contentLength);
+    }
+
+    private static CharBuffer allocate(final CharsetDecoder decoder, final long contentLength) {
+        return CharBuffer.allocate((int) Math.min(MAX_CAPACITY, estimate(decoder, contentLength)));
+    }
+
+    private static long estimate(final CharsetDecoder decoder, final long contentLength) {
+        return contentLength < 0 ? DEFAULT_CAPACITY
+                : (long) Math.ceil(contentLength * (double) decoder.averageCharsPerByte());
+    }
+
+    private static CharBuffer flush(final CharsetDecoder decoder, final CharBuffer decoded) {
+        CharBuffer chars = decoded;
+        while (decoder.flush(chars).isOverflow()) {
+            chars = grow(chars);
+        }
+        return chars;
+    }
+
+    private static char[] borrowChars() {
+        final char[] chars = CHAR_BUFFERS.poll();
+        return chars != null ? chars : new char[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * 归还字符数组，预分配或者扩容后的更大数组在不超过上限时代替借出的数组归还，使池中的数组适应常见的响应大小.
+     */
+    private static void returnChars(final char[] borrowed, final CharBuffer used) {
+        CHAR_BUFFERS.offer(used.capacity() <= MAX_POOLED_CHARS ? used.array() : borrowed);
+    }
+
+    private static CharsetDecoder borrowDecoder(final Charset charset) {
+        final CharsetDecoder decoder = decoders(charset).poll();
+        return decoder != null ? decoder.reset() : newDecoder(charset);
+    }
+
+    private static void returnDecoder(final CharsetDecoder decoder) {
+        decoders(decoder.charset()).offer(decoder);
+    }
+
+    private static BlockingQueue<CharsetDecoder> decoders(final Charset charset) {
+        return DECODERS.computeIfAbsent(charset, c -> new ArrayBlockingQueue<>(MAX_POOLED_DECODERS));
+    }
+
+    private static CharsetDecoder newDecoder(final Charset charset) {
+        return charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    private static CharBuffer grow(final CharBuffer chars) {
+        final int capacity = chars.capacity();
+        if (capacity >= MAX_CAPACITY) {
+            throw new OutOfMemoryError("content too large: " + capacity);
+        }
+        final CharBuffer grown = CharBuffer.allocate((int) Math.min(MAX_CAPACITY, Math.max(DEFAULT_CAPACITY,
+                (long) capacity << 1)));
+        ((Buffer) chars).flip();
+        return grown.put(chars);
+    }
+
+    /**
+     * 按数据块增量解码的String，供异步响应在数据到达时直接解码，不再先累积字节数组.
+     * 字符数组按Content-Length预分配，跨数据块被截断的多字节字符暂存在余字节缓冲中，与下一个数据块拼接后继续解码.
+     */
+    static final class StringDecoder {
+        private static final int MAX_REMAINDER = 16;
+
+        private final CharsetDecoder decoder;
+        private final ByteBuffer remainder = ByteBuffer.allocate(MAX_REMAINDER);
+        private CharBuffer chars;
+
+        StringDecoder(final ContentType contentType, final long contentLength) {
+            this.decoder = newDecoder(charset(contentType));
+            this.chars = allocate(decoder, contentLength);
+        }
+
+        void append(final ByteBuffer src) {
+            while (remainder.position() > 0 && src.hasRemaining()) {
+                // 逐字节补齐被截断的字符，补齐后余字节缓冲即被清空
+                remainder.put(src.get());
+                ((Buffer) remainder).flip();
+                decode(remainder, false);
+                remainder.compact();
+            }
+            decode(src, false);
+            if (src.remaining() > remainder.remaining()) {
+                throw new IllegalStateException("undecodable bytes: " + src.remaining());
+            }
+            remainder.put(src);
+        }
+
+        String finish() {
+            ((Buffer) remainder).flip();
+            decode(remainder, true);
+            while (decoder.flush(chars).isOverflow()) {
+                chars = grow(chars);
+            }
+            return new String(chars.array(), 0, chars.position());
+        }
+
+        private void decode(final ByteBuffer bytes, final boolean endOfInput) {
+            while (decoder.decode(bytes, chars, endOfInput).isOverflow()) {
+                chars = grow(chars);
+            }
+        }
+    }
+
+    /**
+     * 与EntityUtils.toString一致：优先使用ContentType中的charset，其次使用mimeType的默认charset，最后使用ISO-8859-1.
+     *
+     * @param contentType ContentType
+     * @return Charset
+     */
+    static Charset charset(final ContentType contentType) {
+        Charset charset = contentType == null ? null : contentType.getCharset();
+        if (charset == null && contentType != null && contentType.getMimeType() != null) {
+            charset = DEFAULT_CHARSETS.get(contentType.getMimeType().toLowerCase(Locale.ROOT));
+        }
+        return charset == null ? StandardCharsets.ISO_8859_1 : charset;
+    }
+
+    /**
+     * 与EntityUtils中的映射一致，代替已废弃的ContentType.getByMimeType.
+     */
+    private static Map<String, Charset> defaultCharsets() {
+        final ContentType[] contentTypes = {ContentType.APPLICATION_ATOM_XML, ContentType.APPLICATION_FORM_URLENCODED,
+                ContentType.APPLICATION_JSON, ContentType.APPLICATION_SVG_XML, ContentType.APPLICATION_XHTML_XML,
+                ContentType.APPLICATION_XML, ContentType.MULTIPART_FORM_DATA, ContentType.TEXT_HTML,
+                ContentType.TEXT_PLAIN, ContentType.TEXT_XML};
+        final Map<String, Charset> charsets = new HashMap<>();
+        for (ContentType contentType : contentTypes) {
+            if (contentType.getCharset() != null) {
+                charsets.put(contentType.getMimeType(), contentType.getCharset());
+            }
+        }
+        return Collections.unmodifiableMap(charsets);
+    }
+}
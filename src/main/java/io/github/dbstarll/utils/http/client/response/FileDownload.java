@@ -0,0 +1,71 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import java.nio.file.Path;
+
+public final class FileDownload {
+    private final Path path;
+    private final long offset;
+    private final long transferred;
+    private final byte[] digest;
+
+    FileDownload(final Path path, final long offset, final long transferred, final byte[] digest) {
+        this.path = path;
+        this.offset = offset;
+        this.transferred = transferred;
+        this.digest = digest;
+    }
+
+    /**
+     * 获得下载的目标文件.
+     *
+     * @return 目标文件
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * 获得本次下载开始写入的位置，断点续传时为已存在的文件长度，否则为0.
+     *
+     * @return 开始写入的位置
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * 获得本次下载写入的字节数.
+     *
+     * @return 本次下载写入的字节数
+     */
+    public long getTransferred() {
+        return transferred;
+    }
+
+    /**
+     * 获得下载完成后文件的长度.
+     *
+     * @return 文件的长度
+     */
+    public long getLength() {
+        return offset + transferred;
+    }
+
+    /**
+     * 本次下载是否为断点续传.
+     *
+     * @return 是否为断点续传
+     */
+    public boolean isResumed() {
+        return offset > 0;
+    }
+
+    /**
+     * 获得整个文件内容的摘要，未设置摘要算法时返回null.
+     *
+     * @return 文件内容的摘要
+     */
+    public byte[] getDigest() {
+        return digest == null ? null : digest.clone();
+    }
+}
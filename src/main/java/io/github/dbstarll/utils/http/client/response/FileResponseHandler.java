@@ -0,0 +1,239 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import org.apache.hc.client5.http.ClientProtocolException;
+import org.apache.hc.client5.http.HttpResponseException;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 将entity直接写入文件的ResponseHandler，不在内存中缓存整个entity.
+ * 不计算摘要时通过FileChannel.transferFrom写入，计算摘要时通过从有上限的对象池中借出的direct buffer写入.
+ */
+public final class FileResponseHandler implements HttpClientResponseHandler<FileDownload> {
+    private static final int CHUNK_SIZE = 64 << 10;
+    private static final String BYTES_UNIT = "bytes";
+    private static final BlockingQueue<ByteBuffer> BUFFERS = new ArrayBlockingQueue<>(32);
+
+    private final Path target;
+    private final boolean resume;
+    private final String digestAlgorithm;
+
+    /**
+     * 构造FileResponseHandler，每次下载都覆盖目标文件.
+     *
+     * @param target 目标文件
+     */
+    public FileResponseHandler(final Path target) {
+        this(target, false, null);
+    }
+
+    /**
+     * 构造FileResponseHandler.
+     *
+     * @param target          目标文件
+     * @param resume          是否从已存在的文件末尾断点续传，需要配合{@link #prepare(HttpRequest)}设置Range请求头
+     * @param digestAlgorithm 摘要算法，比如SHA-256，为null时不计算摘要
+     */
+    public FileResponseHandler(final Path target, final boolean resume, final String digestAlgorithm) {
+        this.target = notNull(target, "target is null");
+        this.resume = resume;
+        this.digestAlgorithm = digestAlgorithm;
+        newDigest();
+    }
+
+    /**
+     * 断点续传时，根据已存在的文件长度为请求设置Range请求头.
+     *
+     * @param request 请求
+     * @param <R>     请求类型
+     * @return 设置后的请求
+     * @throws IOException in case of an I/O error
+     */
+    public <R extends HttpRequest> R prepare(final R request) throws IOException {
+        notNull(request, "request is null");
+        final long size = resume && Files.isRegularFile(target) ? Files.size(target) : 0;
+        if (size > 0) {
+            request.setHeader(HttpHeaders.RANGE, BYTES_UNIT + "=" + size + "-");
+        } else {
+            request.removeHeaders(HttpHeaders.RANGE);
+        }
+        return request;
+    }
+
+    @Override
+    public FileDownload handleResponse(final ClassicHttpResponse response) throws IOException {
+        final HttpEntity entity = response.getEntity();
+        try {
+            final int code = response.getCode();
+            if (code == HttpStatus.SC_PARTIAL_CONTENT) {
+                return transfer(entity, contentRangeStart(response));
+            } else if (code == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && isComplete(response)) {
+                return complete();
+            } else if (code >= HttpStatus.SC_REDIRECTION) {
+                throw new HttpResponseException(code, response.getReasonPhrase());
+            } else {
+                return transfer(entity, 0);
+            }
+        } finally {
+            EntityUtils.consume(entity);
+        }
+    }
+
+    private FileDownload transfer(final HttpEntity entity, final long offset) throws IOException {
+        final long size = Files.isRegularFile(target) ? Files.size(target) : 0;
+        if (offset > size) {
+            throw new ClientProtocolException("Content-Range starts at " + offset + " beyond file length " + size);
+        }
+        final MessageDigest digest = newDigest();
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            channel.truncate(offset);
+            if (digest != null) {
+                update(digest, channel, offset);
+            }
+            long transferred = 0;
+            try (InputStream in = entity == null ? null : entity.getContent()) {
+                if (in != null) {
+                    final ReadableByteChannel src = Channels.newChannel(in);
+                    transferred = digest == null ? transfer(src, channel, offset) : copy(src, channel, offset, digest);
+                }
+            }
+            return new FileDownload(target, offset, transferred, digest == null ? null : digest.digest());
+        }
+    }
+
+    private FileDownload complete() throws IOException {
+        final long size = Files.size(target);
+        final MessageDigest digest = newDigest();
+        if (digest != null) {
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.READ)) {
+                update(digest, channel, size);
+            }
+        }
+        return new FileDownload(target, size, 0, digest == null ? null : digest.digest());
+    }
+
+    private static long transfer(final ReadableByteChannel src, final FileChannel channel, final long offset)
+            throws IOException {
+        long position = offset;
+        long count;
+        while ((count = channel.transferFrom(src, position, CHUNK_SIZE)) > 0) {
+            position += count;
+        }
+        return position - offset;
+    }
+
+    private static long copy(final ReadableByteChannel src, final FileChannel channel, final long offset,
+                             final MessageDigest digest) throws IOException {
+        final ByteBuffer buffer = borrowBuffer();
+        try {
+            long position = offset;
+            while (src.read(buffer) >= 0) {
+                ((Buffer) buffer).flip();
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                ((Buffer) buffer).clear();
+            }
+            return position - offset;
+        } finally {
+            BUFFERS.offer(buffer);
+        }
+    }
+
+    private static void update(final MessageDigest digest, final FileChannel channel, final long length)
+            throws IOException {
+        final ByteBuffer buffer = borrowBuffer();
+        try {
+            long position = 0;
+            while (position < length) {
+                // 通过Buffer调用，避免在Java 8上运行时找不到ByteBuffer的协变方法
+                ((Buffer) buffer).clear().limit((int) Math.min(buffer.capacity(), length - position));
+                final int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                position += read;
+                ((Buffer) buffer).flip();
+                digest.update(buffer);
+            }
+        } finally {
+            BUFFERS.offer(buffer);
+        }
+    }
+
+    private static ByteBuffer borrowBuffer() {
+        final ByteBuffer buffer = BUFFERS.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+        ((Buffer) buffer).clear();
+        return buffer;
+    }
+
+    private boolean isComplete(final ClassicHttpResponse response) throws IOException {
+        final String range = contentRange(response);
+        if (resume && range != null && range.startsWith("*/") && Files.isRegularFile(target)) {
+            try {
+                return Long.parseLong(range.substring(2).trim()) == Files.size(target);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static long contentRangeStart(final ClassicHttpResponse response) throws ClientProtocolException {
+        final String range = contentRange(response);
+        final int dash = range == null ? -1 : range.indexOf('-');
+        if (dash > 0) {
+            try {
+                return Long.parseLong(range.substring(0, dash).trim());
+            } catch (NumberFormatException e) {
+                // fall through
+            }
+        }
+        throw new ClientProtocolException("Invalid Content-Range: " + range);
+    }
+
+    private static String contentRange(final ClassicHttpResponse response) {
+        final Header header = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+        final String value = header == null ? null : header.getValue().trim();
+        if (value != null && value.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            return value.substring(BYTES_UNIT.length()).trim();
+        }
+        return null;
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return digestAlgorithm == null ? null : MessageDigest.getInstance(digestAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("unsupported digest algorithm: " + digestAlgorithm, e);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package io.github.dbstarll.utils.http.client.response;
+
+public class FileResponseHandlerFactory extends AbstractResponseHandlerFactory {
+    /**
+     * 构造FileResponseHandlerFactory，以FileDownload为结果类型注册FileResponseHandler.
+     *
+     * @param responseHandler FileResponseHandler
+     */
+    public FileResponseHandlerFactory(final FileResponseHandler responseHandler) {
+        addResponseHandler(FileDownload.class, responseHandler);
+    }
+}
@@ -1,6 +1,10 @@
 package io.github.dbstarll.utils.http.client.response;
 
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static org.apache.commons.lang3.Validate.noNullElements;
 
@@ -14,11 +18,15 @@ public class MultiResponseHandlerFactory extends AbstractResponseHandlerFactory
         addResponseHandlerFactory(factories);
     }
 
+    /**
+     * 合并ResponseHandlerFactory中注册的ResponseHandler，后合并的覆盖先前已注册的同一response类.
+     * 可以在运行时调用，所有的变更对读取方一次性可见，读取方不需要加锁.
+     *
+     * @param factories ResponseHandlerFactory数组
+     */
     protected final void addResponseHandlerFactory(final ResponseHandlerFactory... factories) {
-        Arrays.stream(noNullElements(factories)).forEach(f -> f.forEach(c -> addResponseHandler(c, f)));
-    }
-
-    private <T> void addResponseHandler(final Class<T> responseClass, final ResponseHandlerFactory factory) {
-        addResponseHandler(responseClass, factory.getResponseHandler(responseClass));
+        final Map<Class<?>, HttpClientResponseHandler<?>> handlers = new LinkedHashMap<>();
+        Arrays.stream(noNullElements(factories)).forEach(f -> f.forEach(c -> handlers.put(c, f.getResponseHandler(c))));
+        addResponseHandlers(handlers);
     }
 }
@@ -0,0 +1,112 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 内容为共享ByteBuffer的HttpEntity，比如缓存中的响应内容.
+ * 每次读取都基于ByteBuffer的独立视图，不修改也不复制共享的内容；
+ * ByteArrayResponseHandler、StringResponseHandler以及ByteBufferResponseHandler直接从ByteBuffer中读取，不经过InputStream.
+ */
+public final class SharedBufferEntity extends AbstractHttpEntity {
+    private final ByteBuffer content;
+
+    /**
+     * 构造SharedBufferEntity.
+     *
+     * @param content         共享的内容，position到limit之间为entity的内容
+     * @param contentType     Content-Type
+     * @param contentEncoding Content-Encoding
+     */
+    public SharedBufferEntity(final ByteBuffer content, final String contentType, final String contentEncoding) {
+        super(contentType, contentEncoding);
+        this.content = notNull(content, "content is null").duplicate();
+    }
+
+    /**
+     * 获得entity内容的只读视图.
+     *
+     * @return entity内容的只读ByteBuffer
+     */
+    public ByteBuffer getContentBuffer() {
+        return content.asReadOnlyBuffer();
+    }
+
+    /**
+     * 获得entity内容的独立视图，堆内的内容可以通过视图直接访问底层数组.
+     */
+    ByteBuffer buffer() {
+        return content.duplicate();
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return content.remaining();
+    }
+
+    @Override
+    public InputStream getContent() {
+        final ByteBuffer buffer = content.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) {
+                if (len == 0) {
+                    return 0;
+                } else if (!buffer.hasRemaining()) {
+                    return -1;
+                }
+                final int size = Math.min(len, buffer.remaining());
+                buffer.get(b, off, size);
+                return size;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(final OutputStream outStream) throws IOException {
+        notNull(outStream, "outStream is null");
+        final ByteBuffer buffer = content.duplicate();
+        if (buffer.hasArray()) {
+            outStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            final byte[] chunk = new byte[Math.min(buffer.remaining(), 8192)];
+            while (buffer.hasRemaining()) {
+                final int size = Math.min(chunk.length, buffer.remaining());
+                buffer.get(chunk, 0, size);
+                outStream.write(chunk, 0, size);
+            }
+        }
+        outStream.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        // 共享的内容由其持有者管理
+    }
+}
@@ -0,0 +1,38 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import org.apache.hc.core5.http.ContentType;
+
+import java.nio.ByteBuffer;
+
+public final class StringAsyncResponseConsumer extends AbstractAsyncResponseConsumer<String> {
+    private ContentBuffer.StringDecoder content;
+
+    /**
+     * @param alwaysProcessEntity 在返回错误的状态码时，是否还要继续解析entity
+     */
+    public StringAsyncResponseConsumer(final boolean alwaysProcessEntity) {
+        super(alwaysProcessEntity);
+    }
+
+    @Override
+    protected void start(final ContentType contentType, final long contentLength) {
+        this.content = new ContentBuffer.StringDecoder(contentType, contentLength);
+    }
+
+    @Override
+    protected void data(final ByteBuffer src) {
+        // 数据到达时直接解码到预分配的字符数组，构造String时只复制一次
+        content.append(src);
+    }
+
+    @Override
+    protected String buildResult() {
+        return content.finish();
+    }
+
+    @Override
+    public void releaseResources() {
+        super.releaseResources();
+        this.content = null;
+    }
+}
@@ -1,13 +1,10 @@
 package io.github.dbstarll.utils.http.client.response;
 
-import org.apache.hc.client5.http.impl.classic.BasicHttpClientResponseHandler;
 import org.apache.hc.core5.http.HttpEntity;
 
 import java.io.IOException;
 
 public final class StringResponseHandler extends AbstractResponseHandler<String> {
-    private static final BasicHttpClientResponseHandler DEFAULT_HANDLER = new BasicHttpClientResponseHandler();
-
     /**
      * @param alwaysProcessEntity 在返回错误的状态码时，是否还要继续解析entity
      */
@@ -17,6 +14,6 @@ public final class StringResponseHandler extends AbstractResponseHandler<String>
 
     @Override
     public String handleEntity(final HttpEntity entity) throws IOException {
-        return DEFAULT_HANDLER.handleEntity(entity);
+        return ContentBuffer.toString(entity);
     }
 }
@@ -0,0 +1,168 @@
+package io.github.dbstarll.utils.http.client;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.apache.hc.client5.http.DnsResolver;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.BasicHttpClientResponseHandler;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+
+class CachingDnsResolverTest {
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger lookups = new AtomicInteger();
+    private volatile boolean failing;
+    private volatile byte last = 1;
+
+    private final DnsResolver delegate = new DnsResolver() {
+        @Override
+        public InetAddress[] resolve(final String host) throws UnknownHostException {
+            lookups.incrementAndGet();
+            if (failing || host.startsWith("unknown")) {
+                throw new UnknownHostException(host);
+            }
+            return new InetAddress[]{InetAddress.getByAddress(host, new byte[]{10, 0, 0, last})};
+        }
+
+        @Override
+        public String resolveCanonicalHostname(final String host) {
+            return host;
+        }
+    };
+
+    private CachingDnsResolver resolver() {
+        return new CachingDnsResolver(delegate, clock::get).setTimeToLive(TimeValue.ofSeconds(60))
+                .setRefreshAhead(TimeValue.ofSeconds(10)).setMaxStale(TimeValue.ofSeconds(30))
+                .setExecutor(Runnable::run);
+    }
+
+    private void advance(final long seconds) {
+        clock.addAndGet(TimeValue.ofSeconds(seconds).toNanoseconds());
+    }
+
+    @Test
+    void hitAndMiss() throws UnknownHostException {
+        final CachingDnsResolver resolver = resolver();
+        final InetAddress[] first = resolver.resolve("example.com");
+        first[0] = null;
+        assertEquals("10.0.0.1", resolver.resolve("example.com")[0].getHostAddress());
+        advance(30);
+        resolver.resolve("example.com");
+        assertEquals(1, lookups.get());
+        assertEquals(1, resolver.getMissCount());
+        assertEquals(2, resolver.getHitCount());
+        assertEquals(1, resolver.size());
+        assertEquals("example.com", resolver.resolveCanonicalHostname("example.com"));
+    }
+
+    @Test
+    void refreshAhead() throws UnknownHostException {
+        final CachingDnsResolver resolver = resolver();
+        resolver.resolve("example.com");
+        last = 2;
+        advance(55);
+        assertEquals("10.0.0.1", resolver.resolve("example.com")[0].getHostAddress());
+        assertEquals(1, resolver.getRefreshCount());
+        assertEquals("10.0.0.2", resolver.resolve("example.com")[0].getHostAddress());
+        advance(40);
+        assertEquals("10.0.0.2", resolver.resolve("example.com")[0].getHostAddress());
+        assertEquals(0, resolver.getStaleHitCount());
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    void staleWhileRevalidate() throws UnknownHostException {
+        final CachingDnsResolver resolver = resolver();
+        resolver.resolve("example.com");
+        failing = true;
+        advance(70);
+        assertEquals("10.0.0.1", resolver.resolve("example.com")[0].getHostAddress());
+        assertEquals("10.0.0.1", resolver.resolve("example.com")[0].getHostAddress());
+        assertEquals(2, resolver.getStaleHitCount());
+        assertEquals(2, resolver.getRefreshFailureCount());
+
+        advance(30);
+        assertThrowsExactly(UnknownHostException.class, () -> resolver.resolve("example.com"));
+        assertEquals(0, resolver.size());
+        failing = false;
+        last = 3;
+        assertEquals("10.0.0.3", resolver.resolve("example.com")[0].getHostAddress());
+        assertEquals(3, resolver.getMissCount());
+    }
+
+    @Test
+    void unknownHostNotCached() {
+        final CachingDnsResolver resolver = resolver();
+        assertThrowsExactly(UnknownHostException.class, () -> resolver.resolve("unknown.example.com"));
+        assertThrowsExactly(UnknownHostException.class, () -> resolver.resolve("unknown.example.com"));
+        assertEquals(2, lookups.get());
+        assertEquals(0, resolver.size());
+    }
+
+    @Test
+    void bounded() throws UnknownHostException {
+        final CachingDnsResolver resolver = resolver().setMaxSize(2);
+        resolver.resolve("a.example.com");
+        advance(1);
+        resolver.resolve("b.example.com");
+        advance(1);
+        resolver.resolve("a.example.com");
+        advance(1);
+        resolver.resolve("c.example.com");
+        assertEquals(2, resolver.size());
+        assertEquals(1, resolver.getEvictionCount());
+        resolver.resolve("a.example.com");
+        assertEquals(3, lookups.get());
+        resolver.resolve("b.example.com");
+        assertEquals(4, lookups.get());
+        resolver.clear();
+        assertEquals(0, resolver.size());
+    }
+
+    @Test
+    void literal() throws UnknownHostException {
+        final CachingDnsResolver resolver = resolver();
+        resolver.resolve("127.0.0.1");
+        resolver.resolve("::1");
+        assertEquals(0, resolver.size());
+        assertEquals(0, resolver.getMissCount());
+    }
+
+    @Test
+    void invalid() {
+        final CachingDnsResolver resolver = new CachingDnsResolver();
+        assertThrowsExactly(IllegalArgumentException.class, () -> resolver.setTimeToLive(TimeValue.ZERO_MILLISECONDS));
+        assertThrowsExactly(IllegalArgumentException.class, () -> resolver.setRefreshAhead(TimeValue.NEG_ONE_SECOND));
+        assertThrowsExactly(IllegalArgumentException.class, () -> resolver.setMaxStale(TimeValue.NEG_ONE_SECOND));
+        assertThrowsExactly(IllegalArgumentException.class, () -> resolver.setMaxSize(0));
+        assertThrowsExactly(NullPointerException.class, () -> new CachingDnsResolver(null));
+    }
+
+    @Test
+    void factory() throws IOException {
+        final CachingDnsResolver resolver = new CachingDnsResolver();
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("ok"));
+            server.enqueue(new MockResponse().setBody("ok"));
+            server.start();
+            try (CloseableHttpClient client = new HttpClientFactory().setDnsResolver(resolver).build()) {
+                final String uri = "http://localhost:" + server.getPort() + "/ping.html";
+                assertEquals("ok", client.execute(new HttpGet(uri), new BasicHttpClientResponseHandler()));
+                assertEquals("ok", client.execute(new HttpGet(uri), new BasicHttpClientResponseHandler()));
+            }
+        }
+        assertEquals(1, resolver.getMissCount());
+        assertArrayEquals(InetAddress.getAllByName("localhost"), resolver.resolve("localhost"));
+    }
+}
@@ -0,0 +1,169 @@
+package io.github.dbstarll.utils.http.client;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.DefaultHttpRequestRetryStrategy;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+    private static final HttpHost HOST = new HttpHost("http", "a.example.com", 80);
+    private static final HttpHost OTHER = new HttpHost("http", "b.example.com", 80);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private void call(final CircuitBreaker breaker, final long millis, final boolean failed) {
+        final CircuitBreaker.Call call = breaker.acquire(HOST);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        call.complete(failed);
+    }
+
+    @Test
+    void invalid() {
+        final CircuitBreaker breaker = new CircuitBreaker();
+        assertThrowsExactly(IllegalArgumentException.class, () -> breaker.setWindow(10, 0));
+        assertThrowsExactly(IllegalArgumentException.class, () -> breaker.setWindow(10, 11));
+        assertThrowsExactly(IllegalArgumentException.class, () -> breaker.setFailureRateThreshold(0));
+        assertThrowsExactly(IllegalArgumentException.class, () -> breaker.setFailureRateThreshold(101));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> breaker.setSlowCallRateThreshold(50, TimeValue.ZERO_MILLISECONDS));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> breaker.setSlowCallRateThreshold(0, TimeValue.ofSeconds(1)));
+        assertThrowsExactly(IllegalArgumentException.class, () -> breaker.setOpenDuration(null));
+        assertThrowsExactly(IllegalArgumentException.class, () -> breaker.setHalfOpenCalls(0));
+        assertThrowsExactly(NullPointerException.class, () -> breaker.getState(null));
+    }
+
+    @Test
+    void failureRate() {
+        final CircuitBreaker breaker = new CircuitBreaker(clock::get).setWindow(10, 4)
+                .setOpenDuration(TimeValue.ofSeconds(10)).setHalfOpenCalls(2);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+        call(breaker, 10, true);
+        call(breaker, 10, true);
+        call(breaker, 10, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+        call(breaker, 10, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(new HttpHost("http", "A.example.com")));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(OTHER));
+        assertThrowsExactly(RejectedExecutionException.class, () -> breaker.acquire(HOST));
+        assertEquals(1, breaker.getRejectedCount());
+        assertFalse(breaker.isCallPermitted(HOST));
+        assertTrue(breaker.isCallPermitted(OTHER));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+        assertTrue(breaker.isCallPermitted(HOST));
+        final CircuitBreaker.Call first = breaker.acquire(HOST);
+        final CircuitBreaker.Call second = breaker.acquire(HOST);
+        assertFalse(breaker.isCallPermitted(HOST));
+        assertThrowsExactly(RejectedExecutionException.class, () -> breaker.acquire(HOST));
+        second.cancel();
+        final CircuitBreaker.Call third = breaker.acquire(HOST);
+        first.complete(false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+        third.complete(false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+
+        for (int i = 0; i < 4; i++) {
+            call(breaker, 10, true);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        call(breaker, 10, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+        breaker.reset();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+    }
+
+    @Test
+    void slidingWindow() {
+        final CircuitBreaker breaker = new CircuitBreaker(clock::get).setWindow(4, 4);
+        for (int i = 0; i < 3; i++) {
+            call(breaker, 10, false);
+        }
+        call(breaker, 10, true);
+        for (int i = 0; i < 3; i++) {
+            call(breaker, 10, false);
+        }
+        call(breaker, 10, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+        call(breaker, 10, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+    }
+
+    @Test
+    void slowCallRate() {
+        final CircuitBreaker breaker = new CircuitBreaker(clock::get).setWindow(10, 4)
+                .setSlowCallRateThreshold(50, TimeValue.ofSeconds(1));
+        final CircuitBreaker.Call stale = breaker.acquire(HOST);
+        call(breaker, 100, false);
+        call(breaker, 1000, false);
+        call(breaker, 100, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+        call(breaker, 2000, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+        stale.complete(true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+    }
+
+    @Test
+    void client() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            for (int i = 0; i < 5; i++) {
+                server.enqueue(new MockResponse().setResponseCode(503));
+            }
+            server.start();
+            final HttpHost target = new HttpHost(server.getHostName(), server.getPort());
+            final CircuitBreaker breaker = new CircuitBreaker().setWindow(2, 2);
+            final HttpClientFactory factory = new HttpClientFactory().setCircuitBreaker(breaker)
+                    .setRetryStrategy(new DefaultHttpRequestRetryStrategy(3, TimeValue.ofMilliseconds(10)));
+            try (CloseableHttpClient client = factory.build()) {
+                assertEquals(503, client.execute(new HttpGet(server.url("/").uri()), HttpResponse::getCode)
+                        .intValue());
+                assertEquals(2, server.getRequestCount());
+                assertEquals(CircuitBreaker.State.OPEN, breaker.getState(target));
+                assertThrowsExactly(RejectedExecutionException.class,
+                        () -> client.execute(new HttpGet(server.url("/").uri()), HttpResponse::getCode));
+            }
+            try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+                client.start();
+                final Future<SimpleHttpResponse> future = client.execute(
+                        SimpleRequestBuilder.get(server.url("/").uri()).build(), null);
+                final ExecutionException e = assertThrowsExactly(ExecutionException.class,
+                        () -> future.get(5, TimeUnit.SECONDS));
+                assertSame(RejectedExecutionException.class, e.getCause().getClass());
+            }
+            assertEquals(2, server.getRequestCount());
+            assertEquals(2, breaker.getRejectedCount());
+
+            breaker.reset();
+            try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+                client.start();
+                assertEquals(503, client.execute(SimpleRequestBuilder.get(server.url("/").uri()).build(), null)
+                        .get(5, TimeUnit.SECONDS).getCode());
+            }
+            assertEquals(4, server.getRequestCount());
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState(target));
+        }
+    }
+}
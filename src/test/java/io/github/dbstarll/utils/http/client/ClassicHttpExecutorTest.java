@@ -0,0 +1,150 @@
+package io.github.dbstarll.utils.http.client;
+
+import io.github.dbstarll.utils.http.client.response.BasicResponseHandlerFactory;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClassicHttpExecutorTest {
+    @Test
+    void execute() throws Throwable {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("ok"));
+            server.enqueue(new MockResponse().setBody("abc"));
+            server.start();
+            try (ClassicHttpExecutor executor = new HttpClientFactory()
+                    .buildExecutor(new BasicResponseHandlerFactory(false))) {
+                assertEquals(ConnectionPoolPolicy.DEFAULT_MAX_TOTAL, executor.getMaxConcurrent());
+                assertEquals("ok", executor.execute(ClassicRequestBuilder.get(server.url("/ping.html").uri())
+                        .build(), String.class).get(5, TimeUnit.SECONDS));
+                assertArrayEquals("abc".getBytes(), executor.execute(ClassicRequestBuilder
+                        .get(server.url("/ping.html").uri()).build(), byte[].class).get(5, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test
+    void admission() throws Throwable {
+        final int count = 20;
+        try (MockWebServer server = new MockWebServer()) {
+            for (int i = 0; i < count; i++) {
+                server.enqueue(new MockResponse().setBody("ok").setBodyDelay(20, TimeUnit.MILLISECONDS));
+            }
+            server.start();
+            final AtomicInteger active = new AtomicInteger();
+            final AtomicInteger maxActive = new AtomicInteger();
+            try (ClassicHttpExecutor executor = new ClassicHttpExecutor(new HttpClientFactory().build(),
+                    new BasicResponseHandlerFactory(false), 3)) {
+                final List<CompletableFuture<String>> futures = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    futures.add(executor.execute(ClassicRequestBuilder.get(server.url("/ping.html").uri()).build(),
+                            response -> {
+                                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                                try {
+                                    return response.getCode() == 200 ? "ok" : null;
+                                } finally {
+                                    active.decrementAndGet();
+                                }
+                            }));
+                }
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+                for (CompletableFuture<String> future : futures) {
+                    assertEquals("ok", future.get());
+                }
+                assertTrue(maxActive.get() <= executor.getMaxConcurrent());
+                assertEquals(0, executor.getPendingCount());
+            }
+        }
+    }
+
+    @Test
+    void route() throws Throwable {
+        final int count = 6;
+        try (MockWebServer slow = new MockWebServer(); MockWebServer fast = new MockWebServer()) {
+            for (int i = 0; i < count; i++) {
+                slow.enqueue(new MockResponse().setBody("slow").setHeadersDelay(300, TimeUnit.MILLISECONDS));
+            }
+            fast.enqueue(new MockResponse().setBody("fast"));
+            slow.start();
+            fast.start();
+            final HttpHost slowHost = new HttpHost(slow.getHostName(), slow.getPort());
+            final HttpHost fastHost = new HttpHost(fast.getHostName(), fast.getPort());
+            try (ClassicHttpExecutor executor = new HttpClientFactory().setSocketTimeout(5000)
+                    .setConnectionPoolPolicy(new ConnectionPoolPolicy().setMaxTotal(10).setMaxPerRoute(1)
+                            .setMaxPerHost(slowHost, 3))
+                    .buildExecutor(new BasicResponseHandlerFactory(false))) {
+                assertEquals(10, executor.getMaxConcurrent());
+                assertEquals(3, executor.getMaxPerRoute(slowHost));
+                assertEquals(1, executor.getMaxPerRoute(fastHost));
+                final List<CompletableFuture<String>> futures = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    futures.add(executor.execute(ClassicRequestBuilder.get(slow.url("/ping.html").uri()).build(),
+                            String.class));
+                }
+                // 按主机覆盖的最大连接数生效，超出的请求在该主机的队列中等待
+                assertEquals(3, executor.getActiveCount());
+                assertEquals(3, executor.getPendingCount());
+                // 同一目标主机排队的请求不影响其他目标主机
+                assertEquals("fast", executor.execute(ClassicRequestBuilder.get(fast.url("/ping.html").uri())
+                        .build(), String.class).get(5, TimeUnit.SECONDS));
+                assertTrue(executor.getPendingCount() > 0);
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+                for (CompletableFuture<String> future : futures) {
+                    assertEquals("slow", future.get());
+                }
+            }
+        }
+    }
+
+    @Test
+    void singleFlight() throws Throwable {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("shared").setHeadersDelay(500, TimeUnit.MILLISECONDS));
+            server.start();
+            try (ClassicHttpExecutor executor = new HttpClientFactory().setSocketTimeout(5000)
+                    .setSingleFlightPolicy(new SingleFlightPolicy()
+                            .setHandlerMode(SingleFlightPolicy.HandlerMode.PER_REQUEST))
+                    .buildExecutor(new BasicResponseHandlerFactory(false))) {
+                final List<CompletableFuture<String>> futures = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    futures.add(executor.execute(ClassicRequestBuilder.get(server.url("/ping.html").uri()).build(),
+                            String.class));
+                }
+                final CompletableFuture<byte[]> bytes = executor.execute(ClassicRequestBuilder
+                        .get(server.url("/ping.html").uri()).build(), byte[].class);
+                futures.get(1).cancel(false);
+                final String first = futures.get(0).get(5, TimeUnit.SECONDS);
+                assertEquals("shared", first);
+                for (int i = 2; i < futures.size(); i++) {
+                    assertSame(first, futures.get(i).get(5, TimeUnit.SECONDS));
+                }
+                assertTrue(futures.get(1).isCancelled());
+                assertArrayEquals("shared".getBytes(), bytes.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, server.getRequestCount());
+        }
+    }
+
+    @Test
+    void handlerNotFound() throws Throwable {
+        try (ClassicHttpExecutor executor = new HttpClientFactory()
+                .buildExecutor(new BasicResponseHandlerFactory(false))) {
+            assertThrowsExactly(NullPointerException.class,
+                    () -> executor.execute(ClassicRequestBuilder.get("http://localhost/").build(), Integer.class));
+        }
+    }
+}
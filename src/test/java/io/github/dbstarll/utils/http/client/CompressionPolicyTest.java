@@ -0,0 +1,351 @@
+package io.github.dbstarll.utils.http.client;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.impl.ChainElement;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.classic.BasicHttpClientResponseHandler;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressionPolicyTest {
+    private static final String JSON = json();
+
+    private static String json() {
+        final StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            builder.append(i > 0 ? "," : "").append("{\"id\":").append(i).append(",\"name\":\"item-").append(i)
+                    .append("\"}");
+        }
+        return builder.append(']').toString();
+    }
+
+    @Test
+    void invalid() {
+        final CompressionPolicy policy = new CompressionPolicy();
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setRequestCompression("br", 0));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setRequestCompression("gzip", -1));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setLevel(-2));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setLevel(10));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setPoolSize(0));
+        assertTrue(policy.getAcceptEncoding().startsWith("gzip, x-gzip, deflate"));
+        assertNull(policy.requestEncoding(CompressionPolicy.DEFAULT_REQUEST_THRESHOLD));
+        policy.setRequestCompression("gzip", CompressionPolicy.DEFAULT_REQUEST_THRESHOLD);
+        assertEquals("gzip", policy.requestEncoding(CompressionPolicy.DEFAULT_REQUEST_THRESHOLD));
+        assertNull(policy.requestEncoding(CompressionPolicy.DEFAULT_REQUEST_THRESHOLD - 1));
+        assertNull(policy.requestEncoding(-1));
+        assertNull(policy.setRequestCompression(null, 0).requestEncoding(100));
+        assertEquals("gzip", CompressionPolicy.coding(" GZIP "));
+        assertNull(CompressionPolicy.coding("gzip, deflate"));
+        assertNull(CompressionPolicy.coding("identity"));
+    }
+
+    @Test
+    void decoder() throws Exception {
+        final byte[] data = JSON.getBytes(StandardCharsets.UTF_8);
+        final ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        // 带有FEXTRA、FNAME、FCOMMENT和FHCRC的member，之后紧接着另一个member
+        gzip.write(new byte[]{0x1f, (byte) 0x8b, 8, 0x1e, 0, 0, 0, 0, 0, 0, 3, 0, 1, 2, 3, 'a', 0, 'b', 0, 0, 0});
+        gzip.write(deflate(data, true));
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+        gzip.write(new byte[]{(byte) crc.getValue(), (byte) (crc.getValue() >> 8), (byte) (crc.getValue() >> 16),
+                (byte) (crc.getValue() >> 24), (byte) data.length, (byte) (data.length >> 8), 0, 0});
+        gzip.write(gzip(data));
+        final byte[] expected = new byte[data.length * 2];
+        System.arraycopy(data, 0, expected, 0, data.length);
+        System.arraycopy(data, 0, expected, data.length, data.length);
+
+        final CompressionPolicy policy = new CompressionPolicy();
+        for (int chunk : new int[]{1, 7, 8192}) {
+            assertArrayEquals(expected, decode(policy.decoder("gzip"), gzip.toByteArray(), chunk));
+            assertArrayEquals(data, decode(policy.decoder("deflate"), deflate(data, false), chunk));
+            assertArrayEquals(data, decode(policy.decoder("deflate"), deflate(data, true), chunk));
+        }
+        assertEquals(9, policy.getDecodedResponseCount());
+
+        final byte[] corrupt = gzip(data);
+        corrupt[corrupt.length - 5]++;
+        assertThrowsExactly(ZipException.class, () -> decode(policy.decoder("gzip"), corrupt, 8192));
+        assertThrowsExactly(ZipException.class, () -> decode(policy.decoder("gzip"), data, 8192));
+    }
+
+    private static byte[] decode(final InflatingDecoder decoder, final byte[] data, final int chunk)
+            throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[100];
+        final byte[] input = new byte[chunk];
+        try {
+            for (int i = 0; i < data.length; i += chunk) {
+                final int len = Math.min(chunk, data.length - i);
+                System.arraycopy(data, i, input, 0, len);
+                decoder.setInput(input, 0, len);
+                int n;
+                while ((n = decoder.decode(buffer, 0, buffer.length)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+                assertTrue(decoder.needsInput());
+                // 与I/O层一样重用输入的数组
+                Arrays.fill(input, (byte) 0);
+            }
+            assertTrue(decoder.isComplete());
+        } finally {
+            decoder.close();
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void encoder() throws Exception {
+        final byte[] data = JSON.getBytes(StandardCharsets.UTF_8);
+        final CompressionPolicy policy = new CompressionPolicy().setLevel(Deflater.BEST_SPEED);
+        assertArrayEquals(data, read(new GZIPInputStream(new Buffer().write(encode(policy.encoder("gzip"), data))
+                .inputStream())));
+        assertArrayEquals(data, read(new InflaterInputStream(new Buffer().write(encode(policy.encoder("deflate"),
+                data)).inputStream())));
+        assertEquals(2, policy.getCompressedRequestCount());
+    }
+
+    private static byte[] encode(final DeflatingEncoder encoder, final byte[] data) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[100];
+        try {
+            for (int i = 0; i < data.length; i += 1000) {
+                encoder.setInput(data, i, Math.min(1000, data.length - i));
+                while (!encoder.needsInput()) {
+                    out.write(buffer, 0, encoder.encode(buffer, 0, buffer.length));
+                }
+            }
+            encoder.finish();
+            while (!encoder.isFinished()) {
+                out.write(buffer, 0, encoder.encode(buffer, 0, buffer.length));
+            }
+        } finally {
+            encoder.close();
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void client() throws Exception {
+        final byte[] data = JSON.getBytes(StandardCharsets.UTF_8);
+        final CompressionPolicy policy = new CompressionPolicy();
+        try (MockWebServer server = new MockWebServer()) {
+            for (int i = 0; i < 2; i++) {
+                server.enqueue(new MockResponse().setBody(new Buffer().write(gzip(data)))
+                        .addHeader(HttpHeaders.CONTENT_ENCODING, "gzip"));
+                server.enqueue(new MockResponse().setBody(new Buffer().write(deflate(data, false)))
+                        .addHeader(HttpHeaders.CONTENT_ENCODING, "deflate"));
+                server.enqueue(new MockResponse().setBody("small"));
+            }
+            server.start();
+            final HttpClientFactory factory = new HttpClientFactory().setCompressionPolicy(policy);
+            try (CloseableHttpClient client = factory.build()) {
+                for (int i = 0; i < 2; i++) {
+                    assertEquals(JSON, client.execute(new HttpGet(server.url("/").uri()), response -> {
+                        assertFalse(response.containsHeader(HttpHeaders.CONTENT_ENCODING));
+                        return new BasicHttpClientResponseHandler().handleResponse(response);
+                    }));
+                }
+                // 默认不压缩请求体
+                final HttpPost post = new HttpPost(server.url("/").uri());
+                post.setEntity(new StringEntity(JSON, ContentType.APPLICATION_JSON));
+                assertEquals("small", client.execute(post, new BasicHttpClientResponseHandler()));
+            }
+            try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+                client.start();
+                for (int i = 0; i < 2; i++) {
+                    final SimpleHttpResponse response = client.execute(SimpleRequestBuilder.get(server.url("/").uri())
+                            .build(), null).get(5, TimeUnit.SECONDS);
+                    assertEquals(JSON, response.getBodyText());
+                    assertFalse(response.containsHeader(HttpHeaders.CONTENT_ENCODING));
+                }
+                assertEquals("small", client.execute(SimpleRequestBuilder.post(server.url("/").uri())
+                        .setBody(data, ContentType.APPLICATION_JSON).build(), null)
+                        .get(5, TimeUnit.SECONDS).getBodyText());
+            }
+            for (int i = 0; i < 6; i++) {
+                final RecordedRequest request = server.takeRequest();
+                assertEquals(policy.getAcceptEncoding(), request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+                assertNull(request.getHeader(HttpHeaders.CONTENT_ENCODING));
+            }
+        }
+        assertEquals(4, policy.getDecodedResponseCount());
+        assertEquals(0, policy.getCompressedRequestCount());
+    }
+
+    @Test
+    void request() throws Exception {
+        final CompressionPolicy policy = new CompressionPolicy().setRequestCompression("gzip", 1024);
+        try (MockWebServer server = new MockWebServer()) {
+            for (int i = 0; i < 3; i++) {
+                server.enqueue(new MockResponse().setBody("ok"));
+            }
+            server.start();
+            final HttpClientFactory factory = new HttpClientFactory().setCompressionPolicy(policy);
+            try (CloseableHttpClient client = factory.build()) {
+                final HttpPost post = new HttpPost(server.url("/").uri());
+                post.setEntity(new StringEntity(JSON, ContentType.APPLICATION_JSON));
+                assertEquals("ok", client.execute(post, new BasicHttpClientResponseHandler()));
+            }
+            try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+                client.start();
+                assertEquals("ok", client.execute(SimpleRequestBuilder.post(server.url("/").uri())
+                        .setBody(JSON.getBytes(StandardCharsets.UTF_8), ContentType.APPLICATION_JSON).build(), null)
+                        .get(5, TimeUnit.SECONDS).getBodyText());
+                // 长度未知的请求体不压缩
+                assertEquals("ok", client.execute(SimpleRequestBuilder.post(server.url("/").uri())
+                        .setBody(JSON, ContentType.APPLICATION_JSON).build(), null).get(5, TimeUnit.SECONDS)
+                        .getBodyText());
+            }
+            for (int i = 0; i < 2; i++) {
+                final RecordedRequest request = server.takeRequest();
+                assertEquals("gzip", request.getHeader(HttpHeaders.CONTENT_ENCODING));
+                assertNull(request.getHeader(HttpHeaders.CONTENT_LENGTH));
+                assertTrue(request.getBodySize() < JSON.length() / 4);
+                assertEquals(JSON, new String(read(new GZIPInputStream(request.getBody().inputStream())),
+                        StandardCharsets.UTF_8));
+            }
+            final RecordedRequest request = server.takeRequest();
+            assertNull(request.getHeader(HttpHeaders.CONTENT_ENCODING));
+            assertEquals(JSON, request.getBody().readUtf8());
+        }
+        assertEquals(2, policy.getCompressedRequestCount());
+    }
+
+    @Test
+    void requestContent() throws Exception {
+        final CompressionPolicy policy = new CompressionPolicy().setRequestCompression("deflate", 1024);
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("ok"));
+            server.start();
+            try (CloseableHttpClient client = new HttpClientFactory().setCompressionPolicy(policy)
+                    .build(b -> b.addExecInterceptorBefore(ChainElement.PROTOCOL.name(), "CONTENT",
+                            (request, scope, chain) -> {
+                                // 位于CompressionExec之后，通过getContent读取压缩后的请求体
+                                final HttpEntity entity = request.getEntity();
+                                request.setEntity(new ByteArrayEntity(read(entity.getContent()),
+                                        ContentType.parse(entity.getContentType()), entity.getContentEncoding()));
+                                return chain.proceed(request, scope);
+                            }))) {
+                final HttpPost post = new HttpPost(server.url("/").uri());
+                post.setEntity(new StringEntity(JSON, ContentType.APPLICATION_JSON));
+                assertEquals("ok", client.execute(post, new BasicHttpClientResponseHandler()));
+            }
+            final RecordedRequest request = server.takeRequest();
+            assertEquals("deflate", request.getHeader(HttpHeaders.CONTENT_ENCODING));
+            assertTrue(request.getBodySize() < JSON.length() / 4);
+            assertEquals(JSON, new String(read(new InflaterInputStream(request.getBody().inputStream())),
+                    StandardCharsets.UTF_8));
+        }
+        assertEquals(1, policy.getCompressedRequestCount());
+    }
+
+    @Test
+    void corrupt() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            for (int i = 0; i < 2; i++) {
+                server.enqueue(new MockResponse().setBody("this is not gzip data")
+                        .addHeader(HttpHeaders.CONTENT_ENCODING, "gzip"));
+            }
+            server.start();
+            // async的client在接收响应体时解码，解码失败与I/O异常一样会被重试
+            final HttpClientFactory factory = new HttpClientFactory().setAutomaticRetries(false)
+                    .setCompressionPolicy(new CompressionPolicy());
+            try (CloseableHttpClient client = factory.build()) {
+                assertThrowsExactly(ZipException.class, () -> client.execute(new HttpGet(server.url("/").uri()),
+                        new BasicHttpClientResponseHandler()));
+            }
+            try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+                client.start();
+                final ExecutionException ex = assertThrowsExactly(ExecutionException.class, () -> client.execute(
+                        SimpleRequestBuilder.get(server.url("/").uri()).build(), null).get(5, TimeUnit.SECONDS));
+                assertInstanceOf(ZipException.class, ex.getCause());
+            }
+        }
+    }
+
+    @Test
+    void maxDecodedBytes() throws Exception {
+        final byte[] data = JSON.getBytes(StandardCharsets.UTF_8);
+        final CompressionPolicy policy = new CompressionPolicy();
+        assertEquals(CompressionPolicy.DEFAULT_MAX_DECODED_BYTES, policy.getMaxDecodedBytes());
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setMaxDecodedBytes(0));
+        policy.setMaxDecodedBytes(data.length - 1);
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody(new Buffer().write(gzip(data)))
+                    .addHeader(HttpHeaders.CONTENT_ENCODING, "gzip"));
+            server.start();
+            try (CloseableHttpAsyncClient client = new HttpClientFactory().setAutomaticRetries(false)
+                    .setCompressionPolicy(policy).buildAsync()) {
+                client.start();
+                final ExecutionException ex = assertThrowsExactly(ExecutionException.class, () -> client.execute(
+                        SimpleRequestBuilder.get(server.url("/").uri()).build(), null).get(5, TimeUnit.SECONDS));
+                assertInstanceOf(IOException.class, ex.getCause());
+                assertEquals("Decoded response exceeds " + (data.length - 1) + " bytes", ex.getCause().getMessage());
+            }
+        }
+    }
+
+    private static byte[] gzip(final byte[] data) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(final byte[] data, final boolean nowrap) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(6, nowrap))) {
+            deflate.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] read(final InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int n;
+            while ((n = stream.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
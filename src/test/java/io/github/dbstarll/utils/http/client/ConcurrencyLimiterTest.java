@@ -0,0 +1,270 @@
+package io.github.dbstarll.utils.http.client;
+
+import io.github.dbstarll.utils.http.client.request.LoadBalancingUriResolver;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimiterTest {
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * 以指定的并发执行一轮请求，并发数较高的请求先完成.
+     */
+    private void round(final ConcurrencyLimiter limiter, final int concurrency, final long rttMillis,
+                       final boolean dropped) throws Exception {
+        final List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            permits.add(limiter.acquire());
+        }
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(rttMillis));
+        for (int i = permits.size() - 1; i >= 0; i--) {
+            permits.get(i).release(dropped);
+        }
+    }
+
+    @Test
+    void defaults() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter();
+        assertEquals(ConcurrencyLimiter.Algorithm.AIMD, limiter.getAlgorithm());
+        assertEquals(ConcurrencyLimiter.DEFAULT_INITIAL_LIMIT, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueSize());
+        assertEquals(0, limiter.getRejectedCount());
+        assertEquals(0, limiter.getDroppedCount());
+    }
+
+    @Test
+    void invalid() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter();
+        assertThrowsExactly(NullPointerException.class, () -> limiter.setAlgorithm(null));
+        assertThrowsExactly(IllegalArgumentException.class, () -> limiter.setLimit(1, 0, 1));
+        assertThrowsExactly(IllegalArgumentException.class, () -> limiter.setLimit(1, 2, 3));
+        assertThrowsExactly(IllegalArgumentException.class, () -> limiter.setLimit(4, 2, 3));
+        assertThrowsExactly(IllegalArgumentException.class, () -> limiter.setBackoffRatio(1));
+        assertThrowsExactly(IllegalArgumentException.class, () -> limiter.setBackoffRatio(0));
+        assertThrowsExactly(IllegalArgumentException.class, () -> limiter.setMaxQueueSize(-1));
+        assertThrowsExactly(IllegalArgumentException.class, () -> limiter.setMaxQueueTime(null));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> limiter.setMaxQueueTime(TimeValue.ZERO_MILLISECONDS));
+    }
+
+    @Test
+    void failFast() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(clock::get).setLimit(2, 1, 2);
+        final ConcurrencyLimiter.Permit first = limiter.acquire();
+        limiter.acquire();
+        assertEquals(2, limiter.getInFlight());
+        assertThrowsExactly(RejectedExecutionException.class, limiter::acquire);
+        assertTrue(limiter.acquireAsync().isCompletedExceptionally());
+        assertEquals(2, limiter.getRejectedCount());
+        first.release(false);
+        first.release(false);
+        assertEquals(1, limiter.getInFlight());
+        limiter.acquire().cancel();
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    void queue() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(clock::get).setLimit(1, 1, 1).setMaxQueueSize(1)
+                .setMaxQueueTime(TimeValue.ofSeconds(5));
+        final ConcurrencyLimiter.Permit first = limiter.acquire();
+        final CompletableFuture<ConcurrencyLimiter.Permit> queued = limiter.acquireAsync();
+        assertFalse(queued.isDone());
+        assertEquals(1, limiter.getQueueSize());
+        assertTrue(limiter.acquireAsync().isCompletedExceptionally());
+        first.release(false);
+        assertTrue(queued.isDone());
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueSize());
+
+        final CompletableFuture<ConcurrencyLimiter.Permit> expired = limiter.acquireAsync();
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        queued.get().release(false);
+        final ExecutionException e = assertThrowsExactly(ExecutionException.class, expired::get);
+        assertSame(RejectedExecutionException.class, e.getCause().getClass());
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(2, limiter.getRejectedCount());
+
+        limiter.setMaxQueueTime(TimeValue.ofMilliseconds(50));
+        limiter.acquire();
+        assertThrowsExactly(RejectedExecutionException.class, limiter::acquire);
+        assertEquals(0, limiter.getQueueSize());
+        assertEquals(3, limiter.getRejectedCount());
+    }
+
+    @Test
+    void queueTimeout() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().setLimit(1, 1, 1).setMaxQueueSize(1)
+                .setMaxQueueTime(TimeValue.ofMilliseconds(100));
+        final ConcurrencyLimiter.Permit first = limiter.acquire();
+        final CompletableFuture<ConcurrencyLimiter.Permit> queued = limiter.acquireAsync();
+        assertEquals(1, limiter.getQueueSize());
+        final ExecutionException e = assertThrowsExactly(ExecutionException.class,
+                () -> queued.get(5, TimeUnit.SECONDS));
+        assertSame(RejectedExecutionException.class, e.getCause().getClass());
+        assertEquals(0, limiter.getQueueSize());
+        assertEquals(1, limiter.getRejectedCount());
+        first.release(false);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void aimd() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(clock::get).setLimit(10, 1, 20);
+        round(limiter, 1, 10, false);
+        assertEquals(10, limiter.getLimit());
+        final List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            permits.add(limiter.acquire());
+        }
+        permits.get(4).release(false);
+        assertEquals(11, limiter.getLimit());
+        permits.get(3).release(true);
+        assertEquals(9, limiter.getLimit());
+        assertEquals(1, limiter.getDroppedCount());
+        for (int i = 0; i < 3; i++) {
+            permits.get(i).release(false);
+        }
+        assertEquals(9, limiter.getLimit());
+        for (int i = 0; i < 20; i++) {
+            round(limiter, 1, 10, true);
+        }
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test
+    void vegas() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(clock::get)
+                .setAlgorithm(ConcurrencyLimiter.Algorithm.VEGAS).setLimit(10, 1, 100);
+        for (int i = 0; i < 5; i++) {
+            round(limiter, limiter.getLimit(), 10, false);
+        }
+        final int grown = limiter.getLimit();
+        assertTrue(grown > 10, "limit: " + grown);
+        for (int i = 0; i < 5; i++) {
+            round(limiter, limiter.getLimit(), 100, false);
+        }
+        assertTrue(limiter.getLimit() < grown, "limit: " + limiter.getLimit());
+    }
+
+    @Test
+    void gradient() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(clock::get)
+                .setAlgorithm(ConcurrencyLimiter.Algorithm.GRADIENT).setLimit(10, 1, 100);
+        for (int i = 0; i < 5; i++) {
+            round(limiter, limiter.getLimit(), 10, false);
+        }
+        final int grown = limiter.getLimit();
+        assertTrue(grown > 10, "limit: " + grown);
+        for (int i = 0; i < 5; i++) {
+            round(limiter, limiter.getLimit(), 100, false);
+        }
+        assertTrue(limiter.getLimit() < grown, "limit: " + limiter.getLimit());
+    }
+
+    @Test
+    void client() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("slow").setHeadersDelay(500, TimeUnit.MILLISECONDS));
+            server.enqueue(new MockResponse().setBody("ok"));
+            server.enqueue(new MockResponse().setResponseCode(503));
+            server.start();
+            final ConcurrencyLimiter limiter = new ConcurrencyLimiter().setLimit(1, 1, 1);
+            final HttpClientFactory factory = new HttpClientFactory().setSocketTimeout(5000)
+                    .setConcurrencyLimiter(limiter);
+            try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+                client.start();
+                final Future<SimpleHttpResponse> slow = client.execute(
+                        SimpleRequestBuilder.get(server.url("/").uri()).build(), null);
+                final Future<SimpleHttpResponse> rejected = client.execute(
+                        SimpleRequestBuilder.get(server.url("/").uri()).build(), null);
+                final ExecutionException e = assertThrowsExactly(ExecutionException.class,
+                        () -> rejected.get(5, TimeUnit.SECONDS));
+                assertSame(RejectedExecutionException.class, e.getCause().getClass());
+                assertEquals("slow", slow.get(5, TimeUnit.SECONDS).getBodyText());
+            }
+            try (CloseableHttpClient client = factory.setAutomaticRetries(false).build()) {
+                assertEquals(200, client.execute(new HttpGet(server.url("/").uri()), HttpResponse::getCode).intValue());
+                assertEquals(503, client.execute(new HttpGet(server.url("/").uri()), HttpResponse::getCode).intValue());
+            }
+            assertEquals(3, server.getRequestCount());
+            assertEquals(1, limiter.getRejectedCount());
+            assertEquals(1, limiter.getDroppedCount());
+            assertEquals(0, limiter.getInFlight());
+        }
+    }
+
+    @Test
+    void loadBalancer() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("slow").setHeadersDelay(500, TimeUnit.MILLISECONDS));
+            server.start();
+            final LoadBalancingUriResolver resolver = new LoadBalancingUriResolver(
+                    Collections.singletonList(server.url("/").toString()), "/");
+            final ConcurrencyLimiter limiter = new ConcurrencyLimiter().setLimit(1, 1, 1);
+            try (CloseableHttpAsyncClient client = new HttpClientFactory().setSocketTimeout(5000)
+                    .setConcurrencyLimiter(limiter).setLoadBalancingUriResolver(resolver).buildAsync()) {
+                client.start();
+                final Future<SimpleHttpResponse> slow = client.execute(
+                        SimpleRequestBuilder.get(server.url("/").uri()).build(), null);
+                for (int i = 0; i < 10; i++) {
+                    final Future<SimpleHttpResponse> rejected = client.execute(
+                            SimpleRequestBuilder.get(server.url("/").uri()).build(), null);
+                    assertThrowsExactly(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+                }
+                assertEquals("slow", slow.get(5, TimeUnit.SECONDS).getBodyText());
+            }
+            assertEquals(10, limiter.getRejectedCount());
+            // 本地拒绝的请求不计为endpoint的失败
+            assertEquals(1, resolver.getAvailableEndpoints().size());
+        }
+    }
+
+    @Test
+    void clientQueue() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("first").setHeadersDelay(300, TimeUnit.MILLISECONDS));
+            server.enqueue(new MockResponse().setBody("second"));
+            server.start();
+            final ConcurrencyLimiter limiter = new ConcurrencyLimiter().setLimit(1, 1, 1).setMaxQueueSize(1)
+                    .setMaxQueueTime(TimeValue.ofSeconds(5));
+            try (CloseableHttpAsyncClient client = new HttpClientFactory().setSocketTimeout(5000)
+                    .setConcurrencyLimiter(limiter).buildAsync()) {
+                client.start();
+                final Future<SimpleHttpResponse> first = client.execute(
+                        SimpleRequestBuilder.get(server.url("/").uri()).build(), null);
+                final Future<SimpleHttpResponse> second = client.execute(
+                        SimpleRequestBuilder.get(server.url("/").uri()).build(), null);
+                assertEquals("first", first.get(5, TimeUnit.SECONDS).getBodyText());
+                assertEquals("second", second.get(5, TimeUnit.SECONDS).getBodyText());
+            }
+            assertEquals(2, server.getRequestCount());
+            assertEquals(0, limiter.getRejectedCount());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionPoolPolicyTest {
+    @Test
+    void defaults() {
+        final ConnectionPoolPolicy policy = new ConnectionPoolPolicy();
+        assertEquals(ConnectionPoolPolicy.DEFAULT_MAX_TOTAL, policy.getMaxTotal());
+        assertEquals(ConnectionPoolPolicy.DEFAULT_MAX_PER_ROUTE, policy.getMaxPerRoute());
+        assertTrue(policy.getMaxPerHost().isEmpty());
+        assertNull(policy.getTimeToLive());
+        assertNull(policy.getValidateAfterInactivity());
+        assertFalse(policy.isEvictExpired());
+        assertNull(policy.getEvictIdle());
+    }
+
+    @Test
+    void invalid() {
+        final ConnectionPoolPolicy policy = new ConnectionPoolPolicy();
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setMaxTotal(0));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setMaxPerRoute(-1));
+        assertThrowsExactly(NullPointerException.class, () -> policy.setMaxPerHost(null, 1));
+        assertThrowsExactly(NullPointerException.class, () -> policy.getMaxPerRoute(null));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> policy.setMaxPerHost(new HttpHost("localhost"), 0));
+    }
+
+    @Test
+    void applyPool() {
+        final ConnectionPoolPolicy policy = new ConnectionPoolPolicy().setMaxTotal(200).setMaxPerRoute(50)
+                .setMaxPerHost(new HttpHost("https", "static.y1cloud.com", -1), 100)
+                .setMaxPerHost(new HttpHost("http", "localhost", 8080), 10);
+        final HttpRoute secure = new HttpRoute(new HttpHost("https", "static.y1cloud.com", 443), null, true);
+        final HttpRoute plain = new HttpRoute(new HttpHost("http", "localhost", 8080), null, false);
+        final HttpRoute other = new HttpRoute(new HttpHost("http", "localhost", 80), null, false);
+
+        assertEquals(100, policy.getMaxPerRoute(new HttpHost("https", "static.y1cloud.com", 443)));
+        assertEquals(10, policy.getMaxPerRoute(new HttpHost("http", "localhost", 8080)));
+        assertEquals(50, policy.getMaxPerRoute(new HttpHost("localhost")));
+
+        try (PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager()) {
+            policy.apply(manager);
+            assertEquals(200, manager.getMaxTotal());
+            assertEquals(50, manager.getDefaultMaxPerRoute());
+            assertEquals(100, manager.getMaxPerRoute(secure));
+            assertEquals(10, manager.getMaxPerRoute(plain));
+            assertEquals(50, manager.getMaxPerRoute(other));
+        }
+
+        try (PoolingAsyncClientConnectionManager manager = new PoolingAsyncClientConnectionManager()) {
+            policy.apply(manager);
+            assertEquals(200, manager.getMaxTotal());
+            assertEquals(50, manager.getDefaultMaxPerRoute());
+            assertEquals(100, manager.getMaxPerRoute(secure));
+            assertEquals(10, manager.getMaxPerRoute(plain));
+        }
+    }
+
+    @Test
+    void applyConnectionConfig() {
+        final ConnectionConfig.Builder builder = ConnectionConfig.custom();
+        new ConnectionPoolPolicy().setTimeToLive(TimeValue.ofMinutes(5))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(10)).apply(builder);
+        final ConnectionConfig config = builder.build();
+        assertEquals(TimeValue.ofMinutes(5), config.getTimeToLive());
+        assertEquals(TimeValue.ofSeconds(10), config.getValidateAfterInactivity());
+    }
+}
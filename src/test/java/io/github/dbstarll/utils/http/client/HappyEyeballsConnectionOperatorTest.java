@@ -0,0 +1,27 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.jupiter.api.Test;
+
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HappyEyeballsConnectionOperatorTest {
+    @Test
+    void configure() throws Exception {
+        try (Socket socket = new Socket()) {
+            HappyEyeballsConnectionOperator.configure(socket, SocketConfig.custom()
+                    .setSoLinger(TimeValue.of(5, TimeUnit.SECONDS)).setTcpNoDelay(true).build());
+            assertEquals(5, socket.getSoLinger());
+            assertTrue(socket.getTcpNoDelay());
+        }
+        try (Socket socket = new Socket()) {
+            HappyEyeballsConnectionOperator.configure(socket, SocketConfig.DEFAULT);
+            assertEquals(-1, socket.getSoLinger());
+        }
+    }
+}
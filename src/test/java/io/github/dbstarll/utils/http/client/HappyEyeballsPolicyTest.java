@@ -0,0 +1,51 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+
+class HappyEyeballsPolicyTest {
+    @Test
+    void defaults() {
+        final HappyEyeballsPolicy policy = new HappyEyeballsPolicy();
+        assertEquals(HappyEyeballsPolicy.DEFAULT_ATTEMPT_DELAY, policy.getAttemptDelay());
+        assertEquals(HappyEyeballsPolicy.DEFAULT_FIRST_ADDRESS_FAMILY_COUNT, policy.getFirstAddressFamilyCount());
+        final HappyEyeballsPolicy custom = new HappyEyeballsPolicy().setAttemptDelay(TimeValue.ofMilliseconds(100))
+                .setFirstAddressFamilyCount(2);
+        assertEquals(TimeValue.ofMilliseconds(100), custom.getAttemptDelay());
+        assertEquals(2, custom.getFirstAddressFamilyCount());
+    }
+
+    @Test
+    void sort() throws UnknownHostException {
+        final InetAddress v4a = InetAddress.getByName("10.0.0.1");
+        final InetAddress v4b = InetAddress.getByName("10.0.0.2");
+        final InetAddress v4c = InetAddress.getByName("10.0.0.3");
+        final InetAddress v6a = InetAddress.getByName("fd00::1");
+        final InetAddress v6b = InetAddress.getByName("fd00::2");
+        final HappyEyeballsPolicy policy = new HappyEyeballsPolicy();
+        assertArrayEquals(new InetAddress[]{v6a, v4a, v6b, v4b, v4c},
+                policy.sort(new InetAddress[]{v6a, v6b, v4a, v4b, v4c}));
+        assertArrayEquals(new InetAddress[]{v4a, v6a, v4b, v6b, v4c},
+                policy.sort(new InetAddress[]{v4a, v4b, v4c, v6a, v6b}));
+        assertArrayEquals(new InetAddress[]{v4a, v4b, v6a, v4c, v6b},
+                policy.setFirstAddressFamilyCount(2).sort(new InetAddress[]{v4a, v4b, v4c, v6a, v6b}));
+        assertArrayEquals(new InetAddress[]{v4a, v4b, v4c}, policy.sort(new InetAddress[]{v4a, v4b, v4c}));
+        assertArrayEquals(new InetAddress[]{v6a}, policy.sort(new InetAddress[]{v6a}));
+    }
+
+    @Test
+    void invalid() {
+        final HappyEyeballsPolicy policy = new HappyEyeballsPolicy();
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setAttemptDelay(TimeValue.ZERO_MILLISECONDS));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setAttemptDelay(null));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setFirstAddressFamilyCount(0));
+        assertThrowsExactly(NullPointerException.class, () -> policy.sort(null));
+    }
+}
@@ -0,0 +1,126 @@
+package io.github.dbstarll.utils.http.client;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgingPolicyTest {
+    @Test
+    void invalid() {
+        final HedgingPolicy policy = new HedgingPolicy();
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setDelay(TimeValue.ZERO_MILLISECONDS));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setDelay(null));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setPercentile(-1, 1));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setPercentile(100, 1));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setPercentile(50, 0));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setBudget(-1, 1));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setBudget(101, 1));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setBudget(10, 0));
+    }
+
+    @Test
+    void delay() {
+        final HedgingPolicy policy = new HedgingPolicy().setDelay(TimeValue.ofMilliseconds(200))
+                .setPercentile(50, 10);
+        for (int i = 1; i < 10; i++) {
+            policy.onResponse(TimeUnit.MILLISECONDS.toNanos(i * 10), false);
+        }
+        assertEquals(TimeValue.ofMilliseconds(200), policy.getHedgeDelay());
+        policy.onResponse(TimeUnit.MILLISECONDS.toNanos(100), true);
+        final long millis = policy.getHedgeDelay().toMilliseconds();
+        assertTrue(millis >= 50 && millis <= 55, "millis: " + millis);
+        assertEquals(1, policy.getHedgeWinCount());
+
+        policy.setPercentile(0, 10);
+        assertEquals(TimeValue.ofMilliseconds(200), policy.getHedgeDelay());
+    }
+
+    @Test
+    void budget() {
+        final HedgingPolicy policy = new HedgingPolicy().setBudget(50, 2);
+        assertFalse(policy.tryHedge());
+        assertEquals(1, policy.getBudgetExhaustedCount());
+        policy.onRequest();
+        policy.onRequest();
+        assertTrue(policy.tryHedge());
+        assertFalse(policy.tryHedge());
+        for (int i = 0; i < 10; i++) {
+            policy.onRequest();
+        }
+        assertTrue(policy.tryHedge());
+        assertTrue(policy.tryHedge());
+        assertFalse(policy.tryHedge());
+        assertEquals(3, policy.getHedgeCount());
+        assertEquals(3, policy.getBudgetExhaustedCount());
+    }
+
+    @Test
+    void latency() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("posted"));
+            server.enqueue(new MockResponse().setBody("slow").setHeadersDelay(1, TimeUnit.SECONDS));
+            server.enqueue(new MockResponse().setBody("fast"));
+            server.start();
+            final HedgingPolicy policy = new HedgingPolicy().setDelay(TimeValue.ofMilliseconds(100))
+                    .setPercentile(50, 1).setBudget(100, 1);
+            try (CloseableHttpAsyncClient client = new HttpClientFactory().setHedgingPolicy(policy).buildAsync()) {
+                client.start();
+                // 不对冲的请求预先建立连接
+                assertEquals("posted", client.execute(SimpleRequestBuilder.post(server.url("/").uri())
+                                .setBody("body", ContentType.TEXT_PLAIN).build(), null)
+                        .get(5, TimeUnit.SECONDS).getBodyText());
+                assertEquals("fast", client.execute(SimpleRequestBuilder.get(server.url("/").uri()).build(), null)
+                        .get(5, TimeUnit.SECONDS).getBodyText());
+                assertEquals(1, policy.getHedgeWinCount());
+                // 对冲胜出时记录的延迟包含对冲前的等待，对冲延迟不会因此降低
+                assertTrue(policy.getHedgeDelay().toMilliseconds() >= 100, policy.getHedgeDelay().toString());
+            }
+        }
+    }
+
+    @Test
+    void client() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("posted").setHeadersDelay(300, TimeUnit.MILLISECONDS));
+            server.enqueue(new MockResponse().setBody("slow").setHeadersDelay(1, TimeUnit.SECONDS));
+            server.enqueue(new MockResponse().setBody("fast"));
+            server.enqueue(new MockResponse().setBody("late").setHeadersDelay(300, TimeUnit.MILLISECONDS));
+            server.start();
+            final HedgingPolicy policy = new HedgingPolicy().setDelay(TimeValue.ofMilliseconds(100))
+                    .setPercentile(0, 1).setBudget(100, 1);
+            try (CloseableHttpAsyncClient client = new HttpClientFactory().setHedgingPolicy(policy).buildAsync()) {
+                client.start();
+                // 有请求体的请求不对冲，同时预先建立连接，首次请求不会因为建立连接而晚于对冲请求
+                assertEquals("posted", client.execute(SimpleRequestBuilder.post(server.url("/").uri())
+                                .setBody("body", ContentType.TEXT_PLAIN).build(), null)
+                        .get(5, TimeUnit.SECONDS).getBodyText());
+                assertEquals(1, server.getRequestCount());
+                assertEquals(0, policy.getHedgeCount());
+
+                assertEquals("fast", client.execute(SimpleRequestBuilder.get(server.url("/").uri()).build(), null)
+                        .get(5, TimeUnit.SECONDS).getBodyText());
+                assertEquals(3, server.getRequestCount());
+                assertEquals(1, policy.getHedgeCount());
+                assertEquals(1, policy.getHedgeWinCount());
+
+                policy.setBudget(0, 1);
+                assertEquals("late", client.execute(SimpleRequestBuilder.get(server.url("/").uri()).build(), null)
+                        .get(5, TimeUnit.SECONDS).getBodyText());
+                assertEquals(4, server.getRequestCount());
+                assertEquals(1, policy.getHedgeCount());
+                assertEquals(1, policy.getBudgetExhaustedCount());
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Http2PolicyTest {
+    private static final HttpHost HTTP = new HttpHost("http", "localhost", 80);
+    private static final HttpHost HTTPS = new HttpHost("https", "localhost", 443);
+
+    @Test
+    void defaults() {
+        final Http2Policy policy = new Http2Policy();
+        assertFalse(policy.isPriorKnowledge());
+        assertTrue(policy.isFallbackToHttp1());
+        assertEquals(H2Config.DEFAULT.getMaxConcurrentStreams(), policy.getMaxConcurrentStreams());
+        assertEquals(H2Config.DEFAULT.getInitialWindowSize(), policy.getInitialWindowSize());
+        assertEquals(HttpVersionPolicy.FORCE_HTTP_1, policy.versionPolicy(HTTP));
+        assertEquals(HttpVersionPolicy.NEGOTIATE, policy.versionPolicy(HTTPS));
+    }
+
+    @Test
+    void versionPolicy() {
+        final Http2Policy policy = new Http2Policy().setPriorKnowledge(true).setFallbackToHttp1(false);
+        assertEquals(HttpVersionPolicy.FORCE_HTTP_2, policy.versionPolicy(HTTP));
+        assertEquals(HttpVersionPolicy.FORCE_HTTP_2, policy.versionPolicy(HTTPS));
+        assertEquals(HttpVersionPolicy.FORCE_HTTP_2, policy.tlsConfig(HTTPS).getHttpVersionPolicy());
+    }
+
+    @Test
+    void h2Config() {
+        final H2Config config = new Http2Policy().setMaxConcurrentStreams(1000).setInitialWindowSize(1 << 20)
+                .h2Config();
+        assertEquals(1000, config.getMaxConcurrentStreams());
+        assertEquals(1 << 20, config.getInitialWindowSize());
+        assertFalse(config.isPushEnabled());
+    }
+
+    @Test
+    void invalid() {
+        final Http2Policy policy = new Http2Policy();
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setMaxConcurrentStreams(0));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setInitialWindowSize(-1));
+    }
+}
@@ -7,23 +7,28 @@ import io.github.dbstarll.utils.lang.security.KeyStoreAlgorithm;
 import io.github.dbstarll.utils.lang.security.SecureRandomAlgorithm;
 import io.github.dbstarll.utils.lang.security.SecurityFactory;
 import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
+import okhttp3.Protocol;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.apache.hc.client5.http.HttpHostConnectException;
 import org.apache.hc.client5.http.HttpRequestRetryStrategy;
 import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
 import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
 import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
 import org.apache.hc.client5.http.impl.DefaultHttpRequestRetryStrategy;
+import org.apache.hc.client5.http.impl.InMemoryDnsResolver;
 import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
 import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
 import org.apache.hc.client5.http.impl.classic.BasicHttpClientResponseHandler;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
 import org.apache.hc.core5.http.ClassicHttpRequest;
 import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpVersion;
 import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
 import org.apache.hc.core5.http.protocol.HttpContext;
 import org.apache.hc.core5.ssl.SSLContextBuilder;
@@ -50,11 +55,18 @@ import javax.net.ssl.SSLHandshakeException;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.net.Authenticator;
+import java.net.ConnectException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.PasswordAuthentication;
 import java.net.Proxy;
 import java.net.Proxy.Type;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
 import java.security.KeyPair;
 import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
@@ -63,9 +75,13 @@ import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -75,6 +91,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * 测试HttpClientFactory
@@ -191,6 +208,148 @@ class HttpClientFactoryTest {
         });
     }
 
+    @Test
+    void httpWithPoolPolicy() throws Throwable {
+        final ConnectionPoolPolicy policy = new ConnectionPoolPolicy().setMaxTotal(100).setMaxPerRoute(20)
+                .setTimeToLive(TimeValue.ofMinutes(1)).setEvictExpired(true).setEvictIdle(TimeValue.ofSeconds(30));
+        useServer(server -> {
+            final HttpClientFactory factory = new HttpClientFactory().setConnectionPoolPolicy(policy);
+            try (CloseableHttpClient client = factory.build()) {
+                final ClassicHttpRequest request = ClassicRequestBuilder.get(server.url("/ping.html").uri()).build();
+                assertEquals("ok", client.execute(request, new BasicHttpClientResponseHandler()));
+            }
+            try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+                client.start();
+                final SimpleHttpRequest request = SimpleRequestBuilder.get(server.url("/ping.html").uri()).build();
+                assertEquals("ok", client.execute(request, null).get().getBodyText());
+            }
+        }, s -> s.enqueue(new MockResponse().setBody("ok")));
+    }
+
+    @Test
+    void happyEyeballs() throws Throwable {
+        useServer(server -> {
+            try (Blackhole blackhole = new Blackhole(server.getPort())) {
+                final HttpClientFactory factory = happyEyeballsFactory(blackhole);
+                try (CloseableHttpClient client = factory.build()) {
+                    final ClassicHttpRequest request = ClassicRequestBuilder.get(happyEyeballsUri(server)).build();
+                    final long start = System.nanoTime();
+                    assertEquals("ok", client.execute(request, new BasicHttpClientResponseHandler()));
+                    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+                }
+            }
+        });
+    }
+
+    @Test
+    void happyEyeballsAsync() throws Throwable {
+        useServer(server -> {
+            try (Blackhole blackhole = new Blackhole(server.getPort())) {
+                final HttpClientFactory factory = happyEyeballsFactory(blackhole);
+                try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+                    client.start();
+                    final SimpleHttpRequest request = SimpleRequestBuilder.get(happyEyeballsUri(server)).build();
+                    final long start = System.nanoTime();
+                    assertEquals("ok", client.execute(request, null).get().getBodyText());
+                    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+                }
+            }
+        });
+    }
+
+    @Test
+    void happyEyeballsFailed() throws Throwable {
+        final InMemoryDnsResolver resolver = new InMemoryDnsResolver();
+        resolver.add("happy.eyeballs", InetAddress.getByName("127.0.0.3"), InetAddress.getByName("127.0.0.4"));
+        final HttpClientFactory factory = new HttpClientFactory().setAutomaticRetries(false).setDnsResolver(resolver)
+                .setHappyEyeballsPolicy(new HappyEyeballsPolicy());
+        try (CloseableHttpClient client = factory.build()) {
+            final ClassicHttpRequest request = ClassicRequestBuilder.get("http://happy.eyeballs:1/ping.html").build();
+            final Exception e = assertThrowsExactly(HttpHostConnectException.class,
+                    () -> client.execute(request, new BasicHttpClientResponseHandler()));
+            assertEquals(1, e.getSuppressed().length);
+        }
+        try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+            client.start();
+            final SimpleHttpRequest request = SimpleRequestBuilder.get("http://happy.eyeballs:1/ping.html").build();
+            final ExecutionException e = assertThrowsExactly(ExecutionException.class,
+                    () -> client.execute(request, null).get());
+            assertInstanceOf(ConnectException.class, e.getCause());
+        }
+    }
+
+    private static HttpClientFactory happyEyeballsFactory(final Blackhole blackhole) throws UnknownHostException {
+        final InMemoryDnsResolver resolver = new InMemoryDnsResolver();
+        // 依次为拒绝连接、无响应以及可用的地址，连接超时远大于测试允许的耗时
+        resolver.add("happy.eyeballs", InetAddress.getByName("127.0.0.3"), blackhole.getAddress(),
+                InetAddress.getByName("127.0.0.1"));
+        return new HttpClientFactory().setAutomaticRetries(false).setConnectTimeout(30000).setDnsResolver(resolver)
+                .setHappyEyeballsPolicy(new HappyEyeballsPolicy().setAttemptDelay(TimeValue.ofMilliseconds(50)));
+    }
+
+    private static URI happyEyeballsUri(final MockWebServer server) {
+        return URI.create("http://happy.eyeballs:" + server.getPort() + "/ping.html");
+    }
+
+    /**
+     * 在127.0.0.2上监听但从不accept，并占满backlog，之后的连接请求不会得到响应.
+     */
+    private static final class Blackhole implements AutoCloseable {
+        private final ServerSocket serverSocket;
+        private final List<Socket> sockets = new ArrayList<>();
+
+        private Blackhole(final int port) throws IOException {
+            this.serverSocket = new ServerSocket(port, 1, InetAddress.getByName("127.0.0.2"));
+            for (int i = 0; i < 16; i++) {
+                final Socket socket = new Socket();
+                try {
+                    socket.connect(serverSocket.getLocalSocketAddress(), 200);
+                    sockets.add(socket);
+                } catch (SocketTimeoutException e) {
+                    socket.close();
+                    return;
+                }
+            }
+            close();
+            throw new IllegalStateException("unable to fill backlog");
+        }
+
+        private InetAddress getAddress() {
+            return serverSocket.getInetAddress();
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    void http2PriorKnowledge() throws Throwable {
+        useServer(server -> {
+            final HttpClientFactory factory = new HttpClientFactory()
+                    .setHttp2Policy(new Http2Policy().setPriorKnowledge(true).setMaxConcurrentStreams(100));
+            try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+                client.start();
+                final SimpleHttpRequest request = SimpleRequestBuilder.get(server.url("/ping.html").uri()).build();
+                final SimpleHttpResponse response = client.execute(request, null).get();
+                assertEquals("ok", response.getBodyText());
+                assertEquals(HttpVersion.HTTP_2, response.getVersion());
+            }
+            try (CloseableHttpAsyncClient client = factory.buildHttp2Async()) {
+                client.start();
+                final SimpleHttpRequest request = SimpleRequestBuilder.get(server.url("/ping.html").uri()).build();
+                final SimpleHttpResponse response = client.execute(request, null).get();
+                assertEquals("ok", response.getBodyText());
+                assertEquals(HttpVersion.HTTP_2, response.getVersion());
+            }
+        }, s -> s.enqueue(new MockResponse().setBody("ok")),
+                s -> s.setProtocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE)));
+    }
+
     @Test
     void https() throws Throwable {
         final SecureRandom random = SecurityFactory.builder(SecureRandomAlgorithm.SHA1_PRNG).build();
@@ -249,6 +408,64 @@ class HttpClientFactoryTest {
         });
     }
 
+    @Test
+    void httpsTiming() throws Throwable {
+        final SecureRandom random = SecurityFactory.builder(SecureRandomAlgorithm.SHA1_PRNG).build();
+        final char[] password = "changeit".toCharArray();
+        final KeyStore keyStore = localhostKeyStore(random, password);
+
+        useServer(server -> {
+            final SSLContext sslContext = SSLContextBuilder.create().loadTrustMaterial(keyStore, null)
+                    .setSecureRandom(random).build();
+            try (CloseableHttpClient client = new HttpClientFactory().setSslContext(sslContext)
+                    .setRequestTimingPolicy(new RequestTimingPolicy()).build()) {
+                final ClassicHttpRequest request = ClassicRequestBuilder.get(server.url("/ping.html").uri()).build();
+                final HttpClientContext context = HttpClientContext.create();
+                assertEquals("ok", client.execute(request, context, new BasicHttpClientResponseHandler()));
+                assertTrue(RequestTimings.get(context).isRecorded(RequestTimings.Phase.TLS));
+            }
+        }, s -> {
+            final SSLContext sslContext = SSLContextBuilder.create().loadKeyMaterial(keyStore, password)
+                    .setSecureRandom(random).build();
+            s.useHttps(sslContext.getSocketFactory(), false);
+        });
+    }
+
+    @Test
+    void httpsAsyncTiming() throws Throwable {
+        final SecureRandom random = SecurityFactory.builder(SecureRandomAlgorithm.SHA1_PRNG).build();
+        final char[] password = "changeit".toCharArray();
+        final KeyStore keyStore = localhostKeyStore(random, password);
+
+        useServer(server -> {
+            final SSLContext sslContext = SSLContextBuilder.create().loadTrustMaterial(keyStore, null)
+                    .setSecureRandom(random).build();
+            try (CloseableHttpAsyncClient client = new HttpClientFactory().setSslContext(sslContext)
+                    .setRequestTimingPolicy(new RequestTimingPolicy()).buildAsync()) {
+                client.start();
+                final SimpleHttpRequest request = SimpleRequestBuilder.get(server.url("/ping.html").uri()).build();
+                final HttpClientContext context = HttpClientContext.create();
+                assertEquals("ok", client.execute(request, context, null).get().getBodyText());
+                assertTrue(RequestTimings.get(context).isRecorded(RequestTimings.Phase.TLS));
+            }
+        }, s -> {
+            final SSLContext sslContext = SSLContextBuilder.create().loadKeyMaterial(keyStore, password)
+                    .setSecureRandom(random).build();
+            s.useHttps(sslContext.getSocketFactory(), false);
+        });
+    }
+
+    private static KeyStore localhostKeyStore(final SecureRandom random, final char[] password) throws Exception {
+        final KeyPair keyPair = genKeyPair(random);
+        final ContentSigner signer = signer(keyPair.getPrivate(), random);
+        final X500Name subject = new X500NameBuilder().addRDN(BCStyle.CN, "localhost").build();
+        final PKCS10CertificationRequest csr = csr(subject, keyPair.getPublic(), signer);
+        final X509Certificate crt = crt(csr, subject, signer, random);
+        final KeyStore keyStore = SecurityFactory.builder(KeyStoreAlgorithm.JKS).load(null, null).build();
+        keyStore.setKeyEntry("localhost", keyPair.getPrivate(), password, new X509Certificate[]{crt});
+        return keyStore;
+    }
+
     @Test
     void proxy() throws Throwable {
         try (CloseableHttpClient client = new HttpClientFactory().setSocketTimeout(5000).setConnectTimeout(5000)
@@ -357,21 +574,21 @@ class HttpClientFactoryTest {
         }
     }
 
-    private static KeyPair genKeyPair(final SecureRandom random) throws InstanceException, NoSuchAlgorithmException {
+    static KeyPair genKeyPair(final SecureRandom random) throws InstanceException, NoSuchAlgorithmException {
         return SecurityFactory.builder(KeyPairGeneratorAlgorithm.RSA).keySize(2048, random).build().genKeyPair();
     }
 
-    private static ContentSigner signer(final PrivateKey privateKey, final SecureRandom random) throws OperatorCreationException {
+    static ContentSigner signer(final PrivateKey privateKey, final SecureRandom random) throws OperatorCreationException {
         return new JcaContentSignerBuilder(EnumUtils.name(SignatureAlgorithm.SHA256_WITH_RSA)).setSecureRandom(random).build(privateKey);
     }
 
-    private static PKCS10CertificationRequest csr(final X500Name subject, final PublicKey publicKey,
-                                                  final ContentSigner signer) {
+    static PKCS10CertificationRequest csr(final X500Name subject, final PublicKey publicKey,
+                                          final ContentSigner signer) {
         return new JcaPKCS10CertificationRequestBuilder(subject, publicKey).build(signer);
     }
 
-    private static X509Certificate crt(final PKCS10CertificationRequest csr, final X500Name issuer,
-                                       final ContentSigner signer, final SecureRandom random) throws CertificateException {
+    static X509Certificate crt(final PKCS10CertificationRequest csr, final X500Name issuer,
+                               final ContentSigner signer, final SecureRandom random) throws CertificateException {
         final BigInteger serial = BigInteger.probablePrime(128, random);
         final Date notBefore = new Date();
         final Date notAfter = DateUtils.addYears(notBefore, 1);
@@ -0,0 +1,128 @@
+package io.github.dbstarll.utils.http.client;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.pool.PoolStats;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpClientMetricsTest {
+    @Test
+    void invalid() {
+        final HttpClientMetrics metrics = new HttpClientMetrics();
+        assertThrowsExactly(NullPointerException.class, () -> metrics.addListener(null));
+        assertThrowsExactly(NullPointerException.class, () -> metrics.getPoolStats(null));
+        assertThrowsExactly(NullPointerException.class, () -> metrics.getLeaseWait(null));
+        assertThrowsExactly(IllegalArgumentException.class, () -> metrics.getLatency(null, 6));
+        assertThrowsExactly(NullPointerException.class, () -> metrics.getLatency(null, 2));
+        assertEquals(0, metrics.getTotalPoolStats().getMax());
+        assertTrue(metrics.getRoutes().isEmpty());
+    }
+
+    @Test
+    void client() throws Exception {
+        final AtomicInteger leases = new AtomicInteger();
+        final AtomicInteger responses = new AtomicInteger();
+        final AtomicLong transferred = new AtomicLong();
+        final HttpClientMetrics metrics = new HttpClientMetrics().addListener(new HttpClientMetricsListener() {
+            @Override
+            public void onLease(final HttpRoute route, final long waitNanos, final boolean leased) {
+                leases.incrementAndGet();
+            }
+
+            @Override
+            public void onResponse(final HttpRoute route, final int statusClass, final long latencyNanos) {
+                responses.incrementAndGet();
+            }
+
+            @Override
+            public void onTransfer(final HttpRoute route, final long bytesSent, final long bytesReceived) {
+                transferred.addAndGet(bytesSent + bytesReceived);
+            }
+        });
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("hello"));
+            server.enqueue(new MockResponse().setBody("hello"));
+            server.enqueue(new MockResponse().setResponseCode(503));
+            server.start();
+            final HttpClientFactory factory = new HttpClientFactory().setMetrics(metrics).setAutomaticRetries(false);
+            try (CloseableHttpClient client = factory.build()) {
+                final HttpPost post = new HttpPost(server.url("/").uri());
+                post.setEntity(new StringEntity("abc"));
+                assertEquals("hello", client.execute(post, response -> EntityUtils.toString(response.getEntity())));
+                final PoolStats stats = metrics.getTotalPoolStats();
+                assertEquals(0, stats.getLeased());
+                assertEquals(0, stats.getPending());
+                assertEquals(1, stats.getAvailable());
+            }
+            try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+                client.start();
+                assertEquals("hello", client.execute(SimpleRequestBuilder.get(server.url("/").uri()).build(), null)
+                        .get(5, TimeUnit.SECONDS).getBodyText());
+                assertEquals(503, client.execute(SimpleRequestBuilder.get(server.url("/").uri()).build(), null)
+                        .get(5, TimeUnit.SECONDS).getCode());
+
+                final Set<HttpRoute> routes = metrics.getRoutes();
+                assertEquals(1, routes.size());
+                final HttpRoute route = routes.iterator().next();
+                assertTrue(metrics.getPoolStats(route).getMax() > 0);
+                assertEquals(3, metrics.getLeaseWait(route).count());
+                assertEquals(2, metrics.getLatency(route, 2).count());
+                assertEquals(1, metrics.getLatency(route, 5).count());
+                assertEquals(0, metrics.getLatency(route, 0).count());
+                assertTrue(metrics.getLatency(route, 2).percentile(50) > 0);
+                assertEquals(3, metrics.getBytesSent(route));
+                assertEquals(10, metrics.getBytesReceived(route));
+            }
+        }
+        assertEquals(3, leases.get());
+        assertEquals(3, responses.get());
+        assertEquals(13, transferred.get());
+    }
+
+    @Test
+    void transfer() throws Exception {
+        final AtomicInteger transfers = new AtomicInteger();
+        final HttpClientMetrics metrics = new HttpClientMetrics().addListener(new HttpClientMetricsListener() {
+            @Override
+            public void onTransfer(final HttpRoute route, final long bytesSent, final long bytesReceived) {
+                transfers.incrementAndGet();
+            }
+        });
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("hello world"));
+            server.start();
+            try (CloseableHttpClient client = new HttpClientFactory().setMetrics(metrics).build()) {
+                assertEquals(11, (int) client.execute(new HttpGet(server.url("/").uri()), response -> {
+                    int size = 0;
+                    try (InputStream in = response.getEntity().getContent()) {
+                        while (in.read() >= 0) {
+                            size++;
+                        }
+                    }
+                    return size;
+                }));
+            }
+            // 逐字节读取时只在读到流的末尾时汇报一次
+            assertEquals(1, transfers.get());
+            assertEquals(11, metrics.getBytesReceived(metrics.getRoutes().iterator().next()));
+        }
+    }
+}
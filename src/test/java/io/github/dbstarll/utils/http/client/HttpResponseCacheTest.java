@@ -0,0 +1,412 @@
+package io.github.dbstarll.utils.http.client;
+
+import io.github.dbstarll.utils.http.client.response.ByteArrayResponseHandler;
+import io.github.dbstarll.utils.http.client.response.StringResponseHandler;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.message.BasicHttpRequest;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpResponseCacheTest {
+    private final AtomicLong clock = new AtomicLong();
+
+    private HttpResponseCache cache() {
+        return new HttpResponseCache(clock::get);
+    }
+
+    private void advance(final long seconds) {
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    private static String get(final CloseableHttpClient client, final MockWebServer server, final String path)
+            throws Exception {
+        return client.execute(new HttpGet(server.url(path).uri()), new StringResponseHandler(false));
+    }
+
+    @Test
+    void fresh() throws Exception {
+        final HttpResponseCache cache = cache();
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("v1").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.enqueue(new MockResponse().setBody("v2").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.start();
+            try (CloseableHttpClient client = new HttpClientFactory().setResponseCache(cache).build()) {
+                assertEquals("v1", get(client, server, "/fresh"));
+                advance(30);
+                assertEquals("v1", get(client, server, "/fresh"));
+                advance(31);
+                assertEquals("v2", get(client, server, "/fresh"));
+            }
+            assertEquals(2, server.getRequestCount());
+        }
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.size());
+        assertTrue(cache.getBytes() > 0);
+    }
+
+    @Test
+    void age() throws Exception {
+        final HttpResponseCache cache = cache();
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("ok").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60")
+                    .setHeader(HttpHeaders.AGE, "50"));
+            server.start();
+            try (CloseableHttpClient client = new HttpClientFactory().setResponseCache(cache).build()) {
+                assertEquals("ok", get(client, server, "/age"));
+                advance(5);
+                client.execute(new HttpGet(server.url("/age").uri()), response -> {
+                    assertEquals("55", response.getFirstHeader(HttpHeaders.AGE).getValue());
+                    return null;
+                });
+                advance(6);
+                server.enqueue(new MockResponse().setBody("new"));
+                assertEquals("new", get(client, server, "/age"));
+            }
+        }
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void revalidate() throws Exception {
+        final HttpResponseCache cache = cache();
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("v1").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=10")
+                    .setHeader(HttpHeaders.ETAG, "\"v1\"")
+                    .setHeader(HttpHeaders.LAST_MODIFIED, "Mon, 05 Oct 2026 00:00:00 GMT"));
+            server.enqueue(new MockResponse().setResponseCode(304).setHeader(HttpHeaders.CACHE_CONTROL, "max-age=20"));
+            server.enqueue(new MockResponse().setBody("v2").setHeader(HttpHeaders.ETAG, "\"v2\""));
+            server.start();
+            try (CloseableHttpClient client = new HttpClientFactory().setResponseCache(cache).build()) {
+                assertEquals("v1", get(client, server, "/etag"));
+                advance(11);
+                assertEquals("v1", get(client, server, "/etag"));
+                advance(15);
+                assertEquals("v1", get(client, server, "/etag"));
+                final HttpGet noCache = new HttpGet(server.url("/etag").uri());
+                noCache.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+                assertEquals("v2", client.execute(noCache, new StringResponseHandler(false)));
+            }
+            server.takeRequest();
+            final RecordedRequest conditional = server.takeRequest();
+            assertEquals("\"v1\"", conditional.getHeader(HttpHeaders.IF_NONE_MATCH));
+            assertEquals("Mon, 05 Oct 2026 00:00:00 GMT", conditional.getHeader(HttpHeaders.IF_MODIFIED_SINCE));
+            assertEquals("\"v1\"", server.takeRequest().getHeader(HttpHeaders.IF_NONE_MATCH));
+            assertEquals(3, server.getRequestCount());
+        }
+        assertEquals(1, cache.getValidatedCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void notStored() throws Exception {
+        final HttpResponseCache cache = cache();
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("1").setHeader(HttpHeaders.CACHE_CONTROL, "no-store"));
+            server.enqueue(new MockResponse().setBody("2"));
+            server.enqueue(new MockResponse().setBody("3").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60")
+                    .setHeader(HttpHeaders.VARY, "*"));
+            server.enqueue(new MockResponse().setResponseCode(500).setBody("4")
+                    .setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.enqueue(new MockResponse().setBody("5").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.start();
+            try (CloseableHttpClient client = new HttpClientFactory().setResponseCache(cache).build()) {
+                assertEquals("1", get(client, server, "/a"));
+                assertEquals("2", get(client, server, "/a"));
+                assertEquals("3", get(client, server, "/a"));
+                client.execute(new HttpGet(server.url("/a").uri()), response -> null);
+                final HttpGet noStore = new HttpGet(server.url("/a").uri());
+                noStore.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+                assertEquals("5", client.execute(noStore, new StringResponseHandler(false)));
+            }
+        }
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    private static String get(final CloseableHttpClient client, final MockWebServer server, final String path,
+                              final String authorization) throws Exception {
+        final HttpGet get = new HttpGet(server.url(path).uri());
+        get.setHeader(HttpHeaders.AUTHORIZATION, authorization);
+        return client.execute(get, new StringResponseHandler(false));
+    }
+
+    @Test
+    void authorization() throws Exception {
+        final HttpResponseCache cache = cache();
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("alice").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.enqueue(new MockResponse().setBody("bob").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.enqueue(new MockResponse().setBody("anonymous")
+                    .setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.enqueue(new MockResponse().setBody("alice").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.enqueue(new MockResponse().setBody("private")
+                    .setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=60"));
+            server.enqueue(new MockResponse().setBody("other").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.enqueue(new MockResponse().setBody("public")
+                    .setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=60"));
+            server.start();
+            // 两个client共享同一个缓存
+            try (CloseableHttpClient alice = new HttpClientFactory().setResponseCache(cache).build();
+                 CloseableHttpClient bob = new HttpClientFactory().setResponseCache(cache).build()) {
+                assertEquals("alice", get(alice, server, "/me", "Bearer alice"));
+                assertEquals("bob", get(bob, server, "/me", "Bearer bob"));
+                assertEquals(0, cache.size());
+                assertEquals("anonymous", get(bob, server, "/me"));
+                assertEquals("anonymous", get(bob, server, "/me"));
+                assertEquals("alice", get(alice, server, "/me", "Bearer alice"));
+
+                assertEquals("private", get(alice, server, "/private"));
+                assertEquals("other", get(bob, server, "/private"));
+
+                assertEquals("public", get(alice, server, "/public", "Bearer alice"));
+                assertEquals("public", get(bob, server, "/public", "Bearer bob"));
+            }
+            assertEquals(7, server.getRequestCount());
+        }
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    void vary() throws Exception {
+        final HttpResponseCache cache = cache();
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("json").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60")
+                    .setHeader(HttpHeaders.VARY, "Accept"));
+            server.enqueue(new MockResponse().setBody("xml").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60")
+                    .setHeader(HttpHeaders.VARY, "Accept"));
+            server.start();
+            try (CloseableHttpClient client = new HttpClientFactory().setResponseCache(cache).build()) {
+                final HttpGet json = new HttpGet(server.url("/vary").uri());
+                json.setHeader(HttpHeaders.ACCEPT, "application/json");
+                final HttpGet xml = new HttpGet(server.url("/vary").uri());
+                xml.setHeader(HttpHeaders.ACCEPT, "application/xml");
+                assertEquals("json", client.execute(json, new StringResponseHandler(false)));
+                assertEquals("json", client.execute(json, new StringResponseHandler(false)));
+                assertEquals("xml", client.execute(xml, new StringResponseHandler(false)));
+                assertEquals("xml", client.execute(xml, new StringResponseHandler(false)));
+            }
+            assertEquals(2, server.getRequestCount());
+        }
+    }
+
+    @Test
+    void invalidate() throws Exception {
+        final HttpResponseCache cache = cache();
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("v1").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.enqueue(new MockResponse().setBody("posted"));
+            server.enqueue(new MockResponse().setBody("v2").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.start();
+            try (CloseableHttpClient client = new HttpClientFactory().setResponseCache(cache).build()) {
+                assertEquals("v1", get(client, server, "/res"));
+                assertEquals("v1", get(client, server, "/res"));
+                assertEquals("posted", client.execute(new HttpPost(server.url("/res").uri()),
+                        new StringResponseHandler(false)));
+                assertEquals(0, cache.size());
+                assertEquals("v2", get(client, server, "/res"));
+            }
+            assertEquals(3, server.getRequestCount());
+        }
+    }
+
+    @Test
+    void tooLarge() throws Exception {
+        final HttpResponseCache cache = cache().setMaxEntryBytes(10);
+        final String body = "0123456789abcdefghij";
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody(body).setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.enqueue(new MockResponse().setChunkedBody(body, 3)
+                    .setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.enqueue(new MockResponse().setChunkedBody("0123456789", 3)
+                    .setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.start();
+            try (CloseableHttpClient client = new HttpClientFactory().setResponseCache(cache).build()) {
+                assertEquals(body, get(client, server, "/large"));
+                assertEquals(body, get(client, server, "/large"));
+                assertEquals("0123456789", get(client, server, "/large"));
+                assertEquals("0123456789", get(client, server, "/large"));
+            }
+            assertEquals(3, server.getRequestCount());
+        }
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void sharedBody() throws Exception {
+        final HttpResponseCache cache = cache();
+        final byte[] bytes = new byte[4096];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody(new Buffer().write(bytes))
+                    .setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.start();
+            try (CloseableHttpClient client = new HttpClientFactory().setResponseCache(cache).build()) {
+                final HttpGet request = new HttpGet(server.url("/bytes").uri());
+                assertArrayEquals(bytes, client.execute(request, new ByteArrayResponseHandler(false)));
+                final byte[] cached = client.execute(request, new ByteArrayResponseHandler(false));
+                assertArrayEquals(bytes, cached);
+                cached[0] = 1;
+                assertArrayEquals(bytes, client.execute(request, new ByteArrayResponseHandler(false)));
+            }
+        }
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    void spill(@TempDir final Path directory) throws Exception {
+        final HttpResponseCache cache = cache().setSpill(directory, 1 << 20).setSpillThreshold(100);
+        final String large = new String(new char[1000]).replace('\0', 'x');
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody(large).setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.enqueue(new MockResponse().setBody("small").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60"));
+            server.start();
+            try (CloseableHttpClient client = new HttpClientFactory().setResponseCache(cache).build()) {
+                assertEquals(large, get(client, server, "/large"));
+                assertEquals(large, get(client, server, "/large"));
+                assertEquals("small", get(client, server, "/small"));
+                assertEquals("small", get(client, server, "/small"));
+            }
+            assertEquals(2, server.getRequestCount());
+        }
+        assertEquals(2, cache.getHitCount());
+        assertTrue(cache.getSpillBytes() > 1000);
+        assertTrue(cache.getBytes() < 1000);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getSpillBytes());
+    }
+
+    @Test
+    void admission() {
+        final HttpResponseCache cache = cache().setMaxBytes(1000);
+        final BasicHttpResponse response = new BasicHttpResponse(200);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60");
+        final BasicHttpRequest request = new BasicHttpRequest("GET", "/");
+        final ByteBuffer body = ByteBuffer.allocate(400);
+        assertNotNull(cache.store("a", request, response, body, clock.get()));
+        assertNotNull(cache.store("b", request, response, body, clock.get()));
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(cache.lookup("a", request));
+        }
+        assertNotNull(cache.store("c", request, response, body, clock.get()));
+        assertNull(cache.lookup("b", request));
+        assertEquals(1, cache.getEvictionCount());
+
+        assertNull(cache.store("d", request, response, body, clock.get()));
+        assertNotNull(cache.lookup("a", request));
+        for (int i = 0; i < 5; i++) {
+            assertNull(cache.lookup("d", request));
+        }
+        assertNotNull(cache.store("d", request, response, body, clock.get()));
+        assertNull(cache.lookup("c", request));
+        assertNotNull(cache.lookup("a", request));
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals(2, cache.size());
+        assertTrue(cache.getBytes() <= 1000);
+
+        assertNull(cache.store("e", request, response, ByteBuffer.allocate(2000), clock.get()));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void replace() {
+        final HttpResponseCache cache = cache().setMaxBytes(1000);
+        final BasicHttpResponse response = new BasicHttpResponse(200);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "max-age=60");
+        final BasicHttpRequest request = new BasicHttpRequest("GET", "/");
+        final CachedResponse stored = cache.store("a", request, response, ByteBuffer.allocate(400), clock.get());
+        assertNotNull(stored);
+        final long bytes = cache.getBytes();
+
+        // 新的响应未被接纳时保留已有的响应
+        assertNull(cache.store("a", request, response, ByteBuffer.allocate(2000), clock.get()));
+        assertSame(stored, cache.lookup("a", request));
+        assertEquals(bytes, cache.getBytes());
+        final BasicHttpResponse notModified = new BasicHttpResponse(304);
+        notModified.setHeader(HttpHeaders.CACHE_CONTROL, "max-age=120");
+        final CachedResponse revalidated = cache.revalidated(stored, notModified, clock.get());
+        assertSame(revalidated, cache.lookup("a", request));
+        assertEquals(1, cache.size());
+
+        // 替换已有的响应时，已有的响应占用的空间计为可用
+        assertNotNull(cache.store("a", request, response, ByteBuffer.allocate(900), clock.get()));
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getEvictionCount());
+        assertTrue(cache.getBytes() <= 1000);
+    }
+
+    @Test
+    void async() throws Exception {
+        final HttpResponseCache cache = cache();
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("v1").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=10")
+                    .setHeader(HttpHeaders.ETAG, "\"v1\""));
+            server.enqueue(new MockResponse().setResponseCode(304));
+            server.enqueue(new MockResponse().setBody("posted"));
+            server.enqueue(new MockResponse().setBody("v2").setHeader(HttpHeaders.CACHE_CONTROL, "max-age=10"));
+            server.start();
+            try (CloseableHttpAsyncClient client = new HttpClientFactory().setResponseCache(cache).buildAsync()) {
+                client.start();
+                final SimpleRequestBuilder get = SimpleRequestBuilder.get(server.url("/async").uri());
+                assertEquals("v1", client.execute(get.build(), null).get().getBodyText());
+                final SimpleHttpResponse hit = client.execute(get.build(), null).get();
+                assertEquals("v1", hit.getBodyText());
+                assertEquals("0", hit.getFirstHeader(HttpHeaders.AGE).getValue());
+                advance(11);
+                assertEquals("v1", client.execute(get.build(), null).get().getBodyText());
+                assertEquals("posted", client.execute(SimpleRequestBuilder.post(server.url("/async").uri())
+                        .build(), null).get().getBodyText());
+                assertEquals("v2", client.execute(get.build(), null).get().getBodyText());
+                assertEquals("v2", client.execute(get.build(), null).get().getBodyText());
+            }
+            assertEquals(4, server.getRequestCount());
+        }
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getValidatedCount());
+    }
+
+    @Test
+    void invalid() {
+        final HttpResponseCache cache = new HttpResponseCache();
+        assertThrowsExactly(IllegalArgumentException.class, () -> cache.setMaxBytes(0));
+        assertThrowsExactly(IllegalArgumentException.class, () -> cache.setMaxEntryBytes(0));
+        assertThrowsExactly(IllegalArgumentException.class, () -> cache.setSpillThreshold(-1));
+        assertThrowsExactly(IllegalArgumentException.class, () -> cache.setSpill(Paths.get("."), 0));
+        cache.setSpill(null, 0);
+        assertEquals(0, cache.getSpillBytes());
+    }
+}
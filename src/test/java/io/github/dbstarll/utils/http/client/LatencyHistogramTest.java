@@ -0,0 +1,55 @@
+package io.github.dbstarll.utils.http.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+    @Test
+    void percentile() {
+        final LatencyHistogram histogram = new LatencyHistogram(0);
+        assertEquals(0, histogram.percentile(99));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertEquals(100, histogram.count());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.max());
+        final long p90 = TimeUnit.NANOSECONDS.toMicros(histogram.percentile(90));
+        assertTrue(p90 >= 90000 && p90 <= 99000, "p90: " + p90);
+        assertEquals(histogram.max(), histogram.percentile(100));
+    }
+
+    @Test
+    void window() {
+        final LatencyHistogram histogram = new LatencyHistogram(10);
+        for (int i = 0; i < 9; i++) {
+            histogram.record(TimeUnit.SECONDS.toNanos(1));
+        }
+        final LatencyHistogram snapshot = histogram.snapshot();
+        histogram.record(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(9, snapshot.count());
+        assertEquals(5, histogram.count());
+        for (int i = 0; i < 20; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        final long median = TimeUnit.NANOSECONDS.toMicros(histogram.percentile(50));
+        assertTrue(median >= 1000 && median <= 1100, "median: " + median);
+    }
+
+    @Test
+    void buckets() {
+        assertEquals(0, LatencyHistogram.index(-1));
+        assertEquals(31, LatencyHistogram.index(31));
+        final int last = LatencyHistogram.index(Long.MAX_VALUE);
+        for (int i = 0; i < last; i++) {
+            final long upper = LatencyHistogram.upperBound(i);
+            assertEquals(i, LatencyHistogram.index(upper));
+            assertEquals(i + 1, LatencyHistogram.index(upper + 1));
+            assertTrue(i < 32 || LatencyHistogram.upperBound(i + 1) - upper <= (upper + 1) / 16, "bucket: " + i);
+        }
+        assertEquals(TimeUnit.MINUTES.toMicros(70), LatencyHistogram.upperBound(last), TimeUnit.MINUTES.toMicros(2));
+    }
+}
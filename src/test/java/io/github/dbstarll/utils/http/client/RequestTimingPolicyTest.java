@@ -0,0 +1,96 @@
+package io.github.dbstarll.utils.http.client;
+
+import io.github.dbstarll.utils.http.client.RequestTimings.Phase;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestTimingPolicyTest {
+    @Test
+    void invalid() {
+        final RequestTimingPolicy policy = new RequestTimingPolicy();
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setSlowThreshold(null));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> policy.setSlowThreshold(TimeValue.ofMilliseconds(-1)));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setSampleRate(-0.1));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setSampleRate(1.1));
+        assertThrowsExactly(NullPointerException.class, () -> policy.setSlowRequestHandler(null));
+        assertEquals(0, policy.getSlowRequestCount());
+    }
+
+    @Test
+    void client() throws Exception {
+        final List<RequestTimings> slow = new CopyOnWriteArrayList<>();
+        final RequestTimingPolicy policy = new RequestTimingPolicy().setSlowThreshold(TimeValue.ZERO_MILLISECONDS)
+                .setSampleRate(1).setSlowRequestHandler(slow::add);
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("hello"));
+            server.enqueue(new MockResponse().setBody("hello"));
+            server.enqueue(new MockResponse().setBody("hello"));
+            server.enqueue(new MockResponse().setBody("hello"));
+            server.start();
+            final HttpClientFactory factory = new HttpClientFactory().setRequestTimingPolicy(policy);
+            try (CloseableHttpClient client = factory.build()) {
+                final HttpClientContext first = HttpClientContext.create();
+                assertEquals("hello", client.execute(new HttpGet(server.url("/").uri()), first,
+                        response -> EntityUtils.toString(response.getEntity())));
+                final RequestTimings timings = RequestTimings.get(first);
+                assertNotNull(timings);
+                assertFalse(timings.isConnectionReused());
+                assertFalse(timings.isFailed());
+                for (Phase phase : new Phase[]{Phase.LEASE, Phase.DNS, Phase.CONNECT, Phase.TTFB, Phase.BODY}) {
+                    assertTrue(timings.isRecorded(phase), phase.name());
+                    assertTrue(timings.getDuration(phase) >= 0, phase.name());
+                    assertTrue(timings.getEnd(phase) - timings.getStartNanos() <= timings.getTotal(), phase.name());
+                }
+                assertFalse(timings.isRecorded(Phase.TLS));
+                assertFalse(timings.isRecorded(Phase.SOCKS));
+                assertEquals(-1, timings.getDuration(Phase.TLS));
+                assertTrue(timings.toString().startsWith("GET / total="));
+
+                final HttpClientContext second = HttpClientContext.create();
+                assertEquals("hello", client.execute(new HttpGet(server.url("/").uri()), second,
+                        response -> EntityUtils.toString(response.getEntity())));
+                assertTrue(RequestTimings.get(second).isConnectionReused());
+                assertFalse(RequestTimings.get(second).isRecorded(Phase.CONNECT));
+            }
+            try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+                client.start();
+                final HttpClientContext first = HttpClientContext.create();
+                assertEquals("hello", client.execute(SimpleRequestBuilder.get(server.url("/").uri()).build(), first,
+                        null).get(5, TimeUnit.SECONDS).getBodyText());
+                final RequestTimings timings = RequestTimings.get(first);
+                assertNotNull(timings);
+                assertFalse(timings.isConnectionReused());
+                for (Phase phase : new Phase[]{Phase.LEASE, Phase.DNS, Phase.CONNECT, Phase.TTFB, Phase.BODY}) {
+                    assertTrue(timings.isRecorded(phase), phase.name());
+                }
+
+                final HttpClientContext second = HttpClientContext.create();
+                assertEquals("hello", client.execute(SimpleRequestBuilder.get(server.url("/").uri()).build(), second,
+                        null).get(5, TimeUnit.SECONDS).getBodyText());
+                assertTrue(RequestTimings.get(second).isRecorded(Phase.BODY));
+            }
+        }
+        assertEquals(4, policy.getSlowRequestCount());
+        assertEquals(4, slow.size());
+        assertTrue(slow.stream().allMatch(t -> t.getTotal() >= 0));
+    }
+}
@@ -0,0 +1,157 @@
+package io.github.dbstarll.utils.http.client;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.utils.DateUtils;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.message.BasicHttpRequest;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+    private static final BasicHttpRequest GET = new BasicHttpRequest("GET", "/");
+    private static final IOException FAILURE = new IOException("reset");
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private static BasicHttpResponse unavailable(final String retryAfter) {
+        final BasicHttpResponse response = new BasicHttpResponse(503);
+        if (retryAfter != null) {
+            response.addHeader(HttpHeaders.RETRY_AFTER, retryAfter);
+        }
+        return response;
+    }
+
+    @Test
+    void invalid() {
+        final RetryPolicy policy = new RetryPolicy();
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setMaxRetries(0));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> policy.setBackoff(TimeValue.ZERO_MILLISECONDS, TimeValue.ofSeconds(1)));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> policy.setBackoff(TimeValue.ofSeconds(2), TimeValue.ofSeconds(1)));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setMaxRetryAfter(null));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setBudget(-1, 1, 1));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setBudget(1, -1, 1));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setBudget(1, 1, 0));
+    }
+
+    @Test
+    void budget() {
+        final RetryPolicy policy = new RetryPolicy(clock::get).setBudget(50, 0, 10);
+        final HttpClientContext context = HttpClientContext.create();
+        assertEquals(0, policy.getAvailableRetries());
+        assertFalse(policy.retryRequest(GET, FAILURE, 1, context));
+        assertEquals(1, policy.getBudgetExhaustedCount());
+        policy.onSuccess();
+        policy.onSuccess();
+        assertEquals(1, policy.getAvailableRetries());
+        assertTrue(policy.retryRequest(GET, FAILURE, 1, context));
+        assertEquals(1, policy.getRetryCount());
+        assertEquals(0, policy.getAvailableRetries());
+        for (int i = 0; i < 100; i++) {
+            policy.onSuccess();
+        }
+        assertEquals(10, policy.getAvailableRetries());
+
+        policy.setBudget(0, 2, 10);
+        assertEquals(2, policy.getAvailableRetries());
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1500));
+        assertEquals(5, policy.getAvailableRetries());
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertEquals(10, policy.getAvailableRetries());
+    }
+
+    @Test
+    void classify() {
+        final RetryPolicy policy = new RetryPolicy(clock::get).setBudget(0, 100, 100).setMaxRetries(2);
+        final HttpClientContext context = HttpClientContext.create();
+        assertTrue(policy.retryRequest(GET, FAILURE, 2, context));
+        assertFalse(policy.retryRequest(GET, FAILURE, 3, context));
+        assertFalse(policy.retryRequest(new BasicHttpRequest("POST", "/"), FAILURE, 1, context));
+        assertFalse(policy.retryRequest(GET, new UnknownHostException("x"), 1, context));
+        assertTrue(policy.retryRequest(unavailable(null), 1, context));
+        assertFalse(policy.retryRequest(new BasicHttpResponse(500), 1, context));
+        assertEquals(2, policy.getRetryCount());
+        assertEquals(0, policy.getBudgetExhaustedCount());
+    }
+
+    @Test
+    void backoff() {
+        final RetryPolicy policy = new RetryPolicy(clock::get)
+                .setBackoff(TimeValue.ofMilliseconds(100), TimeValue.ofSeconds(1));
+        final HttpClientContext context = HttpClientContext.create();
+        long previous = 100;
+        for (int i = 1; i <= 20; i++) {
+            final long interval = policy.getRetryInterval(GET, FAILURE, i, context).toMilliseconds();
+            assertTrue(interval >= 100 && interval <= Math.min(1000, previous * 3), i + ": " + interval);
+            previous = interval;
+        }
+        final long first = policy.getRetryInterval(unavailable(null), 1, HttpClientContext.create())
+                .toMilliseconds();
+        assertTrue(first >= 100 && first <= 300, "first: " + first);
+    }
+
+    @Test
+    void retryAfter() {
+        final RetryPolicy policy = new RetryPolicy(clock::get).setBudget(0, 100, 100)
+                .setMaxRetryAfter(TimeValue.ofSeconds(60));
+        final HttpClientContext context = HttpClientContext.create();
+        assertEquals(TimeValue.ofSeconds(2), policy.getRetryInterval(unavailable("2"), 1, context));
+        assertTrue(policy.retryRequest(unavailable("60"), 1, context));
+        assertFalse(policy.retryRequest(unavailable("120"), 1, context));
+        final String date = DateUtils.formatStandardDate(Instant.now().plusSeconds(30));
+        final long millis = policy.getRetryInterval(unavailable(date), 1, context).toMilliseconds();
+        assertTrue(millis > 25000 && millis <= 30000, "millis: " + millis);
+        final long invalid = policy.getRetryInterval(unavailable("soon"), 1, context).toMilliseconds();
+        assertTrue(invalid >= 100 && invalid <= 300, "invalid: " + invalid);
+    }
+
+    @Test
+    void client() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            for (int i = 0; i < 2; i++) {
+                server.enqueue(new MockResponse().setResponseCode(503).addHeader(HttpHeaders.RETRY_AFTER, "0"));
+                server.enqueue(new MockResponse().setBody("ok"));
+            }
+            for (int i = 0; i < 2; i++) {
+                server.enqueue(new MockResponse().setResponseCode(503).addHeader(HttpHeaders.RETRY_AFTER, "0"));
+            }
+            server.start();
+            final RetryPolicy policy = new RetryPolicy().setBudget(100, 1, 1);
+            final HttpClientFactory factory = new HttpClientFactory().setRetryPolicy(policy);
+            try (CloseableHttpClient client = factory.build()) {
+                assertEquals(200, client.execute(new HttpGet(server.url("/").uri()), HttpResponse::getCode)
+                        .intValue());
+            }
+            try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+                client.start();
+                assertEquals(200, client.execute(SimpleRequestBuilder.get(server.url("/").uri()).build(), null)
+                        .get(5, TimeUnit.SECONDS).getCode());
+                assertEquals(503, client.execute(SimpleRequestBuilder.get(server.url("/").uri()).build(), null)
+                        .get(5, TimeUnit.SECONDS).getCode());
+            }
+            assertEquals(6, server.getRequestCount());
+            assertEquals(3, policy.getRetryCount());
+            assertEquals(1, policy.getBudgetExhaustedCount());
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package io.github.dbstarll.utils.http.client;
+
+import io.github.dbstarll.utils.http.client.response.StringResponseHandler;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.message.BasicHttpRequest;
+import org.junit.jupiter.api.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightPolicyTest {
+    private static final int WAITERS = 8;
+
+    @Test
+    void policy() {
+        final SingleFlightPolicy policy = new SingleFlightPolicy();
+        assertEquals(SingleFlightPolicy.HandlerMode.PER_WAITER, policy.getHandlerMode());
+        assertEquals(SingleFlightPolicy.DEFAULT_MAX_BODY_BYTES, policy.getMaxBodyBytes());
+        assertEquals(Arrays.asList("authorization", "cookie"), new ArrayList<>(policy.getKeyHeaders()));
+        policy.setKeyHeaders("Authorization", "accept").setHandlerMode(SingleFlightPolicy.HandlerMode.PER_REQUEST)
+                .setMaxBodyBytes(100);
+        assertEquals(Arrays.asList("accept", "authorization", "cookie"), new ArrayList<>(policy.getKeyHeaders()));
+        assertEquals(SingleFlightPolicy.HandlerMode.PER_REQUEST, policy.getHandlerMode());
+        assertEquals(100, policy.getMaxBodyBytes());
+
+        final BasicHttpRequest request = new BasicHttpRequest("GET", "/");
+        request.addHeader(HttpHeaders.AUTHORIZATION, "a");
+        final BasicHttpRequest other = new BasicHttpRequest("GET", "/");
+        other.addHeader(HttpHeaders.AUTHORIZATION, "b");
+        other.addHeader(HttpHeaders.USER_AGENT, "x");
+        assertNotEquals(policy.key("http://h/", request), policy.key("http://h/", other));
+        other.setHeader(HttpHeaders.AUTHORIZATION, "a");
+        assertEquals(policy.key("http://h/", request), policy.key("http://h/", other));
+        assertNotEquals(policy.key("http://h/", request), policy.key("http://h/x", request));
+        assertTrue(policy.isCoalescible(request));
+        assertTrue(policy.isCoalescible(new BasicHttpRequest("HEAD", "/")));
+        assertFalse(policy.isCoalescible(new BasicHttpRequest("POST", "/")));
+    }
+
+    @Test
+    void invalid() {
+        final SingleFlightPolicy policy = new SingleFlightPolicy();
+        assertThrowsExactly(NullPointerException.class, () -> policy.setKeyHeaders((String[]) null));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setKeyHeaders("a", null));
+        assertThrowsExactly(NullPointerException.class, () -> policy.setHandlerMode(null));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setMaxBodyBytes(0));
+    }
+
+    private static List<Future<String>> concurrently(final ExecutorService executor, final CloseableHttpClient client,
+                                                     final HttpGet... requests) {
+        final List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < WAITERS; i++) {
+            final HttpGet request = requests[i % requests.length];
+            futures.add(executor.submit(() -> client.execute(request, new StringResponseHandler(false))));
+        }
+        return futures;
+    }
+
+    @Test
+    void coalesce() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(WAITERS);
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("shared").setHeadersDelay(500, TimeUnit.MILLISECONDS));
+            server.enqueue(new MockResponse().setBody("next"));
+            server.start();
+            try (CloseableHttpClient client = new HttpClientFactory().setSocketTimeout(5000)
+                    .setSingleFlightPolicy(new SingleFlightPolicy()).build()) {
+                for (Future<String> future : concurrently(executor, client, new HttpGet(server.url("/").uri()))) {
+                    assertEquals("shared", future.get(5, TimeUnit.SECONDS));
+                }
+                assertEquals("next", client.execute(new HttpGet(server.url("/").uri()),
+                        new StringResponseHandler(false)));
+            }
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void keyHeaders() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(WAITERS);
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("ok").setHeadersDelay(500, TimeUnit.MILLISECONDS));
+            server.enqueue(new MockResponse().setBody("ok").setHeadersDelay(500, TimeUnit.MILLISECONDS));
+            server.start();
+            final HttpGet alice = new HttpGet(server.url("/").uri());
+            alice.setHeader(HttpHeaders.AUTHORIZATION, "alice");
+            final HttpGet bob = new HttpGet(server.url("/").uri());
+            bob.setHeader(HttpHeaders.AUTHORIZATION, "bob");
+            try (CloseableHttpClient client = new HttpClientFactory().setSocketTimeout(5000)
+                    .setSingleFlightPolicy(new SingleFlightPolicy().setKeyHeaders(HttpHeaders.AUTHORIZATION))
+                    .build()) {
+                for (Future<String> future : concurrently(executor, client, alice, bob)) {
+                    assertEquals("ok", future.get(5, TimeUnit.SECONDS));
+                }
+            }
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void credentials() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(WAITERS);
+        try (MockWebServer server = new MockWebServer()) {
+            for (int i = 0; i < 3; i++) {
+                server.enqueue(new MockResponse().setBody("ok").setHeadersDelay(500, TimeUnit.MILLISECONDS));
+            }
+            server.start();
+            final HttpGet alice = new HttpGet(server.url("/").uri());
+            alice.setHeader(HttpHeaders.AUTHORIZATION, "alice");
+            final HttpGet bob = new HttpGet(server.url("/").uri());
+            bob.setHeader(HttpHeaders.AUTHORIZATION, "bob");
+            final HttpGet session = new HttpGet(server.url("/").uri());
+            session.setHeader(HttpHeaders.COOKIE, "session=carol");
+            // 默认的策略不合并携带不同凭证的请求
+            try (CloseableHttpClient client = new HttpClientFactory().setSocketTimeout(5000)
+                    .setSingleFlightPolicy(new SingleFlightPolicy()).build()) {
+                for (Future<String> future : concurrently(executor, client, alice, bob, session)) {
+                    assertEquals("ok", future.get(5, TimeUnit.SECONDS));
+                }
+            }
+            assertEquals(3, server.getRequestCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void tooLarge() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(WAITERS);
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("0123456789").setHeadersDelay(500, TimeUnit.MILLISECONDS));
+            for (int i = 1; i < WAITERS; i++) {
+                server.enqueue(new MockResponse().setBody("0123456789"));
+            }
+            server.start();
+            try (CloseableHttpClient client = new HttpClientFactory().setSocketTimeout(5000)
+                    .setSingleFlightPolicy(new SingleFlightPolicy().setMaxBodyBytes(5)).build()) {
+                for (Future<String> future : concurrently(executor, client, new HttpGet(server.url("/").uri()))) {
+                    assertEquals("0123456789", future.get(5, TimeUnit.SECONDS));
+                }
+            }
+            assertTrue(server.getRequestCount() > 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failure() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(WAITERS);
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+            server.start();
+            try (CloseableHttpClient client = new HttpClientFactory().setSocketTimeout(500)
+                    .setAutomaticRetries(false).setSingleFlightPolicy(new SingleFlightPolicy()).build()) {
+                for (Future<String> future : concurrently(executor, client, new HttpGet(server.url("/").uri()))) {
+                    final ExecutionException e = assertThrowsExactly(ExecutionException.class,
+                            () -> future.get(5, TimeUnit.SECONDS));
+                    assertEquals(SocketTimeoutException.class, e.getCause().getClass());
+                }
+            }
+            assertEquals(1, server.getRequestCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.dbstarll.utils.http.client;
+
+import io.github.dbstarll.utils.lang.security.KeyStoreAlgorithm;
+import io.github.dbstarll.utils.lang.security.SecureRandomAlgorithm;
+import io.github.dbstarll.utils.lang.security.SecurityFactory;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.classic.BasicHttpClientResponseHandler;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.ssl.SSLContextBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.X500NameBuilder;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.operator.ContentSigner;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.dbstarll.utils.http.client.HttpClientFactoryTest.crt;
+import static io.github.dbstarll.utils.http.client.HttpClientFactoryTest.csr;
+import static io.github.dbstarll.utils.http.client.HttpClientFactoryTest.genKeyPair;
+import static io.github.dbstarll.utils.http.client.HttpClientFactoryTest.signer;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TlsPolicyTest {
+    @Test
+    void invalid() {
+        final TlsPolicy policy = new TlsPolicy();
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setSessionCache(-1, TimeValue.ofHours(1)));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setSessionCache(1, null));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> policy.setSessionCache(1, TimeValue.ofSeconds(-1)));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> policy.setSessionCache(1, TimeValue.ofSeconds(Integer.MAX_VALUE + 1L)));
+        assertThrowsExactly(NullPointerException.class, () -> policy.setProtocols((String[]) null));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setProtocols());
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setProtocols("TLSv1.3", null));
+        assertThrowsExactly(NullPointerException.class, () -> policy.setCipherSuites((String[]) null));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setCipherSuites());
+        assertEquals(0, policy.getResumptionRate());
+    }
+
+    @Test
+    void supported() throws Exception {
+        final SSLContext sslContext = SSLContext.getDefault();
+        final TlsPolicy policy = new TlsPolicy();
+        assertEquals("TLSv1.3", policy.protocols(sslContext)[0]);
+        assertEquals("TLS_AES_128_GCM_SHA256", policy.cipherSuites(sslContext)[0]);
+        assertArrayEquals(new String[]{"TLSv1.2"}, policy.setProtocols("TLSv0.9", "TLSv1.2").protocols(sslContext));
+        assertNull(policy.setCipherSuites("UNKNOWN").cipherSuites(sslContext));
+
+        final SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, null, null);
+        policy.setSessionCache(10, TimeValue.ofMinutes(5)).apply(context);
+        assertEquals(10, context.getClientSessionContext().getSessionCacheSize());
+        assertEquals(300, context.getClientSessionContext().getSessionTimeout());
+    }
+
+    @Test
+    void resumption() throws Exception {
+        final SecureRandom random = SecurityFactory.builder(SecureRandomAlgorithm.SHA1_PRNG).build();
+        final KeyPair keyPair = genKeyPair(random);
+        final ContentSigner signer = signer(keyPair.getPrivate(), random);
+        final char[] password = "changeit".toCharArray();
+
+        final X500Name subject = new X500NameBuilder().addRDN(BCStyle.CN, "localhost").build();
+        final X509Certificate crt = crt(csr(subject, keyPair.getPublic(), signer), subject, signer, random);
+
+        final KeyStore keyStore = SecurityFactory.builder(KeyStoreAlgorithm.JKS).load(null, null).build();
+        keyStore.setKeyEntry("localhost", keyPair.getPrivate(), password, new X509Certificate[]{crt});
+
+        final TlsPolicy policy = new TlsPolicy();
+        try (MockWebServer server = new MockWebServer()) {
+            for (int i = 0; i < 4; i++) {
+                server.enqueue(new MockResponse().setBody("ok").addHeader("Connection", "close"));
+            }
+            server.useHttps(SSLContextBuilder.create().loadKeyMaterial(keyStore, password).setSecureRandom(random)
+                    .build().getSocketFactory(), false);
+            server.setProtocols(Collections.singletonList(Protocol.HTTP_1_1));
+            server.start();
+
+            final SSLContext sslContext = SSLContextBuilder.create().loadTrustMaterial(keyStore, null)
+                    .setSecureRandom(random).build();
+            final HttpClientFactory factory = new HttpClientFactory().setSslContext(sslContext).setTlsPolicy(policy);
+            try (CloseableHttpClient client = factory.build()) {
+                for (int i = 0; i < 2; i++) {
+                    assertEquals("ok", client.execute(new HttpGet(server.url("/").uri()),
+                            new BasicHttpClientResponseHandler()));
+                }
+            }
+            assertEquals(2, policy.getHandshakeCount());
+            assertEquals(1, policy.getResumedCount());
+
+            // async的client与classic的client共用SSLContext，第一次握手就可以复用会话
+            try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+                client.start();
+                for (int i = 0; i < 2; i++) {
+                    assertEquals("ok", client.execute(SimpleRequestBuilder.get(server.url("/").uri()).build(), null)
+                            .get(5, TimeUnit.SECONDS).getBodyText());
+                }
+            }
+        }
+        assertEquals(4, policy.getHandshakeCount());
+        assertEquals(3, policy.getResumedCount());
+        assertTrue(policy.getResumptionRate() > 0.7);
+    }
+}
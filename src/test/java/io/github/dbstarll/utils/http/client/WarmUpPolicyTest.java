@@ -0,0 +1,112 @@
+package io.github.dbstarll.utils.http.client;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.util.Timeout;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WarmUpPolicyTest {
+    @Test
+    void invalid() {
+        final WarmUpPolicy policy = new WarmUpPolicy();
+        assertThrowsExactly(NullPointerException.class, () -> policy.addHost(null, 1));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.addHost(URI.create("/ping"), 1));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.addHost(URI.create("http://localhost"), 0));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setTimeout(null));
+        assertThrowsExactly(IllegalArgumentException.class, () -> policy.setTimeout(Timeout.ZERO_MILLISECONDS));
+        assertThrowsExactly(NullPointerException.class, () -> policy.setResultHandler(null));
+        assertThrowsExactly(NullPointerException.class, () -> policy.warmUp((CloseableHttpClient) null));
+        assertThrowsExactly(NullPointerException.class, () -> policy.warmUp((CloseableHttpAsyncClient) null));
+    }
+
+    @Test
+    void client() throws Exception {
+        final List<WarmUpResult> results = new CopyOnWriteArrayList<>();
+        try (MockWebServer server = new MockWebServer()) {
+            for (int i = 0; i < 6; i++) {
+                server.enqueue(new MockResponse());
+            }
+            server.start();
+            final WarmUpPolicy policy = new WarmUpPolicy().addHost(server.url("").uri(), 3)
+                    .setResultHandler(results::add);
+            final HttpClientFactory factory = new HttpClientFactory().setWarmUpPolicy(policy);
+            try (CloseableHttpClient ignored = factory.build()) {
+                assertEquals(1, results.size());
+                final WarmUpResult result = results.get(0);
+                assertTrue(result.isSuccess());
+                assertEquals(3, result.getSucceeded());
+                assertEquals(server.getHostName(), result.getHost().getHostName());
+                assertTrue(result.getElapsedNanos() > 0);
+                assertTrue(result.toString().contains("3/3 connections"));
+                for (int i = 0; i < 3; i++) {
+                    final RecordedRequest request = server.takeRequest();
+                    assertEquals("HEAD", request.getMethod());
+                    assertEquals(0, request.getSequenceNumber());
+                }
+            }
+            try (CloseableHttpAsyncClient ignored = factory.buildAsync()) {
+                assertEquals(2, results.size());
+                assertTrue(results.get(1).isSuccess());
+                // 每个预热请求使用一个新的连接
+                for (int i = 0; i < 3; i++) {
+                    assertEquals(0, server.takeRequest(1, TimeUnit.SECONDS).getSequenceNumber());
+                }
+            }
+        }
+    }
+
+    @Test
+    void singleFlight() throws Exception {
+        final HttpClientMetrics metrics = new HttpClientMetrics();
+        try (MockWebServer server = new MockWebServer()) {
+            for (int i = 0; i < 3; i++) {
+                server.enqueue(new MockResponse().setHeadersDelay(200, TimeUnit.MILLISECONDS));
+            }
+            server.start();
+            final WarmUpPolicy policy = new WarmUpPolicy().addHost(server.url("").uri(), 3);
+            final HttpClientFactory factory = new HttpClientFactory().setWarmUpPolicy(policy).setMetrics(metrics)
+                    .setSingleFlightPolicy(new SingleFlightPolicy());
+            try (CloseableHttpClient ignored = factory.build()) {
+                // 预热请求不被合并，每个请求建立一个连接
+                assertEquals(3, server.getRequestCount());
+                final HttpRoute route = metrics.getRoutes().iterator().next();
+                assertEquals(3, metrics.getPoolStats(route).getAvailable());
+            }
+        }
+    }
+
+    @Test
+    void failed() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setHeadersDelay(1, TimeUnit.SECONDS));
+            server.start();
+            final WarmUpPolicy policy = new WarmUpPolicy().addHost(server.url("/slow").uri(), 1)
+                    .addHost(URI.create("http://127.0.0.1:1"), 2).setTimeout(Timeout.ofMilliseconds(200));
+            try (CloseableHttpAsyncClient client = new HttpClientFactory().setAutomaticRetries(false).buildAsync()) {
+                final List<WarmUpResult> results = policy.warmUp(client);
+                assertEquals(2, results.size());
+                assertFalse(results.get(0).isSuccess());
+                assertInstanceOf(TimeoutException.class, results.get(0).getFailures().get(0));
+                assertFalse(results.get(1).isSuccess());
+                assertEquals(0, results.get(1).getSucceeded());
+                assertEquals(2, results.get(1).getFailures().size());
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.github.dbstarll.utils.http.client.request;
+
+import io.github.dbstarll.utils.http.client.HttpClientFactory;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.classic.BasicHttpClientResponseHandler;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.dbstarll.utils.http.client.request.FileChannelEntityTest.channel;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteBufferListEntityTest {
+    private static final byte[] HEADER = "header:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BODY = new byte[50000];
+
+    static {
+        Arrays.fill(BODY, (byte) 'x');
+    }
+
+    private static List<ByteBuffer> buffers() {
+        final ByteBuffer direct = ByteBuffer.allocateDirect(BODY.length);
+        direct.put(BODY).flip();
+        return Arrays.asList(ByteBuffer.wrap(HEADER), ByteBuffer.allocate(0), direct);
+    }
+
+    private static byte[] expected() {
+        final byte[] expected = Arrays.copyOf(HEADER, HEADER.length + BODY.length);
+        System.arraycopy(BODY, 0, expected, HEADER.length, BODY.length);
+        return expected;
+    }
+
+    @Test
+    void invalid() {
+        assertThrowsExactly(NullPointerException.class, () -> new ByteBufferListEntity(null, ContentType.TEXT_PLAIN));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> new ByteBufferListEntity(Collections.singletonList(null), ContentType.TEXT_PLAIN));
+        assertThrowsExactly(NullPointerException.class,
+                () -> new ByteBufferListEntity(buffers(), ContentType.TEXT_PLAIN).writeTo(null));
+    }
+
+    @Test
+    void entity() throws IOException {
+        final List<ByteBuffer> buffers = buffers();
+        final ByteBufferListEntity entity = new ByteBufferListEntity(buffers, ContentType.TEXT_PLAIN);
+        assertEquals(HEADER.length + BODY.length, entity.getContentLength());
+        assertTrue(entity.isRepeatable());
+        assertFalse(entity.isStreaming());
+        assertFalse(entity.isChunked());
+        for (int i = 0; i < 2; i++) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            entity.writeTo(out);
+            assertArrayEquals(expected(), out.toByteArray());
+            try (InputStream in = entity.getContent()) {
+                final ByteArrayOutputStream content = new ByteArrayOutputStream();
+                content.write(in.read());
+                final byte[] buffer = new byte[1000];
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    content.write(buffer, 0, n);
+                }
+                assertArrayEquals(expected(), content.toByteArray());
+            }
+        }
+        // 不修改原有的ByteBuffer
+        assertEquals(HEADER.length, buffers.get(0).remaining());
+        assertEquals(BODY.length, buffers.get(2).remaining());
+    }
+
+    @Test
+    void produce() throws IOException {
+        final ByteBufferListEntity entity = new ByteBufferListEntity(buffers(), ContentType.TEXT_PLAIN);
+        for (int i = 0; i < 2; i++) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final boolean[] ended = new boolean[1];
+            while (!ended[0]) {
+                assertTrue(entity.available() > 0);
+                entity.produce(channel(out, ended));
+            }
+            assertEquals(0, entity.available());
+            assertArrayEquals(expected(), out.toByteArray());
+            entity.releaseResources();
+        }
+    }
+
+    @Test
+    void client() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            for (int i = 0; i < 2; i++) {
+                server.enqueue(new MockResponse().setBody("ok"));
+            }
+            server.start();
+            final HttpClientFactory factory = new HttpClientFactory();
+            try (CloseableHttpClient client = factory.build()) {
+                final HttpPost post = new HttpPost(server.url("/").uri());
+                post.setEntity(new ByteBufferListEntity(buffers(), ContentType.TEXT_PLAIN));
+                assertEquals("ok", client.execute(post, new BasicHttpClientResponseHandler()));
+            }
+            try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+                client.start();
+                assertEquals("ok", client.execute(AsyncRequestBuilder.post(server.url("/").uri())
+                                .setEntity(new ByteBufferListEntity(buffers(), ContentType.TEXT_PLAIN)).build(),
+                        SimpleResponseConsumer.create(), null).get(5, TimeUnit.SECONDS).getBodyText());
+            }
+            for (int i = 0; i < 2; i++) {
+                final RecordedRequest request = server.takeRequest();
+                assertEquals(String.valueOf(HEADER.length + BODY.length),
+                        request.getHeader(HttpHeaders.CONTENT_LENGTH));
+                assertNull(request.getHeader(HttpHeaders.TRANSFER_ENCODING));
+                assertArrayEquals(expected(), request.getBody().readByteArray());
+            }
+        }
+    }
+}
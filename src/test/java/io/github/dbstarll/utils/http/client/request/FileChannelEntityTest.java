@@ -0,0 +1,180 @@
+package io.github.dbstarll.utils.http.client.request;
+
+import io.github.dbstarll.utils.http.client.HttpClientFactory;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.classic.BasicHttpClientResponseHandler;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileChannelEntityTest {
+    private static final byte[] CONTENT = new byte[300000];
+
+    static {
+        new Random().nextBytes(CONTENT);
+    }
+
+    @TempDir
+    Path dir;
+
+    private Path file() throws IOException {
+        return Files.write(dir.resolve("upload"), CONTENT);
+    }
+
+    @Test
+    void invalid() throws IOException {
+        final Path file = file();
+        assertThrowsExactly(NullPointerException.class, () -> new FileChannelEntity(null, ContentType.TEXT_PLAIN));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> new FileChannelEntity(file, -1, 1, ContentType.TEXT_PLAIN, false));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> new FileChannelEntity(file, 0, -1, ContentType.TEXT_PLAIN, false));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> new FileChannelEntity(file, 1, CONTENT.length, ContentType.TEXT_PLAIN, false));
+        assertThrowsExactly(NullPointerException.class,
+                () -> new FileChannelEntity(file, ContentType.TEXT_PLAIN).writeTo(null));
+    }
+
+    @Test
+    void entity() throws IOException {
+        final Path file = file();
+        final FileChannelEntity entity = new FileChannelEntity(file, 100, 200000, ContentType.TEXT_PLAIN, true);
+        assertSame(file, entity.getFile());
+        assertEquals(100, entity.getOffset());
+        assertEquals(200000, entity.getContentLength());
+        assertTrue(entity.isMapped());
+        assertTrue(entity.isRepeatable());
+        assertFalse(entity.isStreaming());
+        assertFalse(entity.isChunked());
+        assertNull(entity.getContentEncoding());
+        final byte[] expected = Arrays.copyOfRange(CONTENT, 100, 200100);
+        for (int i = 0; i < 2; i++) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            entity.writeTo(out);
+            assertArrayEquals(expected, out.toByteArray());
+            try (InputStream in = entity.getContent()) {
+                assertEquals(expected[0] & 0xFF, in.read());
+                final ByteArrayOutputStream rest = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[1000];
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    rest.write(buffer, 0, n);
+                }
+                assertArrayEquals(Arrays.copyOfRange(expected, 1, expected.length), rest.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    void produce() throws IOException {
+        final Path file = file();
+        for (boolean mapped : new boolean[]{false, true}) {
+            final FileChannelEntity entity = new FileChannelEntity(file, 0, CONTENT.length, ContentType.TEXT_PLAIN,
+                    mapped);
+            // 重复发送时从头读取
+            for (int i = 0; i < 2; i++) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final boolean[] ended = new boolean[1];
+                while (!ended[0]) {
+                    assertTrue(entity.available() > 0);
+                    entity.produce(channel(out, ended));
+                }
+                assertEquals(0, entity.available());
+                assertArrayEquals(CONTENT, out.toByteArray());
+                entity.releaseResources();
+            }
+        }
+    }
+
+    /**
+     * 每次最多接收1000字节的DataStreamChannel.
+     */
+    static DataStreamChannel channel(final ByteArrayOutputStream out, final boolean[] ended) {
+        return new DataStreamChannel() {
+            @Override
+            public void requestOutput() {
+            }
+
+            @Override
+            public int write(final ByteBuffer src) {
+                final int n = Math.min(1000, src.remaining());
+                final byte[] bytes = new byte[n];
+                src.get(bytes);
+                out.write(bytes, 0, n);
+                return n;
+            }
+
+            @Override
+            public void endStream(final List<? extends Header> trailers) {
+                ended[0] = true;
+            }
+
+            @Override
+            public void endStream() {
+                endStream(null);
+            }
+        };
+    }
+
+    @Test
+    void client() throws Exception {
+        final Path file = file();
+        try (MockWebServer server = new MockWebServer()) {
+            for (int i = 0; i < 3; i++) {
+                server.enqueue(new MockResponse().setBody("ok"));
+            }
+            server.start();
+            final HttpClientFactory factory = new HttpClientFactory();
+            try (CloseableHttpClient client = factory.build()) {
+                final HttpPost post = new HttpPost(server.url("/").uri());
+                post.setEntity(new FileChannelEntity(file, ContentType.APPLICATION_OCTET_STREAM));
+                assertEquals("ok", client.execute(post, new BasicHttpClientResponseHandler()));
+            }
+            try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+                client.start();
+                for (boolean mapped : new boolean[]{false, true}) {
+                    final FileChannelEntity entity = new FileChannelEntity(file, 0, CONTENT.length,
+                            ContentType.APPLICATION_OCTET_STREAM, mapped);
+                    assertEquals("ok", client.execute(AsyncRequestBuilder.post(server.url("/").uri())
+                                    .setEntity(entity).build(), SimpleResponseConsumer.create(), null)
+                            .get(5, TimeUnit.SECONDS).getBodyText());
+                }
+            }
+            for (int i = 0; i < 3; i++) {
+                final RecordedRequest request = server.takeRequest();
+                assertEquals(String.valueOf(CONTENT.length), request.getHeader(HttpHeaders.CONTENT_LENGTH));
+                assertNull(request.getHeader(HttpHeaders.TRANSFER_ENCODING));
+                assertArrayEquals(CONTENT, request.getBody().readByteArray());
+            }
+        }
+    }
+}
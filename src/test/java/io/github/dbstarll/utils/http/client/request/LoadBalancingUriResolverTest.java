@@ -0,0 +1,198 @@
+package io.github.dbstarll.utils.http.client.request;
+
+import io.github.dbstarll.utils.http.client.HttpClientFactory;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadBalancingUriResolverTest {
+    private static final List<String> BASES = Arrays.asList("http://a.example.com/api", "http://b.example.com:8080/api",
+            "https://c.example.com/api/");
+    private static final HttpHost A = new HttpHost("http", "a.example.com", 80);
+    private static final HttpHost B = new HttpHost("http", "b.example.com", 8080);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private LoadBalancingUriResolver resolver(final LoadBalancingUriResolver.Strategy strategy,
+                                              final String... bases) {
+        return new LoadBalancingUriResolver(bases.length == 0 ? BASES : Arrays.asList(bases), "/api", strategy,
+                clock::get);
+    }
+
+    private static Map<String, Integer> hosts(final UriResolver resolver, final int count) {
+        final Map<String, Integer> hosts = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            hosts.merge(resolver.resolve("/users").getHost(), 1, Integer::sum);
+        }
+        return hosts;
+    }
+
+    @Test
+    void roundRobin() {
+        final LoadBalancingUriResolver resolver = new LoadBalancingUriResolver(BASES, "/api");
+        assertEquals(LoadBalancingUriResolver.Strategy.ROUND_ROBIN, resolver.getStrategy());
+        assertEquals(URI.create("http://a.example.com/api/users"), resolver.resolve("/users"));
+        assertEquals(URI.create("http://b.example.com:8080/api/users"), resolver.resolve("/users"));
+        assertEquals(URI.create("https://c.example.com/api/users"), resolver.resolve("users"));
+        assertEquals(URI.create("http://a.example.com/api"), resolver.resolve(null));
+        assertEquals(URI.create("https://other.com/x"), resolver.resolve("https://other.com/x"));
+        assertEquals(3, resolver.getAvailableEndpoints().size());
+    }
+
+    @Test
+    void template() {
+        final LoadBalancingUriResolver resolver = resolver(LoadBalancingUriResolver.Strategy.ROUND_ROBIN);
+        final UriTemplate template = resolver.compile("/users/{id}?q={q}");
+        assertEquals(URI.create("http://b.example.com:8080/api/users/1?q=a%20b"), template.expand(1, "a b"));
+        assertEquals(URI.create("https://c.example.com/api/users/2?q=c"), template.expand(2, "c"));
+        assertEquals(URI.create("http://a.example.com/api/users/3?q=d"), template.expand(3, "d"));
+        final UriTemplate constant = resolver.compile("/static");
+        assertEquals(URI.create("https://c.example.com/api/static"), constant.expand());
+        assertEquals(URI.create("http://a.example.com/api/static"), constant.expand(Collections.emptyMap()));
+        final UriTemplate other = resolver.compile("https://other.com/{id}");
+        assertEquals(URI.create("https://other.com/1"), other.expand(1));
+        assertEquals(URI.create("https://other.com/2"), other.expand(2));
+    }
+
+    @Test
+    void ejection() {
+        final LoadBalancingUriResolver resolver = resolver(LoadBalancingUriResolver.Strategy.ROUND_ROBIN)
+                .setMaxConsecutiveFailures(3).setBaseEjectionTime(TimeValue.ofSeconds(10))
+                .setMaxEjectionTime(TimeValue.ofSeconds(15));
+        for (int i = 0; i < 2; i++) {
+            resolver.onStart(B);
+            resolver.onComplete(B, 1000, false);
+        }
+        resolver.onComplete(B, 1000, true);
+        for (int i = 0; i < 3; i++) {
+            resolver.onComplete(new HttpHost("http", "B.example.com", 8080), 1000, false);
+        }
+        assertEquals(2, resolver.getAvailableEndpoints().size());
+        assertEquals(0, hosts(resolver, 30).getOrDefault("b.example.com", 0));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(10, (int) hosts(resolver, 30).get("b.example.com"));
+
+        for (int i = 0; i < 3; i++) {
+            resolver.onComplete(B, 1000, false);
+        }
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(14));
+        assertEquals(2, resolver.getAvailableEndpoints().size());
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(3, resolver.getAvailableEndpoints().size());
+
+        resolver.onComplete(new HttpHost("http", "unknown.example.com", 80), 1000, false);
+        resolver.onStart(new HttpHost("http", "unknown.example.com", 80));
+    }
+
+    @Test
+    void allEjected() {
+        final LoadBalancingUriResolver resolver = resolver(LoadBalancingUriResolver.Strategy.POWER_OF_TWO_CHOICES,
+                "http://a.example.com/api", "http://b.example.com:8080/api").setMaxConsecutiveFailures(1);
+        resolver.onComplete(A, 1000, false);
+        assertEquals(Collections.singletonMap("b.example.com", 20), hosts(resolver, 20));
+        resolver.onComplete(B, 1000, false);
+        assertTrue(resolver.getAvailableEndpoints().isEmpty());
+        assertEquals(20, hosts(resolver, 20).values().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void powerOfTwoChoices() {
+        final LoadBalancingUriResolver resolver = resolver(LoadBalancingUriResolver.Strategy.POWER_OF_TWO_CHOICES,
+                "http://a.example.com/api", "http://b.example.com:8080/api");
+        resolver.onStart(A);
+        assertEquals(Collections.singletonMap("b.example.com", 20), hosts(resolver, 20));
+        resolver.onStart(B);
+        resolver.onStart(B);
+        assertEquals(Collections.singletonMap("a.example.com", 20), hosts(resolver, 20));
+    }
+
+    @Test
+    void ewma() {
+        final LoadBalancingUriResolver resolver = resolver(LoadBalancingUriResolver.Strategy.EWMA,
+                "http://a.example.com/api", "http://b.example.com:8080/api");
+        resolver.onStart(A);
+        resolver.onComplete(A, TimeUnit.MILLISECONDS.toNanos(100), true);
+        resolver.onStart(B);
+        resolver.onComplete(B, TimeUnit.MILLISECONDS.toNanos(1), true);
+        assertEquals(Collections.singletonMap("b.example.com", 20), hosts(resolver, 20));
+        for (int i = 0; i < 20; i++) {
+            resolver.onStart(B);
+            resolver.onComplete(B, TimeUnit.MILLISECONDS.toNanos(500), true);
+        }
+        assertEquals(Collections.singletonMap("a.example.com", 20), hosts(resolver, 20));
+    }
+
+    @Test
+    void invalid() {
+        assertThrowsExactly(NullPointerException.class, () -> new LoadBalancingUriResolver(null, "/"));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> new LoadBalancingUriResolver(Collections.emptyList(), "/"));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> new LoadBalancingUriResolver(Arrays.asList("http://a", null), "/"));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> new LoadBalancingUriResolver(Arrays.asList("http://a/api", "http://b/api2"), "/"));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> new LoadBalancingUriResolver(Arrays.asList("http://a:80/api", "http://A/api"), "/"));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> new LoadBalancingUriResolver(Collections.singletonList("http://a/x"), "/api"));
+        assertThrowsExactly(NullPointerException.class,
+                () -> new LoadBalancingUriResolver(BASES, "/api", null));
+        final LoadBalancingUriResolver resolver = new LoadBalancingUriResolver(BASES, "/api");
+        assertThrowsExactly(IllegalArgumentException.class, () -> resolver.setMaxConsecutiveFailures(0));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> resolver.setBaseEjectionTime(TimeValue.ZERO_MILLISECONDS));
+        assertThrowsExactly(IllegalArgumentException.class, () -> resolver.setMaxEjectionTime(null));
+    }
+
+    @Test
+    void feedback() throws Exception {
+        try (MockWebServer healthy = new MockWebServer(); MockWebServer broken = new MockWebServer()) {
+            for (int i = 0; i < 20; i++) {
+                healthy.enqueue(new MockResponse().setBody("ok"));
+                broken.enqueue(new MockResponse().setResponseCode(503));
+            }
+            healthy.start();
+            broken.start();
+            final LoadBalancingUriResolver resolver = new LoadBalancingUriResolver(Arrays.asList(
+                    healthy.url("/api").toString(), broken.url("/api").toString()), "/api")
+                    .setMaxConsecutiveFailures(2);
+            final HttpClientFactory factory = new HttpClientFactory().setAutomaticRetries(false)
+                    .setLoadBalancingUriResolver(resolver);
+            try (CloseableHttpClient client = factory.build()) {
+                for (int i = 0; i < 4; i++) {
+                    client.execute(new HttpGet(resolver.resolve("/ping")), response -> null);
+                }
+            }
+            assertEquals(Collections.singletonList(URI.create(healthy.url("/api").toString())),
+                    resolver.getAvailableEndpoints());
+            try (CloseableHttpAsyncClient client = factory.buildAsync()) {
+                client.start();
+                for (int i = 0; i < 4; i++) {
+                    assertEquals(200, client.execute(SimpleRequestBuilder.get(resolver.resolve("/ping")).build(),
+                            null).get().getCode());
+                }
+            }
+            assertEquals(6, healthy.getRequestCount());
+            assertEquals(2, broken.getRequestCount());
+        }
+    }
+}
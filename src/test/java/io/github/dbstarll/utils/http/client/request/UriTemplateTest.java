@@ -0,0 +1,77 @@
+package io.github.dbstarll.utils.http.client.request;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+
+class UriTemplateTest {
+    @Test
+    void sameAsResolve() {
+        final Map<String, Object> values = new HashMap<>();
+        values.put("id", 12345);
+        values.put("ts", 1700000000L);
+        for (UriResolver resolver : Arrays.asList(new RelativeUriResolver("https://static.y1cloud.com"),
+                new RelativeUriResolver("https://static.y1cloud.com/first/second/", "/first"))) {
+            new HashMap<String, String>() {{
+                put("/users/{id}/orders?since={ts}", "/users/12345/orders?since=1700000000");
+                put("users/{id}/{ts}", "users/12345/1700000000");
+                put("{id}.html?{ts}", "12345.html?1700000000");
+                put("/a/{id}#{ts}", "/a/12345#1700000000");
+                put("https://baidu.com/{id}?q={ts}", "https://baidu.com/12345?q=1700000000");
+                put(" /trim/{id}/{ts} ", " /trim/12345/1700000000 ");
+            }}.forEach((k, v) -> {
+                final String message = String.format("failed with [%s]", k);
+                final UriTemplate template = resolver.compile(k);
+                assertEquals(resolver.resolve(v), template.expand(12345, 1700000000L), message);
+                assertEquals(resolver.resolve(v), template.expand(values), message);
+            });
+            assertEquals(resolver.resolve("/static"), resolver.compile("/static").expand());
+        }
+    }
+
+    @Test
+    void encode() {
+        final UriResolver resolver = new RelativeUriResolver("https://static.y1cloud.com/api");
+        final UriTemplate template = resolver.compile("/files/{name}?q={q}&page={page}#{frag}");
+        assertEquals(Arrays.asList("name", "q", "page", "frag"), template.getVariables());
+        assertEquals("/files/{name}?q={q}&page={page}#{frag}", template.getTemplate());
+        assertEquals("https://static.y1cloud.com/files/a%2Fb%20c%3F?q=x%26y%3Dz%2B1/?&page=%E4%B8%AD#f/?%23",
+                template.expand("a/b c?", "x&y=z+1/?", "中", "f/?#").toString());
+        assertEquals(resolver.resolve("/files/a%2Fb%20c%3F?q=x%26y%3Dz%2B1/?&page=%E4%B8%AD#f/?%23"),
+                template.expand("a/b c?", "x&y=z+1/?", "中", "f/?#"));
+        assertEquals("https://static.y1cloud.com/files/%2E%2E?q=..&page=%F0%9F%98%80#.",
+                template.expand("..", "..", "😀", ".").toString());
+    }
+
+    @Test
+    void constant() {
+        final UriTemplate template = new RelativeUriResolver("https://static.y1cloud.com").compile("/ping.html");
+        assertSame(template.expand(), template.expand());
+        assertSame(template.expand(), template.expand(new HashMap<>()));
+        assertEquals("https://static.y1cloud.com/ping.html", template.expand().toString());
+    }
+
+    @Test
+    void invalid() {
+        final UriResolver resolver = new RelativeUriResolver("https://static.y1cloud.com");
+        assertThrowsExactly(NullPointerException.class, () -> resolver.compile(null));
+        assertThrowsExactly(IllegalArgumentException.class, () -> resolver.compile("/users/{}"));
+        assertThrowsExactly(IllegalArgumentException.class, () -> resolver.compile("/users/{id"));
+        assertThrowsExactly(IllegalArgumentException.class, () -> resolver.compile("/users/id}"));
+        assertThrowsExactly(IllegalArgumentException.class, () -> resolver.compile("/users/{{id}}"));
+        assertThrowsExactly(IllegalArgumentException.class, () -> resolver.compile("/uritemplatevar0x/{id}"));
+        assertThrowsExactly(IllegalArgumentException.class, () -> resolver.compile("https://{host}/x"));
+
+        final UriTemplate template = resolver.compile("/users/{id}");
+        assertThrowsExactly(IllegalArgumentException.class, template::expand);
+        assertThrowsExactly(IllegalArgumentException.class, () -> template.expand(1, 2));
+        assertThrowsExactly(NullPointerException.class, () -> template.expand((Object) null));
+        assertThrowsExactly(NullPointerException.class, () -> template.expand(new HashMap<>()));
+    }
+}
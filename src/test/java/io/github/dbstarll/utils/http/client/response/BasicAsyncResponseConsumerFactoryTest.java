@@ -0,0 +1,41 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BasicAsyncResponseConsumerFactoryTest {
+    @Test
+    void getResponseConsumer() {
+        final AsyncResponseConsumerFactory factory = new BasicAsyncResponseConsumerFactory(true);
+        final AsyncResponseConsumer<String> consumer = factory.getResponseConsumer(String.class);
+        assertNotNull(consumer);
+        assertEquals(StringAsyncResponseConsumer.class, consumer.getClass());
+        assertNotSame(consumer, factory.getResponseConsumer(String.class));
+        assertEquals(ByteArrayAsyncResponseConsumer.class, factory.getResponseConsumer(byte[].class).getClass());
+        assertNull(factory.getResponseConsumer(Integer.class));
+    }
+
+    @Test
+    void iterator() {
+        final AsyncResponseConsumerFactory factory = new BasicAsyncResponseConsumerFactory(false);
+        final Iterator<Class<?>> ite = factory.iterator();
+        assertNotNull(ite);
+        assertTrue(ite.hasNext());
+        assertEquals(byte[].class, ite.next());
+        assertTrue(ite.hasNext());
+        assertEquals(String.class, ite.next());
+        assertFalse(ite.hasNext());
+        assertThrows(NoSuchElementException.class, ite::next);
+    }
+}
@@ -9,6 +9,8 @@ import java.util.NoSuchElementException;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -37,4 +39,16 @@ class BasicResponseHandlerFactoryTest {
         assertFalse(ite.hasNext());
         assertThrows(NoSuchElementException.class, ite::next);
     }
-}
\ No newline at end of file
+
+    @Test
+    void getResponseHandlerBySupertype() {
+        final ResponseHandlerFactory factory = new BasicResponseHandlerFactory(false);
+        final HttpClientResponseHandler<String> handler = factory.getResponseHandler(String.class);
+        assertSame(handler, factory.getResponseHandler(CharSequence.class));
+        assertSame(handler, factory.getResponseHandler(Comparable.class));
+        assertSame(factory.getResponseHandler(byte[].class), factory.getResponseHandler(Cloneable.class));
+        assertSame(factory.getResponseHandler(byte[].class), factory.getResponseHandler(Object.class));
+        assertNull(factory.getResponseHandler(Integer.class));
+        assertNull(factory.getResponseHandler(StringBuilder.class));
+    }
+}
@@ -0,0 +1,15 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import org.apache.hc.core5.http.ContentType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class ByteArrayAsyncResponseConsumerTest {
+    @Test
+    void consumeResponse() throws Exception {
+        assertArrayEquals("abcdef".getBytes(), StringAsyncResponseConsumerTest.consume(
+                new ByteArrayAsyncResponseConsumer(false), 200, ContentType.APPLICATION_OCTET_STREAM,
+                "abc".getBytes(), "def".getBytes()).get());
+    }
+}
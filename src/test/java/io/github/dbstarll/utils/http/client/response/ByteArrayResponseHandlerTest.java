@@ -1,12 +1,19 @@
 package io.github.dbstarll.utils.http.client.response;
 
 import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.InputStreamEntity;
 import org.apache.hc.core5.http.io.support.ClassicResponseBuilder;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class ByteArrayResponseHandlerTest {
     @Test
@@ -14,4 +21,35 @@ class ByteArrayResponseHandlerTest {
         final ClassicHttpResponse response = ClassicResponseBuilder.create(200).setEntity("abc").build();
         assertArrayEquals("abc".getBytes(), new ByteArrayResponseHandler(false).handleResponse(response));
     }
-}
\ No newline at end of file
+
+    @Test
+    void handleChunked() throws IOException {
+        final byte[] bytes = new byte[100000];
+        new Random().nextBytes(bytes);
+        assertArrayEquals(bytes, new ByteArrayResponseHandler(false).handleEntity(chunked(bytes)));
+        assertArrayEquals(new byte[0], new ByteArrayResponseHandler(false).handleEntity(chunked(new byte[0])));
+    }
+
+    @Test
+    void handleSharedBuffer() throws IOException {
+        final byte[] bytes = "0abc1".getBytes();
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, 3);
+        final byte[] handled = new ByteArrayResponseHandler(false).handleEntity(
+                new SharedBufferEntity(buffer, ContentType.TEXT_PLAIN.toString(), null));
+        assertArrayEquals("abc".getBytes(), handled);
+        handled[0] = 'x';
+        assertEquals('a', bytes[1]);
+        assertEquals(1, buffer.position());
+    }
+
+    @Test
+    void handleWrongContentLength() throws IOException {
+        final byte[] bytes = "abcdef".getBytes();
+        assertArrayEquals(bytes, new ByteArrayResponseHandler(false).handleEntity(
+                new InputStreamEntity(new ByteArrayInputStream(bytes), 3, ContentType.APPLICATION_OCTET_STREAM)));
+    }
+
+    private static HttpEntity chunked(final byte[] bytes) {
+        return new InputStreamEntity(new ByteArrayInputStream(bytes), -1, ContentType.APPLICATION_OCTET_STREAM);
+    }
+}
@@ -0,0 +1,28 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.io.support.ClassicResponseBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteBufferResponseHandlerTest {
+    @Test
+    void handleResponse() throws IOException {
+        final ClassicHttpResponse response = ClassicResponseBuilder.create(200).setEntity("abc").build();
+        final ByteBuffer buffer = new ByteBufferResponseHandler(false).handleResponse(response);
+        assertTrue(buffer.isReadOnly());
+        assertEquals(ByteBuffer.wrap("abc".getBytes()), buffer);
+    }
+
+    @Test
+    void handleNull() throws IOException {
+        final ClassicHttpResponse response = ClassicResponseBuilder.create(200).build();
+        assertNull(new ByteBufferResponseHandler(false).handleResponse(response));
+    }
+}
@@ -0,0 +1,146 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import org.apache.hc.client5.http.ClientProtocolException;
+import org.apache.hc.client5.http.HttpResponseException;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.io.entity.InputStreamEntity;
+import org.apache.hc.core5.http.io.support.ClassicResponseBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileResponseHandlerTest {
+    private static final byte[] CONTENT = new byte[200000];
+
+    static {
+        new Random().nextBytes(CONTENT);
+    }
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void download() throws IOException {
+        final Path target = dir.resolve("download");
+        Files.write(target, "old content".getBytes());
+        final FileDownload download = new FileResponseHandler(target).handleResponse(response(200, CONTENT, 0));
+        assertSame(target, download.getPath());
+        assertEquals(0, download.getOffset());
+        assertEquals(CONTENT.length, download.getTransferred());
+        assertEquals(CONTENT.length, download.getLength());
+        assertFalse(download.isResumed());
+        assertNull(download.getDigest());
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+    }
+
+    @Test
+    void digest() throws Exception {
+        final Path target = dir.resolve("digest");
+        final FileDownload download = new FileResponseHandler(target, false, "SHA-256")
+                .handleResponse(response(200, CONTENT, 0));
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertArrayEquals(sha256(CONTENT), download.getDigest());
+        assertThrowsExactly(IllegalArgumentException.class, () -> new FileResponseHandler(target, false, "unknown"));
+    }
+
+    @Test
+    void resume() throws Exception {
+        final Path target = dir.resolve("resume");
+        final int offset = 123456;
+        Files.write(target, Arrays.copyOf(CONTENT, offset));
+        final FileResponseHandler handler = new FileResponseHandler(target, true, "SHA-256");
+        assertEquals("bytes=" + offset + "-", handler.prepare(new HttpGet("/")).getFirstHeader(HttpHeaders.RANGE)
+                .getValue());
+
+        final FileDownload download = handler.handleResponse(response(206, CONTENT, offset));
+        assertEquals(offset, download.getOffset());
+        assertEquals(CONTENT.length - offset, download.getTransferred());
+        assertTrue(download.isResumed());
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertArrayEquals(sha256(CONTENT), download.getDigest());
+
+        final ClassicHttpResponse complete = ClassicResponseBuilder.create(416)
+                .addHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + CONTENT.length).build();
+        final FileDownload noop = handler.handleResponse(complete);
+        assertEquals(CONTENT.length, noop.getLength());
+        assertEquals(0, noop.getTransferred());
+        assertArrayEquals(sha256(CONTENT), noop.getDigest());
+    }
+
+    @Test
+    void resumeIgnored() throws IOException {
+        final Path target = dir.resolve("ignored");
+        Files.write(target, Arrays.copyOf(CONTENT, 1000));
+        final FileResponseHandler handler = new FileResponseHandler(target, true, null);
+        final FileDownload download = handler.handleResponse(response(200, CONTENT, 0));
+        assertFalse(download.isResumed());
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+
+        final HttpGet get = new HttpGet("/");
+        get.setHeader(HttpHeaders.RANGE, "bytes=1-");
+        assertNull(new FileResponseHandler(dir.resolve("none"), true, null).prepare(get)
+                .getFirstHeader(HttpHeaders.RANGE));
+    }
+
+    @Test
+    void invalidRange() throws IOException {
+        final Path target = dir.resolve("invalid");
+        Files.write(target, Arrays.copyOf(CONTENT, 1000));
+        final FileResponseHandler handler = new FileResponseHandler(target, true, null);
+        assertThrowsExactly(ClientProtocolException.class, () -> handler.handleResponse(response(206, CONTENT, 2000)));
+        assertThrowsExactly(ClientProtocolException.class, () -> handler.handleResponse(
+                ClassicResponseBuilder.create(206).setEntity(CONTENT, ContentType.APPLICATION_OCTET_STREAM).build()));
+        assertEquals(1000, Files.size(target));
+    }
+
+    @Test
+    void error() {
+        final Path target = dir.resolve("error");
+        final HttpResponseException e = assertThrowsExactly(HttpResponseException.class,
+                () -> new FileResponseHandler(target).handleResponse(ClassicResponseBuilder.create(404).build()));
+        assertEquals(404, e.getStatusCode());
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    void factory() {
+        final FileResponseHandler handler = new FileResponseHandler(dir.resolve("factory"));
+        final ResponseHandlerFactory factory = new MultiResponseHandlerFactory(new BasicResponseHandlerFactory(false),
+                new FileResponseHandlerFactory(handler));
+        assertSame(handler, factory.getResponseHandler(FileDownload.class));
+    }
+
+    private static ClassicHttpResponse response(final int code, final byte[] content, final int offset) {
+        final ClassicResponseBuilder builder = ClassicResponseBuilder.create(code);
+        if (offset > 0) {
+            builder.addHeader(HttpHeaders.CONTENT_RANGE,
+                    "bytes " + offset + "-" + (content.length - 1) + "/" + content.length);
+        }
+        final int length = content.length - Math.min(offset, content.length);
+        return builder.setEntity(new InputStreamEntity(new ByteArrayInputStream(content, offset, length), -1,
+                ContentType.APPLICATION_OCTET_STREAM)).build();
+    }
+
+    private static byte[] sha256(final byte[] content) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-256").digest(content);
+    }
+}
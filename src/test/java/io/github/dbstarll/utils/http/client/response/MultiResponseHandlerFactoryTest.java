@@ -3,12 +3,15 @@ package io.github.dbstarll.utils.http.client.response;
 import org.apache.hc.core5.http.io.HttpClientResponseHandler;
 import org.junit.jupiter.api.Test;
 
+import java.nio.file.Paths;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -21,6 +24,27 @@ class MultiResponseHandlerFactoryTest {
         assertEquals(handler.getClass(), StringResponseHandler.class);
     }
 
+    @Test
+    void override() {
+        final MultiResponseHandlerFactory factory = new MultiResponseHandlerFactory(
+                new BasicResponseHandlerFactory(true)) {
+            {
+                addResponseHandlerFactory(new FileResponseHandlerFactory(new FileResponseHandler(Paths.get("file"))));
+            }
+        };
+        final HttpClientResponseHandler<String> handler = factory.getResponseHandler(String.class);
+        assertSame(handler, factory.getResponseHandler(CharSequence.class));
+        assertEquals(FileResponseHandler.class, factory.getResponseHandler(FileDownload.class).getClass());
+
+        factory.addResponseHandlerFactory(new AbstractResponseHandlerFactory() {
+            {
+                addResponseHandler(CharSequence.class, new StringResponseHandler(false));
+            }
+        });
+        assertSame(handler, factory.getResponseHandler(String.class));
+        assertNotSame(handler, factory.getResponseHandler(CharSequence.class));
+        assertEquals(StringResponseHandler.class, factory.getResponseHandler(CharSequence.class).getClass());
+    }
 
     @Test
     void iterator() {
@@ -0,0 +1,70 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import org.apache.hc.core5.http.ContentType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SharedBufferEntityTest {
+    @Test
+    void entity() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap("0abc1".getBytes(), 1, 3);
+        final SharedBufferEntity entity = new SharedBufferEntity(buffer, ContentType.TEXT_PLAIN.toString(), "gzip");
+        assertEquals(3, entity.getContentLength());
+        assertEquals(ContentType.TEXT_PLAIN.toString(), entity.getContentType());
+        assertEquals("gzip", entity.getContentEncoding());
+        assertTrue(entity.isRepeatable());
+        assertFalse(entity.isStreaming());
+        assertTrue(entity.getContentBuffer().isReadOnly());
+        assertEquals(3, entity.getContentBuffer().remaining());
+        for (int i = 0; i < 2; i++) {
+            try (InputStream in = entity.getContent()) {
+                assertEquals(3, in.available());
+                assertEquals('a', in.read());
+                final byte[] bytes = new byte[4];
+                assertEquals(0, in.read(bytes, 0, 0));
+                assertEquals(2, in.read(bytes, 0, 4));
+                assertEquals(-1, in.read(bytes, 0, 4));
+                assertEquals(-1, in.read());
+            }
+        }
+        entity.close();
+        assertEquals(1, buffer.position());
+        assertEquals(4, buffer.limit());
+    }
+
+    @Test
+    void writeTo() throws IOException {
+        final byte[] bytes = new byte[20000];
+        new Random().nextBytes(bytes);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.wrap(bytes), direct}) {
+            final SharedBufferEntity entity = new SharedBufferEntity(buffer, null, null);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            entity.writeTo(out);
+            entity.writeTo(out);
+            final byte[] written = out.toByteArray();
+            assertEquals(bytes.length * 2, written.length);
+            assertArrayEquals(bytes, Arrays.copyOfRange(written, bytes.length, written.length));
+        }
+    }
+
+    @Test
+    void invalid() {
+        assertThrowsExactly(NullPointerException.class, () -> new SharedBufferEntity(null, null, null));
+        final SharedBufferEntity entity = new SharedBufferEntity(ByteBuffer.allocate(0), null, null);
+        assertThrowsExactly(NullPointerException.class, () -> entity.writeTo(null));
+    }
+}
@@ -0,0 +1,136 @@
+package io.github.dbstarll.utils.http.client.response;
+
+import io.github.dbstarll.utils.http.client.HttpClientFactory;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.apache.hc.client5.http.HttpResponseException;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.impl.BasicEntityDetails;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+
+class StringAsyncResponseConsumerTest {
+    static <T> CompletableFuture<T> consume(final AsyncResponseConsumer<T> consumer, final int code,
+                                            final ContentType contentType, final byte[]... chunks) throws Exception {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        long length = 0;
+        for (byte[] chunk : chunks) {
+            length += chunk.length;
+        }
+        consumer.consumeResponse(new BasicHttpResponse(code), chunks.length == 0 ? null
+                : new BasicEntityDetails(length, contentType), null, new FutureCallback<T>() {
+            @Override
+            public void completed(final T result) {
+                future.complete(result);
+            }
+
+            @Override
+            public void failed(final Exception ex) {
+                future.completeExceptionally(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        for (byte[] chunk : chunks) {
+            consumer.consume(ByteBuffer.wrap(chunk));
+        }
+        consumer.streamEnd(null);
+        consumer.releaseResources();
+        return future;
+    }
+
+    @Test
+    void consumeResponse() throws Exception {
+        final byte[] bytes = "中文abc".getBytes(StandardCharsets.UTF_8);
+        assertEquals("中文abc", consume(new StringAsyncResponseConsumer(false), 200, ContentType.APPLICATION_JSON,
+                Arrays.copyOf(bytes, 4), Arrays.copyOfRange(bytes, 4, bytes.length))
+                .get());
+    }
+
+    @Test
+    void consumeBytes() throws Exception {
+        final String text = "中文abc€𝄞";
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        final byte[][] chunks = new byte[bytes.length][];
+        for (int i = 0; i < bytes.length; i++) {
+            chunks[i] = new byte[]{bytes[i]};
+        }
+        assertEquals(text, consume(new StringAsyncResponseConsumer(false), 200, ContentType.APPLICATION_JSON,
+                chunks).get());
+    }
+
+    @Test
+    void consumeMalformed() throws Exception {
+        assertEquals("a\uFFFD", consume(new StringAsyncResponseConsumer(false), 200, ContentType.APPLICATION_JSON,
+                new byte[]{'a'}, new byte[]{(byte) 0xE4, (byte) 0xB8}).get());
+    }
+
+    @Test
+    void defaultCharset() throws Exception {
+        final byte[] bytes = "é".getBytes(StandardCharsets.ISO_8859_1);
+        assertEquals("é", consume(new StringAsyncResponseConsumer(false), 200,
+                ContentType.create("text/plain"), bytes).get());
+    }
+
+    @Test
+    void consumeNull() throws Exception {
+        assertNull(consume(new StringAsyncResponseConsumer(false), 200, null).get());
+    }
+
+    @Test
+    void consume404() throws Exception {
+        final CompletableFuture<String> future = consume(new StringAsyncResponseConsumer(false), 404,
+                ContentType.TEXT_PLAIN, "abc".getBytes());
+        final ExecutionException e = assertThrowsExactly(ExecutionException.class, future::get);
+        final HttpResponseException cause = assertInstanceOf(HttpResponseException.class, e.getCause());
+        assertEquals(404, cause.getStatusCode());
+        assertEquals("Not Found", cause.getReasonPhrase());
+    }
+
+    @Test
+    void alwaysProcessEntity() throws Exception {
+        assertEquals("abc", consume(new StringAsyncResponseConsumer(true), 404, ContentType.TEXT_PLAIN,
+                "abc".getBytes()).get());
+    }
+
+    @Test
+    void alwaysProcessEntityNull() throws Exception {
+        final CompletableFuture<String> future = consume(new StringAsyncResponseConsumer(true), 404, null);
+        final ExecutionException e = assertThrowsExactly(ExecutionException.class, future::get);
+        assertEquals(404, assertInstanceOf(HttpResponseException.class, e.getCause()).getStatusCode());
+    }
+
+    @Test
+    void execute() throws Throwable {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("ok"));
+            server.start();
+            try (CloseableHttpAsyncClient client = new HttpClientFactory().buildAsync()) {
+                client.start();
+                final AsyncResponseConsumerFactory factory = new BasicAsyncResponseConsumerFactory(false);
+                assertEquals("ok", client.execute(SimpleRequestProducer.create(SimpleRequestBuilder
+                                .get(server.url("/ping.html").uri()).build()),
+                        factory.getResponseConsumer(String.class), null).get());
+            }
+        }
+    }
+}
@@ -2,10 +2,18 @@ package io.github.dbstarll.utils.http.client.response;
 
 import org.apache.hc.client5.http.HttpResponseException;
 import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.InputStreamEntity;
 import org.apache.hc.core5.http.io.support.ClassicResponseBuilder;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -47,4 +55,74 @@ class StringResponseHandlerTest {
         assertEquals(404, e.getStatusCode());
         assertEquals("Not Found", e.getReasonPhrase());
     }
-}
\ No newline at end of file
+
+    @Test
+    void charsets() throws Exception {
+        final String text = text(100000);
+        final StringResponseHandler handler = new StringResponseHandler(false);
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.UTF_16, Charset.forName("GBK")}) {
+            final ContentType contentType = ContentType.TEXT_PLAIN.withCharset(charset);
+            final byte[] bytes = text.getBytes(charset);
+            assertEquals(text, handler.handleEntity(entity(bytes, bytes.length, contentType)), charset.name());
+            assertEquals(text, handler.handleEntity(entity(bytes, -1, contentType)), charset.name());
+        }
+        final byte[] json = "{\"name\":\"中文\"}".getBytes(StandardCharsets.UTF_8);
+        assertEquals(EntityUtils.toString(entity(json, -1, ContentType.APPLICATION_JSON)),
+                handler.handleEntity(entity(json, -1, ContentType.APPLICATION_JSON)));
+        assertEquals(EntityUtils.toString(entity(json, -1, null)), handler.handleEntity(entity(json, -1, null)));
+        assertEquals("", handler.handleEntity(entity(new byte[0], 0, ContentType.TEXT_PLAIN)));
+    }
+
+    @Test
+    void sharedBuffer() throws Exception {
+        final String text = text(10000);
+        final StringResponseHandler handler = new StringResponseHandler(false);
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1}) {
+            final byte[] bytes = text.getBytes(charset);
+            final byte[] padded = new byte[bytes.length + 2];
+            System.arraycopy(bytes, 0, padded, 1, bytes.length);
+            final ByteBuffer buffer = ByteBuffer.wrap(padded, 1, bytes.length);
+            final String contentType = ContentType.TEXT_PLAIN.withCharset(charset).toString();
+            final String expected = new String(bytes, charset);
+            assertEquals(expected, handler.handleEntity(new SharedBufferEntity(buffer, contentType, null)));
+            final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+            direct.put(bytes).flip();
+            assertEquals(expected, handler.handleEntity(new SharedBufferEntity(direct, contentType, null)));
+            assertEquals(bytes.length, direct.remaining());
+        }
+    }
+
+    @Test
+    void handleWrongContentLength() throws Exception {
+        final String text = text(100000);
+        final StringResponseHandler handler = new StringResponseHandler(false);
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1}) {
+            final ContentType contentType = ContentType.TEXT_PLAIN.withCharset(charset);
+            final byte[] bytes = text.getBytes(charset);
+            assertEquals(new String(bytes, charset), handler.handleEntity(entity(bytes, 3, contentType)),
+                    charset.name());
+            assertEquals(new String(bytes, charset), handler.handleEntity(entity(bytes, bytes.length * 2L,
+                    contentType)), charset.name());
+        }
+    }
+
+    @Test
+    void malformed() throws Exception {
+        final byte[] bytes = {'a', (byte) 0xff, 'b'};
+        final ContentType contentType = ContentType.TEXT_PLAIN.withCharset("GBK");
+        assertEquals(EntityUtils.toString(entity(bytes, -1, contentType)),
+                new StringResponseHandler(false).handleEntity(entity(bytes, -1, contentType)));
+    }
+
+    private static String text(final int length) {
+        final StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(i % 3 == 0 ? (char) ('一' + i % 1000) : (char) ('a' + i % 26));
+        }
+        return builder.toString();
+    }
+
+    private static HttpEntity entity(final byte[] bytes, final long length, final ContentType contentType) {
+        return new InputStreamEntity(new ByteArrayInputStream(bytes), length, contentType);
+    }
+}